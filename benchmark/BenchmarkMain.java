@@ -0,0 +1,40 @@
+package benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks and writes the results as JSON.  With the JMH
+ * core and annotation processor jars on the class path, the whole suite
+ * is one command from the repository root:
+ * <pre>
+ *     javac -d out $(find common interpreter machine benchmark -name '*.java' -not -path '*test*') \
+ *         && java -cp out:$JMH benchmark.BenchmarkMain [results.json] [benchmark regex]
+ * </pre>
+ *
+ * @author jolin qiu
+ */
+public class BenchmarkMain {
+    /** where the results are written if no file is given */
+    private static final String DEFAULT_RESULTS = "benchmark/results.json";
+
+    /**
+     * Run the benchmarks.
+     *
+     * @param args optional results file and regular expression selecting benchmarks
+     * @throws RunnerException if JMH cannot run the benchmarks
+     */
+    public static void main(String[] args) throws RunnerException {
+        String results = args.length > 0 ? args[0] : DEFAULT_RESULTS;
+        String include = args.length > 1 ? args[1] : PipelineBenchmark.class.getSimpleName();
+        Options options = new OptionsBuilder()
+                .include(include)
+                .resultFormat(ResultFormatType.JSON)
+                .result(results)
+                .build();
+        new Runner(options).run();
+    }
+}
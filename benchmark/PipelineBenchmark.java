@@ -0,0 +1,214 @@
+package benchmark;
+
+import interpreter.Arboles;
+import machine.Maquina;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for each stage of the ARB to MAQ pipeline, run over the
+ * programs named by {@link Source#program}.  Each stage starts from the
+ * output of the stage before it, prepared outside the measurement.  The
+ * programs print a great deal, so standard output is discarded while they
+ * run.
+ *
+ * @author jolin qiu
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmark {
+    /**
+     * The program being benchmarked, as ARB text and as the MAQ text it
+     * compiles to.
+     */
+    @State(Scope.Benchmark)
+    public static class Source {
+        /** checked-in programs by file name, and generated ones as "statements x depth" */
+        @Param({"quadratic.arb", "fibonacci.arb", "100x2", "1000x2", "10000x2", "1000x6", "100x10"})
+        public String program;
+
+        /** the ARB text */
+        String arb;
+
+        /** the MAQ text */
+        byte[] maq;
+
+        /** standard output, while it is being discarded */
+        private PrintStream stdout;
+
+        /**
+         * Read or generate the program and compile it once up front.
+         *
+         * @throws IOException if a checked-in program cannot be read
+         */
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            stdout = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            arb = Programs.arb(program);
+            Arboles arboles = new Arboles(new Scanner(arb), false);
+            arboles.buildProgram();
+            StringWriter out = new StringWriter();
+            arboles.compileProgram(new PrintWriter(out));
+            maq = out.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Put standard output back.
+         */
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            System.setOut(stdout);
+        }
+    }
+
+    /**
+     * A freshly tokenized program, since building consumes the tokens.
+     */
+    @State(Scope.Thread)
+    public static class Tokenized {
+        /** the tokenized program */
+        Arboles arboles;
+
+        /**
+         * Tokenize the program again.
+         *
+         * @param source the program
+         */
+        @Setup(Level.Invocation)
+        public void setUp(Source source) {
+            arboles = new Arboles(new Scanner(source.arb), false);
+        }
+    }
+
+    /**
+     * A program with its parse trees built.
+     */
+    @State(Scope.Thread)
+    public static class Built {
+        /** the built program */
+        Arboles arboles;
+
+        /**
+         * Tokenize and build the program.
+         *
+         * @param source the program
+         */
+        @Setup(Level.Trial)
+        public void setUp(Source source) {
+            arboles = new Arboles(new Scanner(source.arb), false);
+            arboles.buildProgram();
+        }
+    }
+
+    /**
+     * A machine with the compiled program assembled.
+     */
+    @State(Scope.Thread)
+    public static class Assembled {
+        /** how the machine executes */
+        @Param({"OBJECT", "SWITCH", "BYTECODE"})
+        public String engine;
+
+        /** the machine */
+        Maquina machine;
+
+        /**
+         * Assemble the program on a new machine.
+         *
+         * @param source the program
+         * @throws IOException never, the input is in memory
+         */
+        @Setup(Level.Trial)
+        public void setUp(Source source) throws IOException {
+            machine = new Maquina();
+            machine.setEngine(Maquina.Engine.valueOf(engine));
+            machine.assemble(new ByteArrayInputStream(source.maq), false);
+        }
+    }
+
+    /**
+     * Tokenization in the Arboles constructor.
+     *
+     * @param source the program
+     * @return the tokenized program
+     */
+    @Benchmark
+    public Arboles tokenize(Source source) {
+        return new Arboles(new Scanner(source.arb), false);
+    }
+
+    /**
+     * Arboles.buildProgram.
+     *
+     * @param tokenized a freshly tokenized program
+     * @return the built program
+     */
+    @Benchmark
+    public Arboles buildProgram(Tokenized tokenized) {
+        tokenized.arboles.buildProgram();
+        return tokenized.arboles;
+    }
+
+    /**
+     * Arboles.interpretProgram.
+     *
+     * @param built the built program
+     */
+    @Benchmark
+    public void interpretProgram(Built built) {
+        built.arboles.interpretProgram();
+    }
+
+    /**
+     * Arboles.compileProgram, into memory rather than the temporary file.
+     *
+     * @param built the built program
+     * @return the MAQ text
+     */
+    @Benchmark
+    public String compileProgram(Built built) {
+        StringWriter out = new StringWriter();
+        built.arboles.compileProgram(new PrintWriter(out));
+        return out.toString();
+    }
+
+    /**
+     * Maquina.assemble.
+     *
+     * @param source the program
+     * @return the machine
+     * @throws IOException never, the input is in memory
+     */
+    @Benchmark
+    public Maquina assemble(Source source) throws IOException {
+        Maquina machine = new Maquina();
+        machine.assemble(new ByteArrayInputStream(source.maq), false);
+        return machine;
+    }
+
+    /**
+     * Maquina.execute.  Programs compiled from ARB leave the instruction
+     * stack empty, so the same machine can run its program again.
+     *
+     * @param assembled the machine
+     * @return the machine
+     */
+    @Benchmark
+    public Maquina execute(Assembled assembled) {
+        assembled.machine.execute();
+        return assembled.machine;
+    }
+}
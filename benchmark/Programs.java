@@ -0,0 +1,156 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * The ARB programs the benchmarks run.  A program is named either by the
+ * file name of a checked-in program in benchmark/programs (e.g.
+ * "quadratic.arb"), or by its shape as "statements x depth" (e.g.
+ * "1000x4"), in which case it is generated.
+ *
+ * <p>Generated programs are the same for the same shape.  They only
+ * divide by non-zero constants and only take the square root of
+ * non-negative constants, so they never stop the benchmark with an error.
+ *
+ * @author jolin qiu
+ */
+public final class Programs {
+    /** the system property that overrides where the checked-in programs are */
+    public static final String DIRECTORY_PROPERTY = "benchmark.programs";
+
+    /** where the checked-in programs are, relative to the repository root */
+    private static final String DEFAULT_DIRECTORY = "benchmark/programs";
+
+    /** the number of distinct variable names a generated program assigns */
+    private static final int VARIABLES = 32;
+
+    /** the random source */
+    private final Random random;
+
+    /** the ARB text being generated */
+    private final StringBuilder text;
+
+    /** the number of variables assigned so far */
+    private int assigned;
+
+    /**
+     * Start generating a program.
+     *
+     * @param seed the random seed
+     */
+    private Programs(long seed) {
+        this.random = new Random(seed);
+        this.text = new StringBuilder();
+    }
+
+    /**
+     * Get the ARB text of a program.
+     *
+     * @param program a checked-in program's file name, or "statements x depth"
+     * @return the text
+     * @throws IOException if a checked-in program cannot be read
+     */
+    public static String arb(String program) throws IOException {
+        if (program.endsWith(".arb")) {
+            Path directory = Path.of(System.getProperty(DIRECTORY_PROPERTY, DEFAULT_DIRECTORY));
+            return Files.readString(directory.resolve(program), StandardCharsets.UTF_8);
+        }
+        int x = program.indexOf('x');
+        return generate(Integer.parseInt(program.substring(0, x)), Integer.parseInt(program.substring(x + 1)));
+    }
+
+    /**
+     * Generate a program of assignments and prints, one statement per line.
+     *
+     * @param statements the number of statements
+     * @param depth the depth of each statement's expression tree
+     * @return the ARB text
+     */
+    public static String generate(int statements, int depth) {
+        Programs generator = new Programs(31L * statements + depth);
+        for (int i = 0; i < statements; i++) {
+            generator.statement(depth);
+        }
+        return generator.text.toString();
+    }
+
+    /**
+     * Generate one statement.  Most are assignments, every eighth is a print.
+     *
+     * @param depth the depth of its expression
+     */
+    private void statement(int depth) {
+        int name = -1;
+        if (assigned > 0 && random.nextInt(8) == 0) {
+            text.append('@');
+        } else {
+            name = random.nextInt(Math.min(assigned + 1, VARIABLES));
+            text.append("= v").append(name);
+        }
+        text.append(' ');
+        expression(depth);
+        text.append('\n');
+        // only now can the expressions that follow use the variable
+        assigned = Math.max(assigned, name + 1);
+    }
+
+    /**
+     * Generate an expression in prefix form.
+     *
+     * @param depth the depth of the tree, 0 for a single leaf
+     */
+    private void expression(int depth) {
+        if (depth == 0) {
+            leaf();
+            return;
+        }
+        switch (random.nextInt(8)) {
+            case 0, 1 -> binary("+ ", depth);
+            case 2, 3 -> binary("- ", depth);
+            case 4 -> binary("* ", depth);
+            case 5 -> {
+                // divide or take the remainder by a constant that is never 0
+                text.append(random.nextBoolean() ? "/ " : "% ");
+                expression(depth - 1);
+                text.append(' ').append(1 + random.nextInt(9));
+            }
+            case 6 -> {
+                text.append("! ");
+                expression(depth - 1);
+            }
+            default -> {
+                // the square root of a constant, which is never negative
+                text.append("+ $ ").append(random.nextInt(1000)).append(' ');
+                expression(depth - 1);
+            }
+        }
+    }
+
+    /**
+     * Generate a binary operation on two subtrees.
+     *
+     * @param operator the operator and a space
+     * @param depth the depth of the tree
+     */
+    private void binary(String operator, int depth) {
+        text.append(operator);
+        expression(depth - 1);
+        text.append(' ');
+        expression(depth - 1);
+    }
+
+    /**
+     * Generate a constant, or a variable that has already been assigned.
+     */
+    private void leaf() {
+        if (assigned > 0 && random.nextBoolean()) {
+            text.append('v').append(random.nextInt(assigned));
+        } else {
+            text.append(random.nextInt(100));
+        }
+    }
+}
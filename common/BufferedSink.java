@@ -0,0 +1,232 @@
+package common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A sink that formats everything into one large byte buffer and writes it
+ * to a stream or channel only when the buffer fills or is flushed.
+ * Integers are written digit by digit straight into the buffer, and ASCII
+ * text a character at a time, so printing makes no Strings or byte arrays.
+ * Errors writing the output are thrown as UncheckedIOException.
+ *
+ * <p>A sink is not thread safe.
+ *
+ * @author jolin qiu
+ */
+public class BufferedSink implements OutputSink {
+    /** the default size of the buffer */
+    public static final int DEFAULT_SIZE = 1 << 16;
+
+    /** the line separator, encoded */
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    /** the longest int, "-2147483648" */
+    private static final int MAX_INT_LENGTH = 11;
+
+    /** the stream written to, or null when writing to a channel */
+    private final OutputStream stream;
+
+    /** the channel written to, or null when writing to a stream */
+    private final WritableByteChannel channel;
+
+    /** whether closing the sink closes the stream or channel */
+    private final boolean owned;
+
+    /** the buffer */
+    private final byte[] buffer;
+
+    /** the number of bytes in the buffer */
+    private int count;
+
+    /**
+     * Create a sink writing to a stream, which it does not close.
+     *
+     * @param stream the stream
+     * @param size the size of the buffer
+     */
+    public BufferedSink(OutputStream stream, int size) {
+        this(stream, null, false, size);
+    }
+
+    /**
+     * Create a sink writing to a channel, which it closes when it is closed.
+     *
+     * @param channel the channel
+     * @param size the size of the buffer
+     */
+    public BufferedSink(WritableByteChannel channel, int size) {
+        this(null, channel, true, size);
+    }
+
+    /**
+     * Create a sink.
+     *
+     * @param stream the stream, or null
+     * @param channel the channel, or null
+     * @param owned whether closing the sink closes the channel
+     * @param size the size of the buffer
+     */
+    private BufferedSink(OutputStream stream, WritableByteChannel channel, boolean owned, int size) {
+        this.stream = stream;
+        this.channel = channel;
+        this.owned = owned;
+        this.buffer = new byte[Math.max(size, MAX_INT_LENGTH + NEWLINE.length)];
+    }
+
+    /**
+     * Create a sink with a large buffer in front of the current System.out.
+     *
+     * @return the sink
+     */
+    public static BufferedSink stdout() {
+        return new BufferedSink(System.out, DEFAULT_SIZE);
+    }
+
+    /**
+     * Create a sink writing to a file through a FileChannel, replacing the
+     * file if it exists.
+     *
+     * @param path the file
+     * @return the sink
+     * @throws IOException if the file cannot be opened
+     */
+    public static BufferedSink file(Path path) throws IOException {
+        return new BufferedSink(FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), DEFAULT_SIZE);
+    }
+
+    /**
+     * Make room in the buffer, writing it out if it is too full.
+     *
+     * @param needed the number of bytes about to be added
+     */
+    private void ensure(int needed) {
+        if (count + needed > buffer.length) {
+            drain();
+        }
+    }
+
+    /**
+     * Write the buffer out and empty it.
+     */
+    private void drain() {
+        try {
+            if (stream != null) {
+                stream.write(buffer, 0, count);
+            } else {
+                ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, count);
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        count = 0;
+    }
+
+    @Override
+    public void print(String text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                // not ASCII, so encode the rest properly
+                printBytes(text.substring(i).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            if (count == buffer.length) {
+                drain();
+            }
+            buffer[count++] = (byte) c;
+        }
+    }
+
+    /**
+     * Print already encoded text.
+     *
+     * @param bytes the text
+     */
+    private void printBytes(byte[] bytes) {
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (count == buffer.length) {
+                drain();
+            }
+            int chunk = Math.min(bytes.length - offset, buffer.length - count);
+            System.arraycopy(bytes, offset, buffer, count, chunk);
+            count += chunk;
+            offset += chunk;
+        }
+    }
+
+    @Override
+    public void print(int value) {
+        ensure(MAX_INT_LENGTH);
+        if (value < 0) {
+            buffer[count++] = '-';
+        } else {
+            // work with the negative so that Integer.MIN_VALUE needs no special case
+            value = -value;
+        }
+        int digits = 1;
+        for (int rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        int end = count + digits;
+        for (int i = end - 1; i >= count; i--) {
+            buffer[i] = (byte) ('0' - value % 10);
+            value /= 10;
+        }
+        count = end;
+    }
+
+    @Override
+    public void println() {
+        ensure(NEWLINE.length);
+        for (byte b : NEWLINE) {
+            buffer[count++] = b;
+        }
+    }
+
+    @Override
+    public void println(int value) {
+        ensure(MAX_INT_LENGTH + NEWLINE.length);
+        print(value);
+        println();
+    }
+
+    @Override
+    public void flush() {
+        if (count > 0) {
+            drain();
+        }
+        try {
+            if (stream != null) {
+                stream.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        if (owned) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
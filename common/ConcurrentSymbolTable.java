@@ -0,0 +1,476 @@
+package common;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A symbol table that any number of threads can share, so that several
+ * machines or ARB programs running at once see one set of global
+ * variables.
+ *
+ * <p>The variables are split between a fixed number of stripes by their
+ * hash code, and each stripe is an open addressing table like
+ * {@link SymbolTable}'s behind its own {@link StampedLock}, so threads
+ * only contend when they touch variables in the same stripe.  Reads take
+ * no lock at all unless a write to the same stripe overlaps them: they
+ * probe the stripe optimistically and only retry under the read lock if
+ * the stamp no longer validates.  A stripe's arrays are replaced, never
+ * resized in place, so an optimistic probe always sees arrays that belong
+ * together.
+ *
+ * <p>Each variable is numbered when it is first set, under its stripe's
+ * lock, so the numbers say the order the variables were first set in
+ * across all stripes.  {@link #snapshot()} holds every stripe's read lock
+ * while it copies, so it sees the table as it was at one moment, and
+ * toString() lists that snapshot.
+ *
+ * @author jolin qiu
+ */
+public class ConcurrentSymbolTable implements Namespace {
+    /** the number of stripes when none is given */
+    public static final int DEFAULT_STRIPES = 64;
+
+    /** the initial number of variables each stripe holds */
+    private static final int INITIAL_CAPACITY = 8;
+
+    /** the stripes */
+    private final Stripe[] stripes;
+
+    /** the stripe count - 1, for choosing a stripe */
+    private final int mask;
+
+    /** the number of variables, which is also the number of the next one first set */
+    private final AtomicInteger count;
+
+    /**
+     * One stripe's variables: the same parallel arrays and open addressing
+     * index as a SymbolTable, plus the number of each variable.  Only the
+     * size and the contents of the arrays change; a stripe that outgrows
+     * its arrays gets a new table.
+     */
+    private static final class Table {
+        /** the variable names, in the order they were first set */
+        final String[] names;
+
+        /** the value of each variable */
+        final int[] values;
+
+        /** the number of each variable, across all stripes */
+        final int[] numbers;
+
+        /** each bucket holds a hash code in its high half and a position + 1 in its low half, or 0 */
+        final long[] index;
+
+        /** the number of variables */
+        int size;
+
+        /**
+         * Create an empty table.
+         *
+         * @param capacity the number of variables it can hold
+         */
+        Table(int capacity) {
+            this.names = new String[capacity];
+            this.values = new int[capacity];
+            this.numbers = new int[capacity];
+            this.index = new long[capacity * 2];
+            this.size = 0;
+        }
+
+        /**
+         * Create a table twice the size of a full one, holding its variables.
+         *
+         * @param full the full table
+         */
+        Table(Table full) {
+            int capacity = full.names.length * 2;
+            this.names = Arrays.copyOf(full.names, capacity);
+            this.values = Arrays.copyOf(full.values, capacity);
+            this.numbers = Arrays.copyOf(full.numbers, capacity);
+            this.index = new long[capacity * 2];
+            this.size = full.size;
+            int mask = this.index.length - 1;
+            for (long entry : full.index) {
+                if (entry != 0) {
+                    int bucket = (int) (entry >>> 32) & mask;
+                    while (this.index[bucket] != 0) {
+                        bucket = (bucket + 1) & mask;
+                    }
+                    this.index[bucket] = entry;
+                }
+            }
+        }
+
+        /**
+         * Find a variable.  This is safe to call while another thread is
+         * adding a variable, although the answer may then be wrong: it never
+         * fails, and the caller validates it.
+         *
+         * @param name the variable name
+         * @param hash its mixed hash code
+         * @return its position in the arrays, or -1 if it is not there
+         */
+        int find(String name, int hash) {
+            int mask = this.index.length - 1;
+            int bucket = hash & mask;
+            while (true) {
+                long entry = this.index[bucket];
+                if (entry == 0) {
+                    return -1;
+                }
+                // a name being added may not be visible yet, hence equals on the argument
+                if ((int) (entry >>> 32) == hash && name.equals(this.names[(int) entry - 1])) {
+                    return (int) entry - 1;
+                }
+                bucket = (bucket + 1) & mask;
+            }
+        }
+
+        /**
+         * Add a variable that is not in the table, which must have room.
+         *
+         * @param name the variable name
+         * @param hash its mixed hash code
+         * @param value its value
+         * @param number its number
+         */
+        void add(String name, int hash, int value, int number) {
+            int mask = this.index.length - 1;
+            int bucket = hash & mask;
+            while (this.index[bucket] != 0) {
+                bucket = (bucket + 1) & mask;
+            }
+            this.names[this.size] = name;
+            this.values[this.size] = value;
+            this.numbers[this.size] = number;
+            this.index[bucket] = (long) hash << 32 | ++this.size;
+        }
+    }
+
+    /**
+     * A stripe: its table and the lock that guards it.
+     */
+    private static final class Stripe {
+        /** guards the table and its contents */
+        final StampedLock lock = new StampedLock();
+
+        /** the stripe's variables */
+        Table table = new Table(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Create an empty table with the default number of stripes.
+     */
+    public ConcurrentSymbolTable() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * Create an empty table.
+     *
+     * @param stripes the number of stripes, rounded up to a power of two;
+     *                more stripes mean less contention but a slower snapshot
+     */
+    public ConcurrentSymbolTable(int stripes) {
+        if (stripes <= 0 || stripes > 1 << 16) {
+            throw new IllegalArgumentException("stripes " + stripes);
+        }
+        int count = Integer.highestOneBit(stripes);
+        if (count < stripes) {
+            count <<= 1;
+        }
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.mask = count - 1;
+        this.count = new AtomicInteger();
+    }
+
+    /**
+     * Choose the stripe of a name.  The hash is mixed again so that the
+     * stripe does not depend on the same bits as the bucket within it.
+     *
+     * @param hash the name's mixed hash code
+     * @return its stripe
+     */
+    private Stripe stripe(int hash) {
+        return this.stripes[((hash * 0x2545F491) >>> 16) & this.mask];
+    }
+
+    /**
+     * The exception get() and the read-modify-write methods throw for a
+     * name that has not been set, as SymbolTable's get() does.
+     *
+     * @param name the variable name
+     * @return the exception
+     */
+    private static NullPointerException missing(String name) {
+        return new NullPointerException("no variable " + name);
+    }
+
+    /**
+     * Set a variable name to an associated value.
+     *
+     * @param name the variable name
+     * @param value the associated value
+     */
+    @Override
+    public void set(String name, int value) {
+        int hash = SymbolTable.hash(name);
+        Stripe stripe = stripe(hash);
+        long stamp = stripe.lock.writeLock();
+        try {
+            Table table = stripe.table;
+            int position = table.find(name, hash);
+            if (position >= 0) {
+                table.values[position] = value;
+            } else {
+                add(stripe, name, hash, value);
+            }
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Set a variable name to a value only if it has not been set yet.
+     *
+     * @param name the variable name
+     * @param value the value
+     * @return whether it was set
+     */
+    public boolean setIfAbsent(String name, int value) {
+        int hash = SymbolTable.hash(name);
+        Stripe stripe = stripe(hash);
+        long stamp = stripe.lock.writeLock();
+        try {
+            if (stripe.table.find(name, hash) >= 0) {
+                return false;
+            }
+            add(stripe, name, hash, value);
+            return true;
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Add a variable to a stripe whose write lock is held, giving the stripe
+     * a bigger table first if it is full.
+     *
+     * @param stripe the stripe
+     * @param name the variable name
+     * @param hash its mixed hash code
+     * @param value its value
+     */
+    private void add(Stripe stripe, String name, int hash, int value) {
+        if (stripe.table.size == stripe.table.names.length) {
+            stripe.table = new Table(stripe.table);
+        }
+        stripe.table.add(name, hash, value, this.count.getAndIncrement());
+    }
+
+    /**
+     * Retrieve the associated value of a variable name.
+     *
+     * @param name the variable name
+     * @return the value
+     * @throws NullPointerException if the name has not been set
+     */
+    @Override
+    public int get(String name) {
+        int hash = SymbolTable.hash(name);
+        Stripe stripe = stripe(hash);
+        long stamp = stripe.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            Table table = stripe.table;
+            int position = table.find(name, hash);
+            int value = position >= 0 ? table.values[position] : 0;
+            if (stripe.lock.validate(stamp)) {
+                if (position < 0) {
+                    throw missing(name);
+                }
+                return value;
+            }
+        }
+        // a write overlapped, so read again under the lock
+        stamp = stripe.lock.readLock();
+        try {
+            Table table = stripe.table;
+            int position = table.find(name, hash);
+            if (position < 0) {
+                throw missing(name);
+            }
+            return table.values[position];
+        } finally {
+            stripe.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Does a variable name already exist?
+     *
+     * @param name the variable name
+     * @return whether the name has been set
+     */
+    @Override
+    public boolean has(String name) {
+        int hash = SymbolTable.hash(name);
+        Stripe stripe = stripe(hash);
+        long stamp = stripe.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            boolean found = stripe.table.find(name, hash) >= 0;
+            if (stripe.lock.validate(stamp)) {
+                return found;
+            }
+        }
+        stamp = stripe.lock.readLock();
+        try {
+            return stripe.table.find(name, hash) >= 0;
+        } finally {
+            stripe.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Atomically replace a variable's value with a function of it.  The
+     * function runs under the stripe's lock, so it should be quick and must
+     * not use this table.
+     *
+     * @param name the variable name
+     * @param function computes the new value from the old
+     * @return the new value
+     * @throws NullPointerException if the name has not been set
+     */
+    public int update(String name, IntUnaryOperator function) {
+        int hash = SymbolTable.hash(name);
+        Stripe stripe = stripe(hash);
+        long stamp = stripe.lock.writeLock();
+        try {
+            Table table = stripe.table;
+            int position = table.find(name, hash);
+            if (position < 0) {
+                throw missing(name);
+            }
+            return table.values[position] = function.applyAsInt(table.values[position]);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Atomically add to a variable's value.
+     *
+     * @param name the variable name
+     * @param delta the amount to add
+     * @return the new value
+     * @throws NullPointerException if the name has not been set
+     */
+    public int addAndGet(String name, int delta) {
+        int hash = SymbolTable.hash(name);
+        Stripe stripe = stripe(hash);
+        long stamp = stripe.lock.writeLock();
+        try {
+            Table table = stripe.table;
+            int position = table.find(name, hash);
+            if (position < 0) {
+                throw missing(name);
+            }
+            return table.values[position] += delta;
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Atomically set a variable to a new value if it still has the expected
+     * one.
+     *
+     * @param name the variable name
+     * @param expected the value it must have
+     * @param value the new value
+     * @return whether it was set, which it is not if the name has not been set
+     */
+    public boolean compareAndSet(String name, int expected, int value) {
+        int hash = SymbolTable.hash(name);
+        Stripe stripe = stripe(hash);
+        long stamp = stripe.lock.writeLock();
+        try {
+            Table table = stripe.table;
+            int position = table.find(name, hash);
+            if (position < 0 || table.values[position] != expected) {
+                return false;
+            }
+            table.values[position] = value;
+            return true;
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * The number of variables.  A variable counts from the moment it starts
+     * being set, so while another thread is setting a new one, this can be
+     * one more than has() finds.
+     *
+     * @return the size
+     */
+    @Override
+    public int size() {
+        return this.count.get();
+    }
+
+    /**
+     * Copy the variables, in the order they were first set, while holding
+     * every stripe's read lock, so that no variable is set in between.
+     * Every variable numbered so far has then been added to its stripe, so
+     * the numbers run from 0 to size() - 1 with no gaps, and each variable
+     * goes straight to its place.
+     *
+     * @return the copy
+     */
+    @Override
+    public SymbolTable snapshot() {
+        long[] stamps = new long[this.stripes.length];
+        for (int i = 0; i < this.stripes.length; i++) {
+            stamps[i] = this.stripes[i].lock.readLock();
+        }
+        String[] names;
+        int[] values;
+        try {
+            int size = this.count.get();
+            names = new String[size];
+            values = new int[size];
+            for (Stripe stripe : this.stripes) {
+                Table table = stripe.table;
+                for (int i = 0; i < table.size; i++) {
+                    names[table.numbers[i]] = table.names[i];
+                    values[table.numbers[i]] = table.values[i];
+                }
+            }
+        } finally {
+            for (int i = 0; i < this.stripes.length; i++) {
+                this.stripes[i].lock.unlockRead(stamps[i]);
+            }
+        }
+        SymbolTable snapshot = new SymbolTable();
+        for (int i = 0; i < names.length; i++) {
+            snapshot.set(names[i], values[i]);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the same representation as SymbolTable's toString(), of a
+     * snapshot of the table.
+     *
+     * @return the string
+     */
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+}
@@ -0,0 +1,28 @@
+package common;
+
+/**
+ * Throws away everything printed to it.
+ *
+ * @author jolin qiu
+ */
+final class DiscardSink implements OutputSink {
+    /** the only instance */
+    static final DiscardSink INSTANCE = new DiscardSink();
+
+    /**
+     * There is only one instance.
+     */
+    private DiscardSink() {}
+
+    @Override
+    public void print(String text) {}
+
+    @Override
+    public void print(int value) {}
+
+    @Override
+    public void println() {}
+
+    @Override
+    public void flush() {}
+}
@@ -1,5 +1,7 @@
 package common;
 
+import java.io.PrintStream;
+
 /**
  * Shared class for dealing with errors encountered by the machine or
  * interpreter when running.
@@ -22,7 +24,9 @@ public class Errors {
         /** illegal operator */
         ILLEGAL_OPERATOR("illegal operator in expression"), // info=token
         /** unitialized variable */
-        UNINITIALIZED( "uninitialized variable"); // info=token
+        UNINITIALIZED( "uninitialized variable"), // info=token
+        /** instruction stack grew past its maximum depth */
+        STACK_OVERFLOW("instruction stack overflow"); // info=max depth
 
         /** the message associated with the error */
         private final String message;
@@ -37,28 +41,172 @@ public class Errors {
         }
     }
 
+    /** the exit status of a program stopped by an error */
+    public static final int EXIT_STATUS = -1;
+
     /**
-     * Report an error and stop the program.   All output goes to standard error.
-     * @param type The kind of error, printed first
+     * Thrown when an error stops a program.  Only the program stops: the
+     * JVM keeps running, and the machine or interpreter can be used again.
+     * Each kind of error has its own subclass, and {@link #failure} makes
+     * the right one for a type.
      */
-    public static void report(Type type) {
-        report(type, null);
+    public static class Failure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        /** the kind of error */
+        private final Type type;
+
+        /** the additional value reported, or null */
+        private final transient Object info;
+
+        /**
+         * Create the exception.
+         *
+         * @param type the kind of error
+         * @param info the additional value reported, or null
+         */
+        Failure(Type type, Object info) {
+            super(info == null ? type.message : type.message + ": " + info);
+            this.type = type;
+            this.info = info;
+        }
+
+        /**
+         * Get the kind of error.
+         *
+         * @return the type
+         */
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * Get the additional value reported, such as the offending token or
+         * variable name.
+         *
+         * @return the value, or null
+         */
+        public Object getInfo() {
+            return info;
+        }
+
+        /**
+         * Print the error exactly as the command line programs always have.
+         *
+         * @param err where it is printed, normally standard error
+         */
+        public void print(PrintStream err) {
+            err.print(type.message);
+            if (info != null) {
+                err.println(": " + info);
+            }
+            err.println();
+        }
     }
 
     /**
-     * Report an error and stop the program. All output goes to standard error.
-     *
-     * @param type The kind of error, printed first
-     * @param info if not null, an additional value to be printed after a colon
+     * A calculation that cannot be done: divide by zero or the square root
+     * of a negative number.
      */
-    public static void report(Type type, Object info) {
-        System.err.print(type.message);
-        if ( info != null ) {
-            System.err.println(": " + info);
+    public static class ArithmeticFailure extends Failure {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Create the exception.
+         *
+         * @param type the kind of error
+         * @param info the additional value reported, or null
+         */
+        ArithmeticFailure(Type type, Object info) {
+            super(type, info);
         }
-        System.err.println();
-        System.exit(-1);
     }
 
+    /**
+     * Source or MAQ text that cannot be understood: a premature end or an
+     * illegal action, instruction or operator.
+     */
+    public static class SyntaxFailure extends Failure {
+        private static final long serialVersionUID = 1L;
 
+        /**
+         * Create the exception.
+         *
+         * @param type the kind of error
+         * @param info the offending token, or null
+         */
+        SyntaxFailure(Type type, Object info) {
+            super(type, info);
+        }
+    }
+
+    /**
+     * A variable used before it was given a value.
+     */
+    public static class UninitializedFailure extends Failure {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Create the exception.
+         *
+         * @param name the variable name
+         */
+        UninitializedFailure(Object name) {
+            super(Type.UNINITIALIZED, name);
+        }
+    }
+
+    /**
+     * The instruction stack grew past its maximum depth.
+     */
+    public static class StackFailure extends Failure {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Create the exception.
+         *
+         * @param maxDepth the maximum depth
+         */
+        StackFailure(Object maxDepth) {
+            super(Type.STACK_OVERFLOW, maxDepth);
+        }
+    }
+
+    /**
+     * Make the exception for an error.
+     *
+     * @param type the kind of error
+     * @return the exception, of the subclass for the type
+     */
+    public static Failure failure(Type type) {
+        return failure(type, null);
+    }
+
+    /**
+     * Make the exception for an error.
+     *
+     * @param type the kind of error
+     * @param info if not null, an additional value to be printed after a colon
+     * @return the exception, of the subclass for the type
+     */
+    public static Failure failure(Type type, Object info) {
+        return switch (type) {
+            case DIVIDE_BY_ZERO, NEGATIVE_SQUARE_ROOT -> new ArithmeticFailure(type, info);
+            case PREMATURE_END, ILLEGAL_ACTION, ILLEGAL_INSTRUCTION, ILLEGAL_OPERATOR ->
+                    new SyntaxFailure(type, info);
+            case UNINITIALIZED -> new UninitializedFailure(info);
+            case STACK_OVERFLOW -> new StackFailure(info);
+        };
+    }
+
+    /**
+     * End a command line program stopped by an error: print the error to
+     * standard error and exit with {@link #EXIT_STATUS}.
+     *
+     * @param failure the error
+     */
+    public static void exit(Failure failure) {
+        failure.print(System.err);
+        System.exit(EXIT_STATUS);
+    }
 }
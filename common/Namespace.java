@@ -0,0 +1,52 @@
+package common;
+
+/**
+ * Where an ARB program or a machine keeps its variables: a mapping of
+ * variable names to integer values, in which a variable is never removed
+ * once it has been set.  {@link SymbolTable} is the one for a single run,
+ * and {@link ConcurrentSymbolTable} is one that any number of runs can
+ * share at once.
+ *
+ * @author jolin qiu
+ */
+public interface Namespace {
+    /**
+     * Set a variable name to an associated value.
+     *
+     * @param name the variable name
+     * @param value the associated value
+     */
+    void set(String name, int value);
+
+    /**
+     * Retrieve the associated value of a variable name.
+     *
+     * @param name the variable name
+     * @return the value
+     * @throws NullPointerException if the name has not been set
+     */
+    int get(String name);
+
+    /**
+     * Does a variable name already exist?
+     *
+     * @param name the variable name
+     * @return whether the name has been set
+     */
+    boolean has(String name);
+
+    /**
+     * The number of variables.
+     *
+     * @return the size
+     */
+    int size();
+
+    /**
+     * Copy the variables, in the order they were first set, into a symbol
+     * table of their own, as they all were at one moment.
+     *
+     * @return the copy
+     */
+    SymbolTable snapshot();
+}
@@ -0,0 +1,104 @@
+package common;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Where the interpreter and the machine send what they print: PRINT
+ * output, listings, symbol tables and stack dumps.  The default,
+ * {@link #system()}, prints straight to System.out as before; a
+ * {@link BufferedSink} formats into a large buffer and writes it out in
+ * big blocks, and {@link #discard()} throws everything away.
+ *
+ * @author jolin qiu
+ */
+public interface OutputSink extends AutoCloseable {
+    /**
+     * Print text.
+     *
+     * @param text the text
+     */
+    void print(String text);
+
+    /**
+     * Print an integer in decimal.
+     *
+     * @param value the integer
+     */
+    void print(int value);
+
+    /**
+     * End the line.
+     */
+    void println();
+
+    /**
+     * Print text and end the line.
+     *
+     * @param text the text
+     */
+    default void println(String text) {
+        print(text);
+        println();
+    }
+
+    /**
+     * Print an integer in decimal and end the line.
+     *
+     * @param value the integer
+     */
+    default void println(int value) {
+        print(value);
+        println();
+    }
+
+    /**
+     * Write out anything buffered.
+     */
+    void flush();
+
+    /**
+     * Flush, and close whatever the sink writes to if it owns it.
+     */
+    @Override
+    default void close() {
+        flush();
+    }
+
+    /**
+     * Get the sink that prints to System.out, whatever System.out is at the
+     * time of each call.  It buffers nothing.
+     *
+     * @return the sink
+     */
+    static OutputSink system() {
+        return SystemSink.INSTANCE;
+    }
+
+    /**
+     * Get a sink that throws everything away, for benchmarking.
+     *
+     * @return the sink
+     */
+    static OutputSink discard() {
+        return DiscardSink.INSTANCE;
+    }
+
+    /**
+     * Make the sink named by a command line option: "system", "buffered"
+     * (a large buffer in front of standard output), "discard", or the name
+     * of a file to write to.
+     *
+     * @param name the option
+     * @return the sink
+     * @throws IOException if the file cannot be opened
+     */
+    static OutputSink of(String name) throws IOException {
+        return switch (name) {
+            case "system" -> system();
+            case "buffered" -> BufferedSink.stdout();
+            case "discard" -> discard();
+            default -> BufferedSink.file(Path.of(name));
+        };
+    }
+}
@@ -1,25 +1,85 @@
 package common;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * The machine's symbol table for handling the mapping of
  * variable names to their integer values.
  *
+ * <p>Variables are never removed, so the names and their values are kept
+ * in parallel arrays in the order they were first set, which is the order
+ * toString() lists them in.  Lookups go through an open addressing index
+ * of positions in those arrays, probed linearly and kept at most half
+ * full.  Each bucket also caches the name's hash code, so a probe only
+ * reads a name when the hashes match, and growing never rehashes a name.
+ * Values are plain ints, so neither get nor set boxes, and set only
+ * allocates when the arrays grow.  A table belongs to one run at a time;
+ * {@link ConcurrentSymbolTable} is the one to share between threads.
+ *
  * @author RIT CS
  */
-public class SymbolTable {
-    /** the symbol table */
-    private final Map<String, Integer> symTbl;
+public class SymbolTable implements Namespace {
+    /** the initial number of variables the arrays hold */
+    private static final int INITIAL_CAPACITY = 8;
+
+    /** the variable names, in the order they were first set */
+    private String[] names;
+
+    /** the value of each variable */
+    private int[] values;
+
+    /** the number of variables */
+    private int size;
+
+    /**
+     * the open addressing index: each bucket holds a name's hash code in its
+     * high half and its position in the arrays + 1 in its low half, or 0 if empty
+     */
+    private long[] index;
 
     /**
      * Create an empty symbol table.
      */
     public SymbolTable() {
-         // use a LinkedHashMap so that we have O(1) access,
-         // but the insertion order is maintained.
-        this.symTbl = new LinkedHashMap<>();
+        this.names = new String[INITIAL_CAPACITY];
+        this.values = new int[INITIAL_CAPACITY];
+        this.index = new long[INITIAL_CAPACITY * 2];
+        this.size = 0;
+    }
+
+    /**
+     * Mix a name's hash code so that the low bits used for the bucket
+     * depend on all of it, even for names that differ only at the end.
+     *
+     * @param name the variable name
+     * @return the mixed hash code
+     */
+    static int hash(String name) {
+        int h = name.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Find the bucket holding a name, or the empty bucket it would go in.
+     *
+     * @param name the variable name
+     * @param hash its mixed hash code
+     * @return the bucket
+     */
+    private int bucket(String name, int hash) {
+        int mask = this.index.length - 1;
+        int bucket = hash & mask;
+        while (true) {
+            long entry = this.index[bucket];
+            if (entry == 0) {
+                return bucket;
+            }
+            // compare the cached hashes first, so most misses never touch the strings
+            if ((int) (entry >>> 32) == hash && this.names[(int) entry - 1].equals(name)) {
+                return bucket;
+            }
+            bucket = (bucket + 1) & mask;
+        }
     }
 
     /**
@@ -27,17 +87,58 @@ public class SymbolTable {
      * @param name the variable name
      * @param value the associated value
      */
+    @Override
     public void set(String name, int value) {
-        this.symTbl.put(name, value);
+        int hash = hash(name);
+        int bucket = bucket(name, hash);
+        long entry = this.index[bucket];
+        if (entry != 0) {
+            this.values[(int) entry - 1] = value;
+            return;
+        }
+        if (this.size == this.names.length) {
+            grow();
+            bucket = bucket(name, hash);
+        }
+        this.names[this.size] = name;
+        this.values[this.size] = value;
+        this.index[bucket] = (long) hash << 32 | ++this.size;
+    }
+
+    /**
+     * Double the arrays and rebuild the index from the cached hashes.
+     */
+    private void grow() {
+        int capacity = this.names.length * 2;
+        this.names = Arrays.copyOf(this.names, capacity);
+        this.values = Arrays.copyOf(this.values, capacity);
+        long[] old = this.index;
+        this.index = new long[capacity * 2];
+        int mask = this.index.length - 1;
+        for (long entry : old) {
+            if (entry != 0) {
+                int bucket = (int) (entry >>> 32) & mask;
+                while (this.index[bucket] != 0) {
+                    bucket = (bucket + 1) & mask;
+                }
+                this.index[bucket] = entry;
+            }
+        }
     }
 
     /**
      * Retrieve the associated value of a variable name from the table.
      * @param name the variable name
      * @return the value
+     * @throws NullPointerException if the name is not in the table
      */
+    @Override
     public int get(String name) {
-        return this.symTbl.get(name);
+        long entry = this.index[bucket(name, hash(name))];
+        if (entry == 0) {
+            throw new NullPointerException("no variable " + name);
+        }
+        return this.values[(int) entry - 1];
     }
 
     /**
@@ -45,15 +146,32 @@ public class SymbolTable {
      * @param name the variable name
      * @return whether the name is in the table or not
      */
+    @Override
     public boolean has(String name) {
-        return this.symTbl.containsKey(name);
+        return this.index[bucket(name, hash(name))] != 0;
     }
 
     /**
      * The size of the symbol table.
      * @return the size
      */
-    public int size() { return this.symTbl.size(); }
+    @Override
+    public int size() { return this.size; }
+
+    /**
+     * Copy the table.
+     *
+     * @return a new table holding the same variables in the same order
+     */
+    @Override
+    public SymbolTable snapshot() {
+        SymbolTable copy = new SymbolTable();
+        copy.names = Arrays.copyOf(this.names, this.names.length);
+        copy.values = Arrays.copyOf(this.values, this.values.length);
+        copy.index = Arrays.copyOf(this.index, this.index.length);
+        copy.size = this.size;
+        return copy;
+    }
 
     /**
      * Returns a string representation of the symbol table:<br>
@@ -69,8 +187,8 @@ public class SymbolTable {
     @Override
     public String toString() {
         StringBuilder result = new StringBuilder();
-        for (Map.Entry<String, Integer> entry : this.symTbl.entrySet()) {
-            result.append(entry.getKey()).append(": ").append(entry.getValue()).append(System.lineSeparator());
+        for (int i = 0; i < this.size; i++) {
+            result.append(this.names[i]).append(": ").append(this.values[i]).append(System.lineSeparator());
         }
         return result.toString();
     }
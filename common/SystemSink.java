@@ -0,0 +1,47 @@
+package common;
+
+/**
+ * Prints to whatever System.out is at the time, with no buffering of its
+ * own, exactly as printing with System.out directly does.
+ *
+ * @author jolin qiu
+ */
+final class SystemSink implements OutputSink {
+    /** the only instance */
+    static final SystemSink INSTANCE = new SystemSink();
+
+    /**
+     * There is only one instance.
+     */
+    private SystemSink() {}
+
+    @Override
+    public void print(String text) {
+        System.out.print(text);
+    }
+
+    @Override
+    public void print(int value) {
+        System.out.print(value);
+    }
+
+    @Override
+    public void println() {
+        System.out.println();
+    }
+
+    @Override
+    public void println(String text) {
+        System.out.println(text);
+    }
+
+    @Override
+    public void println(int value) {
+        System.out.println(value);
+    }
+
+    @Override
+    public void flush() {
+        System.out.flush();
+    }
+}
@@ -1,6 +1,8 @@
 package interpreter;
 
 import common.Errors;
+import common.Namespace;
+import common.OutputSink;
 import common.SymbolTable;
 import interpreter.nodes.ArbolesNode;
 import interpreter.nodes.action.ActionNode;
@@ -10,11 +12,15 @@ import interpreter.nodes.expression.Constant;
 import interpreter.nodes.expression.Variable;
 import interpreter.nodes.expression.*;
 import machine.Maquina;
+import machine.ProgramCache;
 
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Scanner;
@@ -51,6 +57,11 @@ public class Arboles {
      */
     private ArrayList<ActionNode> programActions;
 
+    /**
+     * where everything the interpreter and machine display goes
+     */
+    private final OutputSink output;
+
     /**
      * Create a new Arbelos instance.  The result of this method is the tokenization
      * of the entire ARB input into a list of strings.
@@ -60,10 +71,24 @@ public class Arboles {
      *              a terminating ".".
      */
     public Arboles(Scanner in, boolean stdin) {
-        System.out.println("(ARB) prefix...");
+        this(in, stdin, OutputSink.system());
+    }
+
+    /**
+     * Create a new Arbelos instance that displays everything to a sink.
+     *
+     * @param in where to read the ARB input from
+     * @param stdin if true, the user should be prompted to enter ARB statements until
+     *              a terminating ".".
+     * @param output where everything displayed goes
+     */
+    public Arboles(Scanner in, boolean stdin, OutputSink output) {
+        this.output = output;
+        output.println("(ARB) prefix...");
         this.tokenList = new ArrayList<>();
         if (stdin) {
-            System.out.print("🌳 ");
+            output.print("🌳 ");
+            output.flush();
             in = new Scanner(System.in);
         }
         while (in.hasNextLine()){
@@ -73,12 +98,13 @@ public class Arboles {
                 if (prefixLine.equals(EOF)){
                     break;
                 }
-                System.out.println(prefixLine);
+                output.println(prefixLine);
                 tokenList.addAll(Arrays.asList(tokens));
-                System.out.print("🌳 ");
+                output.print("🌳 ");
+                output.flush();
 
             } else {
-                System.out.println(prefixLine);
+                output.println(prefixLine);
                 tokenList.addAll(Arrays.asList(tokens));
             }
         }
@@ -89,13 +115,12 @@ public class Arboles {
      * that consumes enough of the token list to get the fully represented expression
      * and returns the root as an Expression node.
      * @return (Constant) fully deduced expression
+     * @throws Errors.SyntaxFailure if the input ends early or holds an illegal operator
      */
     public ExpressionNode expressionHelper(){
         // ran out of required input while parsing an expression
-        try {
-            String token = tokenList.get(0);
-        } catch (Exception e) {
-            Errors.report(Errors.Type.PREMATURE_END);
+        if (tokenList.isEmpty()) {
+            throw Errors.failure(Errors.Type.PREMATURE_END);
         }
         //check if binary operation
         String token = tokenList.remove(0);
@@ -118,16 +143,17 @@ public class Arboles {
         else {
             try {
                 return new Constant(Integer.parseInt(token));
-            } catch (Exception e) {
-                Errors.report(Errors.Type.ILLEGAL_OPERATOR, token);
+            } catch (NumberFormatException e) {
+                throw Errors.failure(Errors.Type.ILLEGAL_OPERATOR, token);
             }
         }
-        return new Constant(Integer.parseInt(token));
     }
 
     /**
      * Build the parse trees into the program which is a list of ActionNode's -
      * one per line of ARB input.
+     * @throws Errors.SyntaxFailure if the input ends early or holds an illegal
+     *      action or operator
      */
     public void buildProgram() {
         programActions = new ArrayList<>();
@@ -135,6 +161,10 @@ public class Arboles {
         while (!tokenList.isEmpty()){
             String token = tokenList.remove(0);
             if (token.equals(ASSIGN)){
+                // ran out of input before the variable name
+                if (tokenList.isEmpty()) {
+                    throw Errors.failure(Errors.Type.PREMATURE_END);
+                }
                 String name = tokenList.remove(0);
                 action = new Assignment(name, expressionHelper());
             }
@@ -143,7 +173,7 @@ public class Arboles {
             }
             else {
                 // An illegal action token (not printing or assigning), was encountered
-                Errors.report(Errors.Type.ILLEGAL_ACTION, token);
+                throw Errors.failure(Errors.Type.ILLEGAL_ACTION, token);
             }
             programActions.add(action);
         }
@@ -154,10 +184,10 @@ public class Arboles {
      * output using emit().
      */
     public void displayProgram() {
-        System.out.println("(ARB) infix...");
+        output.println("(ARB) infix...");
         programActions.forEach(t -> {
-            t.emit();
-            System.out.println();
+            t.emit(output);
+            output.println();
         });
     }
 
@@ -167,13 +197,24 @@ public class Arboles {
      * for use.
      */
     public void interpretProgram() {
-        System.out.println("(ARB) interpreting program...");
         // create a new, empty symbolTable
-        SymbolTable symTbl = new SymbolTable();
-        programActions.forEach(t -> t.execute(symTbl));
+        interpretProgram(new SymbolTable());
+    }
+
+    /**
+     * Execute the ARB program against variables that may already hold
+     * values, such as a {@link common.ConcurrentSymbolTable} of globals
+     * shared with other programs running at the same time.  The symbol
+     * table displayed afterwards lists all of them.
+     *
+     * @param symTbl where the variables are read and assigned
+     */
+    public void interpretProgram(Namespace symTbl) {
+        output.println("(ARB) interpreting program...");
+        programActions.forEach(t -> t.execute(symTbl, output));
 
-        System.out.println("(ARB) Symbol table:");
-        System.out.print(symTbl);
+        output.println("(ARB) Symbol table:");
+        output.print(symTbl.toString());
     }
 
     /**
@@ -183,26 +224,55 @@ public class Arboles {
      * @throws IOException if there are issues working with the temp file
      */
     public void compileProgram() throws IOException {
-        System.out.println("(ARB) compiling program to " + TMP_MAQ_FILE + "...");
+        output.println("(ARB) compiling program to " + TMP_MAQ_FILE + "...");
         PrintWriter out = new PrintWriter(TMP_MAQ_FILE);
 
-        programActions.forEach(t-> t.compile(out));
+        compileProgram(out);
         out.close();
     }
 
+    /**
+     * Compile the ARB program using ActionNode's compile() into MAQ
+     * instructions written to any destination.
+     *
+     * @param out where the MAQ instructions are written
+     */
+    public void compileProgram(PrintWriter out) {
+        programActions.forEach(t-> t.compile(out));
+    }
+
+    /**
+     * Compile the ARB program into MAQ text in memory and have a new machine
+     * execute it, without the temporary file, so that any number of
+     * programs can be run at once.  The MAQ text is assembled through a
+     * cache, so a program run again is not assembled again.  It prints
+     * exactly what compileProgram and executeProgram would.
+     *
+     * @param cache the assembled programs
+     */
+    public void compileAndExecuteProgram(ProgramCache cache) {
+        // the same line as compileProgram, so the output matches the command line's
+        output.println("(ARB) compiling program to " + TMP_MAQ_FILE + "...");
+        StringWriter maq = new StringWriter();
+        try (PrintWriter out = new PrintWriter(maq)) {
+            compileProgram(out);
+        }
+        Maquina machine = new Maquina(output);
+        machine.loadProgram(cache.assemble(maq.toString().getBytes(StandardCharsets.UTF_8)));
+        machine.execute();
+    }
+
     /**
      * Takes the generated MAQ instruction file and assembles/executes
      * it using the Maquina machine.
      *
-     * @throws FileNotFoundException if the MAQ file cannot be found.
+     * @throws IOException if the MAQ file cannot be read.
      */
-    public void executeProgram() throws FileNotFoundException {
-        //open new file for scanning
-        File file = new File(TMP_MAQ_FILE);
-        Scanner maqInstruction = new Scanner(file);
-
-        Maquina machine = new Maquina();
-        machine.assemble(maqInstruction, false);
+    public void executeProgram() throws IOException {
+        Maquina machine = new Maquina(output);
+        try (InputStream maqInstruction = new FileInputStream(TMP_MAQ_FILE)) {
+            machine.assemble(maqInstruction, false);
+        }
         machine.execute();
     }
 
@@ -227,22 +297,26 @@ public class Arboles {
             System.exit(1);
         }
 
-        // step 1: read ARB program into token list
-        Arboles interpreter = new Arboles(arbIn, stdin);
+        try {
+            // step 1: read ARB program into token list
+            Arboles interpreter = new Arboles(arbIn, stdin);
 
-        // step 2: parse and build the program from the token list
-        interpreter.buildProgram();
+            // step 2: parse and build the program from the token list
+            interpreter.buildProgram();
 
-        // step 3: display the program in infix
-        interpreter.displayProgram();
+            // step 3: display the program in infix
+            interpreter.displayProgram();
 
-        // step 4: interpret program
-        interpreter.interpretProgram();
+            // step 4: interpret program
+            interpreter.interpretProgram();
 
-        // step 5: compile the program
-        interpreter.compileProgram();
+            // step 5: compile the program
+            interpreter.compileProgram();
 
-        // step 6: have machine execute compiled program
-        interpreter.executeProgram();
+            // step 6: have machine execute compiled program
+            interpreter.executeProgram();
+        } catch (Errors.Failure failure) {
+            Errors.exit(failure);
+        }
     }
 }
@@ -0,0 +1,489 @@
+package interpreter;
+
+import common.BufferedSink;
+import common.Errors;
+import common.OutputSink;
+import machine.Maquina;
+import machine.ProgramCache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A long running server that runs ARB and MAQ programs sent to it over a
+ * local socket, so that each program runs on a JVM that has already
+ * started and warmed up instead of paying for both itself.  Each request
+ * holds the source text of one program, and the response holds what the
+ * command line would have printed to standard output and standard error,
+ * its exit status and how long the program took.  {@link DaemonClient} is
+ * the matching command line.
+ *
+ * <p>The server listens on a Unix-domain socket, or on a loopback TCP port
+ * where those are not available.  Each connection is served on its own
+ * virtual thread and carries one request.  The MAQ text of every program,
+ * including what ARB programs compile to, is assembled through a shared
+ * {@link ProgramCache}.  ARB programs are compiled in memory rather than
+ * to the temporary file, though the output still names it, as the command
+ * line's does.
+ *
+ * <p>Requests and responses are big-endian:
+ * <pre>
+ *     request:   language ("ARB" or "MAQ"), name, option count (u4),
+ *                each option, source length (u4), source bytes
+ *     response:  exit status (s4), nanoseconds taken (s8),
+ *                output length (u4), output bytes, errors length (u4), errors bytes
+ * </pre>
+ * where the strings are length (u2) and modified UTF-8 bytes.
+ *
+ * @author jolin qiu
+ */
+public final class Daemon implements AutoCloseable {
+    /**
+     * A program to run.
+     *
+     * @param language {@link #ARB} or {@link #MAQ}
+     * @param name the program's file name, for the log
+     * @param options the command line options for the machine
+     * @param source the program text
+     */
+    public record Request(String language, String name, List<String> options, byte[] source) {}
+
+    /**
+     * What running a program did.
+     *
+     * @param status the exit status the command line would have had
+     * @param nanos how long the server took to run it
+     * @param output what it printed to standard output
+     * @param errors what it printed to standard error
+     */
+    public record Response(int status, long nanos, byte[] output, byte[] errors) {}
+
+    /**
+     * Thrown when a request asks for something the server cannot run: an
+     * unknown language or an option it does not support.  Kept apart from
+     * what the program itself throws, so that a bad operand is reported as
+     * the program's error rather than as the request's.
+     */
+    private static final class UsageException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Create the exception.
+         *
+         * @param message what was wrong with the request
+         */
+        UsageException(String message) {
+            super(message);
+        }
+    }
+
+    /** the language of ARB requests */
+    public static final String ARB = "ARB";
+
+    /** the language of MAQ requests */
+    public static final String MAQ = "MAQ";
+
+    /** the socket used when none is given */
+    public static final Path DEFAULT_SOCKET = Path.of(System.getProperty("java.io.tmpdir"), "arboles.sock");
+
+    /** the command line option that names the Unix-domain socket */
+    static final String SOCKET_OPTION = "--socket=";
+
+    /** the command line option that chooses a loopback port instead */
+    static final String PORT_OPTION = "--port=";
+
+    /** the machine option that selects the execution engine */
+    private static final String ENGINE_OPTION = "--engine=";
+
+    /** the machine option that turns on the peephole optimizer */
+    private static final String OPTIMIZE_OPTION = "--optimize";
+
+    /** the machine option that verifies the program before it runs */
+    private static final String VERIFY_OPTION = "--verify";
+
+    /** the exit status of a request the server cannot run */
+    private static final int USAGE_STATUS = 1;
+
+    /** the longest source, output or errors read from a connection */
+    private static final int MAX_BYTES = 1 << 26;
+
+    /** the command line usage message */
+    private static final String USAGE = "Usage: java Daemon [--socket=path|--port=number]";
+
+    /** where the server listens */
+    private final ServerSocketChannel server;
+
+    /** the address it listens on */
+    private final SocketAddress address;
+
+    /** the assembled programs, shared by every request */
+    private final ProgramCache cache;
+
+    /** whether each request is logged to standard output */
+    private final boolean logging;
+
+    /**
+     * Start listening for requests.  A Unix-domain socket left behind by a
+     * server that did not shut down is replaced.
+     *
+     * @param address a Unix-domain socket or loopback address
+     * @param cache the assembled programs
+     * @param logging whether to log each request to standard output
+     * @throws IOException if the socket cannot be opened
+     */
+    public Daemon(SocketAddress address, ProgramCache cache, boolean logging) throws IOException {
+        if (address instanceof UnixDomainSocketAddress unix) {
+            Files.deleteIfExists(unix.getPath());
+            this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            this.server = ServerSocketChannel.open();
+        }
+        this.server.bind(address);
+        this.address = server.getLocalAddress();
+        this.cache = cache;
+        this.logging = logging;
+    }
+
+    /**
+     * Get the address the server is listening on, with the actual port if
+     * it was given as 0.
+     *
+     * @return the address
+     */
+    public SocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Get the cache of assembled programs.
+     *
+     * @return the cache
+     */
+    public ProgramCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Accept and serve connections, each on its own virtual thread, until
+     * the server is closed.
+     *
+     * @throws IOException if a connection cannot be accepted
+     */
+    public void serve() throws IOException {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            while (true) {
+                SocketChannel connection;
+                try {
+                    connection = server.accept();
+                } catch (ClosedChannelException e) {
+                    // closed by close()
+                    return;
+                }
+                executor.submit(() -> serve(connection));
+            }
+        }
+    }
+
+    /**
+     * Serve the one request on a connection.
+     *
+     * @param connection the connection
+     */
+    private void serve(SocketChannel connection) {
+        try (connection) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(connection)));
+            Request request = readRequest(in);
+            Response response = run(request);
+            if (logging) {
+                System.out.printf("(daemon) %s %s: exit %d in %.2f ms%n", request.language(), request.name(),
+                        response.status(), response.nanos() / 1e6);
+            }
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(connection)));
+            writeResponse(out, response);
+            out.flush();
+        } catch (IOException e) {
+            // the client went away, or sent something that is not a request
+            if (logging) {
+                System.out.println("(daemon) " + e);
+            }
+        }
+    }
+
+    /**
+     * Run a program the way the command line would, capturing everything
+     * it prints.
+     *
+     * @param request the program
+     * @return what it did
+     */
+    public Response run(Request request) {
+        long start = System.nanoTime();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        int status = 0;
+        // the output is closed before an error is printed, as on the command line
+        try (OutputSink sink = new BufferedSink(output, BufferedSink.DEFAULT_SIZE)) {
+            try {
+                if (request.language().equals(ARB)) {
+                    runArb(request, sink);
+                } else if (request.language().equals(MAQ)) {
+                    runMaq(request, sink);
+                } else {
+                    throw new UsageException("unknown language " + request.language());
+                }
+            } catch (UsageException e) {
+                sink.println(e.getMessage());
+                status = USAGE_STATUS;
+            }
+        } catch (Errors.Failure failure) {
+            failure.print(new PrintStream(errors, true));
+            status = Errors.EXIT_STATUS;
+        } catch (RuntimeException e) {
+            new PrintStream(errors, true).println(e);
+            status = USAGE_STATUS;
+        }
+        return new Response(status, System.nanoTime() - start, output.toByteArray(), errors.toByteArray());
+    }
+
+    /**
+     * Run an ARB program through every stage of the interpreter.
+     *
+     * @param request the program
+     * @param output where it prints
+     */
+    private void runArb(Request request, OutputSink output) {
+        if (!request.options().isEmpty()) {
+            throw new UsageException("ARB programs take no options");
+        }
+        Arboles interpreter = new Arboles(new Scanner(new ByteArrayInputStream(request.source())), false, output);
+        interpreter.buildProgram();
+        interpreter.displayProgram();
+        interpreter.interpretProgram();
+        interpreter.compileAndExecuteProgram(cache);
+    }
+
+    /**
+     * Assemble and execute a MAQ program.
+     *
+     * @param request the program
+     * @param output where it prints
+     */
+    private void runMaq(Request request, OutputSink output) {
+        Maquina machine = new Maquina(output);
+        boolean optimize = false;
+        for (String option : request.options()) {
+            if (option.startsWith(ENGINE_OPTION)) {
+                machine.setEngine(engine(option.substring(ENGINE_OPTION.length())));
+            } else if (option.equals(OPTIMIZE_OPTION)) {
+                optimize = true;
+            } else if (option.equals(VERIFY_OPTION)) {
+                machine.setVerifying(true);
+            } else {
+                throw new UsageException("unsupported option " + option);
+            }
+        }
+        machine.loadProgram(cache.assemble(request.source()));
+        if (optimize) {
+            machine.optimize();
+        }
+        machine.execute();
+    }
+
+    /**
+     * Look up the engine an --engine= option names.
+     *
+     * @param name the engine's name, in any case
+     * @return the engine
+     * @throws UsageException if there is no such engine
+     */
+    private static Maquina.Engine engine(String name) {
+        try {
+            return Maquina.Engine.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new UsageException("unknown engine " + name);
+        }
+    }
+
+    /**
+     * Stop listening.  Requests already being served still finish.
+     *
+     * @throws IOException if the socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        server.close();
+        if (address instanceof UnixDomainSocketAddress unix) {
+            Files.deleteIfExists(unix.getPath());
+        }
+    }
+
+    /**
+     * Turn a --socket= or --port= option into an address.
+     *
+     * @param option the option, or null for the default socket
+     * @return the address
+     * @throws IllegalArgumentException if it is neither option
+     */
+    static SocketAddress address(String option) {
+        if (option == null) {
+            return UnixDomainSocketAddress.of(DEFAULT_SOCKET);
+        } else if (option.startsWith(SOCKET_OPTION)) {
+            return UnixDomainSocketAddress.of(option.substring(SOCKET_OPTION.length()));
+        } else if (option.startsWith(PORT_OPTION)) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                    Integer.parseInt(option.substring(PORT_OPTION.length())));
+        }
+        throw new IllegalArgumentException(option);
+    }
+
+    /**
+     * Write a request.
+     *
+     * @param out the connection
+     * @param request the request
+     * @throws IOException if it cannot be written
+     */
+    static void writeRequest(DataOutputStream out, Request request) throws IOException {
+        out.writeUTF(request.language());
+        out.writeUTF(request.name());
+        out.writeInt(request.options().size());
+        for (String option : request.options()) {
+            out.writeUTF(option);
+        }
+        writeBytes(out, request.source());
+    }
+
+    /**
+     * Read a request.
+     *
+     * @param in the connection
+     * @return the request
+     * @throws IOException if it cannot be read
+     */
+    static Request readRequest(DataInputStream in) throws IOException {
+        String language = in.readUTF();
+        String name = in.readUTF();
+        int count = in.readInt();
+        List<String> options = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            options.add(in.readUTF());
+        }
+        return new Request(language, name, options, readBytes(in));
+    }
+
+    /**
+     * Write a response.
+     *
+     * @param out the connection
+     * @param response the response
+     * @throws IOException if it cannot be written
+     */
+    static void writeResponse(DataOutputStream out, Response response) throws IOException {
+        out.writeInt(response.status());
+        out.writeLong(response.nanos());
+        writeBytes(out, response.output());
+        writeBytes(out, response.errors());
+    }
+
+    /**
+     * Read a response.
+     *
+     * @param in the connection
+     * @return the response
+     * @throws IOException if it cannot be read
+     */
+    static Response readResponse(DataInputStream in) throws IOException {
+        int status = in.readInt();
+        long nanos = in.readLong();
+        return new Response(status, nanos, readBytes(in), readBytes(in));
+    }
+
+    /**
+     * Write some bytes after their length.
+     *
+     * @param out the connection
+     * @param bytes the bytes
+     * @throws IOException if they cannot be written
+     */
+    private static void writeBytes(OutputStream out, byte[] bytes) throws IOException {
+        new DataOutputStream(out).writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read some bytes written by {@link #writeBytes}.
+     *
+     * @param in the connection
+     * @return the bytes
+     * @throws IOException if they cannot be read, or the length is
+     *         negative or over {@link #MAX_BYTES}
+     */
+    private static byte[] readBytes(InputStream in) throws IOException {
+        int length = new DataInputStream(in).readInt();
+        if (length < 0) {
+            throw new IOException("negative length " + length);
+        } else if (length > MAX_BYTES) {
+            throw new IOException("length " + length + " over the limit of " + MAX_BYTES);
+        }
+        return in.readNBytes(length);
+    }
+
+    /**
+     * Run the server until it is killed.
+     *
+     * @param args an optional socket or port
+     * @throws IOException if the socket cannot be opened
+     */
+    public static void main(String[] args) throws IOException {
+        SocketAddress address = null;
+        try {
+            if (args.length == 1) {
+                address = address(args[0]);
+            } else if (args.length == 0) {
+                address = address(null);
+            }
+        } catch (IllegalArgumentException e) {
+            // not an option, or not a port number
+        }
+        if (address == null) {
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+
+        Daemon daemon = new Daemon(address, new ProgramCache(ProgramCache.DEFAULT_CAPACITY), true);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                daemon.close();
+            } catch (IOException e) {
+                // exiting anyway
+            }
+            System.out.println("(daemon) Stopped.  Program cache: " + daemon.getCache());
+        }));
+        System.out.println("(daemon) Listening on " + daemon.getAddress());
+        daemon.serve();
+    }
+}
@@ -0,0 +1,166 @@
+package interpreter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The command line for a {@link Daemon}: sends one ARB or MAQ program to
+ * the server and prints what it printed, exiting with its exit status, so
+ * that it behaves like running Arboles or Maquina directly but without
+ * starting a new JVM each time.  A file ending in .arb is an ARB program
+ * and anything else is MAQ text.  With no file the program is read from
+ * standard input, with the same prompt, up to the end of input or a line
+ * holding only "."; it is MAQ text, or ARB with --arb.  The machine
+ * options --engine=, --optimize and --verify are passed on for MAQ
+ * programs.  --latency also
+ * reports, on standard error, the time from sending the request to
+ * receiving the response and how much of it the server spent running the
+ * program.
+ *
+ * @author jolin qiu
+ */
+public final class DaemonClient {
+    /** the command line option that reports request latency */
+    private static final String LATENCY_OPTION = "--latency";
+
+    /** the command line option that reads an ARB program from standard input */
+    private static final String ARB_OPTION = "--arb";
+
+    /** the line that ends a program typed on standard input */
+    private static final String EOF = ".";
+
+    /** the exit status when the server cannot be reached */
+    private static final int UNREACHABLE_STATUS = 1;
+
+    /** the command line usage message */
+    private static final String USAGE = "Usage: java DaemonClient [--socket=path|--port=number] [--latency] [--arb]"
+            + " [--engine=object|switch|bytecode|handles|register] [--optimize] [--verify] [filename.arb|filename.maq]";
+
+    /**
+     * The client is used through its static methods only.
+     */
+    private DaemonClient() {}
+
+    /**
+     * Send a request to a server and wait for its response.
+     *
+     * @param address the server's address
+     * @param request the program
+     * @return the response
+     * @throws IOException if the server cannot be reached
+     */
+    public static Daemon.Response send(SocketAddress address, Daemon.Request request) throws IOException {
+        try (SocketChannel connection = address instanceof UnixDomainSocketAddress
+                ? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open()) {
+            connection.connect(address);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(connection)));
+            Daemon.writeRequest(out, request);
+            out.flush();
+            return Daemon.readResponse(new DataInputStream(new BufferedInputStream(Channels.newInputStream(connection))));
+        }
+    }
+
+    /**
+     * Read a program typed on standard input, prompting for each line as
+     * Arboles and Maquina do.
+     *
+     * @param prompt the prompt
+     * @return the program text
+     * @throws IOException if standard input cannot be read
+     */
+    private static byte[] readStdin(String prompt) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        StringBuilder source = new StringBuilder();
+        while (true) {
+            System.out.print(prompt);
+            System.out.flush();
+            String line = in.readLine();
+            if (line == null || line.strip().equals(EOF)) {
+                break;
+            }
+            source.append(line).append('\n');
+        }
+        return source.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Run one program on the server.
+     *
+     * @param args options, then the program file, if not standard input
+     * @throws IOException if the program cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        String addressOption = null;
+        boolean latency = false;
+        boolean arb = false;
+        boolean usage = false;
+        List<String> options = new ArrayList<>();
+        String fileName = null;
+        for (String arg : args) {
+            if (arg.startsWith(Daemon.SOCKET_OPTION) || arg.startsWith(Daemon.PORT_OPTION)) {
+                addressOption = arg;
+            } else if (arg.equals(LATENCY_OPTION)) {
+                latency = true;
+            } else if (arg.equals(ARB_OPTION)) {
+                arb = true;
+            } else if (arg.startsWith("--")) {
+                options.add(arg);
+            } else if (fileName == null) {
+                fileName = arg;
+            } else {
+                usage = true;
+                break;
+            }
+        }
+        SocketAddress address = null;
+        try {
+            address = Daemon.address(addressOption);
+        } catch (IllegalArgumentException e) {
+            // not a port number
+        }
+        if (usage || address == null) {
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+
+        String language = arb || (fileName != null && fileName.endsWith(".arb")) ? Daemon.ARB : Daemon.MAQ;
+        byte[] source = fileName != null ? Files.readAllBytes(Path.of(fileName))
+                : readStdin(language.equals(Daemon.ARB) ? "🌳 " : "🤖 ");
+        Daemon.Request request = new Daemon.Request(language, fileName != null ? fileName : "stdin", options, source);
+        long start = System.nanoTime();
+        Daemon.Response response;
+        try {
+            response = send(address, request);
+        } catch (IOException e) {
+            System.err.println("(daemon) no server at " + address + ": " + e.getMessage());
+            System.exit(UNREACHABLE_STATUS);
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.write(response.output());
+        System.out.flush();
+        System.err.write(response.errors());
+        if (latency) {
+            System.err.printf("(daemon) %.2f ms round trip, %.2f ms running%n",
+                    elapsed / 1e6, response.nanos() / 1e6);
+        }
+        System.err.flush();
+        System.exit(response.status());
+    }
+}
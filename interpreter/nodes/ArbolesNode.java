@@ -1,5 +1,7 @@
 package interpreter.nodes;
 
+import common.OutputSink;
+
 import java.io.PrintWriter;
 
 /**
@@ -13,7 +15,16 @@ public interface ArbolesNode {
     /**
      * Print to standard output the infix format for this node.
      */
-    void emit();
+    default void emit() {
+        emit(OutputSink.system());
+    }
+
+    /**
+     * Print the infix format for this node.
+     *
+     * @param out where it is printed
+     */
+    void emit(OutputSink out);
 
     /**
      * Generates the compiled MAQ instructions for this node/descendants to be
@@ -1,6 +1,7 @@
 package interpreter.nodes.action;
 
-import common.SymbolTable;
+import common.Namespace;
+import common.OutputSink;
 import interpreter.nodes.ArbolesNode;
 
 /**
@@ -17,5 +18,16 @@ public interface ActionNode extends ArbolesNode {
      *
      * @param symTbl the table where variable values are stored
      */
-    void execute(SymbolTable symTbl);
+    default void execute(Namespace symTbl) {
+        execute(symTbl, OutputSink.system());
+    }
+
+    /**
+     * Perform the action represented by this node, printing anything it
+     * prints to a sink.
+     *
+     * @param symTbl the table where variable values are stored
+     * @param out where anything printed goes
+     */
+    void execute(Namespace symTbl, OutputSink out);
 }
@@ -1,6 +1,7 @@
 package interpreter.nodes.action;
 
-import common.SymbolTable;
+import common.Namespace;
+import common.OutputSink;
 import interpreter.nodes.expression.ExpressionNode;
 
 import java.io.PrintWriter;
@@ -37,22 +38,24 @@ public class Assignment implements ActionNode {
      * Print to standard output the assignment with the variable name,
      * followed by the assignment token, and followed by the infix form
      * of the child expression.
+     * @param out where it is printed
      */
     @Override
-    public void emit() {
+    public void emit(OutputSink out) {
         // x = 10
         // y = x
-        System.out.print(name + " = ");
-        child.emit();
+        out.print(name + " = ");
+        child.emit(out);
 
     }
 
     /**
      * Evaluate the child expression and assign the result to the variable
      * @param symTbl the table where variable values are stored
+     * @param out unused, as assignment prints nothing
      */
     @Override
-    public void execute(SymbolTable symTbl) {
+    public void execute(Namespace symTbl, OutputSink out) {
         symTbl.set(name,child.evaluate(symTbl));
     }
 
@@ -1,6 +1,7 @@
 package interpreter.nodes.action;
 
-import common.SymbolTable;
+import common.Namespace;
+import common.OutputSink;
 import interpreter.nodes.expression.ExpressionNode;
 
 import java.io.PrintWriter;
@@ -27,11 +28,12 @@ public class Print implements ActionNode {
     /**
      * Print the statement to standard output in the format "Print"
      * followed by the infix form of the expression.
+     * @param out where it is printed
      */
     @Override
-    public void emit() {
-        System.out.print("Print ");
-        child.emit();
+    public void emit(OutputSink out) {
+        out.print("Print ");
+        child.emit(out);
     }
 
     /**
@@ -49,11 +51,12 @@ public class Print implements ActionNode {
     }
 
     /**
-     * Evaluate the child expression and print the result to standard output.
+     * Evaluate the child expression and print the result.
      * @param symTbl the table where variable values are stored
+     * @param out where the result is printed
      */
     @Override
-    public void execute(SymbolTable symTbl) {
-        System.out.println(child.evaluate(symTbl));
+    public void execute(Namespace symTbl, OutputSink out) {
+        out.println(child.evaluate(symTbl));
     }
 }
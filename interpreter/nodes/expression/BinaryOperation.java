@@ -1,7 +1,8 @@
 package interpreter.nodes.expression;
 
 import common.Errors;
-import common.SymbolTable;
+import common.Namespace;
+import common.OutputSink;
 import machine.Maquina;
 
 import java.io.PrintWriter;
@@ -83,14 +84,15 @@ public class BinaryOperation implements ExpressionNode {
      * Print to standard output the infix display of the two child nodes
      * separated by the operator and surrounded by parentheses.
      * ex: ( 10 + 20 )
+     * @param out where it is printed
      */
     @Override
-    public void emit() {
-        System.out.print("( ");
-        leftChild.emit();
-        System.out.print(" " + operator + " ");
-        rightChild.emit();
-        System.out.print(" )");
+    public void emit(OutputSink out) {
+        out.print("( ");
+        leftChild.emit(out);
+        out.print(" " + operator + " ");
+        rightChild.emit(out);
+        out.print(" )");
 
     }
 
@@ -119,7 +121,7 @@ public class BinaryOperation implements ExpressionNode {
      * @return the result of the computation
      */
     @Override
-    public int evaluate(SymbolTable symTbl) {
+    public int evaluate(Namespace symTbl) {
         int left = leftChild.evaluate(symTbl);
         int right = rightChild.evaluate(symTbl);
         int value = 0;
@@ -127,7 +129,7 @@ public class BinaryOperation implements ExpressionNode {
             case ADD -> value = left + right;
             case DIV -> {
                 if (right == 0){
-                    Errors.report(Errors.Type.DIVIDE_BY_ZERO);
+                    throw Errors.failure(Errors.Type.DIVIDE_BY_ZERO);
                 }
                 value = left / right;
             }
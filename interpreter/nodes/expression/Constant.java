@@ -1,6 +1,7 @@
 package interpreter.nodes.expression;
 
-import common.SymbolTable;
+import common.Namespace;
+import common.OutputSink;
 import machine.instructions.Push;
 
 import java.io.PrintWriter;
@@ -27,11 +28,12 @@ public class Constant implements ExpressionNode{
     }
 
     /**
-     * print the stored value to standard output
+     * print the stored value
+     * @param out where it is printed
      */
     @Override
-    public void emit() {
-        System.out.print(value);
+    public void emit(OutputSink out) {
+        out.print(value);
     }
 
     /**
@@ -48,7 +50,7 @@ public class Constant implements ExpressionNode{
      * @param symTbl the symbol table is ignored here
      */
     @Override
-    public int evaluate(SymbolTable symTbl) {
+    public int evaluate(Namespace symTbl) {
         return value;
     }
 }
@@ -1,6 +1,6 @@
 package interpreter.nodes.expression;
 
-import common.SymbolTable;
+import common.Namespace;
 import interpreter.nodes.ArbolesNode;
 
 /**
@@ -17,5 +17,5 @@ public interface ExpressionNode extends ArbolesNode {
      * @param symTbl the symbol table, if needed, to fetch the variable values.
      * @return the result of the evaluation.
      */
-    int evaluate(SymbolTable symTbl);
+    int evaluate(Namespace symTbl);
 }
@@ -1,7 +1,8 @@
 package interpreter.nodes.expression;
 
 import common.Errors;
-import common.SymbolTable;
+import common.Namespace;
+import common.OutputSink;
 import machine.Maquina;
 
 import java.io.PrintWriter;
@@ -55,11 +56,12 @@ public class UnaryOperation implements ExpressionNode{
     /**
      * Print to standard output the infix display of the child nodes
      * preceded by the operator and without an intervening blank.
+     * @param out where it is printed
      */
     @Override
-    public void emit() {
-        System.out.print(operator);
-        child.emit();
+    public void emit(OutputSink out) {
+        out.print(operator);
+        child.emit(out);
     }
 
     /**
@@ -85,14 +87,14 @@ public class UnaryOperation implements ExpressionNode{
      * @return the result of evaluation
      */
     @Override
-    public int evaluate(SymbolTable symTbl) {
+    public int evaluate(Namespace symTbl) {
         int value = child.evaluate(symTbl);
         if (operator.equals("!")){
             value = value * (-1);
         } else {
             // Attempting to take the square root of a negative number.
             if (value < 0){
-                Errors.report(Errors.Type.NEGATIVE_SQUARE_ROOT);
+                throw Errors.failure(Errors.Type.NEGATIVE_SQUARE_ROOT);
             }
             value = (int) Math.sqrt(value);
         }
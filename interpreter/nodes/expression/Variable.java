@@ -1,7 +1,8 @@
 package interpreter.nodes.expression;
 
 import common.Errors;
-import common.SymbolTable;
+import common.Namespace;
+import common.OutputSink;
 
 import java.io.PrintWriter;
 
@@ -25,11 +26,12 @@ public class Variable implements ExpressionNode {
     }
 
     /**
-     * print to standard output the name of the Variable
+     * print the name of the Variable
+     * @param out where it is printed
      */
     @Override
-    public void emit() {
-        System.out.print(name);
+    public void emit(OutputSink out) {
+        out.print(name);
     }
 
     /**
@@ -47,10 +49,10 @@ public class Variable implements ExpressionNode {
      * @return the value of the variable name
      */
     @Override
-    public int evaluate(SymbolTable symTbl) {
+    public int evaluate(Namespace symTbl) {
         // Attempting to use a variable that has not been assigned to yet.
         if (!symTbl.has(name)){
-            Errors.report(Errors.Type.UNINITIALIZED, name);
+            throw Errors.failure(Errors.Type.UNINITIALIZED, name);
         }
         return symTbl.get(name);
 
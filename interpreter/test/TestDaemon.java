@@ -0,0 +1,159 @@
+package interpreter.test;
+
+import common.Errors;
+import interpreter.Daemon;
+import interpreter.DaemonClient;
+import machine.ProgramCache;
+import org.junit.jupiter.api.*;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit tester for running programs on the daemon.
+ *
+ * @author jolin qiu
+ */
+public class TestDaemon {
+    /**
+     * The server of each test
+     */
+    private Daemon daemon;
+
+    /**
+     * The thread serving its requests
+     */
+    private Thread serving;
+
+    @BeforeEach
+    public void start() throws IOException {
+        Path socket = Files.createTempDirectory("daemon").resolve("test.sock");
+        daemon = new Daemon(UnixDomainSocketAddress.of(socket), new ProgramCache(8), false);
+        serving = Thread.ofVirtual().start(() -> {
+            try {
+                daemon.serve();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    @AfterEach
+    public void stop() throws IOException, InterruptedException {
+        daemon.close();
+        serving.join();
+    }
+
+    /**
+     * Send a program to the server.
+     *
+     * @param language ARB or MAQ
+     * @param source the program text
+     * @param options the machine options
+     * @return the response
+     * @throws IOException if the server cannot be reached
+     */
+    private Daemon.Response send(String language, String source, String... options) throws IOException {
+        return DaemonClient.send(daemon.getAddress(),
+                new Daemon.Request(language, "test", List.of(options), source.getBytes()));
+    }
+
+    @Test
+    public void testMaq() throws IOException {
+        for (int i = 0; i < 2; i++) {
+            Daemon.Response response = send(Daemon.MAQ, "PUSH 6\nPUSH 7\nMUL\nPRINT\n", "--engine=switch");
+            assertEquals(0, response.status());
+            assertTrue(new String(response.output()).contains("Executing..." + System.lineSeparator()
+                    + "42" + System.lineSeparator()));
+            assertEquals(0, response.errors().length);
+        }
+        // the second run was not assembled again
+        assertEquals(1, daemon.getCache().hits());
+    }
+
+    @Test
+    public void testArb() throws IOException {
+        Daemon.Response response = send(Daemon.ARB, "= x 4\n@ * x x\n");
+        assertEquals(0, response.status());
+        String output = new String(response.output());
+        assertTrue(output.startsWith("(ARB) prefix..."));
+        assertTrue(output.contains("(ARB) compiling program to tmp/TEMP.maq..."));
+        assertTrue(output.contains("x: 4" + System.lineSeparator() + "(MAQ) Instruction stack:"), output);
+    }
+
+    @Test
+    public void testFailure() throws IOException {
+        Daemon.Response response = send(Daemon.MAQ, "PUSH 1\nPUSH 0\nDIV\n");
+        assertEquals(Errors.EXIT_STATUS, response.status());
+        assertTrue(new String(response.errors()).startsWith("divide by zero"));
+        assertFalse(new String(response.output()).contains("Completed execution"));
+
+        response = send(Daemon.MAQ, "PUSH 1\n", "--profile");
+        assertEquals(1, response.status());
+        assertEquals(Errors.EXIT_STATUS, send(Daemon.ARB, "@ + 1\n").status());
+    }
+
+    @Test
+    public void testLoopback() throws IOException {
+        Daemon loopback = new Daemon(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                new ProgramCache(8), false);
+        Thread thread = Thread.ofVirtual().start(() -> {
+            try {
+                loopback.serve();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        try {
+            Daemon.Response response = DaemonClient.send(loopback.getAddress(),
+                    new Daemon.Request(Daemon.MAQ, "test", List.of(), "PUSH 3\nPRINT\n".getBytes()));
+            assertEquals(0, response.status());
+        } finally {
+            loopback.close();
+        }
+        assertDoesNotThrow(() -> thread.join());
+    }
+
+    @Test
+    public void testBadOperand() throws IOException {
+        // the program's own error, not a usage message about the request
+        Daemon.Response response = send(Daemon.MAQ, "PUSH x\n");
+        assertEquals(1, response.status());
+        assertEquals(0, response.output().length);
+        assertTrue(new String(response.errors()).contains("NumberFormatException"));
+
+        response = send(Daemon.MAQ, "PUSH 1\n", "--engine=nonesuch");
+        assertEquals(1, response.status());
+        assertTrue(new String(response.output()).contains("unknown engine nonesuch"));
+        assertEquals(0, response.errors().length);
+    }
+
+    @Test
+    public void testOversizedSource() throws IOException {
+        try (SocketChannel connection = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            connection.connect(daemon.getAddress());
+            DataOutputStream out = new DataOutputStream(Channels.newOutputStream(connection));
+            out.writeUTF(Daemon.MAQ);
+            out.writeUTF("test");
+            out.writeInt(0);
+            out.writeInt(Integer.MAX_VALUE);
+            connection.shutdownOutput();
+            // the server gives up on the request without reading the source
+            DataInputStream in = new DataInputStream(Channels.newInputStream(connection));
+            assertThrows(EOFException.class, () -> in.readInt());
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package interpreter.test;
 
+import common.Errors;
 import common.SymbolTable;
+import interpreter.Arboles;
 import interpreter.nodes.expression.BinaryOperation;
 import interpreter.nodes.expression.Constant;
 import interpreter.nodes.expression.UnaryOperation;
@@ -10,8 +12,9 @@ import org.junit.jupiter.api.*;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.util.Scanner;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * A JUnit tester for all the ARB expressions.
@@ -187,5 +190,22 @@ public class TestExpressions {
                 "MOD" + System.lineSeparator();
         assertEquals(expected, outContent.toString());
     }
-}
 
+    @Test
+    @Order(5)
+    public void testFailures() {
+        SymbolTable symTbl = new SymbolTable();
+        Errors.Failure failure = assertThrows(Errors.ArithmeticFailure.class, () ->
+                new BinaryOperation("/", new Constant(1), new Constant(0)).evaluate(symTbl));
+        assertEquals(Errors.Type.DIVIDE_BY_ZERO, failure.getType());
+        failure = assertThrows(Errors.UninitializedFailure.class, () -> new Variable("q").evaluate(symTbl));
+        assertEquals("q", failure.getInfo());
+
+        Arboles premature = new Arboles(new Scanner("= x + 1"), false);
+        assertThrows(Errors.SyntaxFailure.class, premature::buildProgram);
+        Arboles illegal = new Arboles(new Scanner("@ + 1 &"), false);
+        failure = assertThrows(Errors.SyntaxFailure.class, illegal::buildProgram);
+        assertEquals(Errors.Type.ILLEGAL_OPERATOR, failure.getType());
+        assertEquals("illegal operator in expression: &", failure.getMessage());
+    }
+}
@@ -0,0 +1,416 @@
+package machine;
+
+import common.Errors;
+import common.OutputSink;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Assembles MAQ text into a {@link Program} straight from the bytes of the
+ * input.  Lines are found in a large reusable buffer, opcodes are matched
+ * byte by byte and PUSH operands are parsed in place, so no Strings are made
+ * for the instructions.  The only Strings created are one per distinct
+ * variable name.
+ *
+ * @author jolin qiu
+ */
+public final class Assembler {
+    /**
+     * Where the assembler sends each instruction it decodes.
+     */
+    public interface Target {
+        /**
+         * Get the slot of a variable name.  Called once, the first time
+         * each name is seen.
+         *
+         * @param name the variable name
+         * @return its slot
+         */
+        int slot(String name);
+
+        /**
+         * Receive an instruction that has no operand.
+         *
+         * @param opcode the opcode
+         */
+        void emit(int opcode);
+
+        /**
+         * Receive an instruction with its operand (PUSH value or variable slot).
+         *
+         * @param opcode the opcode
+         * @param operand the operand
+         */
+        void emit(int opcode, int operand);
+    }
+
+    /** the terminating character when reading machine instructions from user (not file) */
+    private static final byte EOF = '.';
+
+    /** the size of the input buffer */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** the mnemonics packed into longs, one byte per character, indexed by opcode */
+    private static final long[] MNEMONICS = new long[Opcode.COUNT];
+
+    static {
+        for (int opcode = 0; opcode < Opcode.COUNT; opcode++) {
+            long key = 0;
+            for (byte b : Opcode.mnemonic(opcode).getBytes(StandardCharsets.US_ASCII)) {
+                key = key << 8 | b;
+            }
+            MNEMONICS[opcode] = key;
+        }
+    }
+
+    /** the input */
+    private final ReadableByteChannel in;
+
+    /** true if input is coming from standard input (for prompting) */
+    private final boolean stdin;
+
+    /** where the prompt is printed */
+    private final OutputSink output;
+
+    /** the input buffer */
+    private byte[] buffer;
+
+    /** the start of the unread input in the buffer */
+    private int position;
+
+    /** the end of the input in the buffer */
+    private int limit;
+
+    /** whether the input has been read to the end */
+    private boolean eof;
+
+    /** the bytes of each variable name seen so far, by hash bucket */
+    private byte[][] nameBytes;
+
+    /** the hash of each variable name, by hash bucket */
+    private int[] nameHashes;
+
+    /** the slot of each variable name, by hash bucket */
+    private int[] nameSlots;
+
+    /** the number of distinct variable names seen */
+    private int nameCount;
+
+    /**
+     * Create an assembler reading from a stream, prompting on standard
+     * output.
+     *
+     * @param maqIn the input source
+     * @param stdin true if input is coming from standard input (for prompting)
+     */
+    public Assembler(InputStream maqIn, boolean stdin) {
+        this(maqIn, stdin, OutputSink.system());
+    }
+
+    /**
+     * Create an assembler reading from a stream.
+     *
+     * @param maqIn the input source
+     * @param stdin true if input is coming from standard input (for prompting)
+     * @param output where the prompt is printed, normally the machine's output
+     */
+    public Assembler(InputStream maqIn, boolean stdin, OutputSink output) {
+        this(Channels.newChannel(maqIn), stdin, output);
+    }
+
+    /**
+     * Create an assembler reading from a channel.
+     *
+     * @param maqIn the input source
+     * @param stdin true if input is coming from standard input (for prompting)
+     * @param output where the prompt is printed, normally the machine's output
+     */
+    public Assembler(ReadableByteChannel maqIn, boolean stdin, OutputSink output) {
+        this.in = maqIn;
+        this.stdin = stdin;
+        this.output = output;
+        this.buffer = new byte[BUFFER_SIZE];
+        this.nameBytes = new byte[64][];
+        this.nameHashes = new int[64];
+        this.nameSlots = new int[64];
+    }
+
+    /**
+     * Assemble an entire stream of MAQ text.
+     *
+     * @param maqIn the input source
+     * @return the assembled program
+     * @throws IOException if the input cannot be read
+     */
+    public static Program assemble(InputStream maqIn) throws IOException {
+        Program.Builder builder = new Program.Builder();
+        new Assembler(maqIn, false).assemble(builder);
+        return builder.build();
+    }
+
+    /**
+     * Assemble every remaining instruction into a target.
+     *
+     * @param target where the instructions go
+     * @throws IOException if the input cannot be read
+     */
+    public void assemble(Target target) throws IOException {
+        while (next(target)) {
+            // keep going to the end of input
+        }
+    }
+
+    /**
+     * Assemble the next line of input into a target.  When reading from
+     * standard input the user is prompted first, and a line holding only
+     * "." ends the input.
+     *
+     * @param target where the instruction goes
+     * @return false if there was no more input
+     * @throws IOException if the input cannot be read
+     */
+    public boolean next(Target target) throws IOException {
+        if (stdin) {
+            output.print("🤖 ");
+            output.flush();
+        }
+        int end = lineEnd();
+        if (end < 0) {
+            return false;
+        }
+        int start = skipSpace(position, end);
+        position = end + 1;
+
+        //[PUSH, 10] instruction = first field, value/var = second field
+        int fieldEnd = skipToken(start, end);
+        if (stdin && fieldEnd - start == 1 && buffer[start] == EOF) {
+            return false;
+        }
+        int opcode = opcode(start, fieldEnd);
+        if (opcode < 0) {
+            throw Errors.failure(Errors.Type.ILLEGAL_INSTRUCTION, text(start, fieldEnd));
+        }
+        if (!Opcode.hasOperand(opcode)) {
+            target.emit(opcode);
+            return true;
+        }
+
+        int operandStart = skipSpace(fieldEnd, end);
+        int operandEnd = skipToken(operandStart, end);
+        if (operandStart == operandEnd) {
+            throw Errors.failure(Errors.Type.PREMATURE_END);
+        }
+        if (opcode == Opcode.PUSH) {
+            target.emit(opcode, parseInt(operandStart, operandEnd));
+        } else {
+            target.emit(opcode, slot(operandStart, operandEnd, target));
+        }
+        return true;
+    }
+
+    /**
+     * Find the end of the next line, reading more input as needed.  The
+     * whole line is guaranteed to be in the buffer from position up to the
+     * returned index.
+     *
+     * @return the index of the line's newline (or end of input), or -1 if
+     *      there are no more lines
+     * @throws IOException if the input cannot be read
+     */
+    private int lineEnd() throws IOException {
+        int scan = position;
+        while (true) {
+            for (int i = scan; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    return i;
+                }
+            }
+            if (eof) {
+                return position < limit ? limit : -1;
+            }
+            // slide the partial line to the front and read more after it
+            if (position > 0) {
+                System.arraycopy(buffer, position, buffer, 0, limit - position);
+                limit -= position;
+                position = 0;
+            }
+            if (limit == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            scan = limit;
+            int read = in.read(ByteBuffer.wrap(buffer, limit, buffer.length - limit));
+            if (read < 0) {
+                eof = true;
+            } else {
+                limit += read;
+            }
+        }
+    }
+
+    /**
+     * Is the byte a whitespace character (as in the regex \s)?
+     *
+     * @param b the byte
+     * @return whether it is whitespace
+     */
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == '\f' || b == 0x0B;
+    }
+
+    /**
+     * Skip whitespace.
+     *
+     * @param from where to start
+     * @param to where to stop
+     * @return the index of the first non-whitespace byte, or to
+     */
+    private int skipSpace(int from, int to) {
+        while (from < to && isSpace(buffer[from])) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Skip a whitespace separated field.
+     *
+     * @param from where the field starts
+     * @param to where to stop
+     * @return the index just past the field
+     */
+    private int skipToken(int from, int to) {
+        while (from < to && !isSpace(buffer[from])) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Match an opcode mnemonic.
+     *
+     * @param from where the field starts
+     * @param to where the field ends
+     * @return the opcode, or -1 if the field is not a mnemonic
+     */
+    private int opcode(int from, int to) {
+        if (to - from < 3 || to - from > 5) {
+            return -1;
+        }
+        long key = 0;
+        for (int i = from; i < to; i++) {
+            key = key << 8 | buffer[i];
+        }
+        for (int opcode = 0; opcode < MNEMONICS.length; opcode++) {
+            if (MNEMONICS[opcode] == key) {
+                return opcode;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parse a decimal integer field the way Integer.parseInt does.
+     *
+     * @param from where the field starts
+     * @param to where the field ends
+     * @return the value
+     * @throws NumberFormatException if the field is not a valid int
+     */
+    private int parseInt(int from, int to) {
+        int i = from;
+        boolean negative = buffer[i] == '-';
+        if (negative || buffer[i] == '+') {
+            i++;
+        }
+        if (i == to) {
+            throw new NumberFormatException("For input string: \"" + text(from, to) + "\"");
+        }
+        // accumulate negatively so that Integer.MIN_VALUE can be represented
+        int bound = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int result = 0;
+        for (; i < to; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9 || result < bound / 10
+                    || result * 10 < bound + digit) {
+                throw new NumberFormatException("For input string: \"" + text(from, to) + "\"");
+            }
+            result = result * 10 - digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Get the slot of a variable name field, asking the target for a new
+     * slot the first time the name is seen.
+     *
+     * @param from where the field starts
+     * @param to where the field ends
+     * @param target the target that assigns slots
+     * @return the slot
+     */
+    private int slot(int from, int to, Target target) {
+        int hash = 1;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        int mask = nameBytes.length - 1;
+        int bucket = hash & mask;
+        while (nameBytes[bucket] != null) {
+            if (nameHashes[bucket] == hash
+                    && Arrays.equals(nameBytes[bucket], 0, nameBytes[bucket].length, buffer, from, to)) {
+                return nameSlots[bucket];
+            }
+            bucket = (bucket + 1) & mask;
+        }
+
+        int slot = target.slot(text(from, to));
+        nameBytes[bucket] = Arrays.copyOfRange(buffer, from, to);
+        nameHashes[bucket] = hash;
+        nameSlots[bucket] = slot;
+        if (++nameCount * 2 > nameBytes.length) {
+            growNames();
+        }
+        return slot;
+    }
+
+    /**
+     * Double the variable name table.
+     */
+    private void growNames() {
+        byte[][] oldBytes = nameBytes;
+        int[] oldHashes = nameHashes;
+        int[] oldSlots = nameSlots;
+        nameBytes = new byte[oldBytes.length * 2][];
+        nameHashes = new int[nameBytes.length];
+        nameSlots = new int[nameBytes.length];
+        int mask = nameBytes.length - 1;
+        for (int i = 0; i < oldBytes.length; i++) {
+            if (oldBytes[i] != null) {
+                int bucket = oldHashes[i] & mask;
+                while (nameBytes[bucket] != null) {
+                    bucket = (bucket + 1) & mask;
+                }
+                nameBytes[bucket] = oldBytes[i];
+                nameHashes[bucket] = oldHashes[i];
+                nameSlots[bucket] = oldSlots[i];
+            }
+        }
+    }
+
+    /**
+     * Decode part of the buffer.
+     *
+     * @param from where the text starts
+     * @param to where the text ends
+     * @return the text
+     */
+    private String text(int from, int to) {
+        return new String(buffer, from, to - from, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,271 @@
+package machine;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes execution checkpoints.  A checkpoint file holds a header
+ * followed by any number of checkpoints, oldest first, each appended as it
+ * is taken so that a crash loses only the run since the last one.  All
+ * values are big-endian:
+ * <pre>
+ *     header:      magic "MAQC" (4 bytes), version (u2), flags (u2)
+ *     checkpoint:  length of the rest (u4), instruction index (u4),
+ *                  prefix hash (s8),
+ *                  variable count (u4), then each variable's name as
+ *                  length (u2) and UTF-8 bytes, and its value (s4),
+ *                  stack size (u4), then each value from the bottom (s4)
+ * </pre>
+ * The prefix hash covers every instruction before the index, so a
+ * checkpoint still applies to an edited program as long as the edit comes
+ * after it.  Variables are hashed by the bytes of their name, not slot.
+ *
+ * @author jolin qiu
+ */
+public final class CheckpointFile {
+    /** the file name extension of checkpoint files */
+    public static final String EXTENSION = ".maqc";
+
+    /** "MAQC" */
+    private static final int MAGIC = 0x4D415143;
+
+    /** the current format version */
+    private static final int VERSION = 1;
+
+    /** the size of the header */
+    private static final int HEADER_SIZE = 8;
+
+    /** the prefix hash of an empty program */
+    public static final long EMPTY_HASH = 0xCBF29CE484222325L;
+
+    /** the longest variable name, in UTF-8 bytes, that fits its length field */
+    private static final int MAX_NAME_BYTES = 0xFFFF;
+
+    /** the 64 bit FNV prime */
+    private static final long PRIME = 0x100000001B3L;
+
+    /**
+     * The machine's state just before an instruction.
+     *
+     * @param index the index of the next instruction to execute
+     * @param prefixHash the hash of every instruction before it
+     * @param names the defined variables, in the order they were first stored
+     * @param values the value of each variable
+     * @param stack the instruction stack, bottom first
+     */
+    public record Checkpoint(int index, long prefixHash, String[] names, int[] values, int[] stack) {}
+
+    /**
+     * Files are read and written through the static methods only.
+     */
+    private CheckpointFile() {}
+
+    /**
+     * Encode a program's variable names for {@link #hash}, once per run.
+     *
+     * @param program the program
+     * @return the UTF-8 bytes of each name, by index
+     */
+    public static byte[][] names(Program program) {
+        byte[][] names = new byte[program.names().length][];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = program.names()[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return names;
+    }
+
+    /**
+     * Extend a prefix hash by one instruction.
+     *
+     * @param hash the hash of the instructions before it
+     * @param program the program
+     * @param names the program's names, from {@link #names}
+     * @param pc the position of the instruction
+     * @return the hash including the instruction
+     */
+    public static long hash(long hash, Program program, byte[][] names, int pc) {
+        int[] code = program.code();
+        int opcode = code[pc];
+        if (opcode == Opcode.PUSH) {
+            return (hash ^ ((long) opcode << 32 | (code[pc + 1] & 0xFFFFFFFFL))) * PRIME;
+        } else if (!Opcode.hasOperand(opcode)) {
+            return (hash ^ ((long) opcode << 32)) * PRIME;
+        }
+        // a name is hashed as its length and then its bytes, FNV-1a style;
+        // each step is a bijection, so two programs that differ in one
+        // opcode, PUSH value or byte of a name always hash differently
+        byte[] name = names[code[pc + 1]];
+        hash = (hash ^ ((long) opcode << 32 | name.length)) * PRIME;
+        for (byte b : name) {
+            hash = (hash ^ (b & 0xFF)) * PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Read every checkpoint in a file.  A damaged last checkpoint, as left
+     * by a crash while it was written, is ignored.
+     *
+     * @param path the checkpoint file
+     * @return the checkpoints, oldest first, or none if the file does not exist
+     * @throws IOException if the file cannot be read or is not a checkpoint file
+     */
+    public static List<Checkpoint> read(Path path) throws IOException {
+        List<Checkpoint> checkpoints = new ArrayList<>();
+        if (!Files.exists(path)) {
+            return checkpoints;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException(path + ": not a MAQ checkpoint file");
+        }
+        int version = buffer.getShort() & 0xFFFF;
+        if (version != VERSION) {
+            throw new IOException(path + ": unsupported MAQ checkpoint version " + version);
+        }
+        buffer.getShort(); // flags, none defined yet
+        while (buffer.remaining() >= Integer.BYTES) {
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                break;
+            }
+            ByteBuffer record = buffer.slice(buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            try {
+                checkpoints.add(decode(record));
+            } catch (RuntimeException e) {
+                // buffer underflow means the checkpoint is damaged
+                break;
+            }
+        }
+        return checkpoints;
+    }
+
+    /**
+     * Decode one checkpoint.
+     *
+     * @param record the bytes after its length
+     * @return the checkpoint
+     */
+    private static Checkpoint decode(ByteBuffer record) {
+        int index = record.getInt();
+        long prefixHash = record.getLong();
+        String[] names = new String[count(record)];
+        int[] values = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            byte[] bytes = new byte[record.getShort() & 0xFFFF];
+            record.get(bytes);
+            names[i] = new String(bytes, StandardCharsets.UTF_8);
+            values[i] = record.getInt();
+        }
+        int[] stack = new int[count(record)];
+        record.asIntBuffer().get(stack);
+        return new Checkpoint(index, prefixHash, names, values, stack);
+    }
+
+    /**
+     * Read a count, checking that it could fit in what is left.
+     *
+     * @param record the bytes of a checkpoint
+     * @return the count
+     * @throws BufferUnderflowException if the count is damaged
+     */
+    private static int count(ByteBuffer record) {
+        int count = record.getInt();
+        if (count < 0 || count > record.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return count;
+    }
+
+    /**
+     * Replace a file with some checkpoints.
+     *
+     * @param path the checkpoint file to create or replace
+     * @param checkpoints the checkpoints, oldest first
+     * @throws IOException if the file cannot be written
+     * @throws IllegalArgumentException if a variable name is too long for the format
+     */
+    public static void write(Path path, List<Checkpoint> checkpoints) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putShort((short) VERSION).putShort((short) 0).flip();
+            writeFully(channel, header);
+            for (Checkpoint checkpoint : checkpoints) {
+                writeFully(channel, encode(checkpoint));
+            }
+        }
+    }
+
+    /**
+     * Add a checkpoint to the end of a file made by {@link #write}.
+     *
+     * @param path the checkpoint file
+     * @param checkpoint the checkpoint
+     * @throws IOException if the file cannot be written
+     * @throws IllegalArgumentException if a variable name is too long for the format
+     */
+    public static void append(Path path, Checkpoint checkpoint) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            writeFully(channel, encode(checkpoint));
+        }
+    }
+
+    /**
+     * Encode one checkpoint, with its length in front.
+     *
+     * @param checkpoint the checkpoint
+     * @return a buffer ready to be written
+     * @throws IllegalArgumentException if a variable name is too long for the format
+     */
+    private static ByteBuffer encode(Checkpoint checkpoint) {
+        byte[][] names = new byte[checkpoint.names().length][];
+        int length = Integer.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES
+                + checkpoint.stack().length * Integer.BYTES;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = checkpoint.names()[i].getBytes(StandardCharsets.UTF_8);
+            if (names[i].length > MAX_NAME_BYTES) {
+                throw new IllegalArgumentException("variable name too long for " + EXTENSION + ": "
+                        + names[i].length + " bytes");
+            }
+            length += Short.BYTES + names[i].length + Integer.BYTES;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + length);
+        buffer.putInt(length);
+        buffer.putInt(checkpoint.index());
+        buffer.putLong(checkpoint.prefixHash());
+        buffer.putInt(names.length);
+        for (int i = 0; i < names.length; i++) {
+            buffer.putShort((short) names[i].length);
+            buffer.put(names[i]);
+            buffer.putInt(checkpoint.values()[i]);
+        }
+        buffer.putInt(checkpoint.stack().length);
+        for (int value : checkpoint.stack()) {
+            buffer.putInt(value);
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Write all of a buffer.
+     *
+     * @param channel the file
+     * @param buffer the bytes
+     * @throws IOException if they cannot be written
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package machine;
+
+import common.SymbolTable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The machine's variable storage.  Every distinct variable name is given an
+ * integer slot when the program is assembled, and the LOAD and STORE
+ * instructions then read and write an int array by that slot.  The named
+ * SymbolTable view is only rebuilt when someone asks for it.
+ *
+ * @author jolin qiu
+ */
+public class Frame {
+    /** the slot of each variable name */
+    private final Map<String, Integer> slots;
+
+    /** the variable name of each slot */
+    private String[] names;
+
+    /** the value of each slot */
+    private int[] values;
+
+    /** whether each slot has been stored to yet */
+    private boolean[] defined;
+
+    /** slots in the order they were first stored to (symbol table order) */
+    private int[] order;
+
+    /** the number of slots that have been assigned a name */
+    private int slotCount;
+
+    /** the number of slots that have been stored to */
+    private int definedCount;
+
+    /**
+     * Create an empty frame.
+     */
+    public Frame() {
+        this.slots = new HashMap<>();
+        this.names = new String[8];
+        this.values = new int[8];
+        this.defined = new boolean[8];
+        this.order = new int[8];
+        this.slotCount = 0;
+        this.definedCount = 0;
+    }
+
+    /**
+     * Get the slot of a variable name, giving it the next free slot if the
+     * name has not been seen before.
+     *
+     * @param name the variable name
+     * @return its slot
+     */
+    public int slot(String name) {
+        Integer slot = this.slots.get(name);
+        if (slot == null) {
+            if (this.slotCount == this.names.length) {
+                int capacity = this.names.length * 2;
+                this.names = Arrays.copyOf(this.names, capacity);
+                this.values = Arrays.copyOf(this.values, capacity);
+                this.defined = Arrays.copyOf(this.defined, capacity);
+                this.order = Arrays.copyOf(this.order, capacity);
+            }
+            slot = this.slotCount++;
+            this.slots.put(name, slot);
+            this.names[slot] = name;
+        }
+        return slot;
+    }
+
+    /**
+     * Get the frame slot of each of a program's variable names, giving new
+     * names the next free slots.
+     *
+     * @param names the variable name of each program slot
+     * @return the frame slot of each program slot
+     */
+    public int[] bind(String[] names) {
+        int[] map = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            map[i] = slot(names[i]);
+        }
+        return map;
+    }
+
+    /**
+     * Get the variable name held in a slot.
+     *
+     * @param slot the slot
+     * @return the variable name
+     */
+    public String name(int slot) {
+        return this.names[slot];
+    }
+
+    /**
+     * Has the variable in this slot been stored to yet?
+     *
+     * @param slot the slot
+     * @return whether it has a value
+     */
+    public boolean isDefined(int slot) {
+        return this.defined[slot];
+    }
+
+    /**
+     * Get the value of the variable in a slot.
+     *
+     * @param slot the slot
+     * @return its value
+     */
+    public int load(int slot) {
+        return this.values[slot];
+    }
+
+    /**
+     * Set the value of the variable in a slot.
+     *
+     * @param slot the slot
+     * @param value the new value
+     */
+    public void store(int slot, int value) {
+        if (!this.defined[slot]) {
+            this.defined[slot] = true;
+            this.order[this.definedCount++] = slot;
+        }
+        this.values[slot] = value;
+    }
+
+    /**
+     * The number of variables that have been stored to.
+     *
+     * @return the number of defined variables
+     */
+    public int size() {
+        return this.definedCount;
+    }
+
+    /**
+     * Get the slot of a defined variable, counting in the order the
+     * variables were first stored to.
+     *
+     * @param index from 0 to size() - 1
+     * @return the slot
+     */
+    public int storedSlot(int index) {
+        return this.order[index];
+    }
+
+    /**
+     * Forget every variable and slot, keeping the capacity the frame has
+     * grown to, so that it can be used for another program.
+     */
+    public void clear() {
+        this.slots.clear();
+        Arrays.fill(this.names, 0, this.slotCount, null);
+        Arrays.fill(this.defined, 0, this.slotCount, false);
+        this.slotCount = 0;
+        this.definedCount = 0;
+    }
+
+    /**
+     * Build the named view of the frame, with the variables in the order
+     * they were first stored to.
+     *
+     * @return a new symbol table holding the defined variables
+     */
+    public SymbolTable toSymbolTable() {
+        SymbolTable symbolTable = new SymbolTable();
+        for (int i = 0; i < this.definedCount; i++) {
+            int slot = this.order[i];
+            symbolTable.set(this.names[slot], this.values[slot]);
+        }
+        return symbolTable;
+    }
+}
@@ -1,22 +1,52 @@
 package machine;
 
-import java.util.LinkedList;
-import java.util.List;
+import common.Errors;
+
+import java.util.Arrays;
 
 /**
- * The machine's instruction stack for handling instructions.
+ * The machine's instruction stack for handling instructions.  The values are
+ * kept in a growable primitive array so that pushing and popping never boxes
+ * or allocates once the stack has grown to the depth the program needs.
  *
  * @author RIT CS
  */
 public class InstructionStack {
-    /** the stack is a list */
-    private final List<Integer> stack;
+    /** the initial capacity used by the default constructor */
+    public static final int DEFAULT_CAPACITY = 16;
+
+    /** the maximum depth used by the default constructor (effectively unbounded) */
+    public static final int DEFAULT_MAX_DEPTH = Integer.MAX_VALUE - 8;
+
+    /** the stack values, bottom at index 0 and top at index size-1 */
+    private int[] stack;
+
+    /** the number of values currently on the stack */
+    private int size;
+
+    /** the deepest the stack is allowed to grow */
+    private final int maxDepth;
 
     /**
      * Create an empty stack.
      */
     public InstructionStack() {
-        this.stack = new LinkedList<>();
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * Create an empty stack with a given initial capacity and maximum depth.
+     *
+     * @param initialCapacity the number of values to reserve room for up front
+     * @param maxDepth the largest number of values the stack may hold
+     */
+    public InstructionStack(int initialCapacity, int maxDepth) {
+        if (initialCapacity < 0 || maxDepth < 1) {
+            throw new IllegalArgumentException("capacity " + initialCapacity + ", max depth " + maxDepth);
+        }
+        this.stack = new int[Math.min(initialCapacity, maxDepth)];
+        this.size = 0;
+        this.maxDepth = maxDepth;
     }
 
     /**
@@ -24,26 +54,65 @@ public class InstructionStack {
      * @param value the value to push
      */
     public void push(int value) {
-        this.stack.add(0, value);
+        if (this.size == this.stack.length) {
+            grow();
+        }
+        this.stack[this.size++] = value;
     }
 
     /**
      * Remove and return the top value on the stack.
      * @return the previous top value
      */
-    public int pop() { return this.stack.remove(0); }
+    public int pop() {
+        if (this.size == 0) {
+            throw new IndexOutOfBoundsException("pop from an empty instruction stack");
+        }
+        return this.stack[--this.size];
+    }
 
     /**
      * Get the size of the stack.
      * @return the size of the stack
      */
-    public int size() { return this.stack.size(); }
+    public int size() { return this.size; }
 
     /**
      * Get the top value from the stack (without removing it).
      * @return the top value on the stack
      */
-    public int top() { return this.stack.get(0); }
+    public int top() {
+        if (this.size == 0) {
+            throw new IndexOutOfBoundsException("top of an empty instruction stack");
+        }
+        return this.stack[this.size - 1];
+    }
+
+    /**
+     * Get the most values the stack can hold before it has to grow again.
+     * @return the current capacity
+     */
+    public int capacity() { return this.stack.length; }
+
+    /**
+     * Remove every value, keeping the capacity the stack has grown to.
+     */
+    public void clear() { this.size = 0; }
+
+    /**
+     * Double the backing array, up to the maximum depth.  Running out of
+     * depth is reported as a stack overflow.
+     */
+    private void grow() {
+        if (this.stack.length >= this.maxDepth) {
+            throw Errors.failure(Errors.Type.STACK_OVERFLOW, this.maxDepth);
+        }
+        int newCapacity = Math.max(DEFAULT_CAPACITY, this.stack.length * 2);
+        if (newCapacity < 0 || newCapacity > this.maxDepth) {
+            newCapacity = this.maxDepth;
+        }
+        this.stack = Arrays.copyOf(this.stack, newCapacity);
+    }
 
     /**
      * Returns a string representation of the instruction set in the format:<br>
@@ -67,12 +136,11 @@ public class InstructionStack {
     @Override
     public String toString() {
         StringBuilder result = new StringBuilder("(MAQ) Instruction stack:" + System.lineSeparator());
-        if (this.stack.size() == 0) {
+        if (this.size == 0) {
             result.append('\t').append("EMPTY").append(System.lineSeparator());
         } else {
-            int i = 0;
-            for (Integer instr : this.stack) {
-                result.append('\t').append(i++).append(": ").append(instr).append(System.lineSeparator());
+            for (int i = 0; i < this.size; i++) {
+                result.append('\t').append(i).append(": ").append(this.stack[this.size - 1 - i]).append(System.lineSeparator());
             }
         }
         return result.toString();
@@ -0,0 +1,298 @@
+package machine;
+
+import common.Errors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs one program over many sets of variable values at once.  Each of the
+ * N lanes is an independent run of the program: every stack entry is a
+ * vector of N values and every variable a column of N values, so each
+ * instruction is a single loop over the lanes.  The loops are simple
+ * enough for HotSpot to compile to SIMD instructions.
+ *
+ * <p>A divide by zero, a modulus by zero or the square root of a negative
+ * number only stops the lanes it happens in.  Such a lane records the error,
+ * and its values are meaningless from then on, while the other lanes carry
+ * on.  Loading a variable that has not been stored or given starting
+ * values is the same mistake in every lane, so it is reported as usual.
+ *
+ * @author jolin qiu
+ */
+public class LaneMachine {
+    /** the program */
+    private final Program program;
+
+    /** the number of lanes */
+    private final int lanes;
+
+    /** the values of each variable, one column per variable (null until set or stored) */
+    private final int[][] columns;
+
+    /** the stack of lane vectors, preallocated to the program's depth */
+    private int[][] stack;
+
+    /** the number of vectors on the stack */
+    private int sp;
+
+    /** the error that stopped each lane, or null */
+    private final Errors.Type[] errors;
+
+    /** the vector of each PRINT, in order */
+    private final List<int[]> printed;
+
+    /**
+     * Create a machine running a program over some lanes.
+     *
+     * @param program the program
+     * @param lanes the number of lanes
+     */
+    public LaneMachine(Program program, int lanes) {
+        this.program = program;
+        this.lanes = lanes;
+        this.columns = new int[program.names().length][];
+        this.errors = new Errors.Type[lanes];
+        this.printed = new ArrayList<>();
+    }
+
+    /**
+     * Get the number of lanes.
+     *
+     * @return the number of lanes
+     */
+    public int lanes() {
+        return lanes;
+    }
+
+    /**
+     * Give a variable its starting value in each lane.
+     *
+     * @param name the variable name, as used by the program
+     * @param values one value per lane
+     * @throws IllegalArgumentException if the program does not use the
+     *      variable, or the number of values is not the number of lanes
+     */
+    public void set(String name, int[] values) {
+        if (values.length != lanes) {
+            throw new IllegalArgumentException(values.length + " values for " + lanes + " lanes");
+        }
+        columns[index(name)] = values.clone();
+    }
+
+    /**
+     * Get a variable's value in each lane.
+     *
+     * @param name the variable name
+     * @return one value per lane, or null if it has no values
+     * @throws IllegalArgumentException if the program does not use the variable
+     */
+    public int[] get(String name) {
+        int[] column = columns[index(name)];
+        return column == null ? null : column.clone();
+    }
+
+    /**
+     * Find a variable in the program's name table.
+     *
+     * @param name the variable name
+     * @return its index
+     */
+    private int index(String name) {
+        String[] names = program.names();
+        for (int k = 0; k < names.length; k++) {
+            if (names[k].equals(name)) {
+                return k;
+            }
+        }
+        throw new IllegalArgumentException("the program does not use " + name);
+    }
+
+    /**
+     * Get the error that stopped a lane.
+     *
+     * @param lane the lane
+     * @return the error, or null if the lane ran to completion
+     */
+    public Errors.Type error(int lane) {
+        return errors[lane];
+    }
+
+    /**
+     * Get what the program printed: one vector of lane values per PRINT
+     * executed.
+     *
+     * @return the printed vectors
+     */
+    public List<int[]> printed() {
+        return printed;
+    }
+
+    /**
+     * Get the vectors left on the stack, bottom first.
+     *
+     * @return the vectors
+     */
+    public List<int[]> stack() {
+        List<int[]> vectors = new ArrayList<>(sp);
+        for (int i = 0; i < sp; i++) {
+            vectors.add(stack[i].clone());
+        }
+        return vectors;
+    }
+
+    /**
+     * Run the program in every lane.  Each run starts with no errors and
+     * nothing printed, while the variables keep the values they were set
+     * to or last stored, so the machine can be set up and run again.
+     */
+    public void run() {
+        int[] code = program.code();
+        String[] names = program.names();
+        stack = new int[program.maxDepth()][lanes];
+        sp = 0;
+        Arrays.fill(errors, null);
+        printed.clear();
+        int pc = 0;
+        while (pc < code.length) {
+            switch (code[pc++]) {
+                case Opcode.PUSH -> Arrays.fill(stack[sp++], code[pc++]);
+                case Opcode.PRINT -> printed.add(stack[--sp].clone());
+                case Opcode.STORE -> {
+                    // the top vector becomes the column, and the old column's array is reused
+                    int k = code[pc++];
+                    int[] old = columns[k];
+                    columns[k] = stack[--sp];
+                    stack[sp] = old != null ? old : new int[lanes];
+                }
+                case Opcode.LOAD -> {
+                    int k = code[pc++];
+                    // Attempting to load a variable name that has not been stored yet.
+                    if (columns[k] == null) {
+                        throw Errors.failure(Errors.Type.UNINITIALIZED, names[k]);
+                    }
+                    System.arraycopy(columns[k], 0, stack[sp++], 0, lanes);
+                }
+                case Opcode.NEGATE -> negate(stack[sp - 1]);
+                case Opcode.SQUARE_ROOT -> squareRoot(stack[sp - 1]);
+                case Opcode.ADD -> add(stack[sp - 2], stack[--sp]);
+                case Opcode.SUBTRACT -> subtract(stack[sp - 2], stack[--sp]);
+                case Opcode.MULTIPLY -> multiply(stack[sp - 2], stack[--sp]);
+                case Opcode.DIVIDE -> divide(stack[sp - 2], stack[--sp], false);
+                case Opcode.MODULUS -> divide(stack[sp - 2], stack[--sp], true);
+                default -> throw Errors.failure(Errors.Type.ILLEGAL_INSTRUCTION, code[pc - 1]);
+            }
+        }
+    }
+
+    /**
+     * NEG in every lane.
+     *
+     * @param a the operand, replaced by the result
+     */
+    private void negate(int[] a) {
+        for (int i = 0; i < lanes; i++) {
+            a[i] = -a[i];
+        }
+    }
+
+    /**
+     * ADD in every lane.
+     *
+     * @param a the first operand, replaced by the result
+     * @param b the second operand
+     */
+    private void add(int[] a, int[] b) {
+        for (int i = 0; i < lanes; i++) {
+            a[i] += b[i];
+        }
+    }
+
+    /**
+     * SUB in every lane.
+     *
+     * @param a the first operand, replaced by the result
+     * @param b the second operand
+     */
+    private void subtract(int[] a, int[] b) {
+        for (int i = 0; i < lanes; i++) {
+            a[i] -= b[i];
+        }
+    }
+
+    /**
+     * MUL in every lane.
+     *
+     * @param a the first operand, replaced by the result
+     * @param b the second operand
+     */
+    private void multiply(int[] a, int[] b) {
+        for (int i = 0; i < lanes; i++) {
+            a[i] *= b[i];
+        }
+    }
+
+    /**
+     * DIV or MOD in every lane.  Lanes dividing by zero are stopped and
+     * their result is 0.
+     *
+     * @param a the first operand, replaced by the result
+     * @param b the second operand
+     * @param modulus true for MOD, false for DIV
+     */
+    private void divide(int[] a, int[] b, boolean modulus) {
+        boolean zero = false;
+        for (int i = 0; i < lanes; i++) {
+            zero |= b[i] == 0;
+        }
+        if (zero) {
+            // the slow path, only when some lane divides by zero
+            for (int i = 0; i < lanes; i++) {
+                if (b[i] == 0) {
+                    stop(i, Errors.Type.DIVIDE_BY_ZERO);
+                    a[i] = 0;
+                } else {
+                    a[i] = modulus ? a[i] % b[i] : a[i] / b[i];
+                }
+            }
+        } else if (modulus) {
+            for (int i = 0; i < lanes; i++) {
+                a[i] %= b[i];
+            }
+        } else {
+            for (int i = 0; i < lanes; i++) {
+                a[i] /= b[i];
+            }
+        }
+    }
+
+    /**
+     * SQRT in every lane.  Lanes taking the square root of a negative
+     * number are stopped and their result is 0.
+     *
+     * @param a the operand, replaced by the result
+     */
+    private void squareRoot(int[] a) {
+        for (int i = 0; i < lanes; i++) {
+            if (a[i] < 0) {
+                stop(i, Errors.Type.NEGATIVE_SQUARE_ROOT);
+                a[i] = 0;
+            } else {
+                a[i] = (int) Math.sqrt(a[i]);
+            }
+        }
+    }
+
+    /**
+     * Stop a lane, keeping the first error it hit.
+     *
+     * @param lane the lane
+     * @param type the error
+     */
+    private void stop(int lane, Errors.Type type) {
+        if (errors[lane] == null) {
+            errors[lane] = type;
+        }
+    }
+}
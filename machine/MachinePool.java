@@ -0,0 +1,237 @@
+package machine;
+
+import common.BufferedSink;
+import common.Errors;
+import common.OutputSink;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Runs many MAQ programs at once, each on its own virtual thread with its
+ * own machine (and so its own frame and instruction stack).  The machines
+ * come from a {@link PooledRunner}, so a machine that has finished one
+ * program is reset and reused for the next.  Everything a
+ * program prints, including its error messages, is collected separately
+ * rather than interleaved, and an error only stops the program that caused
+ * it.
+ *
+ * <p>Each program prints through a {@link BufferedSink} of its own into
+ * its own buffer, and its errors go to another, so the programs share no
+ * stream and nothing else in the process is affected.
+ *
+ * @author jolin qiu
+ */
+public final class MachinePool {
+    /**
+     * The outcome of running one program.
+     *
+     * @param program the program file
+     * @param output what it printed to standard output
+     * @param errors what it printed to standard error
+     * @param succeeded whether it ran to completion
+     * @param nanos how long it took to assemble and execute
+     */
+    public record Result(Path program, String output, String errors, boolean succeeded, long nanos) {}
+
+    /** the command line option that selects the execution engine */
+    private final static String ENGINE_OPTION = "--engine=";
+
+    /** the command line usage message */
+    private final static String USAGE =
+            "Usage: java MachinePool [--engine=object|switch|bytecode|handles|register] directory|filename.maq|filename.maqb...";
+
+    /** the size of the buffer each program prints through */
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    /** the assembled programs, so that text run again is not parsed again */
+    private final ProgramCache cache;
+
+    /** the machines, reused from one program to the next */
+    private final PooledRunner machines;
+
+    /**
+     * Create a pool whose machines use an engine, with a cache of its own.
+     *
+     * @param engine the execution engine
+     */
+    public MachinePool(Maquina.Engine engine) {
+        this(engine, new ProgramCache(ProgramCache.DEFAULT_CAPACITY));
+    }
+
+    /**
+     * Create a pool whose machines use an engine and share a cache of
+     * assembled programs.
+     *
+     * @param engine the execution engine
+     * @param cache the assembled programs, shared with other pools
+     */
+    public MachinePool(Maquina.Engine engine, ProgramCache cache) {
+        this.cache = cache;
+        this.machines = new PooledRunner(engine, OutputSink.discard());
+    }
+
+    /**
+     * Get the cache of assembled programs.
+     *
+     * @return the cache
+     */
+    public ProgramCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Get the runner the machines come from.
+     *
+     * @return the runner
+     */
+    public PooledRunner getRunner() {
+        return machines;
+    }
+
+    /**
+     * Run programs concurrently, one virtual thread each, and wait for all
+     * of them to finish.
+     *
+     * @param programs the .maq or .maqb program files
+     * @return the results, in the same order as the programs
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public List<Result> run(List<Path> programs) throws InterruptedException {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Result>> futures = new ArrayList<>(programs.size());
+            for (Path program : programs) {
+                futures.add(executor.submit(() -> runOne(program)));
+            }
+            List<Result> results = new ArrayList<>(programs.size());
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    // runOne catches everything a program can throw
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return results;
+        }
+    }
+
+    /**
+     * Run one program on the current thread, collecting its output.
+     *
+     * @param program the program file
+     * @return the result
+     */
+    private Result runOne(Path program) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        // the output is closed, flushing it, whether or not the program fails
+        try (OutputSink output = new BufferedSink(out, BUFFER_SIZE)) {
+            Maquina machine = machines.acquire(output);
+            try {
+                if (program.toString().endsWith(ProgramFile.EXTENSION)) {
+                    machine.loadProgram(ProgramFile.read(program));
+                } else {
+                    machine.loadProgram(cache.assemble(program));
+                }
+                machine.execute();
+                succeeded = true;
+            } finally {
+                machines.release(machine);
+            }
+        } catch (Errors.Failure failure) {
+            failure.print(new PrintStream(err, true));
+        } catch (IOException | RuntimeException e) {
+            new PrintStream(err, true).println(e);
+        }
+        return new Result(program, out.toString(), err.toString(), succeeded, System.nanoTime() - start);
+    }
+
+    /**
+     * Find the programs named on the command line.  A directory stands for
+     * every .maq and .maqb file in it, in name order.
+     *
+     * @param names file and directory names
+     * @return the program files
+     * @throws IOException if a directory cannot be listed
+     */
+    private static List<Path> programs(List<String> names) throws IOException {
+        List<Path> programs = new ArrayList<>();
+        for (String name : names) {
+            Path path = Path.of(name);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.list(path)) {
+                    files.filter(file -> file.toString().endsWith(".maq")
+                                    || file.toString().endsWith(ProgramFile.EXTENSION))
+                            .sorted()
+                            .forEach(programs::add);
+                }
+            } else {
+                programs.add(path);
+            }
+        }
+        return programs;
+    }
+
+    /**
+     * Run every program named on the command line concurrently, then print
+     * each one's output in turn and the overall throughput.
+     *
+     * @param args an optional engine, then directories and program files
+     * @throws IOException if a directory cannot be listed
+     * @throws InterruptedException if interrupted while waiting for the programs
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Maquina.Engine engine = Maquina.Engine.OBJECT;
+        List<String> names = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith(ENGINE_OPTION)) {
+                try {
+                    engine = Maquina.Engine.valueOf(arg.substring(ENGINE_OPTION.length()).toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    System.out.println(USAGE);
+                    System.exit(1);
+                }
+            } else {
+                names.add(arg);
+            }
+        }
+        if (names.isEmpty()) {
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+
+        List<Path> programs = programs(names);
+        long start = System.nanoTime();
+        MachinePool pool = new MachinePool(engine);
+        List<Result> results = pool.run(programs);
+        long elapsed = System.nanoTime() - start;
+
+        int failed = 0;
+        for (Result result : results) {
+            System.out.println("==> " + result.program() + (result.succeeded() ? "" : " (failed)") + " <==");
+            System.out.print(result.output());
+            System.err.print(result.errors());
+            if (!result.succeeded()) {
+                failed++;
+            }
+        }
+        System.out.printf("(MAQ) Ran %d programs (%d failed) in %.1f ms on %d cores: %.1f programs/sec%n",
+                results.size(), failed, elapsed / 1e6, Runtime.getRuntime().availableProcessors(),
+                results.size() / (elapsed / 1e9));
+        System.out.println("(MAQ) Program cache: " + pool.getCache());
+        System.out.println("(MAQ) Machines: " + pool.getRunner());
+    }
+}
@@ -0,0 +1,45 @@
+package machine;
+
+import common.Errors;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+
+/**
+ * Converts MAQ programs between the text .maq format and the binary .maqb
+ * format.  The direction is chosen by the extension of the input file.
+ *
+ * @author jolin qiu
+ */
+public class MaqConverter {
+    /**
+     * The main method.
+     *
+     * @param args the input file and the output file
+     * @throws IOException if either file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: java MaqConverter input.maq output.maqb | input.maqb output.maq");
+            System.exit(1);
+        }
+
+        if (args[0].endsWith(ProgramFile.EXTENSION)) {
+            Program program = ProgramFile.read(Path.of(args[0]));
+            try (PrintWriter out = new PrintWriter(args[1])) {
+                out.print(program);
+            }
+        } else {
+            Program program = null;
+            try (InputStream maqIn = new FileInputStream(args[0])) {
+                program = Assembler.assemble(maqIn);
+            } catch (Errors.Failure failure) {
+                Errors.exit(failure);
+            }
+            ProgramFile.write(program, Path.of(args[1]));
+        }
+    }
+}
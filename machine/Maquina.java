@@ -1,14 +1,28 @@
 package machine;
 
 import common.Errors;
+import common.Namespace;
+import common.OutputSink;
 import common.SymbolTable;
+import machine.engine.BytecodeEngine;
+import machine.engine.CheckpointEngine;
+import machine.engine.HandleEngine;
+import machine.engine.Profiler;
+import machine.engine.RegisterEngine;
+import machine.engine.StreamEngine;
+import machine.engine.SwitchEngine;
 import machine.instructions.*;
 
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
 
 
 /**
@@ -58,13 +72,61 @@ public class Maquina {
                     SUBTRACT
             );
 
-    /** the terminating character when reading machine instructions from user (not file) */
-    private final static String EOF = ".";
+    /** the command line option that turns on the peephole optimizer */
+    private final static String OPTIMIZE_OPTION = "--optimize";
+
+    /** the command line option that selects the execution engine */
+    private final static String ENGINE_OPTION = "--engine=";
+
+    /** the command line option that turns on profiling, optionally followed by =file.csv */
+    private final static String PROFILE_OPTION = "--profile";
+
+    /** the command line option that chooses where output goes */
+    private final static String OUTPUT_OPTION = "--output=";
+
+    /** the command line option that verifies the program before it runs */
+    private final static String VERIFY_OPTION = "--verify";
+
+    /** the command line option that names the checkpoint file */
+    private final static String CHECKPOINT_OPTION = "--checkpoint=";
+
+    /** the command line option that sets the number of instructions between checkpoints */
+    private final static String INTERVAL_OPTION = "--checkpoint-interval=";
+
+    /** the command line option that executes each instruction as soon as it is read */
+    private final static String STREAM_OPTION = "--stream";
+
+    /** the name table of an empty instruction list */
+    private final static String[] NO_NAMES = new String[0];
+
+    /** the command line usage message */
+    private final static String USAGE = "Usage: java Maquina [--engine=object|switch|bytecode|handles|register] [--optimize]"
+            + " [--verify] [--profile[=file.csv]] [--checkpoint=file.maqc [--checkpoint-interval=N]]"
+            + System.lineSeparator()
+            + "           [--output=system|buffered|discard|file] [filename.maq|filename.maqb]"
+            + System.lineSeparator()
+            + "       java Maquina --stream [--output=system|buffered|discard|file] [filename.maq]";
+
+    /**
+     * The ways the machine can execute its assembled instructions.
+     */
+    public enum Engine {
+        /** call execute() on each Instruction object in turn */
+        OBJECT,
+        /** run the compact int encoding in a single switch loop */
+        SWITCH,
+        /** compile the program to JVM bytecode and run that */
+        BYTECODE,
+        /** link the program into a chain of method handles and call that */
+        HANDLES,
+        /** translate the program into three-address register form and run that */
+        REGISTER
+    }
 
     /**
-     * symbol table
+     * variable slots and values
      */
-    private final SymbolTable symbolTable;
+    private final Frame frame;
 
     /**
      * instruction stack
@@ -76,15 +138,134 @@ public class Maquina {
      */
     private final ArrayList<Instruction> instructionList;
 
+    /**
+     * the variable name of each of the instruction list's slots
+     */
+    private String[] instructionNames;
+
+    /**
+     * what the instruction list runs on here, made on first use
+     */
+    private Context context;
+
+    /**
+     * the compact encoding of the instruction list, built on first use
+     */
+    private Program program;
+
+    /**
+     * how the instructions are executed
+     */
+    private Engine engine;
+
+    /**
+     * whether loaded programs are verified before they can run
+     */
+    private boolean verifying;
+
+    /**
+     * whether execute() profiles the program
+     */
+    private boolean profiling;
+
+    /**
+     * the file execute() saves checkpoints to and resumes from, or null
+     */
+    private Path checkpointFile;
+
+    /**
+     * the number of instructions between checkpoints
+     */
+    private int checkpointInterval;
+
+    /**
+     * the profile of the program, once it has been executed with profiling on
+     */
+    private Profiler profiler;
+
+    /**
+     * where everything the machine prints goes
+     */
+    private OutputSink output;
+
     /**
      * Create a new machine, with an empty symbol table, instruction stack, and
-     * list of instructions.
+     * list of instructions, printing to standard output.
      */
     public Maquina() {
+        this(OutputSink.system());
+    }
+
+    /**
+     * Create a new machine, with an empty symbol table, instruction stack, and
+     * list of instructions, printing to a sink.
+     *
+     * @param output where everything the machine prints goes
+     */
+    public Maquina(OutputSink output) {
+        this(InstructionStack.DEFAULT_CAPACITY, InstructionStack.DEFAULT_MAX_DEPTH, output);
+    }
+
+    /**
+     * Create a new machine whose instruction stack starts with room for
+     * stackCapacity values and may never hold more than maxStackDepth.
+     * Sizing the stack up front means execute() never has to grow it.
+     *
+     * @param stackCapacity the initial capacity of the instruction stack
+     * @param maxStackDepth the maximum depth of the instruction stack
+     */
+    public Maquina(int stackCapacity, int maxStackDepth) {
+        this(stackCapacity, maxStackDepth, OutputSink.system());
+    }
+
+    /**
+     * Create a new machine with a sized instruction stack, printing to a
+     * sink.
+     *
+     * @param stackCapacity the initial capacity of the instruction stack
+     * @param maxStackDepth the maximum depth of the instruction stack
+     * @param output where everything the machine prints goes
+     */
+    public Maquina(int stackCapacity, int maxStackDepth, OutputSink output) {
+        this(stackCapacity, maxStackDepth, output, new Frame());
+    }
+
+    /**
+     * Create a new machine whose variables live in a namespace that other
+     * machines may share, printing to a sink.  Whatever any of them stores
+     * the others load, and the symbol table displayed after execution is
+     * the whole namespace.
+     *
+     * @param globals where the variables live
+     * @param output where everything the machine prints goes
+     */
+    public Maquina(Namespace globals, OutputSink output) {
+        this(InstructionStack.DEFAULT_CAPACITY, InstructionStack.DEFAULT_MAX_DEPTH, output, new SharedFrame(globals));
+    }
+
+    /**
+     * Create a new machine over a frame.
+     *
+     * @param stackCapacity the initial capacity of the instruction stack
+     * @param maxStackDepth the maximum depth of the instruction stack
+     * @param output where everything the machine prints goes
+     * @param frame the variable slots
+     */
+    private Maquina(int stackCapacity, int maxStackDepth, OutputSink output, Frame frame) {
         //initialize an empty symbol table and instruction list
-        this.symbolTable = new SymbolTable();
-        this.instructionStack = new InstructionStack();
+        this.frame = frame;
+        this.instructionStack = new InstructionStack(stackCapacity, maxStackDepth);
         this.instructionList = new ArrayList<>();
+        this.instructionNames = NO_NAMES;
+        this.context = null;
+        this.program = null;
+        this.engine = Engine.OBJECT;
+        this.verifying = false;
+        this.profiling = false;
+        this.profiler = null;
+        this.checkpointFile = null;
+        this.checkpointInterval = CheckpointEngine.DEFAULT_INTERVAL;
+        this.output = output;
     }
 
     //getters
@@ -99,12 +280,164 @@ public class Maquina {
     }
 
     /**
-     * Return the symbol table.
+     * Return where the machine prints.
+     *
+     * @return the output sink
+     */
+    public OutputSink getOutput() {
+        return output;
+    }
+
+    /**
+     * Send what the machine prints somewhere else from now on, so that a
+     * reused machine can print each program's output to its own sink.
+     *
+     * @param output where everything the machine prints goes
+     */
+    public void setOutput(OutputSink output) {
+        this.output = output;
+        this.context = null;
+    }
+
+    /**
+     * Return the frame holding the variable slots.
+     *
+     * @return the frame
+     */
+    public Frame getFrame() {
+        return frame;
+    }
+
+    /**
+     * Return a symbol table view of the variables stored so far.  The view
+     * is rebuilt from the frame on every call.
      *
      * @return the symbol table
      */
     public SymbolTable getSymbolTable() {
-        return symbolTable;
+        return frame.toSymbolTable();
+    }
+
+    /**
+     * Return the assembled instructions.  They keep nothing of this machine,
+     * so any number of machines can run them at once, each through a
+     * {@link Context} made from {@link #getInstructionNames()}.
+     *
+     * @return the instructions, which cannot be changed
+     */
+    public List<Instruction> getInstructions() {
+        return Collections.unmodifiableList(instructionList);
+    }
+
+    /**
+     * Return the variable name of each slot the assembled LOAD and STORE
+     * instructions carry.
+     *
+     * @return the names, indexed by slot
+     */
+    public String[] getInstructionNames() {
+        return Arrays.copyOf(instructionNames, instructionNames.length);
+    }
+
+    /**
+     * Return the compact encoding of the assembled instructions.
+     *
+     * @return the program
+     */
+    public Program getProgram() {
+        if (program == null) {
+            program = Program.encode(instructionList);
+        }
+        return program;
+    }
+
+    /**
+     * Choose how execute() runs the assembled instructions.
+     *
+     * @param engine the execution engine
+     */
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Turn verification on or off.  While it is on, every program loaded
+     * is checked by the {@link Verifier}, together with anything loaded
+     * before it, and rejected if it could pop an empty stack or load a
+     * variable it has not stored.  Verified programs run without those
+     * checks on the switch and bytecode engines.
+     *
+     * @param verifying whether to verify
+     */
+    public void setVerifying(boolean verifying) {
+        this.verifying = verifying;
+    }
+
+    /**
+     * Turn checkpointing on or off.  While it is on, execute() saves the
+     * variables, the stack and the position to a file every so many
+     * instructions, and first resumes from the latest checkpoint in the file
+     * whose instructions before it are unchanged.  See {@link CheckpointEngine}.
+     *
+     * @param file the checkpoint file, or null to turn checkpointing off
+     * @param interval the number of instructions between checkpoints
+     */
+    public void setCheckpointing(Path file, int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("checkpoint interval " + interval);
+        }
+        this.checkpointFile = file;
+        this.checkpointInterval = interval;
+    }
+
+    /**
+     * Turn profiling on or off.  While it is on, execute() runs the program
+     * under a {@link Profiler}, whatever the engine, and prints its report.
+     *
+     * @param profiling whether to profile
+     */
+    public void setProfiling(boolean profiling) {
+        this.profiling = profiling;
+    }
+
+    /**
+     * Return the profile gathered by execute().  Executing the same program
+     * again adds to it.
+     *
+     * @return the profile, or null if nothing has been profiled
+     */
+    public Profiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Clear the machine so that it can run another program: the instruction
+     * list, the variables, the instruction stack and any profile are all
+     * emptied, but the memory they have grown to is kept, and so is the
+     * machine's configuration (engine, verification, profiling and
+     * checkpointing).  A machine over a shared namespace forgets its slots
+     * but not the shared variables, which other machines may be using.
+     */
+    public void reset() {
+        instructionList.clear();
+        instructionNames = NO_NAMES;
+        context = null;
+        program = null;
+        profiler = null;
+        frame.clear();
+        instructionStack.clear();
+    }
+
+    /**
+     * Load a program in place of whatever the machine had, as if on a new
+     * machine, without allocating one.
+     *
+     * @param program the program
+     * @throws Errors.Failure if verification is on and the program is rejected
+     */
+    public void replaceProgram(Program program) {
+        reset();
+        loadProgram(program);
     }
 
     // Maquina construction
@@ -113,52 +446,196 @@ public class Maquina {
      *
      * @param maqIn the input source
      * @param stdin true if input is coming from standard input (for prompting)
+     * @throws IOException if the input cannot be read
+     */
+    public void assemble(InputStream maqIn, boolean stdin) throws IOException {
+        // decode the text straight into the compact form, then make an
+        // Instruction object for each instruction
+        Program.Builder builder = new Program.Builder();
+        new Assembler(maqIn, stdin, output).assemble(builder);
+        loadProgram(builder.build());
+    }
+
+    /**
+     * Execute machine instructions as they are read, without assembling
+     * them first.  Each instruction is executed as soon as its line is
+     * decoded and is then discarded, so the first results appear straight
+     * away and an input of any length runs in constant memory.  There is
+     * no listing, and the instructions are not kept for execute().  When
+     * reading standard input, output is flushed before each prompt.
+     *
+     * @param maqIn the input source
+     * @param stdin true if input is coming from standard input (for prompting)
+     * @return the number of instructions executed
+     * @throws IOException if the input cannot be read
      */
-    public void assemble(Scanner maqIn, boolean stdin) {
-        Instruction instruction = null;
+    public long stream(InputStream maqIn, boolean stdin) throws IOException {
+        output.println("(MAQ) Executing as instructions are read...");
+        Assembler assembler = new Assembler(maqIn, stdin, output);
+        StreamEngine streamer = new StreamEngine(this);
         if (stdin) {
-            System.out.print("🤖 ");
-            maqIn = new Scanner(System.in);
+            output.flush();
         }
-        // for each instruction, make an Instruction object and store in a list
-        while (maqIn.hasNextLine()) {
-            //read and split the line into an array of strings
-            String[] fields = maqIn.nextLine().strip().split("\\s+");
-            String operation = fields[0];
-            //[PUSH, 10] instruction = index 0, value/var = index 1
-            switch (operation) {
-                case "PUSH" -> instruction = new Push(Integer.parseInt(fields[1]), this);
-                case "PRINT" -> instruction = new Print(this);
-                case "STORE" -> instruction = new Store((fields[1]), this);
-                case "LOAD" -> instruction = new Load((fields[1]), this);
-                case "NEG" -> instruction = new Negate(this);
-                case "SQRT" -> instruction = new SquareRoot(this);
-                case "ADD" -> instruction = new Add(this);
-                case "SUB" -> instruction = new Subtract(this);
-                case "MUL" -> instruction = new Multiply(this);
-                case "DIV" -> instruction = new Divide(this);
-                case "MOD" -> instruction = new Modulus(this);
-                default -> {
-                    // if it's NOT stdin and ".", or stdin and NOT "."
-                    // then it's just an illegal operation
-                    if (!stdin || !operation.equals(EOF)){
-                        Errors.report(Errors.Type.ILLEGAL_INSTRUCTION, fields[0]);
-                    }
-                }
+        while (assembler.next(streamer)) {
+            if (stdin) {
+                output.flush();
             }
-            // none of the above true => continue with printing bot for operations
-            if (stdin && !fields[0].equals(EOF)) {
-                System.out.print("🤖 ");
-                // it is stdin and EOF = terminate
-            } else if (stdin){
-                break;
+        }
+        finish();
+        return streamer.executed();
+    }
+
+    /**
+     * Load an already assembled program, such as one read from a binary
+     * .maqb file, in place of assembling MAQ text.
+     *
+     * @param program the program
+     * @throws Errors.Failure if verification is on and the program is rejected
+     */
+    public void loadProgram(Program program) {
+        int before = this.instructionList.size();
+        link(program);
+        this.program = before == 0 ? program : null;
+        if (verifying) {
+            try {
+                this.program = Verifier.verify(getProgram());
+            } catch (Errors.Failure failure) {
+                // a rejected program is not kept, or listed
+                this.instructionList.subList(before, this.instructionList.size()).clear();
+                this.program = null;
+                throw failure;
+            }
+        }
+        listInstructions();
+    }
+
+    /**
+     * Run the peephole optimizer over the assembled instructions, replacing
+     * them with the optimized ones.
+     *
+     * @return the number of instructions removed
+     */
+    public int optimize() {
+        Program original = getProgram();
+        Program optimized = Optimizer.optimize(original);
+        if (optimized != original) {
+            this.instructionList.clear();
+            this.instructionNames = NO_NAMES;
+            link(optimized);
+        }
+        this.program = verifying ? Verifier.verify(optimized) : optimized;
+        int removed = original.size() - optimized.size();
+        output.println("(MAQ) Optimized away " + removed + " instructions");
+        return removed;
+    }
+
+    /**
+     * Make an Instruction object for each instruction of a program and add
+     * them to the instruction list.  The common sequences LOAD / LOAD / op,
+     * PUSH / op and op / STORE (for ADD, SUB and MUL) are fused into a
+     * single instruction, which still lists as the instructions it replaces.
+     * Instructions without an operand are shared, and LOAD and STORE carry
+     * the slot of their variable in the instruction list's own name table,
+     * which takes in the program's names.
+     *
+     * @param program the program
+     */
+    private void link(Program program) {
+        int[] code = program.code();
+        String[] names = program.names();
+        this.context = null;
+        int[] slots = new int[names.length];
+        if (this.instructionNames.length == 0) {
+            // the first program's names are the list's, slot for slot
+            this.instructionNames = names;
+            for (int i = 0; i < names.length; i++) {
+                slots[i] = i;
+            }
+        } else {
+            Map<String, Integer> known = new HashMap<>();
+            for (int i = 0; i < this.instructionNames.length; i++) {
+                known.put(this.instructionNames[i], i);
+            }
+            List<String> merged = new ArrayList<>(Arrays.asList(this.instructionNames));
+            for (int i = 0; i < names.length; i++) {
+                slots[i] = known.computeIfAbsent(names[i], name -> {
+                    merged.add(name);
+                    return merged.size() - 1;
+                });
+            }
+            this.instructionNames = merged.toArray(new String[0]);
+        }
+        this.instructionList.ensureCapacity(this.instructionList.size() + program.size());
+        int pc = 0;
+        while (pc < code.length) {
+            int second = program.next(pc);
+            int third = second < code.length ? program.next(second) : second;
+            int secondOpcode = second < code.length ? code[second] : -1;
+            int thirdOpcode = third < code.length ? code[third] : -1;
+            Instruction instruction;
+            if (code[pc] == Opcode.LOAD && secondOpcode == Opcode.LOAD && isFusable(thirdOpcode)) {
+                int first = code[pc + 1];
+                int next = code[second + 1];
+                instruction = switch (thirdOpcode) {
+                    case Opcode.ADD -> new LoadLoadAdd(names[first], slots[first], names[next], slots[next]);
+                    case Opcode.SUBTRACT -> new LoadLoadSub(names[first], slots[first], names[next], slots[next]);
+                    default -> new LoadLoadMul(names[first], slots[first], names[next], slots[next]);
+                };
+                pc = program.next(third);
+            } else if (code[pc] == Opcode.PUSH && isFusable(secondOpcode)) {
+                instruction = switch (secondOpcode) {
+                    case Opcode.ADD -> new PushAdd(code[pc + 1]);
+                    case Opcode.SUBTRACT -> new PushSub(code[pc + 1]);
+                    default -> new PushMul(code[pc + 1]);
+                };
+                pc = third;
+            } else if (isFusable(code[pc]) && secondOpcode == Opcode.STORE) {
+                int slot = code[second + 1];
+                instruction = switch (code[pc]) {
+                    case Opcode.ADD -> new AddStore(names[slot], slots[slot]);
+                    case Opcode.SUBTRACT -> new SubStore(names[slot], slots[slot]);
+                    default -> new MulStore(names[slot], slots[slot]);
+                };
+                pc = third;
+            } else {
+                instruction = switch (code[pc]) {
+                    case Opcode.PUSH -> new Push(code[pc + 1]);
+                    case Opcode.PRINT -> Print.INSTANCE;
+                    case Opcode.STORE -> new Store(names[code[pc + 1]], slots[code[pc + 1]]);
+                    case Opcode.LOAD -> new Load(names[code[pc + 1]], slots[code[pc + 1]]);
+                    case Opcode.NEGATE -> Negate.INSTANCE;
+                    case Opcode.SQUARE_ROOT -> SquareRoot.INSTANCE;
+                    case Opcode.ADD -> Add.INSTANCE;
+                    case Opcode.SUBTRACT -> Subtract.INSTANCE;
+                    case Opcode.MULTIPLY -> Multiply.INSTANCE;
+                    case Opcode.DIVIDE -> Divide.INSTANCE;
+                    default -> Modulus.INSTANCE;
+                };
+                pc = second;
             }
             this.instructionList.add(instruction);
         }
-            System.out.println("(MAQ) Machine instructions:");
+    }
+
+    /**
+     * Can an opcode be fused with the instructions around it?  Only the
+     * operations that can never report an error are.
+     *
+     * @param opcode the opcode, or -1 past the end of the program
+     * @return whether it is ADD, SUB or MUL
+     */
+    private static boolean isFusable(int opcode) {
+        return opcode == Opcode.ADD || opcode == Opcode.SUBTRACT || opcode == Opcode.MULTIPLY;
+    }
+
+    /**
+     * Display the assembled instructions.
+     */
+    private void listInstructions() {
+            output.println("(MAQ) Machine instructions:");
         // lambda expression test
-        // alt method reference : instructionList.forEach(System.out::println);
-         instructionList.forEach(t -> System.out.println(t));
+         instructionList.forEach(t -> output.println(t.toString()));
+         output.flush();
         }
 
     /**
@@ -167,43 +644,177 @@ public class Maquina {
      */
     public void execute() {
 
-        System.out.println("(MAQ) Executing...");
+        output.println("(MAQ) Executing...");
         // executes each instruction
         // alt lambda expression : instructionList.forEach(t -> t.execute);
-        instructionList.forEach(Instruction::execute);
+        if (profiling) {
+            if (profiler == null || profiler.program() != getProgram()) {
+                profiler = new Profiler(getProgram());
+            }
+            profiler.run(this);
+        } else if (checkpointFile != null) {
+            int resumed = CheckpointEngine.run(getProgram(), this, checkpointFile, checkpointInterval);
+            if (resumed > 0) {
+                output.println("(MAQ) Resumed from the checkpoint before instruction " + resumed);
+            }
+        } else {
+            switch (engine) {
+                case OBJECT -> {
+                    if (context == null) {
+                        context = new Context(this, instructionNames);
+                    }
+                    instructionList.forEach(t -> t.execute(context));
+                }
+                case SWITCH -> SwitchEngine.run(getProgram(), this);
+                case BYTECODE -> BytecodeEngine.run(getProgram(), this);
+                case HANDLES -> HandleEngine.run(getProgram(), this);
+                case REGISTER -> RegisterEngine.run(getProgram(), this);
+            }
+        }
 
-        System.out.println("(MAQ) Completed execution!");
-        System.out.print("(MAQ) Symbol table:"
-        + "\n" + symbolTable);
+        finish();
+    }
+
+    /**
+     * Announce the end of execution and display the symbol table, the
+     * instruction stack and, when profiling, the profile.
+     */
+    private void finish() {
+        output.println("(MAQ) Completed execution!");
+        output.print("(MAQ) Symbol table:"
+        + "\n" + getSymbolTable());
 
-        System.out.println(instructionStack);
+        output.println(instructionStack.toString());
+        if (profiling) {
+            output.print(profiler.report());
+        }
+        output.flush();
     }
 
     /**
      * The main method.  Machine instructions can either be specified from standard input
-     * (no command line), or from a file (only argument on command line).  From
+     * (no file name), or from a file (the file name on the command line), which
+     * is either MAQ text or a binary .maqb program.  From
      * here the machine assembles the instructions and then executes them.
+     * The optional --engine=object|switch|bytecode|handles|register chooses how they are
+     * executed, --optimize runs the peephole optimizer in between, and
+     * --profile reports where the time went, also writing it to a CSV file
+     * if one is named.  --output=buffered prints through a large buffer,
+     * --output=discard prints nothing and --output=file prints to a file.
+     * --checkpoint=file.maqc saves checkpoints every
+     * --checkpoint-interval=N instructions and resumes a re-run from the
+     * latest one that still applies.  --verify rejects a program that could pop an empty stack or load a
+     * variable it has not stored before it runs.  --stream executes MAQ text
+     * as it is read instead, so it cannot be combined with --optimize,
+     * --verify or --profile.
      *
-     * @param args command line argument (optional)
-     * @throws FileNotFoundException if the machine file is not found
-     */
-    public static void main(String[] args) throws FileNotFoundException {
-        // determine input source
-        Scanner maqIn = null;
-        boolean stdin = false;
-        if (args.length == 0) {
-            maqIn = new Scanner(System.in);
-            stdin = true;
-        } else if (args.length == 1){
-            maqIn = new Scanner(new File(args[0]));
-        } else {
-            System.out.println("Usage: java Maquina [filename.maq]");
+     * @param args command line arguments (optional)
+     * @throws IOException if the machine file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        // determine options and input source
+        Engine engine = Engine.OBJECT;
+        boolean optimize = false;
+        boolean profile = false;
+        boolean stream = false;
+        boolean verify = false;
+        String checkpointName = null;
+        int interval = CheckpointEngine.DEFAULT_INTERVAL;
+        String csvName = null;
+        String outputName = "system";
+        String fileName = null;
+        for (String arg : args) {
+            if (arg.startsWith(OUTPUT_OPTION)) {
+                outputName = arg.substring(OUTPUT_OPTION.length());
+            } else if (arg.startsWith(CHECKPOINT_OPTION)) {
+                checkpointName = arg.substring(CHECKPOINT_OPTION.length());
+            } else if (arg.startsWith(INTERVAL_OPTION)) {
+                try {
+                    interval = Integer.parseInt(arg.substring(INTERVAL_OPTION.length()));
+                } catch (NumberFormatException e) {
+                    interval = 0;
+                }
+                if (interval <= 0) {
+                    System.out.println(USAGE);
+                    System.exit(1);
+                }
+            } else if (arg.equals(VERIFY_OPTION)) {
+                verify = true;
+            } else if (arg.equals(STREAM_OPTION)) {
+                stream = true;
+            } else if (arg.equals(OPTIMIZE_OPTION)) {
+                optimize = true;
+            } else if (arg.equals(PROFILE_OPTION)) {
+                profile = true;
+            } else if (arg.startsWith(PROFILE_OPTION + "=")) {
+                profile = true;
+                csvName = arg.substring(PROFILE_OPTION.length() + 1);
+            } else if (arg.startsWith(ENGINE_OPTION)) {
+                try {
+                    engine = Engine.valueOf(arg.substring(ENGINE_OPTION.length()).toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    System.out.println(USAGE);
+                    System.exit(1);
+                }
+            } else if (fileName == null) {
+                fileName = arg;
+            } else {
+                System.out.println(USAGE);
+                System.exit(1);
+            }
+        }
+
+        if (stream && (optimize || profile || verify || checkpointName != null
+                || fileName != null && fileName.endsWith(ProgramFile.EXTENSION))) {
+            System.out.println(USAGE);
             System.exit(1);
         }
 
-        Maquina machine = new Maquina();
-        machine.assemble(maqIn, stdin);     // assemble the machine instructions
-        machine.execute();                  // execute the program
-        maqIn.close();
+        // the output is closed, flushing anything buffered, before an error is printed
+        try (OutputSink output = OutputSink.of(outputName)) {
+            Maquina machine = new Maquina(output);
+            machine.setEngine(engine);
+            machine.setVerifying(verify);
+            if (checkpointName != null) {
+                machine.setCheckpointing(Path.of(checkpointName), interval);
+            }
+            machine.setProfiling(profile);
+            if (fileName != null && fileName.endsWith(ProgramFile.EXTENSION)) {
+                // binary programs are already assembled
+                machine.loadProgram(ProgramFile.read(Path.of(fileName)));
+                if (optimize) {
+                    machine.optimize();
+                }
+                machine.execute();
+                if (csvName != null) {
+                    machine.getProfiler().writeCsv(Path.of(csvName));
+                }
+                return;
+            }
+            InputStream maqIn;
+            boolean stdin = false;
+            if (fileName == null) {
+                maqIn = System.in;
+                stdin = true;
+            } else {
+                maqIn = new FileInputStream(fileName);
+            }
+            if (stream) {
+                machine.stream(maqIn, stdin);   // execute the instructions as they are read
+                maqIn.close();
+                return;
+            }
+            machine.assemble(maqIn, stdin);     // assemble the machine instructions
+            if (optimize) {
+                machine.optimize();             // rewrite the instructions
+            }
+            machine.execute();                  // execute the program
+            maqIn.close();
+            if (csvName != null) {
+                machine.getProfiler().writeCsv(Path.of(csvName));
+            }
+        } catch (Errors.Failure failure) {
+            Errors.exit(failure);
+        }
     }
 }
@@ -0,0 +1,117 @@
+package machine;
+
+/**
+ * The numeric opcodes of the MAQ instructions, as used by the compact
+ * int encoding of a {@link Program}.  PUSH, LOAD and STORE are followed by
+ * one operand word (the value or the variable slot); the others stand alone.
+ *
+ * @author jolin qiu
+ */
+public final class Opcode {
+    /** the push instruction */
+    public static final int PUSH = 0;
+    /** the print instruction */
+    public static final int PRINT = 1;
+    /** the store instruction */
+    public static final int STORE = 2;
+    /** the load instruction */
+    public static final int LOAD = 3;
+    /** the negate instruction */
+    public static final int NEGATE = 4;
+    /** the square root instruction */
+    public static final int SQUARE_ROOT = 5;
+    /** the add instruction */
+    public static final int ADD = 6;
+    /** the subtract instruction */
+    public static final int SUBTRACT = 7;
+    /** the multiply instruction */
+    public static final int MULTIPLY = 8;
+    /** the divide instruction */
+    public static final int DIVIDE = 9;
+    /** the modulus instruction */
+    public static final int MODULUS = 10;
+
+    /** the number of opcodes */
+    public static final int COUNT = 11;
+
+    /** the mnemonic of each opcode */
+    private static final String[] MNEMONICS = {
+            Maquina.PUSH,
+            Maquina.PRINT,
+            Maquina.STORE,
+            Maquina.LOAD,
+            Maquina.NEGATE,
+            Maquina.SQUARE_ROOT,
+            Maquina.ADD,
+            Maquina.SUBTRACT,
+            Maquina.MULTIPLY,
+            Maquina.DIVIDE,
+            Maquina.MODULUS
+    };
+
+    /** the change in stack depth caused by each opcode */
+    private static final int[] STACK_EFFECTS = {1, -1, -1, 1, 0, 0, -1, -1, -1, -1, -1};
+
+    /** the number of values each opcode pops */
+    private static final int[] POPS = {0, 1, 1, 0, 1, 1, 2, 2, 2, 2, 2};
+
+    /**
+     * Opcodes are constants only.
+     */
+    private Opcode() {}
+
+    /**
+     * Get the MAQ mnemonic of an opcode.
+     *
+     * @param opcode the opcode
+     * @return the mnemonic, e.g. "PUSH"
+     */
+    public static String mnemonic(int opcode) {
+        return MNEMONICS[opcode];
+    }
+
+    /**
+     * Get the opcode of a MAQ mnemonic.
+     *
+     * @param mnemonic the mnemonic, e.g. "PUSH"
+     * @return the opcode, or -1 if it is not a valid instruction
+     */
+    public static int of(String mnemonic) {
+        for (int opcode = 0; opcode < COUNT; opcode++) {
+            if (MNEMONICS[opcode].equals(mnemonic)) {
+                return opcode;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Is the opcode followed by an operand word?
+     *
+     * @param opcode the opcode
+     * @return true for PUSH, LOAD and STORE
+     */
+    public static boolean hasOperand(int opcode) {
+        return opcode == PUSH || opcode == LOAD || opcode == STORE;
+    }
+
+    /**
+     * Get the net change in stack depth when the opcode executes.
+     *
+     * @param opcode the opcode
+     * @return the number of values pushed minus the number popped
+     */
+    public static int stackEffect(int opcode) {
+        return STACK_EFFECTS[opcode];
+    }
+
+    /**
+     * Get the number of values the opcode pops before it pushes anything.
+     *
+     * @param opcode the opcode
+     * @return the number of values popped
+     */
+    public static int pops(int opcode) {
+        return POPS[opcode];
+    }
+}
@@ -0,0 +1,212 @@
+package machine;
+
+import java.util.Arrays;
+
+/**
+ * A peephole optimizer for assembled programs.  Instructions are copied one
+ * at a time to an output window, and after each one the tail of the window
+ * is rewritten for as long as a rule applies, so folds cascade through
+ * whole constant expressions.  The rules are:
+ * <pre>
+ *     PUSH a / PUSH b / op   =&gt; PUSH (a op b)   (not DIV or MOD by 0)
+ *     PUSH a / NEG           =&gt; PUSH -a
+ *     PUSH a / SQRT          =&gt; PUSH sqrt(a)     (not for a &lt; 0)
+ *     NEG / NEG              =&gt; (nothing)
+ *     PUSH 0 / ADD, PUSH 0 / SUB, PUSH 1 / MUL, PUSH 1 / DIV  =&gt; (nothing)
+ * </pre>
+ * Anything that raises an error at run time is left in place, so a DIV by a
+ * literal 0 still reports a divide by zero when it executes.  Rules that
+ * drop an instruction operating on an earlier value only apply when that
+ * value is known to be on the stack.
+ *
+ * @author jolin qiu
+ */
+public final class Optimizer {
+    /** the opcode of each instruction in the window */
+    private int[] opcodes;
+
+    /** the operand of each instruction in the window */
+    private int[] operands;
+
+    /** the stack depth, relative to the start, before each instruction in the window */
+    private int[] depths;
+
+    /** the number of instructions in the window */
+    private int size;
+
+    /** the stack depth after the last instruction in the window */
+    private int depth;
+
+    /**
+     * Create an optimizer with room for some instructions.
+     *
+     * @param capacity the expected number of instructions
+     */
+    private Optimizer(int capacity) {
+        this.opcodes = new int[Math.max(capacity, 4)];
+        this.operands = new int[this.opcodes.length];
+        this.depths = new int[this.opcodes.length];
+    }
+
+    /**
+     * Optimize a program.
+     *
+     * @param program the program
+     * @return an equivalent program, which may be the same one if nothing changed
+     */
+    public static Program optimize(Program program) {
+        Optimizer optimizer = new Optimizer(program.size());
+        int[] code = program.code();
+        for (int pc = 0; pc < code.length; pc = program.next(pc)) {
+            optimizer.append(code[pc], Opcode.hasOperand(code[pc]) ? code[pc + 1] : 0);
+        }
+        if (optimizer.size == program.size()) {
+            return program;
+        }
+
+        Program.Builder builder = new Program.Builder(optimizer.size * 2);
+        for (String name : program.names()) {
+            builder.slot(name);
+        }
+        for (int i = 0; i < optimizer.size; i++) {
+            if (Opcode.hasOperand(optimizer.opcodes[i])) {
+                builder.emit(optimizer.opcodes[i], optimizer.operands[i]);
+            } else {
+                builder.emit(optimizer.opcodes[i]);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Add an instruction to the window and rewrite the tail.
+     *
+     * @param opcode the opcode
+     * @param operand the operand, if it has one
+     */
+    private void append(int opcode, int operand) {
+        push(opcode, operand);
+        while (rewrite()) {
+            // keep folding
+        }
+    }
+
+    /**
+     * Add an instruction to the end of the window.
+     *
+     * @param opcode the opcode
+     * @param operand the operand, if it has one
+     */
+    private void push(int opcode, int operand) {
+        if (size == opcodes.length) {
+            opcodes = Arrays.copyOf(opcodes, size * 2);
+            operands = Arrays.copyOf(operands, size * 2);
+            depths = Arrays.copyOf(depths, size * 2);
+        }
+        opcodes[size] = opcode;
+        operands[size] = operand;
+        depths[size] = depth;
+        depth += Opcode.stackEffect(opcode);
+        size++;
+    }
+
+    /**
+     * Remove instructions from the end of the window.
+     *
+     * @param count the number to remove
+     */
+    private void drop(int count) {
+        size -= count;
+        depth = depths[size];
+    }
+
+    /**
+     * Is the instruction at an index a PUSH?
+     *
+     * @param index the index in the window
+     * @return whether it is a PUSH
+     */
+    private boolean isPush(int index) {
+        return index >= 0 && opcodes[index] == Opcode.PUSH;
+    }
+
+    /**
+     * Apply the first rule that matches the tail of the window.
+     *
+     * @return whether anything was rewritten
+     */
+    private boolean rewrite() {
+        int last = size - 1;
+        int opcode = opcodes[last];
+        switch (opcode) {
+            case Opcode.NEGATE -> {
+                if (isPush(last - 1)) {
+                    int value = operands[last - 1];
+                    drop(2);
+                    push(Opcode.PUSH, -value);
+                    return true;
+                }
+                if (last >= 1 && opcodes[last - 1] == Opcode.NEGATE && depths[last - 1] >= 1) {
+                    drop(2);
+                    return true;
+                }
+            }
+            case Opcode.SQUARE_ROOT -> {
+                // a negative square root must still be reported at run time
+                if (isPush(last - 1) && operands[last - 1] >= 0) {
+                    int value = operands[last - 1];
+                    drop(2);
+                    push(Opcode.PUSH, (int) Math.sqrt(value));
+                    return true;
+                }
+            }
+            case Opcode.ADD, Opcode.SUBTRACT, Opcode.MULTIPLY, Opcode.DIVIDE, Opcode.MODULUS -> {
+                if (!isPush(last - 1)) {
+                    return false;
+                }
+                int second = operands[last - 1];
+                if (isPush(last - 2)) {
+                    // a division by 0 must still be reported at run time
+                    if (second == 0 && (opcode == Opcode.DIVIDE || opcode == Opcode.MODULUS)) {
+                        return false;
+                    }
+                    int first = operands[last - 2];
+                    drop(3);
+                    push(Opcode.PUSH, fold(opcode, first, second));
+                    return true;
+                }
+                boolean identity = switch (opcode) {
+                    case Opcode.ADD, Opcode.SUBTRACT -> second == 0;
+                    case Opcode.MULTIPLY, Opcode.DIVIDE -> second == 1;
+                    default -> false;
+                };
+                if (identity && depths[last - 1] >= 1) {
+                    drop(2);
+                    return true;
+                }
+            }
+            default -> {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compute a binary operation on two constants, as the machine would.
+     *
+     * @param opcode the operation
+     * @param first the first operand
+     * @param second the second operand (not 0 for DIV or MOD)
+     * @return the result
+     */
+    private static int fold(int opcode, int first, int second) {
+        return switch (opcode) {
+            case Opcode.ADD -> first + second;
+            case Opcode.SUBTRACT -> first - second;
+            case Opcode.MULTIPLY -> first * second;
+            case Opcode.DIVIDE -> first / second;
+            default -> first % second;
+        };
+    }
+}
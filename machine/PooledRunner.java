@@ -0,0 +1,184 @@
+package machine;
+
+import common.OutputSink;
+import machine.engine.CheckpointEngine;
+
+import java.util.ArrayDeque;
+
+/**
+ * Runs a stream of programs on a pool of reusable machines instead of a
+ * new machine each.  A machine is taken from the pool (or made, if none
+ * is idle), loaded and run, then {@link Maquina#reset() reset} and put
+ * back, so its frame, instruction stack and instruction list keep the
+ * capacity they have grown to and the next program allocates none of
+ * them.  Any number of threads can share a runner; each machine is only
+ * ever used by one at a time, and can be given a sink of its own for the
+ * program it runs, so that threads do not share one output.
+ *
+ * @author jolin qiu
+ */
+public final class PooledRunner {
+    /** the number of idle machines kept when none is given */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /** how the machines execute */
+    private final Maquina.Engine engine;
+
+    /** where the machines print unless given a sink of their own */
+    private final OutputSink output;
+
+    /** the most idle machines kept */
+    private final int capacity;
+
+    /** the idle machines */
+    private final ArrayDeque<Maquina> idle;
+
+    /** the number of machines made */
+    private long created;
+
+    /** the number of times an idle machine was taken instead */
+    private long reused;
+
+    /**
+     * Create a runner that keeps up to the default number of idle machines.
+     *
+     * @param engine how the machines execute
+     * @param output where the machines print unless given a sink of their own
+     */
+    public PooledRunner(Maquina.Engine engine, OutputSink output) {
+        this(engine, output, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a runner.
+     *
+     * @param engine how the machines execute
+     * @param output where the machines print unless given a sink of their own
+     * @param capacity the most idle machines kept; any more are dropped
+     */
+    public PooledRunner(Maquina.Engine engine, OutputSink output, int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity " + capacity);
+        }
+        this.engine = engine;
+        this.output = output;
+        this.capacity = capacity;
+        this.idle = new ArrayDeque<>(Math.min(capacity, DEFAULT_CAPACITY));
+    }
+
+    /**
+     * Take an empty machine, with the runner's engine and nothing else
+     * turned on, making one if none is idle.
+     *
+     * @return the machine, which is the caller's until it is released
+     */
+    public Maquina acquire() {
+        return acquire(output);
+    }
+
+    /**
+     * Take an empty machine that prints to a sink of the caller's, with the
+     * runner's engine and nothing else turned on, making one if none is
+     * idle.
+     *
+     * @param output where the machine prints until it is released
+     * @return the machine, which is the caller's until it is released
+     */
+    public Maquina acquire(OutputSink output) {
+        Maquina machine;
+        synchronized (this) {
+            machine = idle.pollLast();
+            if (machine != null) {
+                reused++;
+            } else {
+                created++;
+            }
+        }
+        if (machine == null) {
+            machine = new Maquina(output);
+            machine.setEngine(engine);
+        } else {
+            machine.setOutput(output);
+        }
+        return machine;
+    }
+
+    /**
+     * Give a machine back to be reused.  It is reset, whatever the caller
+     * turned on is turned off again, and it prints to the runner's sink
+     * again.  The caller must not use it afterwards.
+     *
+     * @param machine a machine from acquire()
+     */
+    public void release(Maquina machine) {
+        machine.reset();
+        machine.setEngine(engine);
+        machine.setVerifying(false);
+        machine.setProfiling(false);
+        machine.setCheckpointing(null, CheckpointEngine.DEFAULT_INTERVAL);
+        machine.setOutput(output);
+        synchronized (this) {
+            if (idle.size() < capacity) {
+                idle.addLast(machine);
+            }
+        }
+    }
+
+    /**
+     * Run one program on a pooled machine.  The machine goes back to the
+     * pool whether or not the program succeeds.
+     *
+     * @param program the program
+     * @throws common.Errors.Failure if the program fails
+     */
+    public void run(Program program) {
+        run(program, output);
+    }
+
+    /**
+     * Run one program on a pooled machine that prints to a sink of the
+     * caller's.  The machine goes back to the pool whether or not the
+     * program succeeds.
+     *
+     * @param program the program
+     * @param output where the program prints
+     * @throws common.Errors.Failure if the program fails
+     */
+    public void run(Program program, OutputSink output) {
+        Maquina machine = acquire(output);
+        try {
+            machine.loadProgram(program);
+            machine.execute();
+        } finally {
+            release(machine);
+        }
+    }
+
+    /**
+     * The number of machines the runner has made.
+     *
+     * @return the number made
+     */
+    public synchronized long created() {
+        return created;
+    }
+
+    /**
+     * The number of times a pooled machine was reused rather than made.
+     *
+     * @return the number of reuses
+     */
+    public synchronized long reused() {
+        return reused;
+    }
+
+    /**
+     * Describe how many machines were made and reused.
+     *
+     * @return the description
+     */
+    @Override
+    public synchronized String toString() {
+        return created + " machines made, " + reused + " reuses, " + idle.size() + " idle";
+    }
+}
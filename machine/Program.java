@@ -0,0 +1,287 @@
+package machine;
+
+import machine.instructions.Instruction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An assembled MAQ program in its compact form: a dense int array of
+ * opcodes and operands, plus the table of variable names that the LOAD and
+ * STORE operands index.  A program is immutable and is not tied to any
+ * machine, so the same program can be run on any number of machines.
+ *
+ * @author jolin qiu
+ */
+public final class Program {
+    /** the opcode and operand words */
+    private final int[] code;
+
+    /** the number of instructions */
+    private final int size;
+
+    /** the variable name of each slot */
+    private final String[] names;
+
+    /** the deepest the program takes the stack above where it started */
+    private final int maxDepth;
+
+    /** whether the {@link Verifier} has proven the program safe, set in place */
+    private volatile boolean verified;
+
+    /**
+     * Create a program.  Use a {@link Builder} to make one.
+     *
+     * @param code the opcode and operand words
+     * @param size the number of instructions
+     * @param names the variable name of each slot
+     * @param maxDepth the deepest the program takes the stack
+     * @param verified whether the program has been verified
+     */
+    private Program(int[] code, int size, String[] names, int maxDepth, boolean verified) {
+        this.code = code;
+        this.size = size;
+        this.names = names;
+        this.maxDepth = maxDepth;
+        this.verified = verified;
+    }
+
+    /**
+     * Mark the program as verified.  Only the verifier does this, once it
+     * has proven the program, whose maximum depth is then already exact.
+     */
+    void markVerified() {
+        this.verified = true;
+    }
+
+    /**
+     * Get the opcode and operand words.  The array is shared, not copied,
+     * and must not be modified.
+     *
+     * @return the code
+     */
+    public int[] code() {
+        return code;
+    }
+
+    /**
+     * Get the number of instructions in the program.
+     *
+     * @return the number of instructions
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the variable name of each slot.  The array is shared, not copied,
+     * and must not be modified.
+     *
+     * @return the slot names
+     */
+    public String[] names() {
+        return names;
+    }
+
+    /**
+     * Get the deepest the program takes the stack above its starting depth.
+     *
+     * @return the maximum depth
+     */
+    public int maxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Has the {@link Verifier} proven that the program never pops an empty
+     * stack and never loads a variable it has not stored?  Engines may then
+     * skip those checks.
+     *
+     * @return whether the program is verified
+     */
+    public boolean isVerified() {
+        return verified;
+    }
+
+    /**
+     * Get the position of the instruction after the one at pc.
+     *
+     * @param pc the position of an opcode in the code
+     * @return the position of the next opcode
+     */
+    public int next(int pc) {
+        return Opcode.hasOperand(code[pc]) ? pc + 2 : pc + 1;
+    }
+
+    /**
+     * Show the instruction at a position in MAQ text form.
+     *
+     * @param pc the position of an opcode in the code
+     * @return the instruction, e.g. "PUSH 10" or "LOAD x"
+     */
+    public String toString(int pc) {
+        int opcode = code[pc];
+        return switch (opcode) {
+            case Opcode.PUSH -> Maquina.PUSH + " " + code[pc + 1];
+            case Opcode.LOAD, Opcode.STORE -> Opcode.mnemonic(opcode) + " " + names[code[pc + 1]];
+            default -> Opcode.mnemonic(opcode);
+        };
+    }
+
+    /**
+     * Show the whole program in MAQ text form, one instruction per line.
+     *
+     * @return the program text
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (int pc = 0; pc < code.length; pc = next(pc)) {
+            result.append(toString(pc)).append(System.lineSeparator());
+        }
+        return result.toString();
+    }
+
+    /**
+     * Encode a list of assembled instructions.
+     *
+     * @param instructions the instructions
+     * @return the program
+     */
+    public static Program encode(List<? extends Instruction> instructions) {
+        Builder builder = new Builder(instructions.size() * 2);
+        instructions.forEach(t -> t.encode(builder));
+        return builder.build();
+    }
+
+    /**
+     * Accumulates instructions into a program.
+     */
+    public static final class Builder implements Assembler.Target {
+        /** the code written so far */
+        private int[] code;
+
+        /** the number of words of code written */
+        private int length;
+
+        /** the number of instructions written */
+        private int size;
+
+        /** the slot of each variable name */
+        private final Map<String, Integer> slots;
+
+        /** the variable name of each slot */
+        private final List<String> names;
+
+        /** the current stack depth relative to the start */
+        private int depth;
+
+        /** the deepest stack seen so far */
+        private int maxDepth;
+
+        /**
+         * Create an empty builder.
+         */
+        public Builder() {
+            this(64);
+        }
+
+        /**
+         * Create an empty builder with room for some words of code.
+         *
+         * @param capacity the expected number of words of code
+         */
+        public Builder(int capacity) {
+            this.code = new int[Math.max(capacity, 4)];
+            this.slots = new HashMap<>();
+            this.names = new ArrayList<>();
+        }
+
+        /**
+         * Get the slot of a variable name, adding it to the name table if
+         * it is new.
+         *
+         * @param name the variable name
+         * @return its slot
+         */
+        @Override
+        public int slot(String name) {
+            Integer slot = slots.get(name);
+            if (slot == null) {
+                slot = names.size();
+                slots.put(name, slot);
+                names.add(name);
+            }
+            return slot;
+        }
+
+        /**
+         * Append an instruction that has no operand.
+         *
+         * @param opcode the opcode
+         */
+        @Override
+        public void emit(int opcode) {
+            ensure(1);
+            code[length++] = opcode;
+            track(opcode);
+        }
+
+        /**
+         * Append an instruction with its operand (PUSH value or variable slot).
+         *
+         * @param opcode the opcode
+         * @param operand the operand
+         */
+        @Override
+        public void emit(int opcode, int operand) {
+            ensure(2);
+            code[length++] = opcode;
+            code[length++] = operand;
+            track(opcode);
+        }
+
+        /**
+         * Get the number of instructions written so far.
+         *
+         * @return the number of instructions
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Finish the program.
+         *
+         * @return the program holding everything emitted
+         */
+        public Program build() {
+            return new Program(Arrays.copyOf(code, length), size, names.toArray(new String[0]), maxDepth, false);
+        }
+
+        /**
+         * Count an instruction and follow its effect on the stack depth.
+         *
+         * @param opcode the opcode just written
+         */
+        private void track(int opcode) {
+            size++;
+            depth += Opcode.stackEffect(opcode);
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        /**
+         * Make room for more words of code.
+         *
+         * @param words the number of words about to be written
+         */
+        private void ensure(int words) {
+            if (length + words > code.length) {
+                code = Arrays.copyOf(code, Math.max(code.length * 2, length + words));
+            }
+        }
+    }
+}
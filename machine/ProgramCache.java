@@ -0,0 +1,169 @@
+package machine;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps recently assembled programs in memory, keyed by a SHA-256 hash of
+ * their MAQ text, so that text submitted again is not parsed again.  A
+ * {@link Program} is immutable and is not tied to any machine, so one
+ * cached program can be loaded into any number of machines at once.  When
+ * the cache is full the least recently used program is evicted.
+ *
+ * <p>The cache is safe to share between threads.  Text that fails to
+ * assemble is not cached.
+ *
+ * @author jolin qiu
+ */
+public final class ProgramCache {
+    /** the default number of programs kept */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /** the programs by the hash of their text, least recently used first */
+    private final LinkedHashMap<ByteBuffer, Program> programs;
+
+    /** the number of lookups that found a program */
+    private long hits;
+
+    /** the number of lookups that had to assemble */
+    private long misses;
+
+    /** the number of programs evicted to make room */
+    private long evictions;
+
+    /**
+     * Create a cache.
+     *
+     * @param capacity the most programs it keeps
+     */
+    public ProgramCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("cache capacity " + capacity);
+        }
+        this.programs = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Program> eldest) {
+                if (size() > capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get the program for some MAQ text, assembling it only if it is not
+     * already cached.
+     *
+     * @param text the MAQ text
+     * @return the program
+     * @throws common.Errors.Failure if the text does not assemble
+     */
+    public Program assemble(byte[] text) {
+        ByteBuffer key = ByteBuffer.wrap(digest(text));
+        synchronized (this) {
+            Program program = programs.get(key);
+            if (program != null) {
+                hits++;
+                return program;
+            }
+            misses++;
+        }
+        // assemble outside the lock, a race only assembles the text twice
+        Program program;
+        try {
+            program = Assembler.assemble(new ByteArrayInputStream(text));
+        } catch (IOException e) {
+            throw new AssertionError("in memory input", e);
+        }
+        synchronized (this) {
+            programs.put(key, program);
+        }
+        return program;
+    }
+
+    /**
+     * Get the program in a .maq file, assembling it only if the same text
+     * is not already cached.
+     *
+     * @param file the .maq file
+     * @return the program
+     * @throws IOException if the file cannot be read
+     * @throws common.Errors.Failure if the text does not assemble
+     */
+    public Program assemble(Path file) throws IOException {
+        return assemble(Files.readAllBytes(file));
+    }
+
+    /**
+     * Hash some text.
+     *
+     * @param text the text
+     * @return its SHA-256 digest
+     */
+    private static byte[] digest(byte[] text) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(text);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform must provide SHA-256
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Get the number of programs cached.
+     *
+     * @return the number of programs
+     */
+    public synchronized int size() {
+        return programs.size();
+    }
+
+    /**
+     * Get the number of lookups that found their program cached.
+     *
+     * @return the number of hits
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of lookups that had to assemble their text.
+     *
+     * @return the number of misses
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * Get the number of programs evicted to make room for others.
+     *
+     * @return the number of evictions
+     */
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /**
+     * Remove every program.  The counters are kept.
+     */
+    public synchronized void clear() {
+        programs.clear();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d programs cached, %d hits, %d misses, %d evictions",
+                programs.size(), hits, misses, evictions);
+    }
+}
@@ -0,0 +1,227 @@
+package machine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads and writes programs in the binary .maqb format, so that large
+ * programs can be loaded without a text parsing phase.  All values are
+ * big-endian:
+ * <pre>
+ *     header:     magic "MAQB" (4 bytes), version (u2), flags (u2),
+ *                 instruction count (u4)
+ *     constants:  count (u4), then each PUSH value (s4)
+ *     names:      count (u4), then each variable name as length (u2) and UTF-8 bytes
+ *     code:       one u4 per instruction, opcode in the top 8 bits and the
+ *                 constant or name index in the low 24 bits
+ * </pre>
+ *
+ * @author jolin qiu
+ */
+public final class ProgramFile {
+    /** the file name extension of binary programs */
+    public static final String EXTENSION = ".maqb";
+
+    /** "MAQB" */
+    private static final int MAGIC = 0x4D415142;
+
+    /** the current format version */
+    private static final int VERSION = 1;
+
+    /** the largest constant or name index that fits in an instruction word */
+    private static final int MAX_INDEX = 0xFFFFFF;
+
+    /** the longest variable name, in UTF-8 bytes, that fits its length field */
+    private static final int MAX_NAME_BYTES = 0xFFFF;
+
+    /**
+     * Files are read and written through the static methods only.
+     */
+    private ProgramFile() {}
+
+    /**
+     * Read a binary program by memory mapping the file.
+     *
+     * @param path the .maqb file
+     * @return the program
+     * @throws IOException if the file cannot be read or is not a valid binary program
+     */
+    public static Program read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer, path.toString());
+        }
+    }
+
+    /**
+     * Decode a binary program.
+     *
+     * @param buffer the bytes of the program, positioned at the header
+     * @param source where the bytes came from, for error messages
+     * @return the program
+     * @throws IOException if the bytes are not a valid binary program
+     */
+    public static Program read(ByteBuffer buffer, String source) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(source + ": not a MAQ binary program");
+            }
+            int version = buffer.getShort() & 0xFFFF;
+            if (version != VERSION) {
+                throw new IOException(source + ": unsupported MAQ binary version " + version);
+            }
+            buffer.getShort(); // flags, none defined yet
+            int size = buffer.getInt();
+
+            int[] constants = new int[count(buffer.getInt(), Integer.BYTES, buffer, source, "constant")];
+            buffer.asIntBuffer().get(constants);
+            buffer.position(buffer.position() + constants.length * Integer.BYTES);
+
+            // each name takes at least its length field
+            String[] names = new String[count(buffer.getInt(), Short.BYTES, buffer, source, "name")];
+            for (int i = 0; i < names.length; i++) {
+                byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(bytes);
+                names[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            Program.Builder builder = new Program.Builder(count(size, Integer.BYTES, buffer, source, "instruction") * 2);
+            for (String name : names) {
+                builder.slot(name);
+            }
+            for (int i = 0; i < size; i++) {
+                int word = buffer.getInt();
+                int opcode = word >>> 24;
+                int index = word & MAX_INDEX;
+                switch (opcode) {
+                    case Opcode.PUSH -> builder.emit(opcode, constants[index]);
+                    case Opcode.LOAD, Opcode.STORE -> {
+                        if (index >= names.length) {
+                            throw new IOException(source + ": bad name index " + index);
+                        }
+                        builder.emit(opcode, index);
+                    }
+                    default -> {
+                        if (opcode >= Opcode.COUNT) {
+                            throw new IOException(source + ": bad opcode " + opcode);
+                        }
+                        builder.emit(opcode);
+                    }
+                }
+            }
+            return builder.build();
+        } catch (RuntimeException e) {
+            // buffer underflow or an index out of range means the file is damaged
+            throw new IOException(source + ": truncated or damaged MAQ binary program", e);
+        }
+    }
+
+    /**
+     * Check a count from the file against the bytes left, so that a damaged
+     * count is reported before anything is allocated for it.
+     *
+     * @param count the count read
+     * @param bytesEach the fewest bytes each counted item takes
+     * @param buffer the bytes of the program, positioned at the items
+     * @param source where the bytes came from, for error messages
+     * @param what what is counted, for error messages
+     * @return the count
+     * @throws IOException if the count is negative or more than the bytes left could hold
+     */
+    private static int count(int count, int bytesEach, ByteBuffer buffer, String source, String what)
+            throws IOException {
+        if (count < 0 || count > buffer.remaining() / bytesEach) {
+            throw new IOException(source + ": bad " + what + " count " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Write a program in the binary format.
+     *
+     * @param program the program
+     * @param path the .maqb file to create or replace
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Program program, Path path) throws IOException {
+        ByteBuffer buffer = encode(program);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Encode a program in the binary format.
+     *
+     * @param program the program
+     * @return a buffer holding the encoded program, ready to be read
+     * @throws IllegalArgumentException if the program has too many variables
+     *         or constants, or a variable name too long, for the format
+     */
+    public static ByteBuffer encode(Program program) {
+        int[] code = program.code();
+        String[] names = program.names();
+        if (names.length > MAX_INDEX + 1) {
+            throw new IllegalArgumentException("too many variables for " + EXTENSION + ": " + names.length);
+        }
+
+        // build the constant pool, one entry per distinct PUSH value
+        Map<Integer, Integer> pool = new HashMap<>();
+        int[] constants = new int[16];
+        for (int pc = 0; pc < code.length; pc = program.next(pc)) {
+            if (code[pc] == Opcode.PUSH && !pool.containsKey(code[pc + 1])) {
+                if (pool.size() > MAX_INDEX) {
+                    throw new IllegalArgumentException("too many constants for " + EXTENSION);
+                }
+                if (pool.size() == constants.length) {
+                    constants = Arrays.copyOf(constants, constants.length * 2);
+                }
+                constants[pool.size()] = code[pc + 1];
+                pool.put(code[pc + 1], pool.size());
+            }
+        }
+
+        byte[][] nameBytes = new byte[names.length][];
+        int length = 4 + 2 + 2 + 4 + 4 + pool.size() * 4 + 4 + program.size() * 4;
+        for (int i = 0; i < names.length; i++) {
+            nameBytes[i] = names[i].getBytes(StandardCharsets.UTF_8);
+            if (nameBytes[i].length > MAX_NAME_BYTES) {
+                throw new IllegalArgumentException("variable name too long for " + EXTENSION + ": "
+                        + nameBytes[i].length + " bytes");
+            }
+            length += 2 + nameBytes[i].length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putInt(MAGIC).putShort((short) VERSION).putShort((short) 0).putInt(program.size());
+        buffer.putInt(pool.size());
+        for (int i = 0; i < pool.size(); i++) {
+            buffer.putInt(constants[i]);
+        }
+        buffer.putInt(names.length);
+        for (byte[] name : nameBytes) {
+            buffer.putShort((short) name.length).put(name);
+        }
+        for (int pc = 0; pc < code.length; pc = program.next(pc)) {
+            int opcode = code[pc];
+            int index = switch (opcode) {
+                case Opcode.PUSH -> pool.get(code[pc + 1]);
+                case Opcode.LOAD, Opcode.STORE -> code[pc + 1];
+                default -> 0;
+            };
+            buffer.putInt(opcode << 24 | index);
+        }
+        return buffer.flip();
+    }
+}
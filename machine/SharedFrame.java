@@ -0,0 +1,84 @@
+package machine;
+
+import common.Namespace;
+import common.SymbolTable;
+
+/**
+ * A frame whose variables live in a namespace shared with other machines,
+ * such as a {@link common.ConcurrentSymbolTable}, so that machines running
+ * at the same time read each other's stores.  Slots are still given out
+ * as in any frame, and every engine works through them unchanged, but
+ * each load and store goes to the namespace by the slot's name.  The
+ * bytecode and register engines keep a variable the program has stored in
+ * a local until they write it back, so other machines see those stores
+ * when the engine writes back rather than instruction by instruction.
+ *
+ * @author jolin qiu
+ */
+public class SharedFrame extends Frame {
+    /** where the variables live */
+    private final Namespace globals;
+
+    /**
+     * Create a frame over a namespace.
+     *
+     * @param globals where the variables live
+     */
+    public SharedFrame(Namespace globals) {
+        this.globals = globals;
+    }
+
+    /**
+     * Return the namespace the variables live in.
+     *
+     * @return the namespace
+     */
+    public Namespace getGlobals() {
+        return globals;
+    }
+
+    /**
+     * Has the variable in this slot been stored to yet, by any machine?
+     *
+     * @param slot the slot
+     * @return whether it has a value
+     */
+    @Override
+    public boolean isDefined(int slot) {
+        return globals.has(name(slot));
+    }
+
+    /**
+     * Get the current value of the variable in a slot.
+     *
+     * @param slot the slot
+     * @return its value
+     */
+    @Override
+    public int load(int slot) {
+        return globals.get(name(slot));
+    }
+
+    /**
+     * Set the value of the variable in a slot, for every machine.
+     *
+     * @param slot the slot
+     * @param value the new value
+     */
+    @Override
+    public void store(int slot, int value) {
+        super.store(slot, value);
+        globals.set(name(slot), value);
+    }
+
+    /**
+     * Take a snapshot of the whole namespace, including the variables
+     * other machines stored.
+     *
+     * @return the snapshot
+     */
+    @Override
+    public SymbolTable toSymbolTable() {
+        return globals.snapshot();
+    }
+}
@@ -0,0 +1,69 @@
+package machine;
+
+import common.Errors;
+
+/**
+ * Proves, before a program runs, the two things the engines otherwise check
+ * as it runs:
+ * <ul>
+ *     <li>no instruction pops more values than are on the stack, starting
+ *     from an empty stack, and</li>
+ *     <li>every LOAD of a variable comes after a STORE to it.</li>
+ * </ul>
+ * MAQ has no jumps, so one pass over the instructions, following the stack
+ * depth and which variables have been stored, is a complete proof, and
+ * the maximum depth the builder worked out is then exact.  A program that
+ * passes is marked verified in place, so the engines' per-program caches
+ * and the {@link ProgramCache} keep their entries, and the engines run it
+ * without those checks.
+ * One that fails is rejected with the error it would have hit at run time.
+ *
+ * @author jolin qiu
+ */
+public final class Verifier {
+    /**
+     * The verifier has no state of its own.
+     */
+    private Verifier() {}
+
+    /**
+     * Verify a program.
+     *
+     * @param program the program
+     * @return the same program, marked verified
+     * @throws Errors.SyntaxFailure (PREMATURE_END) if an instruction would
+     *      pop an empty stack
+     * @throws Errors.UninitializedFailure if a variable is loaded before it
+     *      is stored
+     */
+    public static Program verify(Program program) {
+        if (program.isVerified()) {
+            return program;
+        }
+        int[] code = program.code();
+        String[] names = program.names();
+        boolean[] stored = new boolean[names.length];
+        int depth = 0;
+        for (int pc = 0, index = 0; pc < code.length; pc = program.next(pc), index++) {
+            int opcode = code[pc];
+            if (opcode < 0 || opcode >= Opcode.COUNT) {
+                throw Errors.failure(Errors.Type.ILLEGAL_INSTRUCTION, opcode);
+            }
+            // An instruction is missing some of its operands.
+            if (depth < Opcode.pops(opcode)) {
+                throw Errors.failure(Errors.Type.PREMATURE_END, program.toString(pc) + " (instruction " + index + ")");
+            }
+            if (opcode == Opcode.LOAD) {
+                // Attempting to load a variable name that has not been stored yet.
+                if (!stored[code[pc + 1]]) {
+                    throw Errors.failure(Errors.Type.UNINITIALIZED, names[code[pc + 1]]);
+                }
+            } else if (opcode == Opcode.STORE) {
+                stored[code[pc + 1]] = true;
+            }
+            depth += Opcode.stackEffect(opcode);
+        }
+        program.markVerified();
+        return program;
+    }
+}
@@ -0,0 +1,96 @@
+package machine.bench;
+
+import machine.Assembler;
+import machine.Opcode;
+import machine.Program;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Scanner;
+
+/**
+ * Compares the byte level Assembler against the original Scanner, strip
+ * and split approach on generated MAQ text.
+ *
+ * <pre>
+ *     java machine.bench.AssemblerBenchmark [lines] [rounds]
+ * </pre>
+ *
+ * @author jolin qiu
+ */
+public class AssemblerBenchmark {
+    /**
+     * Generate MAQ text using every instruction and a few hundred variables.
+     *
+     * @param lines the number of lines
+     * @return the text
+     */
+    private static byte[] generate(int lines) {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder(lines * 8);
+        for (int i = 0; i < lines; i++) {
+            int opcode = random.nextInt(Opcode.COUNT);
+            text.append(Opcode.mnemonic(opcode));
+            if (opcode == Opcode.PUSH) {
+                text.append(' ').append(random.nextInt(2001) - 1000);
+            } else if (Opcode.hasOperand(opcode)) {
+                text.append(' ').append("var").append(random.nextInt(300));
+            }
+            text.append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The original line by line assembly, kept here as the baseline.
+     *
+     * @param text the MAQ text
+     * @return the program
+     */
+    private static Program scanner(byte[] text) {
+        Program.Builder builder = new Program.Builder();
+        Scanner maqIn = new Scanner(new ByteArrayInputStream(text));
+        while (maqIn.hasNextLine()) {
+            String[] fields = maqIn.nextLine().strip().split("\\s+");
+            int opcode = Opcode.of(fields[0]);
+            switch (opcode) {
+                case Opcode.PUSH -> builder.emit(opcode, Integer.parseInt(fields[1]));
+                case Opcode.LOAD, Opcode.STORE -> builder.emit(opcode, builder.slot(fields[1]));
+                default -> builder.emit(opcode);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Assemble the same text both ways and report the best time of each.
+     *
+     * @param args optional line count and number of rounds
+     * @throws IOException never, the input is in memory
+     */
+    public static void main(String[] args) throws IOException {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        byte[] text = generate(lines);
+
+        long bestBytes = Long.MAX_VALUE, bestScanner = Long.MAX_VALUE;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            Program fast = Assembler.assemble(new ByteArrayInputStream(text));
+            bestBytes = Math.min(bestBytes, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            Program slow = scanner(text);
+            bestScanner = Math.min(bestScanner, System.nanoTime() - start);
+
+            if (!Arrays.equals(fast.code(), slow.code())) {
+                throw new IllegalStateException("assemblers disagree");
+            }
+        }
+        System.out.printf("%,d lines: bytes %8.1f ms | scanner %8.1f ms | speedup %.1fx%n",
+                lines, bestBytes / 1e6, bestScanner / 1e6, (double) bestScanner / bestBytes);
+    }
+}
@@ -0,0 +1,165 @@
+package machine.bench;
+
+import common.OutputSink;
+import machine.Maquina;
+import machine.Opcode;
+import machine.Program;
+import machine.engine.CheckpointEngine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures what checkpointing costs on a full run and what resuming saves
+ * when a long program is re-run after an edit near its end.  Each round
+ * runs the program plainly on the switch engine, then with checkpoints
+ * from scratch, then resumes the same program unchanged, and then resumes
+ * a copy with one constant changed at each edit position.
+ *
+ * <pre>
+ *     java machine.bench.CheckpointBenchmark [instructions] [interval] [rounds]
+ * </pre>
+ *
+ * @author jolin qiu
+ */
+public class CheckpointBenchmark {
+    /** where the edits are made, as fractions of the program */
+    private static final double[] EDITS = {0.5, 0.9, 0.99};
+
+    /** the number of variables the program uses */
+    private static final int VARIABLES = 50;
+
+    /**
+     * Generate a long program of assignments to a few variables, printing
+     * now and then.  Every statement leaves the stack empty.
+     *
+     * @param instructions roughly the number of instructions
+     * @return the program
+     */
+    private static Program generate(int instructions) {
+        Random random = new Random(42);
+        Program.Builder builder = new Program.Builder(instructions * 2);
+        for (int k = 0; k < VARIABLES; k++) {
+            builder.emit(Opcode.PUSH, k + 1);
+            builder.emit(Opcode.STORE, builder.slot("v" + k));
+        }
+        while (builder.size() < instructions) {
+            // vA = vB op vC op' k
+            builder.emit(Opcode.LOAD, builder.slot("v" + random.nextInt(VARIABLES)));
+            builder.emit(Opcode.LOAD, builder.slot("v" + random.nextInt(VARIABLES)));
+            builder.emit(Opcode.ADD + random.nextInt(3));
+            builder.emit(Opcode.PUSH, random.nextInt(9) + 1);
+            builder.emit(random.nextBoolean() ? Opcode.MODULUS : Opcode.DIVIDE);
+            if (random.nextInt(1000) == 0) {
+                builder.emit(Opcode.PRINT);
+            } else {
+                builder.emit(Opcode.STORE, builder.slot("v" + random.nextInt(VARIABLES)));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Copy a program, changing the first PUSH constant at or after a position.
+     *
+     * @param program the program
+     * @param fraction how far into the program the edit is
+     * @return the edited program
+     */
+    private static Program edit(Program program, double fraction) {
+        int[] code = program.code();
+        int target = (int) (program.size() * fraction);
+        boolean edited = false;
+        Program.Builder builder = new Program.Builder(code.length);
+        for (String name : program.names()) {
+            builder.slot(name);
+        }
+        for (int pc = 0, index = 0; pc < code.length; pc = program.next(pc), index++) {
+            if (code[pc] == Opcode.PUSH) {
+                int value = code[pc + 1];
+                if (!edited && index >= target) {
+                    value = value % 9 + 1;
+                    edited = true;
+                }
+                builder.emit(Opcode.PUSH, value);
+            } else if (Opcode.hasOperand(code[pc])) {
+                builder.emit(code[pc], code[pc + 1]);
+            } else {
+                builder.emit(code[pc]);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Run a program on a new machine that prints nothing.
+     *
+     * @param program the program
+     * @param checkpoints the checkpoint file, or null to run plainly
+     * @param interval the number of instructions between checkpoints
+     * @return the nanoseconds taken to execute
+     */
+    private static long run(Program program, Path checkpoints, int interval) {
+        Maquina machine = new Maquina(OutputSink.discard());
+        machine.setEngine(Maquina.Engine.SWITCH);
+        if (checkpoints != null) {
+            machine.setCheckpointing(checkpoints, interval);
+        }
+        machine.loadProgram(program);
+        long start = System.nanoTime();
+        machine.execute();
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Time each kind of run and report the best of each.
+     *
+     * @param args optional instruction count, checkpoint interval and number of rounds
+     * @throws IOException if the temporary checkpoint file cannot be made
+     */
+    public static void main(String[] args) throws IOException {
+        int instructions = args.length > 0 ? Integer.parseInt(args[0]) : 20_000_000;
+        int interval = args.length > 1 ? Integer.parseInt(args[1]) : CheckpointEngine.DEFAULT_INTERVAL;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        Program program = generate(instructions);
+        Program[] edited = new Program[EDITS.length];
+        for (int i = 0; i < EDITS.length; i++) {
+            edited[i] = edit(program, EDITS[i]);
+        }
+        Path file = Files.createTempFile("checkpoint", ".maqc");
+
+        long bestPlain = Long.MAX_VALUE, bestFull = Long.MAX_VALUE, bestSame = Long.MAX_VALUE;
+        long[] bestEdited = new long[EDITS.length];
+        Arrays.fill(bestEdited, Long.MAX_VALUE);
+        try {
+            for (int round = 0; round < rounds; round++) {
+                bestPlain = Math.min(bestPlain, run(program, null, interval));
+                Files.deleteIfExists(file);
+                bestFull = Math.min(bestFull, run(program, file, interval));
+                bestSame = Math.min(bestSame, run(program, file, interval));
+                for (int i = 0; i < EDITS.length; i++) {
+                    // start each edit from the checkpoints of the original program
+                    Files.deleteIfExists(file);
+                    run(program, file, interval);
+                    bestEdited[i] = Math.min(bestEdited[i], run(edited[i], file, interval));
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        System.out.printf("%,d instructions, a checkpoint every %,d%n", program.size(), interval);
+        System.out.printf("  plain run            %8.1f ms%n", bestPlain / 1e6);
+        System.out.printf("  checkpointed run     %8.1f ms  (%+.0f%% over plain)%n",
+                bestFull / 1e6, 100.0 * (bestFull - bestPlain) / bestPlain);
+        System.out.printf("  resume, unchanged    %8.1f ms  (%.1fx faster than a checkpointed run)%n",
+                bestSame / 1e6, (double) bestFull / bestSame);
+        for (int i = 0; i < EDITS.length; i++) {
+            System.out.printf("  resume, edit at %2.0f%%  %8.1f ms  (%.1fx faster than a checkpointed run)%n",
+                    EDITS[i] * 100, bestEdited[i] / 1e6, (double) bestFull / bestEdited[i]);
+        }
+    }
+}
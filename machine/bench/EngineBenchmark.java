@@ -0,0 +1,114 @@
+package machine.bench;
+
+import common.OutputSink;
+import machine.Maquina;
+import machine.Opcode;
+import machine.Program;
+
+import java.util.Random;
+
+/**
+ * Compares the execution engines on a small program run many times and on
+ * a large program run once per round.  The first run of each engine is
+ * reported on its own, since it includes linking or compiling the program,
+ * and then the best of the rounds.
+ *
+ * <pre>
+ *     java machine.bench.EngineBenchmark [small] [large] [rounds]
+ * </pre>
+ *
+ * @author jolin qiu
+ */
+public class EngineBenchmark {
+    /** the number of variables the programs use */
+    private static final int VARIABLES = 20;
+
+    /** how many times the small program runs in each round */
+    private static final int SMALL_RUNS = 2_000;
+
+    /**
+     * Generate a program of expression statements, each stored or printed.
+     *
+     * @param instructions roughly the number of instructions
+     * @return the program
+     */
+    private static Program generate(int instructions) {
+        Random random = new Random(42);
+        Program.Builder builder = new Program.Builder(instructions * 2);
+        for (int k = 0; k < VARIABLES; k++) {
+            builder.emit(Opcode.PUSH, k + 1);
+            builder.emit(Opcode.STORE, builder.slot("v" + k));
+        }
+        while (builder.size() < instructions) {
+            builder.emit(Opcode.LOAD, builder.slot("v" + random.nextInt(VARIABLES)));
+            builder.emit(Opcode.PUSH, random.nextInt(9) + 1);
+            builder.emit(Opcode.ADD + random.nextInt(3));
+            builder.emit(Opcode.LOAD, builder.slot("v" + random.nextInt(VARIABLES)));
+            builder.emit(Opcode.ADD + random.nextInt(3));
+            if (random.nextInt(100) == 0) {
+                builder.emit(Opcode.NEGATE);
+                builder.emit(Opcode.PRINT);
+            } else {
+                builder.emit(Opcode.PUSH, 1000);
+                builder.emit(Opcode.MODULUS);
+                builder.emit(Opcode.STORE, builder.slot("v" + random.nextInt(VARIABLES)));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Run a program on a new machine that prints nothing.
+     *
+     * @param program the program
+     * @param engine the engine
+     * @param runs how many times to run it
+     * @return the nanoseconds taken by all the runs
+     */
+    private static long run(Program program, Maquina.Engine engine, int runs) {
+        long total = 0;
+        for (int i = 0; i < runs; i++) {
+            Maquina machine = new Maquina(OutputSink.discard());
+            machine.setEngine(engine);
+            machine.loadProgram(program);
+            long start = System.nanoTime();
+            machine.execute();
+            total += System.nanoTime() - start;
+        }
+        return total;
+    }
+
+    /**
+     * Time every engine on one program.
+     *
+     * @param title what the program is
+     * @param program the program
+     * @param runs how many times it runs in each round
+     * @param rounds the number of rounds
+     */
+    private static void compare(String title, Program program, int runs, int rounds) {
+        System.out.printf("%s: %,d instructions, %,d runs per round%n", title, program.size(), runs);
+        System.out.printf("  %-9s %14s %14s%n", "engine", "first run", "best per run");
+        for (Maquina.Engine engine : Maquina.Engine.values()) {
+            long first = run(program, engine, 1);
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < rounds; round++) {
+                best = Math.min(best, run(program, engine, runs) / runs);
+            }
+            System.out.printf("  %-9s %11.1f us %11.1f us%n", engine.toString().toLowerCase(), first / 1e3, best / 1e3);
+        }
+    }
+
+    /**
+     * Compare the engines on a small and a large program.
+     *
+     * @param args optional small and large instruction counts and number of rounds
+     */
+    public static void main(String[] args) {
+        int small = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int large = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        compare("small", generate(small), SMALL_RUNS, rounds);
+        compare("large", generate(large), 1, rounds);
+    }
+}
@@ -0,0 +1,108 @@
+package machine.bench;
+
+import common.OutputSink;
+import machine.Assembler;
+import machine.Maquina;
+import machine.PooledRunner;
+import machine.Program;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compares running a stream of small programs on a new machine each
+ * against running them on machines reused through a PooledRunner, in
+ * time and in bytes allocated, measured with the HotSpot per thread
+ * allocation counter.  The programs are assembled up front and print
+ * nothing, so only the machines' own allocation is counted.
+ *
+ * <pre>
+ *     java machine.bench.MachineReuseBenchmark [programs] [rounds] [engine]
+ * </pre>
+ *
+ * @author jolin qiu
+ */
+public class MachineReuseBenchmark {
+    /** the allocation counter of the current thread */
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Get the bytes the current thread has allocated so far.
+     *
+     * @return the bytes allocated
+     */
+    private static long allocated() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().threadId());
+    }
+
+    /**
+     * Make a small program: a few variables computed from each other.
+     *
+     * @param seed which program
+     * @return the program
+     * @throws IOException never, the text is in memory
+     */
+    private static Program program(int seed) throws IOException {
+        StringBuilder text = new StringBuilder();
+        int variables = 3 + seed % 6;
+        text.append("PUSH ").append(seed).append("\nSTORE v0\n");
+        for (int i = 1; i < variables; i++) {
+            text.append("LOAD v").append(i - 1).append("\nPUSH ").append(i + seed % 7)
+                    .append("\nMUL\nPUSH ").append(i).append("\nADD\nSTORE v").append(i).append('\n');
+        }
+        return Assembler.assemble(new ByteArrayInputStream(text.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Time and weigh both ways of running the programs and report the best
+     * round of each.
+     *
+     * @param args optional number of programs, rounds and engine
+     * @throws IOException never, the programs are in memory
+     */
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        Maquina.Engine engine = args.length > 2 ? Maquina.Engine.valueOf(args[2].toUpperCase()) : Maquina.Engine.SWITCH;
+        Program[] programs = new Program[1000];
+        for (int i = 0; i < programs.length; i++) {
+            programs[i] = program(i);
+        }
+        OutputSink output = OutputSink.discard();
+        PooledRunner runner = new PooledRunner(engine, output);
+
+        long[] best = {Long.MAX_VALUE, Long.MAX_VALUE};
+        long[] bytes = {Long.MAX_VALUE, Long.MAX_VALUE};
+        for (int round = 0; round < rounds; round++) {
+            long before = allocated();
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                Maquina machine = new Maquina(output);
+                machine.setEngine(engine);
+                machine.loadProgram(programs[i % programs.length]);
+                machine.execute();
+            }
+            best[0] = Math.min(best[0], System.nanoTime() - start);
+            bytes[0] = Math.min(bytes[0], allocated() - before);
+
+            before = allocated();
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                runner.run(programs[i % programs.length]);
+            }
+            best[1] = Math.min(best[1], System.nanoTime() - start);
+            bytes[1] = Math.min(bytes[1], allocated() - before);
+        }
+
+        System.out.printf("%,d small programs on the %s engine (%s)%n", count, engine.name().toLowerCase(), runner);
+        System.out.printf("  %-14s %12s %14s %14s%n", "machines", "us/program", "bytes/program", "alloc MB/s");
+        String[] labels = {"new each", "pooled"};
+        for (int i = 0; i < 2; i++) {
+            System.out.printf("  %-14s %12.2f %,14d %14.0f%n", labels[i], best[i] / 1e3 / count,
+                    bytes[i] / count, bytes[i] / 1e6 / (best[i] / 1e9));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package machine.bench;
+
+import machine.Assembler;
+import machine.Opcode;
+import machine.ProgramCache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Compares assembling the same MAQ text every time it is submitted with
+ * looking it up in a {@link ProgramCache}, which only hashes the text.
+ *
+ * <pre>
+ *     java machine.bench.ProgramCacheBenchmark [lines] [submissions] [rounds]
+ * </pre>
+ *
+ * @author jolin qiu
+ */
+public class ProgramCacheBenchmark {
+    /**
+     * Generate MAQ text of assignments to a few variables.
+     *
+     * @param lines the number of lines
+     * @return the text
+     */
+    private static byte[] generate(int lines) {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder(lines * 8);
+        text.append("PUSH 1\nSTORE var0\n");
+        for (int i = 2; i < lines; i += 3) {
+            text.append("LOAD var").append(random.nextInt(Math.min(i / 3 + 1, 300))).append('\n');
+            text.append("PUSH ").append(random.nextInt(2001) - 1000).append('\n');
+            text.append(Opcode.mnemonic(Opcode.ADD + random.nextInt(3))).append('\n');
+            text.append("STORE var").append(random.nextInt(300)).append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Time assembling and cached lookups and report the best of each.
+     *
+     * @param args optional line count, submissions per round and number of rounds
+     * @throws IOException never, the input is in memory
+     */
+    public static void main(String[] args) throws IOException {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int submissions = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        byte[] text = generate(lines);
+
+        long bestAssemble = Long.MAX_VALUE, bestCached = Long.MAX_VALUE;
+        int sink = 0;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < submissions; i++) {
+                sink += Assembler.assemble(new ByteArrayInputStream(text)).size();
+            }
+            bestAssemble = Math.min(bestAssemble, System.nanoTime() - start);
+
+            ProgramCache cache = new ProgramCache(ProgramCache.DEFAULT_CAPACITY);
+            start = System.nanoTime();
+            for (int i = 0; i < submissions; i++) {
+                sink += cache.assemble(text).size();
+            }
+            bestCached = Math.min(bestCached, System.nanoTime() - start);
+        }
+
+        System.out.printf("%,d bytes of MAQ text submitted %,d times (checksum %d)%n", text.length, submissions, sink);
+        System.out.printf("  assemble every time  %8.1f us each%n", bestAssemble / 1e3 / submissions);
+        System.out.printf("  program cache        %8.1f us each  (%.1fx faster)%n",
+                bestCached / 1e3 / submissions, (double) bestAssemble / bestCached);
+    }
+}
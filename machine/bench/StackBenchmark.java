@@ -0,0 +1,167 @@
+package machine.bench;
+
+import machine.InstructionStack;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the array backed InstructionStack against the original
+ * LinkedList backed stack by replaying the stack traffic of generated MAQ
+ * programs of a million instructions.
+ *
+ * <pre>
+ *     java machine.bench.StackBenchmark [instructions] [rounds]
+ * </pre>
+ *
+ * @author jolin qiu
+ */
+public class StackBenchmark {
+    /** replay a push (PUSH/LOAD) */
+    private static final byte PUSH = 0;
+    /** replay a pop (PRINT/STORE) */
+    private static final byte POP = 1;
+    /** replay a pop/push (NEG/SQRT) */
+    private static final byte UNARY = 2;
+    /** replay two pops and a push (ADD/SUB/MUL/DIV/MOD) */
+    private static final byte BINARY = 3;
+
+    /**
+     * The original stack implementation, kept here as the baseline.
+     */
+    private static class LinkedInstructionStack {
+        /** the stack is a list */
+        private final List<Integer> stack = new LinkedList<>();
+
+        void push(int value) { this.stack.add(0, value); }
+
+        int pop() { return this.stack.remove(0); }
+
+        int size() { return this.stack.size(); }
+    }
+
+    /**
+     * Generate the stack effects of a program made of random expression
+     * statements, each of which either gets stored or printed.
+     *
+     * @param length the number of instructions to generate
+     * @param depth the number of operands in each generated expression
+     * @return the stack operation of each instruction
+     */
+    private static byte[] generate(int length, int depth) {
+        Random random = new Random(42);
+        byte[] program = new byte[length];
+        int i = 0;
+        while (i < length) {
+            int height = 0;
+            for (int operand = 0; operand < depth && i < length; operand++) {
+                program[i++] = PUSH;
+                height++;
+                if (random.nextBoolean() && i < length) {
+                    program[i++] = UNARY;
+                }
+                // randomly reduce eagerly to vary the stack depth
+                while (height > 1 && random.nextInt(3) == 0 && i < length) {
+                    program[i++] = BINARY;
+                    height--;
+                }
+            }
+            while (height > 1 && i < length) {
+                program[i++] = BINARY;
+                height--;
+            }
+            if (i < length) {
+                program[i++] = POP;
+            }
+        }
+        return program;
+    }
+
+    /**
+     * Replay a program on the array backed stack.
+     *
+     * @param program the stack effects
+     * @param stack the stack to use
+     * @return a checksum so the work cannot be eliminated
+     */
+    private static long run(byte[] program, InstructionStack stack) {
+        long checksum = 0;
+        for (byte op : program) {
+            switch (op) {
+                case PUSH -> stack.push((int) checksum);
+                case POP -> checksum += stack.pop();
+                case UNARY -> stack.push(-stack.pop());
+                default -> stack.push(stack.pop() + stack.pop());
+            }
+        }
+        while (stack.size() > 0) {
+            checksum += stack.pop();
+        }
+        return checksum;
+    }
+
+    /**
+     * Replay a program on the linked list stack.
+     *
+     * @param program the stack effects
+     * @param stack the stack to use
+     * @return a checksum so the work cannot be eliminated
+     */
+    private static long run(byte[] program, LinkedInstructionStack stack) {
+        long checksum = 0;
+        for (byte op : program) {
+            switch (op) {
+                case PUSH -> stack.push((int) checksum);
+                case POP -> checksum += stack.pop();
+                case UNARY -> stack.push(-stack.pop());
+                default -> stack.push(stack.pop() + stack.pop());
+            }
+        }
+        while (stack.size() > 0) {
+            checksum += stack.pop();
+        }
+        return checksum;
+    }
+
+    /**
+     * Run both stacks over the same programs and report the best time and
+     * the bytes allocated by the timed rounds.
+     *
+     * @param args optional instruction count and number of rounds
+     */
+    public static void main(String[] args) {
+        int length = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+
+        for (int depth : new int[] {2, 8, 64}) {
+            byte[] program = generate(length, depth);
+            long bestArray = Long.MAX_VALUE, bestLinked = Long.MAX_VALUE;
+            long bytesArray = 0, bytesLinked = 0;
+            long checksum = 0;
+            for (int round = 0; round < rounds; round++) {
+                InstructionStack array = new InstructionStack();
+                long bytes = threads.getCurrentThreadAllocatedBytes();
+                long start = System.nanoTime();
+                checksum += run(program, array);
+                bestArray = Math.min(bestArray, System.nanoTime() - start);
+                bytesArray = threads.getCurrentThreadAllocatedBytes() - bytes;
+
+                LinkedInstructionStack linked = new LinkedInstructionStack();
+                bytes = threads.getCurrentThreadAllocatedBytes();
+                start = System.nanoTime();
+                checksum -= run(program, linked);
+                bestLinked = Math.min(bestLinked, System.nanoTime() - start);
+                bytesLinked = threads.getCurrentThreadAllocatedBytes() - bytes;
+            }
+            if (checksum != 0) {
+                throw new IllegalStateException("stacks disagree");
+            }
+            System.out.printf("depth %2d: array %7.2f ms %,12d B | linked %7.2f ms %,12d B | speedup %.1fx%n",
+                    depth, bestArray / 1e6, bytesArray, bestLinked / 1e6, bytesLinked,
+                    (double) bestLinked / bestArray);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package machine.bench;
+
+import common.SymbolTable;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares the open addressing SymbolTable against the original
+ * LinkedHashMap backed table, setting, reading and updating a million
+ * distinct variables.  Allocation is measured with the HotSpot per thread
+ * allocation counter.
+ *
+ * <pre>
+ *     java machine.bench.SymbolTableBenchmark [variables] [rounds]
+ * </pre>
+ *
+ * @author jolin qiu
+ */
+public class SymbolTableBenchmark {
+    /**
+     * The original table, kept here as the baseline.
+     */
+    private static class LinkedSymbolTable {
+        /** the symbol table */
+        private final Map<String, Integer> symTbl = new LinkedHashMap<>();
+
+        void set(String name, int value) { this.symTbl.put(name, value); }
+
+        int get(String name) { return this.symTbl.get(name); }
+    }
+
+    /** the allocation counter of the current thread */
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Get the bytes the current thread has allocated so far.
+     *
+     * @return the bytes allocated
+     */
+    private static long allocated() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().threadId());
+    }
+
+    /**
+     * Time and weigh each table and report the best round of each.
+     *
+     * @param args optional number of variables and rounds
+     */
+    public static void main(String[] args) {
+        int variables = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        String[] names = new String[variables];
+        for (int i = 0; i < variables; i++) {
+            names[i] = "var" + i;
+            names[i].hashCode();
+        }
+
+        long[] bestLinked = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+        long[] bestOpen = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+        long linkedBytes = 0, openBytes = 0;
+        long sink = 0;
+        for (int round = 0; round < rounds; round++) {
+            long bytes = allocated();
+            long start = System.nanoTime();
+            LinkedSymbolTable linked = new LinkedSymbolTable();
+            for (int i = 0; i < variables; i++) {
+                linked.set(names[i], i);
+            }
+            long set = System.nanoTime();
+            for (int i = 0; i < variables; i++) {
+                sink += linked.get(names[i]);
+            }
+            long get = System.nanoTime();
+            for (int i = 0; i < variables; i++) {
+                linked.set(names[i], linked.get(names[i]) + 1000);
+            }
+            long update = System.nanoTime();
+            linkedBytes = allocated() - bytes;
+            bestLinked[0] = Math.min(bestLinked[0], set - start);
+            bestLinked[1] = Math.min(bestLinked[1], get - set);
+            bestLinked[2] = Math.min(bestLinked[2], update - get);
+
+            bytes = allocated();
+            start = System.nanoTime();
+            SymbolTable open = new SymbolTable();
+            for (int i = 0; i < variables; i++) {
+                open.set(names[i], i);
+            }
+            set = System.nanoTime();
+            for (int i = 0; i < variables; i++) {
+                sink += open.get(names[i]);
+            }
+            get = System.nanoTime();
+            for (int i = 0; i < variables; i++) {
+                open.set(names[i], open.get(names[i]) + 1000);
+            }
+            update = System.nanoTime();
+            openBytes = allocated() - bytes;
+            bestOpen[0] = Math.min(bestOpen[0], set - start);
+            bestOpen[1] = Math.min(bestOpen[1], get - set);
+            bestOpen[2] = Math.min(bestOpen[2], update - get);
+        }
+
+        System.out.printf("%,d distinct variables (checksum %d)%n", variables, sink);
+        System.out.printf("  %-14s %10s %10s %10s %12s%n", "table", "set", "get", "update", "allocated");
+        System.out.printf("  %-14s %7.1f ms %7.1f ms %7.1f ms %9.1f MB%n", "LinkedHashMap",
+                bestLinked[0] / 1e6, bestLinked[1] / 1e6, bestLinked[2] / 1e6, linkedBytes / 1e6);
+        System.out.printf("  %-14s %7.1f ms %7.1f ms %7.1f ms %9.1f MB%n", "open addressing",
+                bestOpen[0] / 1e6, bestOpen[1] / 1e6, bestOpen[2] / 1e6, openBytes / 1e6);
+    }
+}
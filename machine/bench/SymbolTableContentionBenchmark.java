@@ -0,0 +1,168 @@
+package machine.bench;
+
+import common.ConcurrentSymbolTable;
+import common.SymbolTable;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures how the shared ConcurrentSymbolTable holds up as more threads
+ * use it at once, against a plain SymbolTable behind one lock, from 1 to
+ * 64 threads.  Three workloads are run, each a fixed number of operations
+ * split between the threads:
+ * <ul>
+ *     <li>read: 90% get and 10% set over 1024 variables</li>
+ *     <li>write: set over 1024 variables</li>
+ *     <li>counter: addAndGet on a single variable every thread shares</li>
+ * </ul>
+ * The throughput reported is the best of the rounds, in millions of
+ * operations per second.
+ *
+ * <pre>
+ *     java machine.bench.SymbolTableContentionBenchmark [operations] [rounds]
+ * </pre>
+ *
+ * @author jolin qiu
+ */
+public class SymbolTableContentionBenchmark {
+    /** the number of variables the read and write workloads use */
+    private static final int VARIABLES = 1024;
+
+    /** the thread counts to measure */
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+
+    /** the workloads */
+    private enum Workload { READ, WRITE, COUNTER }
+
+    /**
+     * A SymbolTable made safe to share the simplest way, as the baseline.
+     */
+    private static class LockedSymbolTable {
+        /** the table */
+        private final SymbolTable symTbl = new SymbolTable();
+
+        synchronized void set(String name, int value) { this.symTbl.set(name, value); }
+
+        synchronized int get(String name) { return this.symTbl.get(name); }
+
+        synchronized int addAndGet(String name, int delta) {
+            int value = this.symTbl.get(name) + delta;
+            this.symTbl.set(name, value);
+            return value;
+        }
+    }
+
+    /** the variable names */
+    private static final String[] NAMES = new String[VARIABLES];
+
+    /** keeps the results of get from being optimized away */
+    private static volatile int sink;
+
+    /**
+     * Run some operations of a workload on one thread.
+     *
+     * @param workload the workload
+     * @param shared the concurrent table, or null to use the locked one
+     * @param locked the locked table, used when shared is null
+     * @param thread the thread's number, which decides where it starts
+     * @param operations how many to run
+     */
+    private static void work(Workload workload, ConcurrentSymbolTable shared, LockedSymbolTable locked,
+                             int thread, int operations) {
+        int sum = 0;
+        int next = thread * 7919;
+        for (int i = 0; i < operations; i++) {
+            String name = NAMES[next++ & (VARIABLES - 1)];
+            switch (workload) {
+                case READ -> {
+                    if (i % 10 == 0) {
+                        if (shared != null) shared.set(name, i); else locked.set(name, i);
+                    } else {
+                        sum += shared != null ? shared.get(name) : locked.get(name);
+                    }
+                }
+                case WRITE -> {
+                    if (shared != null) shared.set(name, i); else locked.set(name, i);
+                }
+                case COUNTER -> sum += shared != null ? shared.addAndGet("count", 1) : locked.addAndGet("count", 1);
+            }
+        }
+        sink = sum;
+    }
+
+    /**
+     * Run a workload on a number of threads at once.
+     *
+     * @param workload the workload
+     * @param concurrent whether to use the concurrent table or the locked one
+     * @param threads the number of threads
+     * @param operations the total number of operations
+     * @return the time from starting the threads together to the last finishing, in nanoseconds
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static long measure(Workload workload, boolean concurrent, int threads, int operations)
+            throws InterruptedException {
+        ConcurrentSymbolTable shared = concurrent ? new ConcurrentSymbolTable() : null;
+        LockedSymbolTable locked = concurrent ? null : new LockedSymbolTable();
+        for (String name : NAMES) {
+            if (concurrent) shared.set(name, 0); else locked.set(name, 0);
+        }
+        if (concurrent) shared.set("count", 0); else locked.set("count", 0);
+
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            workers[t] = Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                work(workload, shared, locked, thread, operations / threads);
+            });
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        if (workload == Workload.COUNTER && concurrent && shared.get("count") != operations / threads * threads) {
+            throw new IllegalStateException("lost an update: " + shared.get("count"));
+        }
+        return elapsed;
+    }
+
+    /**
+     * Measure every workload at every thread count and report the best
+     * round of each.
+     *
+     * @param args optional number of operations and rounds
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 4_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        for (int i = 0; i < VARIABLES; i++) {
+            NAMES[i] = "var" + i;
+        }
+
+        System.out.println(operations + " operations, " + Runtime.getRuntime().availableProcessors()
+                + " processors, millions of operations per second");
+        System.out.printf("  %-9s %7s %12s %12s%n", "workload", "threads", "locked", "concurrent");
+        for (Workload workload : Workload.values()) {
+            for (int threads : THREADS) {
+                long locked = Long.MAX_VALUE;
+                long concurrent = Long.MAX_VALUE;
+                for (int round = 0; round < rounds; round++) {
+                    locked = Math.min(locked, measure(workload, false, threads, operations));
+                    concurrent = Math.min(concurrent, measure(workload, true, threads, operations));
+                }
+                System.out.printf("  %-9s %7d %12.1f %12.1f%n", workload.name().toLowerCase(), threads,
+                        operations * 1e3 / locked, operations * 1e3 / concurrent);
+            }
+        }
+    }
+}
@@ -0,0 +1,539 @@
+package machine.engine;
+
+import common.Errors;
+import common.OutputSink;
+import machine.Frame;
+import machine.InstructionStack;
+import machine.Maquina;
+import machine.Opcode;
+import machine.Program;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Compiles a program into a JVM hidden class so that HotSpot can compile it
+ * to native code.  Each STORE/LOAD variable becomes a JVM local and the MAQ
+ * operand stack becomes the JVM operand stack.  The code is straight-line
+ * but for a check before each DIV, MOD, SQRT and first LOAD of a variable not
+ * yet stored, which branches away if the instruction would fail.
+ *
+ * <p>Long programs are split into several methods, keeping each one small
+ * enough for the JIT, and the variables and operand stack are handed from
+ * one method to the next in an int array.  When
+ * the program runs, the variables are written back to the machine's frame
+ * and whatever is left on the operand stack is pushed onto the machine's
+ * instruction stack.  When an instruction fails, the variables stored
+ * before it and the stack it leaves are handed back the same way before
+ * the error is reported, so the machine is left exactly as the other
+ * engines leave it.  Programs that pop values they did not push, or that
+ * cannot be expressed as a class file, are run by the {@link SwitchEngine}
+ * instead.
+ *
+ * @author jolin qiu
+ */
+public final class BytecodeEngine {
+    /** the internal name of this class, which the generated code calls */
+    private static final String RUNTIME = "machine/engine/BytecodeEngine";
+
+    /** the internal name of the generated class (hidden classes get a unique suffix) */
+    private static final String GENERATED = "machine/engine/CompiledProgram";
+
+    /** the descriptor of each generated method: (frame, stack, slots, vars, output) */
+    private static final String CHUNK_DESCRIPTOR =
+            "(Lmachine/Frame;Lmachine/InstructionStack;[I[ILcommon/OutputSink;)V";
+
+    /** the type of each generated method */
+    private static final MethodType CHUNK_TYPE = MethodType.methodType(void.class,
+            Frame.class, InstructionStack.class, int[].class, int[].class, OutputSink.class);
+
+    /** the local holding the frame */
+    private static final int FRAME = 0;
+    /** the local holding the instruction stack */
+    private static final int STACK = 1;
+    /** the local holding the program-to-frame slot map */
+    private static final int SLOTS = 2;
+    /** the local holding the variables and operand stack passed between methods */
+    private static final int VARS = 3;
+    /** the local holding where PRINT prints */
+    private static final int OUTPUT = 4;
+    /** the first local holding a MAQ variable */
+    private static final int FIRST_VARIABLE = 5;
+
+    /** split into a new method once one reaches this many bytes (HotSpot will not compile methods over 8000) */
+    private static final int CHUNK_BYTES = 4000;
+
+    /** the type of each local a generated method starts with */
+    private static final String[] PARAMETER_TYPES =
+            {"machine/Frame", "machine/InstructionStack", "[I", "[I", "common/OutputSink"};
+
+    /** compiled programs, so that each is only compiled once */
+    private static final Map<Program, Compiled> COMPILED = new WeakHashMap<>();
+
+    /** marks a program that could not be compiled */
+    private static final Compiled NOT_COMPILABLE = new Compiled(new MethodHandle[0], new int[0], 0, new Site[0]);
+
+    /**
+     * A compiled program.
+     *
+     * @param chunks the methods to call in order
+     * @param storeOrder the variables in the order the program first stores them
+     * @param depth the number of values the program leaves on the stack
+     * @param sites the instructions that can fail, by the number their code reports
+     */
+    private record Compiled(MethodHandle[] chunks, int[] storeOrder, int depth, Site[] sites) {}
+
+    /**
+     * An instruction that can fail, and what the machine holds if it does.
+     *
+     * @param type the error it reports, or null for the ArithmeticException of MOD by zero
+     * @param variable the variable a failing LOAD names, or -1
+     * @param stored how many variables (of the store order) the program has stored by then
+     * @param depth the number of values on the stack once the instruction has popped its operands
+     */
+    private record Site(Errors.Type type, int variable, int stored, int depth) {}
+
+    /**
+     * Thrown by the generated code once it has handed the variables stored
+     * so far and the operand stack on, to say which instruction failed.
+     */
+    private static final class Spill extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        /** the failing instruction's number */
+        private final int site;
+
+        /**
+         * Create the exception, without a stack trace.
+         *
+         * @param site the failing instruction's number
+         */
+        Spill(int site) {
+            super(null, null, false, false);
+            this.site = site;
+        }
+    }
+
+    /**
+     * The engine has no state of its own.
+     */
+    private BytecodeEngine() {}
+
+    /**
+     * Run a program on a machine, compiling it first if needed.  If an
+     * instruction fails, the variables stored before it and the values
+     * left on the stack are written back first, as the other engines
+     * leave them.
+     *
+     * @param program the program to run
+     * @param machine the machine whose stack and variables are used
+     */
+    public static void run(Program program, Maquina machine) {
+        Compiled compiled = compile(program);
+        if (compiled == NOT_COMPILABLE) {
+            SwitchEngine.run(program, machine);
+            return;
+        }
+        Frame frame = machine.getFrame();
+        InstructionStack stack = machine.getInstructionStack();
+        OutputSink output = machine.getOutput();
+        int[] slots = frame.bind(program.names());
+        int[] vars = new int[program.names().length + program.maxDepth()];
+        try {
+            for (MethodHandle chunk : compiled.chunks()) {
+                chunk.invokeExact(frame, stack, slots, vars, output);
+            }
+        } catch (Spill spill) {
+            Site site = compiled.sites()[spill.site];
+            writeBack(compiled, site.stored(), site.depth(), vars, frame, slots, stack);
+            if (site.type() == null) {
+                throw new ArithmeticException("/ by zero");
+            }
+            throw site.variable() < 0 ? Errors.failure(site.type())
+                    : Errors.failure(site.type(), frame.name(slots[site.variable()]));
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+        writeBack(compiled, compiled.storeOrder().length, compiled.depth(), vars, frame, slots, stack);
+    }
+
+    /**
+     * Store the first variables the program stored into the frame, in the
+     * order it first stored them, then push the values on the operand stack
+     * onto the machine's instruction stack.
+     *
+     * @param compiled the program
+     * @param stored how many of the variables to store
+     * @param depth how many values are on the operand stack
+     * @param vars the variables and operand stack, as the generated code handed them on
+     * @param frame the machine's frame
+     * @param slots the frame slot of each of the program's variables
+     * @param stack the machine's instruction stack
+     */
+    private static void writeBack(Compiled compiled, int stored, int depth, int[] vars,
+                                  Frame frame, int[] slots, InstructionStack stack) {
+        for (int i = 0; i < stored; i++) {
+            int k = compiled.storeOrder()[i];
+            frame.store(slots[k], vars[k]);
+        }
+        for (int i = 0; i < depth; i++) {
+            stack.push(vars[slots.length + i]);
+        }
+    }
+
+    /**
+     * Get a program compiled, compiling it if this is the first time it
+     * has been seen.
+     *
+     * @param program the program
+     * @return the compiled program, or NOT_COMPILABLE
+     */
+    private static Compiled compile(Program program) {
+        synchronized (COMPILED) {
+            Compiled compiled = COMPILED.get(program);
+            if (compiled == null) {
+                try {
+                    compiled = define(program);
+                } catch (IllegalStateException e) {
+                    compiled = NOT_COMPILABLE;
+                }
+                COMPILED.put(program, compiled);
+            }
+            return compiled;
+        }
+    }
+
+    /**
+     * Generate and define the hidden class for a program.
+     *
+     * <p>Each method gives every variable it uses a local of its own, and
+     * starts by setting them all, so that they are ints wherever an error
+     * branches.  An instruction that can fail checks first and branches
+     * to a block after the method's return.  The block pops the
+     * instruction's operands, hands on the values above the lowest the
+     * operand stack has been in the method (those below are still in the
+     * array), and throws a Spill naming the instruction.  A handler round
+     * the blocks hands on the variables the method has stored and throws
+     * the Spill on.
+     *
+     * @param program the program
+     * @return the compiled program
+     * @throws IllegalStateException if the program cannot be compiled
+     */
+    private static Compiled define(Program program) {
+        int[] code = program.code();
+        int variables = program.names().length;
+        if (FIRST_VARIABLE + variables > 0xFFFF) {
+            throw new IllegalStateException("too many locals");
+        }
+
+        ClassWriter writer = new ClassWriter(GENERATED);
+        boolean[] stored = new boolean[variables];
+        List<Integer> storeOrder = new ArrayList<>();
+        List<Site> sites = new ArrayList<>();
+        // the local of each variable in the method being generated, or 0 if it has none
+        int[] locals = new int[variables];
+        int chunkCount = 0;
+        int pc = 0;
+        int depth = 0;
+        do {
+            // the variables this method gives a local, in order
+            List<Integer> used = new ArrayList<>();
+            boolean[] storedBefore = stored.clone();
+            boolean[] storedHere = new boolean[variables];
+            int entryDepth = depth;
+
+            ClassWriter.Code body = new ClassWriter.Code(writer);
+            // the blocks that hand on the operand stack when an instruction fails
+            ClassWriter.Code failures = new ClassWriter.Code(writer);
+            // for each failing instruction: its branch in body, its block in failures, and the stack depth
+            List<int[]> branches = new ArrayList<>();
+            int maxDepth = depth;
+            // the values below this are still those handed on by the previous methods
+            int low = depth;
+            while (pc < code.length) {
+                int opcode = code[pc];
+                low = Math.min(low, depth - Opcode.pops(opcode));
+                switch (opcode) {
+                    case Opcode.PUSH -> body.pushInt(code[pc + 1]);
+                    case Opcode.PRINT -> {
+                        body.aload(OUTPUT);
+                        body.invokestatic(RUNTIME, "print", "(ILcommon/OutputSink;)V");
+                    }
+                    case Opcode.STORE -> {
+                        int k = code[pc + 1];
+                        body.istore(local(k, locals, used));
+                        storedHere[k] = true;
+                        if (!stored[k]) {
+                            stored[k] = true;
+                            storeOrder.add(k);
+                        }
+                    }
+                    case Opcode.LOAD -> {
+                        int k = code[pc + 1];
+                        if (stored[k]) {
+                            body.iload(local(k, locals, used));
+                        } else {
+                            // not stored by the program yet, so it comes from the frame (if anywhere)
+                            frameSlot(body, k);
+                            body.invokevirtual("machine/Frame", "isDefined", "(I)Z");
+                            branches.add(fail(body, ClassWriter.Code.IFEQ, failures, variables, depth, 0, low, sites.size()));
+                            sites.add(new Site(Errors.Type.UNINITIALIZED, k, storeOrder.size(), depth));
+                            frameSlot(body, k);
+                            body.invokevirtual("machine/Frame", "load", "(I)I");
+                        }
+                    }
+                    case Opcode.NEGATE -> body.op(ClassWriter.Code.INEG);
+                    case Opcode.SQUARE_ROOT -> {
+                        body.op(ClassWriter.Code.DUP);
+                        branches.add(fail(body, ClassWriter.Code.IFLT, failures, variables, depth, 1, low, sites.size()));
+                        sites.add(new Site(Errors.Type.NEGATIVE_SQUARE_ROOT, -1, storeOrder.size(), depth - 1));
+                        body.invokestatic(RUNTIME, "squareRoot", "(I)I");
+                    }
+                    case Opcode.ADD -> body.op(ClassWriter.Code.IADD);
+                    case Opcode.SUBTRACT -> body.op(ClassWriter.Code.ISUB);
+                    case Opcode.MULTIPLY -> body.op(ClassWriter.Code.IMUL);
+                    case Opcode.DIVIDE -> {
+                        body.op(ClassWriter.Code.DUP);
+                        branches.add(fail(body, ClassWriter.Code.IFEQ, failures, variables, depth, 2, low, sites.size()));
+                        sites.add(new Site(Errors.Type.DIVIDE_BY_ZERO, -1, storeOrder.size(), depth - 2));
+                        body.op(ClassWriter.Code.IDIV);
+                    }
+                    default -> {
+                        // checked like DIV, but fails the way Modulus does
+                        body.op(ClassWriter.Code.DUP);
+                        branches.add(fail(body, ClassWriter.Code.IFEQ, failures, variables, depth, 2, low, sites.size()));
+                        sites.add(new Site(null, -1, storeOrder.size(), depth - 2));
+                        body.op(ClassWriter.Code.IREM);
+                    }
+                }
+                depth += Opcode.stackEffect(opcode);
+                if (depth < 0) {
+                    // the program uses values that were already on the machine's stack
+                    throw new IllegalStateException("stack underflow");
+                }
+                maxDepth = Math.max(maxDepth, depth);
+                pc = program.next(pc);
+                if (body.length() + failures.length() > CHUNK_BYTES) {
+                    break;
+                }
+            }
+
+            // the method starts by setting the locals, from the previous
+            // methods where they stored the variable, and by taking the
+            // operand stack from the previous methods
+            ClassWriter.Code chunk = new ClassWriter.Code(writer);
+            chunk.maxStack = maxDepth + 4;
+            chunk.maxLocals = FIRST_VARIABLE + used.size();
+            for (int k : used) {
+                if (storedBefore[k]) {
+                    loadVar(chunk, k);
+                } else {
+                    chunk.pushInt(0);
+                }
+                chunk.istore(locals[k]);
+            }
+            for (int i = 0; i < entryDepth; i++) {
+                loadVar(chunk, variables + i);
+            }
+            int start = chunk.append(body);
+
+            // and ends by handing on the operand stack and the variables it stored
+            handOn(chunk, variables, 0, depth);
+            for (int k : used) {
+                if (storedHere[k]) {
+                    storeVar(chunk, k, locals[k]);
+                }
+            }
+            chunk.op(ClassWriter.Code.RETURN);
+
+            if (!branches.isEmpty()) {
+                String[] types = new String[FIRST_VARIABLE + used.size()];
+                System.arraycopy(PARAMETER_TYPES, 0, types, 0, FIRST_VARIABLE);
+                Arrays.fill(types, FIRST_VARIABLE, types.length, "I");
+                int blocks = chunk.append(failures);
+                int handler = chunk.length();
+                for (int[] branch : branches) {
+                    chunk.patch(start + branch[0], blocks + branch[1]);
+                    String[] stack = new String[branch[2]];
+                    Arrays.fill(stack, "I");
+                    chunk.frame(blocks + branch[1], types, stack);
+                }
+                chunk.handler(blocks, handler, handler);
+                chunk.frame(handler, types, new String[] {"java/lang/Throwable"});
+                for (int k : used) {
+                    if (storedHere[k]) {
+                        storeVar(chunk, k, locals[k]);
+                    }
+                }
+                chunk.op(ClassWriter.Code.ATHROW);
+            }
+            writer.method(ClassWriter.ACC_PUBLIC_STATIC, "chunk" + chunkCount, CHUNK_DESCRIPTOR, chunk);
+            chunkCount++;
+            for (int k : used) {
+                locals[k] = 0;
+            }
+        } while (pc < code.length);
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(writer.toByteArray(), true);
+            MethodHandle[] chunks = new MethodHandle[chunkCount];
+            for (int i = 0; i < chunkCount; i++) {
+                chunks[i] = lookup.findStatic(lookup.lookupClass(), "chunk" + i, CHUNK_TYPE);
+            }
+            return new Compiled(chunks, storeOrder.stream().mapToInt(Integer::intValue).toArray(), depth,
+                    sites.toArray(new Site[0]));
+        } catch (IllegalAccessException | NoSuchMethodException | LinkageError e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Get the local of a variable in the method being generated, giving it
+     * the next one if it has none yet.
+     *
+     * @param k the variable
+     * @param locals the local of each variable, or 0
+     * @param used the variables given a local so far
+     * @return the local
+     */
+    private static int local(int k, int[] locals, List<Integer> used) {
+        if (locals[k] == 0) {
+            locals[k] = FIRST_VARIABLE + used.size();
+            used.add(k);
+        }
+        return locals[k];
+    }
+
+    /**
+     * Generate code to push the frame and a variable's frame slot.
+     *
+     * @param body the method
+     * @param k the variable
+     */
+    private static void frameSlot(ClassWriter.Code body, int k) {
+        body.aload(FRAME);
+        body.aload(SLOTS);
+        body.pushInt(k);
+        body.op(ClassWriter.Code.IALOAD);
+    }
+
+    /**
+     * Generate the check of an instruction that can fail: a branch to a
+     * new block that pops the instruction's operands, hands on the values
+     * of the operand stack the method has pushed, and throws a Spill with
+     * the instruction's number.  The branch is pointed once the method is
+     * put together.
+     *
+     * @param body the method
+     * @param opcode the branch, taken if the instruction fails
+     * @param failures the blocks
+     * @param variables the number of variables
+     * @param depth the number of values on the operand stack before the instruction
+     * @param operands the number of them the instruction pops
+     * @param low the lowest the operand stack has been in the method
+     * @param site the instruction's number
+     * @return the branch, the block and the depth
+     */
+    private static int[] fail(ClassWriter.Code body, int opcode, ClassWriter.Code failures,
+                              int variables, int depth, int operands, int low, int site) {
+        int branch = body.branch(opcode);
+        int block = failures.length();
+        for (int i = 0; i < operands; i++) {
+            failures.op(ClassWriter.Code.POP);
+        }
+        handOn(failures, variables, Math.min(low, depth - operands), depth - operands);
+        failures.pushInt(site);
+        failures.invokestatic(RUNTIME, "spill", "(I)Ljava/lang/RuntimeException;");
+        failures.op(ClassWriter.Code.ATHROW);
+        return new int[] {branch, block, depth};
+    }
+
+    /**
+     * Generate code to move the top of the operand stack into the array
+     * passed between methods, after the variables.
+     *
+     * @param chunk the method
+     * @param variables the number of variables
+     * @param from the depth of the first value moved
+     * @param depth the number of values on the operand stack
+     */
+    private static void handOn(ClassWriter.Code chunk, int variables, int from, int depth) {
+        for (int i = depth - 1; i >= from; i--) {
+            chunk.aload(VARS);
+            chunk.op(ClassWriter.Code.SWAP);
+            chunk.pushInt(variables + i);
+            chunk.op(ClassWriter.Code.SWAP);
+            chunk.op(ClassWriter.Code.IASTORE);
+        }
+    }
+
+    /**
+     * Generate code to push an element of the array passed between methods.
+     *
+     * @param chunk the method
+     * @param index the element
+     */
+    private static void loadVar(ClassWriter.Code chunk, int index) {
+        chunk.aload(VARS);
+        chunk.pushInt(index);
+        chunk.op(ClassWriter.Code.IALOAD);
+    }
+
+    /**
+     * Generate code to copy a variable's local into the array passed
+     * between methods.
+     *
+     * @param chunk the method
+     * @param k the variable
+     * @param local its local
+     */
+    private static void storeVar(ClassWriter.Code chunk, int k, int local) {
+        chunk.aload(VARS);
+        chunk.pushInt(k);
+        chunk.iload(local);
+        chunk.op(ClassWriter.Code.IASTORE);
+    }
+
+    // called from the generated code
+
+    /**
+     * PRINT: display a value.
+     *
+     * @param value the value
+     * @param output where it is printed
+     */
+    static void print(int value, OutputSink output) {
+        output.println(value);
+    }
+
+    /**
+     * SQRT: take the integer square root of a value the generated code
+     * has already checked.
+     *
+     * @param value the value, not negative
+     * @return the square root
+     */
+    static int squareRoot(int value) {
+        return (int) Math.sqrt(value);
+    }
+
+    /**
+     * Make the exception that tells run() which instruction failed, once
+     * the generated code has handed on everything it holds.
+     *
+     * @param site the failing instruction's number
+     * @return the exception, for the generated code to throw
+     */
+    static RuntimeException spill(int site) {
+        return new Spill(site);
+    }
+}
@@ -0,0 +1,177 @@
+package machine.engine;
+
+import common.OutputSink;
+import machine.CheckpointFile;
+import machine.CheckpointFile.Checkpoint;
+import machine.Frame;
+import machine.InstructionStack;
+import machine.Maquina;
+import machine.Program;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Runs a program while saving a checkpoint of the variables, the stack and
+ * the position every so many instructions, and resumes a re-run program
+ * from the latest checkpoint that still applies to it.  A checkpoint
+ * applies while every instruction before it is unchanged, which is checked
+ * with a rolling hash of the program prefix, so a program edited near its
+ * end only re-runs the part after the edit.
+ *
+ * <p>Resuming assumes the machine starts out as it did on the run that
+ * saved the checkpoints, normally a new machine.  Anything printed before
+ * the checkpoint is not printed again.
+ *
+ * @author jolin qiu
+ */
+public final class CheckpointEngine {
+    /** the default number of instructions between checkpoints */
+    public static final int DEFAULT_INTERVAL = 1 << 20;
+
+    /**
+     * The engine has no state of its own.
+     */
+    private CheckpointEngine() {}
+
+    /**
+     * Run a program on a machine, resuming from a checkpoint if possible
+     * and saving new ones as it goes.  Checkpoints that no longer apply are
+     * removed from the file.
+     *
+     * @param program the program to run
+     * @param machine the machine whose stack and variables are used
+     * @param file the checkpoint file, created if it does not exist
+     * @param interval the number of instructions between checkpoints
+     * @return the index of the instruction execution resumed at, 0 if it
+     *      started from the beginning
+     * @throws UncheckedIOException if the checkpoint file cannot be read or written
+     */
+    public static int run(Program program, Maquina machine, Path file, int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("checkpoint interval " + interval);
+        }
+        int[] code = program.code();
+        Frame frame = machine.getFrame();
+        OutputSink output = machine.getOutput();
+        int[] slots = frame.bind(program.names());
+        InstructionStack instructionStack = machine.getInstructionStack();
+
+        // find the latest checkpoint whose prefix is unchanged, dropping the rest
+        List<Checkpoint> saved;
+        try {
+            saved = CheckpointFile.read(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[][] names = CheckpointFile.names(program);
+        int index = 0;
+        int pc = 0;
+        long hash = CheckpointFile.EMPTY_HASH;
+        Checkpoint resume = null;
+        int resumePc = 0;
+        long resumeHash = hash;
+        int kept = 0;
+        for (Checkpoint checkpoint : saved) {
+            if (checkpoint.index() < index || checkpoint.index() > program.size()) {
+                break;
+            }
+            while (index < checkpoint.index()) {
+                hash = CheckpointFile.hash(hash, program, names, pc);
+                pc = program.next(pc);
+                index++;
+            }
+            if (hash != checkpoint.prefixHash()) {
+                break;
+            }
+            resume = checkpoint;
+            resumePc = pc;
+            resumeHash = hash;
+            kept++;
+        }
+        index = resume == null ? 0 : resume.index();
+        pc = resumePc;
+        hash = resumeHash;
+        try {
+            CheckpointFile.write(file, saved.subList(0, kept));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        int sp;
+        int[] stack;
+        if (resume == null) {
+            sp = instructionStack.size();
+            stack = new int[sp + program.maxDepth()];
+            for (int i = sp - 1; i >= 0; i--) {
+                stack[i] = instructionStack.pop();
+            }
+        } else {
+            for (int i = 0; i < resume.names().length; i++) {
+                frame.store(frame.slot(resume.names()[i]), resume.values()[i]);
+            }
+            while (instructionStack.size() > 0) {
+                instructionStack.pop();
+            }
+            sp = resume.stack().length;
+            stack = new int[sp + program.maxDepth()];
+            System.arraycopy(resume.stack(), 0, stack, 0, sp);
+        }
+
+        int start = index;
+        int next = (start / interval + 1) * interval;
+        boolean checked = !program.isVerified();
+        int[] depth = {sp};
+        try {
+            while (pc < code.length) {
+                // hash the instructions up to the next checkpoint, then run them
+                int end = pc;
+                while (index < next && end < code.length) {
+                    hash = CheckpointFile.hash(hash, program, names, end);
+                    end = program.next(end);
+                    index++;
+                }
+                SwitchEngine.run(code, pc, end, stack, depth, frame, slots, checked, output);
+                pc = end;
+                if (index == next && pc < code.length) {
+                    save(file, index, hash, frame, stack, depth[0]);
+                }
+                next += interval;
+            }
+        } finally {
+            for (int i = 0; i < depth[0]; i++) {
+                instructionStack.push(stack[i]);
+            }
+        }
+        return start;
+    }
+
+    /**
+     * Append a checkpoint of the machine's state to the file.
+     *
+     * @param file the checkpoint file
+     * @param index the index of the next instruction
+     * @param hash the hash of the instructions before it
+     * @param frame the machine's frame
+     * @param stack the operand stack
+     * @param sp the number of values on the stack
+     */
+    private static void save(Path file, int index, long hash, Frame frame, int[] stack, int sp) {
+        String[] names = new String[frame.size()];
+        int[] values = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            int slot = frame.storedSlot(i);
+            names[i] = frame.name(slot);
+            values[i] = frame.load(slot);
+        }
+        int[] copy = new int[sp];
+        System.arraycopy(stack, 0, copy, 0, sp);
+        try {
+            CheckpointFile.append(file, new Checkpoint(index, hash, names, values, copy));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,560 @@
+package machine.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Just enough of a JVM class file writer to emit mostly straight-line
+ * static methods: a constant pool, methods with a Code attribute, an
+ * exception table and, for methods that branch, a StackMapTable of full
+ * frames, and nothing else.
+ *
+ * @author jolin qiu
+ */
+class ClassWriter {
+    /** class file version 52 (Java 8) */
+    private static final int MAJOR_VERSION = 52;
+
+    /** public static */
+    static final int ACC_PUBLIC_STATIC = 0x0009;
+
+    /** the constant pool entries, already encoded */
+    private final ByteArrayOutputStream pool;
+
+    /** the index of each constant pool entry, keyed by its encoding */
+    private final Map<String, Integer> poolIndex;
+
+    /** the number of constant pool slots used, plus one */
+    private int poolCount;
+
+    /** the methods, already encoded */
+    private final ByteArrayOutputStream methods;
+
+    /** the number of methods */
+    private int methodCount;
+
+    /** the index of this class in the constant pool */
+    private final int thisClass;
+
+    /** the index of java/lang/Object in the constant pool */
+    private final int superClass;
+
+    /**
+     * Start a new final class.
+     *
+     * @param name the internal name of the class, e.g. "machine/engine/Foo"
+     */
+    ClassWriter(String name) {
+        this.pool = new ByteArrayOutputStream();
+        this.poolIndex = new HashMap<>();
+        this.poolCount = 1;
+        this.methods = new ByteArrayOutputStream();
+        this.thisClass = classRef(name);
+        this.superClass = classRef("java/lang/Object");
+    }
+
+    /**
+     * Add (or find) a constant pool entry.
+     *
+     * @param key a unique description of the entry
+     * @param bytes the encoded entry
+     * @return its index
+     */
+    private int constant(String key, byte[] bytes) {
+        Integer index = poolIndex.get(key);
+        if (index == null) {
+            if (poolCount >= 0xFFFF) {
+                throw new IllegalStateException("constant pool overflow");
+            }
+            index = poolCount++;
+            poolIndex.put(key, index);
+            pool.writeBytes(bytes);
+        }
+        return index;
+    }
+
+    /**
+     * Add a UTF-8 entry.  Only ASCII and other characters that modified
+     * UTF-8 encodes like UTF-8 are expected, except the null character.
+     *
+     * @param text the text
+     * @return its index
+     */
+    int utf8(String text) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(1);
+        byte[] encoded = modifiedUtf8(text);
+        if (encoded.length > 0xFFFF) {
+            throw new IllegalStateException("constant too long");
+        }
+        bytes.write(encoded.length >> 8);
+        bytes.write(encoded.length);
+        bytes.writeBytes(encoded);
+        return constant("U" + text, bytes.toByteArray());
+    }
+
+    /**
+     * Add a class entry.
+     *
+     * @param internalName the internal name of the class
+     * @return its index
+     */
+    int classRef(String internalName) {
+        return constant("C" + internalName, u1u2(7, utf8(internalName)));
+    }
+
+    /**
+     * Add a string entry.
+     *
+     * @param text the string
+     * @return its index
+     */
+    int string(String text) {
+        return constant("S" + text, u1u2(8, utf8(text)));
+    }
+
+    /**
+     * Add an int entry.
+     *
+     * @param value the int
+     * @return its index
+     */
+    int integer(int value) {
+        return constant("I" + value, new byte[] {3,
+                (byte) (value >> 24), (byte) (value >> 16), (byte) (value >> 8), (byte) value});
+    }
+
+    /**
+     * Add a method reference entry.
+     *
+     * @param owner the internal name of the class declaring the method
+     * @param name the method name
+     * @param descriptor the method descriptor
+     * @return its index
+     */
+    int methodRef(String owner, String name, String descriptor) {
+        int nameAndType = constant("N" + name + descriptor, u1u2u2(12, utf8(name), utf8(descriptor)));
+        return constant("M" + owner + "." + name + descriptor, u1u2u2(10, classRef(owner), nameAndType));
+    }
+
+    /**
+     * Add a method.
+     *
+     * @param access the access flags
+     * @param name the method name
+     * @param descriptor the method descriptor
+     * @param code the method's code
+     */
+    void method(int access, String name, String descriptor, Code code) {
+        byte[] bytecode = code.toByteArray();
+        if (bytecode.length > 0xFFFF) {
+            throw new IllegalStateException("method too large");
+        }
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int codeIndex = utf8("Code");
+        byte[] frames = code.frames.toByteArray();
+        int stackMapIndex = code.frameCount > 0 ? utf8("StackMapTable") : 0;
+        writeU2(methods, access);
+        writeU2(methods, nameIndex);
+        writeU2(methods, descriptorIndex);
+        writeU2(methods, 1);
+        writeU2(methods, codeIndex);
+        byte[] handlers = code.handlers.toByteArray();
+        writeU4(methods, 12 + bytecode.length + handlers.length + (code.frameCount > 0 ? 8 + frames.length : 0));
+        writeU2(methods, code.maxStack);
+        writeU2(methods, code.maxLocals);
+        writeU4(methods, bytecode.length);
+        methods.writeBytes(bytecode);
+        writeU2(methods, handlers.length / 8);
+        methods.writeBytes(handlers);
+        if (code.frameCount > 0) {
+            writeU2(methods, 1);
+            writeU2(methods, stackMapIndex);
+            writeU4(methods, 2 + frames.length);
+            writeU2(methods, code.frameCount);
+            methods.writeBytes(frames);
+        } else {
+            writeU2(methods, 0); // attributes
+        }
+        methodCount++;
+    }
+
+    /**
+     * Finish the class.
+     *
+     * @return the class file bytes
+     */
+    byte[] toByteArray() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeU4(out, 0xCAFEBABE);
+        writeU2(out, 0);
+        writeU2(out, MAJOR_VERSION);
+        writeU2(out, poolCount);
+        out.writeBytes(pool.toByteArray());
+        writeU2(out, 0x0030); // final, super
+        writeU2(out, thisClass);
+        writeU2(out, superClass);
+        writeU2(out, 0); // interfaces
+        writeU2(out, 0); // fields
+        writeU2(out, methodCount);
+        out.writeBytes(methods.toByteArray());
+        writeU2(out, 0); // attributes
+        return out.toByteArray();
+    }
+
+    /**
+     * Encode a string in the class file's modified UTF-8.
+     *
+     * @param text the string
+     * @return the bytes
+     */
+    private static byte[] modifiedUtf8(String text) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != 0 && c < 0x80) {
+                out.write(c);
+            } else if (c < 0x800) {
+                out.write(0xC0 | c >> 6);
+                out.write(0x80 | c & 0x3F);
+            } else {
+                out.write(0xE0 | c >> 12);
+                out.write(0x80 | c >> 6 & 0x3F);
+                out.write(0x80 | c & 0x3F);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encode a one byte tag and a two byte index.
+     */
+    private static byte[] u1u2(int tag, int index) {
+        return new byte[] {(byte) tag, (byte) (index >> 8), (byte) index};
+    }
+
+    /**
+     * Encode a one byte tag and two two byte indexes.
+     */
+    private static byte[] u1u2u2(int tag, int first, int second) {
+        return new byte[] {(byte) tag, (byte) (first >> 8), (byte) first, (byte) (second >> 8), (byte) second};
+    }
+
+    /**
+     * Write a two byte value.
+     */
+    private static void writeU2(ByteArrayOutputStream out, int value) {
+        out.write(value >> 8);
+        out.write(value);
+    }
+
+    /**
+     * Write a four byte value.
+     */
+    private static void writeU4(ByteArrayOutputStream out, int value) {
+        writeU2(out, value >>> 16);
+        writeU2(out, value);
+    }
+
+    /**
+     * The bytecode of one method, along with its stack and local sizes.
+     */
+    static class Code {
+        static final int ICONST_0 = 0x03;
+        static final int BIPUSH = 0x10;
+        static final int SIPUSH = 0x11;
+        static final int LDC_W = 0x13;
+        static final int ILOAD = 0x15;
+        static final int ALOAD = 0x19;
+        static final int ALOAD_0 = 0x2A;
+        static final int IALOAD = 0x2E;
+        static final int ISTORE = 0x36;
+        static final int IASTORE = 0x4F;
+        static final int POP = 0x57;
+        static final int DUP = 0x59;
+        static final int SWAP = 0x5F;
+        static final int IADD = 0x60;
+        static final int ISUB = 0x64;
+        static final int IMUL = 0x68;
+        static final int IDIV = 0x6C;
+        static final int IREM = 0x70;
+        static final int INEG = 0x74;
+        static final int IFEQ = 0x99;
+        static final int IFLT = 0x9B;
+        static final int GOTO = 0xA7;
+        static final int RETURN = 0xB1;
+        static final int INVOKEVIRTUAL = 0xB6;
+        static final int INVOKESTATIC = 0xB8;
+        static final int ATHROW = 0xBF;
+        static final int WIDE = 0xC4;
+
+        /** the verification type of an int */
+        private static final int INTEGER = 1;
+
+        /** the verification type of an object */
+        private static final int OBJECT = 7;
+
+        /** the class the code belongs to, for constants */
+        private final ClassWriter owner;
+
+        /** the bytecode */
+        private final PatchableBytes bytes;
+
+        /** the exception table entries, already encoded */
+        private final ByteArrayOutputStream handlers;
+
+        /** the StackMapTable entries, already encoded */
+        private final ByteArrayOutputStream frames;
+
+        /** the number of StackMapTable entries */
+        private int frameCount;
+
+        /** the offset of the last StackMapTable entry, or -1 */
+        private int lastFrame;
+
+        /** the operand stack size needed */
+        int maxStack;
+
+        /** the number of locals needed */
+        int maxLocals;
+
+        /**
+         * Start an empty method body.
+         *
+         * @param owner the class the code belongs to
+         */
+        Code(ClassWriter owner) {
+            this.owner = owner;
+            this.bytes = new PatchableBytes();
+            this.handlers = new ByteArrayOutputStream();
+            this.frames = new ByteArrayOutputStream();
+            this.lastFrame = -1;
+        }
+
+        /**
+         * Get the number of bytes written so far.
+         *
+         * @return the code length
+         */
+        int length() {
+            return bytes.size();
+        }
+
+        /**
+         * Write an instruction with no operands.
+         *
+         * @param opcode the JVM opcode
+         */
+        void op(int opcode) {
+            bytes.write(opcode);
+        }
+
+        /**
+         * Load a reference local.
+         *
+         * @param local the local index
+         */
+        void aload(int local) {
+            if (local <= 3) {
+                bytes.write(ALOAD_0 + local);
+            } else {
+                local(ALOAD, local);
+            }
+        }
+
+        /**
+         * Push an int constant in the shortest form.
+         *
+         * @param value the constant
+         */
+        void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                bytes.write(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                bytes.write(BIPUSH);
+                bytes.write(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                bytes.write(SIPUSH);
+                writeU2(bytes, value);
+            } else {
+                bytes.write(LDC_W);
+                writeU2(bytes, owner.integer(value));
+            }
+        }
+
+        /**
+         * Load an int local.
+         *
+         * @param local the local index
+         */
+        void iload(int local) {
+            local(ILOAD, local);
+        }
+
+        /**
+         * Store an int local.
+         *
+         * @param local the local index
+         */
+        void istore(int local) {
+            local(ISTORE, local);
+        }
+
+        /**
+         * Write a local variable instruction, widening it if needed.
+         */
+        private void local(int opcode, int local) {
+            if (local > 0xFF) {
+                bytes.write(WIDE);
+                bytes.write(opcode);
+                writeU2(bytes, local);
+            } else {
+                bytes.write(opcode);
+                bytes.write(local);
+            }
+        }
+
+        /**
+         * Call a static method.
+         *
+         * @param owner the internal name of the declaring class
+         * @param name the method name
+         * @param descriptor the method descriptor
+         */
+        void invokestatic(String owner, String name, String descriptor) {
+            bytes.write(INVOKESTATIC);
+            writeU2(bytes, this.owner.methodRef(owner, name, descriptor));
+        }
+
+        /**
+         * Call an instance method.
+         *
+         * @param owner the internal name of the declaring class
+         * @param name the method name
+         * @param descriptor the method descriptor
+         */
+        void invokevirtual(String owner, String name, String descriptor) {
+            bytes.write(INVOKEVIRTUAL);
+            writeU2(bytes, this.owner.methodRef(owner, name, descriptor));
+        }
+
+        /**
+         * Write a branch whose target is not known yet.
+         *
+         * @param opcode the JVM branch opcode
+         * @return the offset of the branch, to {@link #patch} later
+         */
+        int branch(int opcode) {
+            int at = bytes.size();
+            bytes.write(opcode);
+            writeU2(bytes, 0);
+            return at;
+        }
+
+        /**
+         * Point a branch at its target.
+         *
+         * @param branch the offset of the branch
+         * @param target the offset of the target
+         */
+        void patch(int branch, int target) {
+            int offset = target - branch;
+            if (offset != (short) offset) {
+                throw new IllegalStateException("branch too far");
+            }
+            bytes.set(branch + 1, offset >> 8);
+            bytes.set(branch + 2, offset);
+        }
+
+        /**
+         * Append another method body, as it is, to this one.
+         *
+         * @param code the body
+         * @return the offset it starts at here
+         */
+        int append(Code code) {
+            int at = bytes.size();
+            bytes.writeBytes(code.toByteArray());
+            return at;
+        }
+
+        /**
+         * Catch anything thrown by the code in a range.
+         *
+         * @param start the offset of the first instruction in the range
+         * @param end the offset just past the range
+         * @param handler the offset of the code that handles it
+         */
+        void handler(int start, int end, int handler) {
+            writeU2(handlers, start);
+            writeU2(handlers, end);
+            writeU2(handlers, handler);
+            writeU2(handlers, 0); // any exception
+        }
+
+        /**
+         * Describe the locals and operand stack at a branch target or
+         * handler, as a full frame.  Frames must be given in order of their
+         * offsets.  Each type is "I" for an int, the internal name of a
+         * class, or null for a local not yet assigned.
+         *
+         * @param offset the branch target
+         * @param locals the type of each local
+         * @param stack the type of each value on the operand stack, from the bottom
+         */
+        void frame(int offset, String[] locals, String[] stack) {
+            frames.write(255);
+            writeU2(frames, lastFrame < 0 ? offset : offset - lastFrame - 1);
+            types(locals);
+            types(stack);
+            frameCount++;
+            lastFrame = offset;
+        }
+
+        /**
+         * Write a list of verification types.
+         *
+         * @param types the types
+         */
+        private void types(String[] types) {
+            writeU2(frames, types.length);
+            for (String type : types) {
+                if (type == null) {
+                    frames.write(0);
+                } else if (type.equals("I")) {
+                    frames.write(INTEGER);
+                } else {
+                    frames.write(OBJECT);
+                    writeU2(frames, owner.classRef(type));
+                }
+            }
+        }
+
+        /**
+         * Get the bytecode.
+         *
+         * @return the bytes
+         */
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * A byte buffer whose bytes can be changed after they are written, so
+     * that branches can be pointed forward.
+     */
+    private static class PatchableBytes extends ByteArrayOutputStream {
+        /**
+         * Change a byte already written.
+         *
+         * @param index where it is
+         * @param value the new value
+         */
+        void set(int index, int value) {
+            buf[index] = (byte) value;
+        }
+    }
+}
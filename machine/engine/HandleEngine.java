@@ -0,0 +1,358 @@
+package machine.engine;
+
+import common.Errors;
+import common.OutputSink;
+import machine.Frame;
+import machine.InstructionStack;
+import machine.Maquina;
+import machine.Opcode;
+import machine.Program;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Runs a program as a chain of method handles, one per instruction, with
+ * each instruction's operand bound into its handle.  The handles are
+ * joined into a single handle that runs them in order, so running the
+ * program is one call, and the JIT can inline through the chain once the
+ * same program has run often enough, without generating any bytecode.
+ *
+ * <p>The chain is a balanced tree of
+ * {@link MethodHandles#foldArguments folds}, so a program of n instructions
+ * only nests log n calls deep.  Each handle takes the run's {@link State},
+ * which holds the operand stack and the machine's frame, so the chain
+ * belongs to the program alone and is linked once for any number of runs
+ * on any number of machines.
+ *
+ * @author jolin qiu
+ */
+public final class HandleEngine {
+    /** the type of every instruction handle and of the chain */
+    private static final MethodType STEP = MethodType.methodType(void.class, State.class);
+
+    /** the handle of each opcode's implementation, with the operand still to bind */
+    private static final MethodHandle[] OPCODES = new MethodHandle[Opcode.COUNT];
+
+    /** LOAD without the uninitialized check, for verified programs */
+    private static final MethodHandle LOAD_UNCHECKED;
+
+    /** an opcode no instruction has, with the opcode still to bind */
+    private static final MethodHandle ILLEGAL;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodType operand = STEP.appendParameterTypes(int.class);
+        try {
+            OPCODES[Opcode.PUSH] = lookup.findStatic(HandleEngine.class, "push", operand);
+            OPCODES[Opcode.PRINT] = lookup.findStatic(HandleEngine.class, "print", STEP);
+            OPCODES[Opcode.STORE] = lookup.findStatic(HandleEngine.class, "store", operand);
+            OPCODES[Opcode.LOAD] = lookup.findStatic(HandleEngine.class, "load", operand);
+            OPCODES[Opcode.NEGATE] = lookup.findStatic(HandleEngine.class, "negate", STEP);
+            OPCODES[Opcode.SQUARE_ROOT] = lookup.findStatic(HandleEngine.class, "squareRoot", STEP);
+            OPCODES[Opcode.ADD] = lookup.findStatic(HandleEngine.class, "add", STEP);
+            OPCODES[Opcode.SUBTRACT] = lookup.findStatic(HandleEngine.class, "subtract", STEP);
+            OPCODES[Opcode.MULTIPLY] = lookup.findStatic(HandleEngine.class, "multiply", STEP);
+            OPCODES[Opcode.DIVIDE] = lookup.findStatic(HandleEngine.class, "divide", STEP);
+            OPCODES[Opcode.MODULUS] = lookup.findStatic(HandleEngine.class, "modulus", STEP);
+            LOAD_UNCHECKED = lookup.findStatic(HandleEngine.class, "loadUnchecked", operand);
+            ILLEGAL = lookup.findStatic(HandleEngine.class, "illegal", operand);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /** linked programs, so that each is only linked once */
+    private static final Map<Program, MethodHandle> LINKED = new WeakHashMap<>();
+
+    /**
+     * Everything one run of a program works on.
+     */
+    private static final class State {
+        /** the operand stack */
+        final int[] stack;
+
+        /** the number of values on the stack */
+        int sp;
+
+        /** the machine's frame */
+        final Frame frame;
+
+        /** the frame slot of each of the program's variables */
+        final int[] slots;
+
+        /** where PRINT prints */
+        final OutputSink output;
+
+        /**
+         * Create the state of a run.
+         *
+         * @param stack the operand stack
+         * @param sp the number of values already on it
+         * @param frame the machine's frame
+         * @param slots the frame slot of each of the program's variables
+         * @param output where PRINT prints
+         */
+        State(int[] stack, int sp, Frame frame, int[] slots, OutputSink output) {
+            this.stack = stack;
+            this.sp = sp;
+            this.frame = frame;
+            this.slots = slots;
+            this.output = output;
+        }
+    }
+
+    /**
+     * The engine has no state of its own.
+     */
+    private HandleEngine() {}
+
+    /**
+     * Run a program on a machine, linking it first if needed.  The machine's
+     * instruction stack and frame are left exactly as the
+     * object-per-instruction engine would leave them.
+     *
+     * @param program the program to run
+     * @param machine the machine whose stack and variables are used
+     */
+    public static void run(Program program, Maquina machine) {
+        MethodHandle chain = link(program);
+        Frame frame = machine.getFrame();
+
+        // move whatever the machine already has on its stack into the local copy
+        InstructionStack instructionStack = machine.getInstructionStack();
+        int sp = instructionStack.size();
+        int[] stack = new int[sp + program.maxDepth()];
+        for (int i = sp - 1; i >= 0; i--) {
+            stack[i] = instructionStack.pop();
+        }
+
+        State state = new State(stack, sp, frame, frame.bind(program.names()), machine.getOutput());
+        try {
+            chain.invokeExact(state);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        } finally {
+            // hand the local stack back to the machine
+            for (int i = 0; i < state.sp; i++) {
+                instructionStack.push(stack[i]);
+            }
+        }
+    }
+
+    /**
+     * Get the chain of a program, linking it if this is the first time it
+     * has been seen.
+     *
+     * @param program the program
+     * @return the handle that runs the whole program
+     */
+    private static MethodHandle link(Program program) {
+        synchronized (LINKED) {
+            MethodHandle chain = LINKED.get(program);
+            if (chain == null) {
+                int[] code = program.code();
+                MethodHandle[] steps = new MethodHandle[program.size()];
+                for (int pc = 0, index = 0; pc < code.length; pc = program.next(pc), index++) {
+                    steps[index] = step(program, pc);
+                }
+                chain = sequence(steps, 0, steps.length);
+                LINKED.put(program, chain);
+            }
+            return chain;
+        }
+    }
+
+    /**
+     * Make the handle of one instruction.
+     *
+     * @param program the program
+     * @param pc where the instruction starts
+     * @return its handle, with any operand bound
+     */
+    private static MethodHandle step(Program program, int pc) {
+        int opcode = program.code()[pc];
+        if (opcode < 0 || opcode >= Opcode.COUNT) {
+            // reported when the chain gets this far, as the other engines do
+            return MethodHandles.insertArguments(ILLEGAL, 1, opcode);
+        }
+        MethodHandle handle = opcode == Opcode.LOAD && program.isVerified() ? LOAD_UNCHECKED : OPCODES[opcode];
+        return Opcode.hasOperand(opcode)
+                ? MethodHandles.insertArguments(handle, 1, program.code()[pc + 1])
+                : handle;
+    }
+
+    /**
+     * Join some instruction handles into one that runs them in order, as a
+     * balanced tree so that the nesting stays shallow.
+     *
+     * @param steps the instruction handles
+     * @param from the first to join
+     * @param to just past the last to join
+     * @return the joined handle
+     */
+    private static MethodHandle sequence(MethodHandle[] steps, int from, int to) {
+        if (to - from == 0) {
+            return MethodHandles.empty(STEP);
+        } else if (to - from == 1) {
+            return steps[from];
+        }
+        int middle = (from + to) >>> 1;
+        // run the first half, then the second half, on the same state
+        return MethodHandles.foldArguments(sequence(steps, middle, to), sequence(steps, from, middle));
+    }
+
+    // the instructions, each bound into the chain
+
+    /**
+     * An opcode no instruction has.
+     *
+     * @param state the run
+     * @param opcode the opcode
+     */
+    private static void illegal(State state, int opcode) {
+        throw Errors.failure(Errors.Type.ILLEGAL_INSTRUCTION, opcode);
+    }
+
+    /**
+     * PUSH: push a constant.
+     *
+     * @param state the run
+     * @param value the constant
+     */
+    private static void push(State state, int value) {
+        state.stack[state.sp++] = value;
+    }
+
+    /**
+     * PRINT: pop and display a value.
+     *
+     * @param state the run
+     */
+    private static void print(State state) {
+        state.output.println(state.stack[--state.sp]);
+    }
+
+    /**
+     * STORE: pop a value into a variable.
+     *
+     * @param state the run
+     * @param slot the variable's program slot
+     */
+    private static void store(State state, int slot) {
+        state.frame.store(state.slots[slot], state.stack[--state.sp]);
+    }
+
+    /**
+     * LOAD: push a variable's value, reporting a variable never stored.
+     *
+     * @param state the run
+     * @param slot the variable's program slot
+     */
+    private static void load(State state, int slot) {
+        int frameSlot = state.slots[slot];
+        // Attempting to load a variable name that has not been stored yet.
+        if (!state.frame.isDefined(frameSlot)) {
+            throw Errors.failure(Errors.Type.UNINITIALIZED, state.frame.name(frameSlot));
+        }
+        state.stack[state.sp++] = state.frame.load(frameSlot);
+    }
+
+    /**
+     * LOAD in a verified program, which cannot load a variable never stored.
+     *
+     * @param state the run
+     * @param slot the variable's program slot
+     */
+    private static void loadUnchecked(State state, int slot) {
+        state.stack[state.sp++] = state.frame.load(state.slots[slot]);
+    }
+
+    /**
+     * NEG: negate the top value.
+     *
+     * @param state the run
+     */
+    private static void negate(State state) {
+        state.stack[state.sp - 1] = -state.stack[state.sp - 1];
+    }
+
+    /**
+     * SQRT: take the integer square root of the top value.
+     *
+     * @param state the run
+     */
+    private static void squareRoot(State state) {
+        int value = state.stack[state.sp - 1];
+        // Attempting to take the square root of a negative number.
+        if (value < 0) {
+            state.sp--;
+            throw Errors.failure(Errors.Type.NEGATIVE_SQUARE_ROOT);
+        }
+        state.stack[state.sp - 1] = (int) Math.sqrt(value);
+    }
+
+    /**
+     * ADD: replace the top two values with their sum.
+     *
+     * @param state the run
+     */
+    private static void add(State state) {
+        int second = state.stack[--state.sp];
+        state.stack[state.sp - 1] += second;
+    }
+
+    /**
+     * SUB: replace the top two values with their difference.
+     *
+     * @param state the run
+     */
+    private static void subtract(State state) {
+        int second = state.stack[--state.sp];
+        state.stack[state.sp - 1] -= second;
+    }
+
+    /**
+     * MUL: replace the top two values with their product.
+     *
+     * @param state the run
+     */
+    private static void multiply(State state) {
+        int second = state.stack[--state.sp];
+        state.stack[state.sp - 1] *= second;
+    }
+
+    /**
+     * DIV: replace the top two values with their quotient.
+     *
+     * @param state the run
+     */
+    private static void divide(State state) {
+        int second = state.stack[--state.sp];
+        int first = state.stack[--state.sp];
+        // Attempting to divide by a zero denominator.
+        if (second == 0) {
+            throw Errors.failure(Errors.Type.DIVIDE_BY_ZERO);
+        }
+        state.stack[state.sp++] = first / second;
+    }
+
+    /**
+     * MOD: replace the top two values with the remainder.
+     *
+     * @param state the run
+     */
+    private static void modulus(State state) {
+        // both popped before the remainder, so MOD by zero leaves the stack
+        // as Modulus does
+        int second = state.stack[--state.sp];
+        int first = state.stack[--state.sp];
+        int remainder = first % second;
+        state.stack[state.sp++] = remainder;
+    }
+}
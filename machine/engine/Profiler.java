@@ -0,0 +1,372 @@
+package machine.engine;
+
+import common.OutputSink;
+import machine.Frame;
+import machine.InstructionStack;
+import machine.Maquina;
+import machine.Opcode;
+import machine.Program;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Runs a program while recording, per instruction and per opcode, how many
+ * times it executed, roughly how long it took and the deepest the stack
+ * was after it.  Runs accumulate, so running the same program several
+ * times gives a better picture.
+ *
+ * <p>Reading the clock costs far more than most instructions, so only one
+ * instruction in {@link #SAMPLE_INTERVAL}, on average, is timed, the cost
+ * of reading the clock is taken off, and the result is scaled up.  The gap
+ * to the next timed instruction is drawn at random rather than fixed:
+ * MAQ has no loops, so with a fixed stride an instruction would be timed
+ * on every run or on none, and a program built from one repeated
+ * statement would have all its time put on whichever opcode the stride
+ * lands on.  Drawing the gaps from a geometric distribution times each
+ * instruction executed with the same chance, independently, so the
+ * estimates per opcode and per instruction are unbiased.  Times per
+ * opcode are good estimates; times per instruction are only meaningful for
+ * instructions that run many times.  The profiling loop is separate from
+ * the engines' own loops, so they pay nothing when profiling is off.
+ *
+ * @author jolin qiu
+ */
+public final class Profiler {
+    /** one instruction in this many, on average, is timed */
+    public static final int SAMPLE_INTERVAL = 64;
+
+    /** the log of the chance an instruction is not timed, for drawing gaps */
+    private static final double LOG_UNSAMPLED = Math.log1p(-1.0 / SAMPLE_INTERVAL);
+
+    /** the number of hottest instructions shown in the report */
+    private static final int HOTTEST = 10;
+
+    /** the program being profiled */
+    private final Program program;
+
+    /** the program counter of each instruction, by index */
+    private final int[] pcs;
+
+    /** how many times each instruction executed */
+    private final long[] counts;
+
+    /** the sampled nanoseconds of each instruction */
+    private final long[] nanos;
+
+    /** the deepest the stack was after each instruction */
+    private final int[] maxDepths;
+
+    /** the cost of one reading of the clock, taken off each sample */
+    private final long clockCost;
+
+    /** the state of the xorshift generator that draws the gaps between samples */
+    private long random;
+
+    /** the number of instructions to execute until the next one timed */
+    private long countdown;
+
+    /**
+     * Create an empty profile of a program.
+     *
+     * @param program the program
+     */
+    public Profiler(Program program) {
+        this.program = program;
+        this.pcs = new int[program.size()];
+        for (int pc = 0, index = 0; pc < program.code().length; pc = program.next(pc)) {
+            this.pcs[index++] = pc;
+        }
+        this.counts = new long[pcs.length];
+        this.nanos = new long[pcs.length];
+        this.maxDepths = new int[pcs.length];
+        this.clockCost = clockCost();
+        this.random = System.nanoTime() | 1;
+        this.countdown = nextInterval();
+    }
+
+    /**
+     * Draw the number of instructions from one timed instruction to the
+     * next.  The gaps are geometric with a mean of SAMPLE_INTERVAL, which
+     * is the same as timing each instruction with a chance of one in
+     * SAMPLE_INTERVAL.
+     *
+     * @return the gap, at least 1
+     */
+    private long nextInterval() {
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        double uniform = ((random >>> 11) + 1) * 0x1.0p-53;
+        return 1 + (long) (Math.log(uniform) / LOG_UNSAMPLED);
+    }
+
+    /**
+     * Measure the cost of reading the clock.
+     *
+     * @return the least time seen between two readings
+     */
+    private static long clockCost() {
+        long least = Long.MAX_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            long start = System.nanoTime();
+            least = Math.min(least, System.nanoTime() - start);
+        }
+        return least;
+    }
+
+    /**
+     * Get the program being profiled.
+     *
+     * @return the program
+     */
+    public Program program() {
+        return program;
+    }
+
+    /**
+     * Run the program on a machine, adding to the profile.  The machine is
+     * left exactly as the other engines would leave it.
+     *
+     * @param machine the machine whose stack and variables are used
+     */
+    public void run(Maquina machine) {
+        int[] code = program.code();
+        Frame frame = machine.getFrame();
+        OutputSink output = machine.getOutput();
+        int[] slots = frame.bind(program.names());
+
+        boolean checked = !program.isVerified();
+
+        InstructionStack instructionStack = machine.getInstructionStack();
+        int sp = instructionStack.size();
+        int[] stack = new int[sp + program.maxDepth()];
+        for (int i = sp - 1; i >= 0; i--) {
+            stack[i] = instructionStack.pop();
+        }
+
+        // run one instruction at a time, so that a failing one still
+        // leaves the depth after its pops, as in SwitchEngine.run
+        int[] depth = {sp};
+        try {
+            for (int index = 0; index < pcs.length; index++) {
+                int pc = pcs[index];
+                int end = index + 1 < pcs.length ? pcs[index + 1] : code.length;
+                if (--countdown == 0) {
+                    countdown = nextInterval();
+                    long start = System.nanoTime();
+                    SwitchEngine.run(code, pc, end, stack, depth, frame, slots, checked, output);
+                    nanos[index] += Math.max(System.nanoTime() - start - clockCost, 0) * SAMPLE_INTERVAL;
+                } else {
+                    SwitchEngine.run(code, pc, end, stack, depth, frame, slots, checked, output);
+                }
+                counts[index]++;
+                maxDepths[index] = Math.max(maxDepths[index], depth[0]);
+            }
+        } finally {
+            for (int i = 0; i < depth[0]; i++) {
+                instructionStack.push(stack[i]);
+            }
+        }
+    }
+
+    /**
+     * Get the number of instructions in the program.
+     *
+     * @return the number of instructions
+     */
+    public int size() {
+        return pcs.length;
+    }
+
+    /**
+     * Get how many times an instruction executed.
+     *
+     * @param index the instruction's index in the program
+     * @return the count
+     */
+    public long count(int index) {
+        return counts[index];
+    }
+
+    /**
+     * Get the estimated time spent in an instruction.
+     *
+     * @param index the instruction's index in the program
+     * @return the nanoseconds
+     */
+    public long nanos(int index) {
+        return nanos[index];
+    }
+
+    /**
+     * Get the deepest the stack was after an instruction.
+     *
+     * @param index the instruction's index in the program
+     * @return the depth
+     */
+    public int maxDepth(int index) {
+        return maxDepths[index];
+    }
+
+    /**
+     * Get an instruction's opcode.
+     *
+     * @param index the instruction's index in the program
+     * @return the opcode
+     */
+    public int opcode(int index) {
+        return program.code()[pcs[index]];
+    }
+
+    /**
+     * Get how many times instructions with an opcode executed.
+     *
+     * @param opcode the opcode
+     * @return the count
+     */
+    public long opcodeCount(int opcode) {
+        long total = 0;
+        for (int i = 0; i < pcs.length; i++) {
+            if (opcode(i) == opcode) {
+                total += counts[i];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Get the estimated time spent in instructions with an opcode.
+     *
+     * @param opcode the opcode
+     * @return the nanoseconds
+     */
+    public long opcodeNanos(int opcode) {
+        long total = 0;
+        for (int i = 0; i < pcs.length; i++) {
+            if (opcode(i) == opcode) {
+                total += nanos[i];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Get the deepest the stack was after instructions with an opcode.
+     *
+     * @param opcode the opcode
+     * @return the depth
+     */
+    public int opcodeMaxDepth(int opcode) {
+        int depth = 0;
+        for (int i = 0; i < pcs.length; i++) {
+            if (opcode(i) == opcode) {
+                depth = Math.max(depth, maxDepths[i]);
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Format the profile for people: a line per opcode that executed, then
+     * the instructions that took the most time.
+     *
+     * @return the report
+     */
+    public String report() {
+        long totalCount = Arrays.stream(counts).sum();
+        long totalNanos = Arrays.stream(nanos).sum();
+        String newline = System.lineSeparator();
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("(MAQ) Profile: %,d instructions executed in ~%,d ns%n", totalCount, totalNanos));
+        report.append(String.format("\t%-6s %14s %16s %7s %9s%n", "opcode", "count", "~ns", "time", "max depth"));
+        for (int opcode = 0; opcode < Opcode.COUNT; opcode++) {
+            long count = opcodeCount(opcode);
+            if (count > 0) {
+                long time = opcodeNanos(opcode);
+                report.append(String.format("\t%-6s %,14d %,16d %6.1f%% %9d%n", Opcode.mnemonic(opcode),
+                        count, time, percent(time, totalNanos), opcodeMaxDepth(opcode)));
+            }
+        }
+
+        Integer[] order = new Integer[pcs.length];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, Comparator.<Integer>comparingLong(i -> nanos[i]).reversed()
+                .thenComparing(Comparator.<Integer>comparingLong(i -> counts[i]).reversed()));
+        report.append("(MAQ) Hottest instructions:").append(newline);
+        report.append(String.format("\t%8s  %-20s %14s %16s %9s%n", "index", "instruction", "count", "~ns", "max depth"));
+        for (int i = 0; i < Math.min(HOTTEST, order.length); i++) {
+            int index = order[i];
+            report.append(String.format("\t%8d  %-20s %,14d %,16d %9d%n", index, program.toString(pcs[index]),
+                    counts[index], nanos[index], maxDepths[index]));
+        }
+        return report.toString();
+    }
+
+    /**
+     * The share of a total, as a percentage.
+     *
+     * @param part the share
+     * @param total the total
+     * @return the percentage, or 0 if the total is 0
+     */
+    private static double percent(long part, long total) {
+        return total == 0 ? 0 : 100.0 * part / total;
+    }
+
+    /**
+     * Write the profile as CSV, with a header line.  There is one row per
+     * opcode that executed (scope "opcode") followed by one row per
+     * instruction (scope "instruction", keyed by its index).
+     *
+     * @param out where the CSV goes
+     * @throws IOException if it cannot be written
+     */
+    public void writeCsv(Writer out) throws IOException {
+        String newline = System.lineSeparator();
+        out.write("scope,key,instruction,count,nanos,max_depth" + newline);
+        for (int opcode = 0; opcode < Opcode.COUNT; opcode++) {
+            long count = opcodeCount(opcode);
+            if (count > 0) {
+                String mnemonic = Opcode.mnemonic(opcode);
+                out.write("opcode," + mnemonic + "," + mnemonic + "," + count + ","
+                        + opcodeNanos(opcode) + "," + opcodeMaxDepth(opcode) + newline);
+            }
+        }
+        for (int i = 0; i < pcs.length; i++) {
+            out.write("instruction," + i + "," + quote(program.toString(pcs[i])) + "," + counts[i] + ","
+                    + nanos[i] + "," + maxDepths[i] + newline);
+        }
+    }
+
+    /**
+     * Write the profile as a CSV file.
+     *
+     * @param path the file
+     * @throws IOException if it cannot be written
+     */
+    public void writeCsv(Path path) throws IOException {
+        try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writeCsv(out);
+        }
+    }
+
+    /**
+     * Quote a CSV field if it needs it.  Variable names can hold anything
+     * but whitespace, commas and quotes included.
+     *
+     * @param field the field
+     * @return the field, quoted if necessary
+     */
+    private static String quote(String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0) {
+            return field;
+        }
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+}
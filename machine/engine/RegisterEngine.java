@@ -0,0 +1,542 @@
+package machine.engine;
+
+import common.Errors;
+import common.OutputSink;
+import machine.Frame;
+import machine.InstructionStack;
+import machine.Maquina;
+import machine.Opcode;
+import machine.Program;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Translates a program from stack form into three-address register form
+ * and runs that.  Every variable, every distinct constant and every stack
+ * position gets a virtual register in one int array:
+ * <pre>
+ *     registers:  variables (by program slot), constants, then one per stack depth
+ * </pre>
+ * LOAD and PUSH emit nothing; they push the register of the variable or
+ * constant onto a stack kept only during translation.  An operation takes
+ * its operands' registers from that stack and writes the register of the
+ * depth its result lands at, and a STORE usually just changes where the
+ * operation before it writes, so
+ * <pre>
+ *     LOAD x, PUSH 2, MUL, LOAD y, ADD, STORE z   becomes   t0 = x * 2, z = t0 + y
+ * </pre>
+ * Pushes and pops disappear, and so does most of the work of STORE.  A
+ * STORE to a variable whose old value is still waiting on the stack
+ * first copies that value into its stack register.
+ *
+ * <p>Variables are read from the frame before the run and written back
+ * after it in the order the program first stores them, and whatever the
+ * program leaves on its stack is pushed onto the machine's instruction
+ * stack, so the machine ends up exactly as the other engines leave it, even
+ * when an error stops the program part way.  Programs that pop values they
+ * did not push, or that hold an illegal opcode, are run by the
+ * {@link SwitchEngine} instead.
+ *
+ * @author jolin qiu
+ */
+public final class RegisterEngine {
+    // the register form opcodes, each followed by its register operands
+
+    /** d = s */
+    private static final int MOVE = 0;
+    /** d = a + b */
+    private static final int ADD = 1;
+    /** d = a - b */
+    private static final int SUBTRACT = 2;
+    /** d = a * b */
+    private static final int MULTIPLY = 3;
+    /** d = a / b, reporting a divide by zero */
+    private static final int DIVIDE = 4;
+    /** d = a % b */
+    private static final int MODULUS = 5;
+    /** d = -a */
+    private static final int NEGATE = 6;
+    /** d = sqrt(a), reporting a negative a */
+    private static final int SQUARE_ROOT = 7;
+    /** print a */
+    private static final int PRINT = 8;
+    /** report variable v if it has not been stored */
+    private static final int CHECK = 9;
+
+    /** the number of register operands of each register form opcode */
+    private static final int[] OPERANDS = {2, 3, 3, 3, 3, 3, 2, 2, 1, 1};
+
+    /** the symbols of the binary operations, for listings */
+    private static final String[] SYMBOLS = {null, "+", "-", "*", "/", "%"};
+
+    /** translated programs, so that each is only translated once */
+    private static final Map<Program, Translation> TRANSLATED = new WeakHashMap<>();
+
+    /** marks a program that cannot be translated */
+    private static final Translation NOT_TRANSLATABLE = new Translation(new int[0], 0, new int[0], 0, new int[0],
+            new int[0], new int[0], Map.of());
+
+    /**
+     * A program in register form.
+     */
+    public static final class Translation {
+        /** the register form opcodes and operands */
+        private final int[] code;
+
+        /** the number of variables, whose registers come first */
+        private final int variables;
+
+        /** the value of each constant register, which follow the variables */
+        private final int[] constants;
+
+        /** the total number of registers */
+        private final int registers;
+
+        /** the program slot of each variable the program stores, in the order it first stores them */
+        private final int[] storeOrder;
+
+        /** where the instruction that first stores each of those variables starts */
+        private final int[] storePcs;
+
+        /** the registers left on the stack at the end, bottom first */
+        private final int[] result;
+
+        /** the registers on the stack below the operands of each instruction that can fail, by its start */
+        private final Map<Integer, int[]> stacks;
+
+        /**
+         * Create a translation.
+         *
+         * @param code the register form code
+         * @param variables the number of variables
+         * @param constants the value of each constant register
+         * @param registers the total number of registers
+         * @param storeOrder the variables stored, in the order they are first stored
+         * @param storePcs where each of those is first stored
+         * @param result the registers left on the stack at the end
+         * @param stacks the registers on the stack at each instruction that can fail
+         */
+        private Translation(int[] code, int variables, int[] constants, int registers, int[] storeOrder,
+                            int[] storePcs, int[] result, Map<Integer, int[]> stacks) {
+            this.code = code;
+            this.variables = variables;
+            this.constants = constants;
+            this.registers = registers;
+            this.storeOrder = storeOrder;
+            this.storePcs = storePcs;
+            this.result = result;
+            this.stacks = stacks;
+        }
+
+        /**
+         * Get the number of register form instructions.
+         *
+         * @return the number of instructions
+         */
+        public int size() {
+            int size = 0;
+            for (int pc = 0; pc < code.length; pc += 1 + OPERANDS[code[pc]]) {
+                size++;
+            }
+            return size;
+        }
+
+        /**
+         * Get the total number of registers.
+         *
+         * @return the number of registers
+         */
+        public int registers() {
+            return registers;
+        }
+
+        /**
+         * Name a register for a listing.
+         *
+         * @param register the register
+         * @param names the variable names
+         * @return the variable name, constant value or stack register name
+         */
+        private String name(int register, String[] names) {
+            if (register < variables) {
+                return names[register];
+            } else if (register < variables + constants.length) {
+                return String.valueOf(constants[register - variables]);
+            }
+            return "t" + (register - variables - constants.length);
+        }
+
+        /**
+         * List the register form instructions, one per line.
+         *
+         * @param names the variable names of the program
+         * @return the listing
+         */
+        public String toString(String[] names) {
+            StringBuilder listing = new StringBuilder();
+            for (int pc = 0; pc < code.length; pc += 1 + OPERANDS[code[pc]]) {
+                switch (code[pc]) {
+                    case MOVE -> listing.append(name(code[pc + 1], names)).append(" = ")
+                            .append(name(code[pc + 2], names));
+                    case NEGATE -> listing.append(name(code[pc + 1], names)).append(" = -")
+                            .append(name(code[pc + 2], names));
+                    case SQUARE_ROOT -> listing.append(name(code[pc + 1], names)).append(" = sqrt ")
+                            .append(name(code[pc + 2], names));
+                    case PRINT -> listing.append("print ").append(name(code[pc + 1], names));
+                    case CHECK -> listing.append("check ").append(name(code[pc + 1], names));
+                    default -> listing.append(name(code[pc + 1], names)).append(" = ")
+                            .append(name(code[pc + 2], names)).append(' ').append(SYMBOLS[code[pc]])
+                            .append(' ').append(name(code[pc + 3], names));
+                }
+                listing.append(System.lineSeparator());
+            }
+            return listing.toString();
+        }
+    }
+
+    /**
+     * The engine has no state of its own.
+     */
+    private RegisterEngine() {}
+
+    /**
+     * Run a program on a machine, translating it first if needed.  The
+     * machine's instruction stack and frame are left exactly as the
+     * object-per-instruction engine would leave them.
+     *
+     * @param program the program to run
+     * @param machine the machine whose stack and variables are used
+     */
+    public static void run(Program program, Maquina machine) {
+        Translation translation = translation(program);
+        if (translation == NOT_TRANSLATABLE) {
+            SwitchEngine.run(program, machine);
+            return;
+        }
+        Frame frame = machine.getFrame();
+        int[] slots = frame.bind(program.names());
+        int[] r = new int[translation.registers];
+        for (int v = 0; v < translation.variables; v++) {
+            if (frame.isDefined(slots[v])) {
+                r[v] = frame.load(slots[v]);
+            }
+        }
+        System.arraycopy(translation.constants, 0, r, translation.variables, translation.constants.length);
+
+        int[] code = translation.code;
+        OutputSink output = machine.getOutput();
+        int pc = 0;
+        try {
+            while (pc < code.length) {
+                switch (code[pc]) {
+                    case MOVE -> {
+                        r[code[pc + 1]] = r[code[pc + 2]];
+                        pc += 3;
+                    }
+                    case ADD -> {
+                        r[code[pc + 1]] = r[code[pc + 2]] + r[code[pc + 3]];
+                        pc += 4;
+                    }
+                    case SUBTRACT -> {
+                        r[code[pc + 1]] = r[code[pc + 2]] - r[code[pc + 3]];
+                        pc += 4;
+                    }
+                    case MULTIPLY -> {
+                        r[code[pc + 1]] = r[code[pc + 2]] * r[code[pc + 3]];
+                        pc += 4;
+                    }
+                    case DIVIDE -> {
+                        int second = r[code[pc + 3]];
+                        // Attempting to divide by a zero denominator.
+                        if (second == 0) {
+                            throw Errors.failure(Errors.Type.DIVIDE_BY_ZERO);
+                        }
+                        r[code[pc + 1]] = r[code[pc + 2]] / second;
+                        pc += 4;
+                    }
+                    case MODULUS -> {
+                        int second = r[code[pc + 3]];
+                        // Attempting to take the remainder by a zero denominator.
+                        if (second == 0) {
+                            throw new ArithmeticException("/ by zero");
+                        }
+                        r[code[pc + 1]] = r[code[pc + 2]] % second;
+                        pc += 4;
+                    }
+                    case NEGATE -> {
+                        r[code[pc + 1]] = -r[code[pc + 2]];
+                        pc += 3;
+                    }
+                    case SQUARE_ROOT -> {
+                        int value = r[code[pc + 2]];
+                        // Attempting to take the square root of a negative number.
+                        if (value < 0) {
+                            throw Errors.failure(Errors.Type.NEGATIVE_SQUARE_ROOT);
+                        }
+                        r[code[pc + 1]] = (int) Math.sqrt(value);
+                        pc += 3;
+                    }
+                    case PRINT -> {
+                        output.println(r[code[pc + 1]]);
+                        pc += 2;
+                    }
+                    default -> {
+                        int slot = slots[code[pc + 1]];
+                        // Attempting to load a variable name that has not been stored yet.
+                        if (!frame.isDefined(slot)) {
+                            throw Errors.failure(Errors.Type.UNINITIALIZED, frame.name(slot));
+                        }
+                        pc += 2;
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            // leave the machine as the stack engines would at the failing instruction
+            writeBack(translation, r, frame, slots, pc, machine.getInstructionStack(), translation.stacks.get(pc));
+            throw e;
+        }
+        writeBack(translation, r, frame, slots, pc, machine.getInstructionStack(), translation.result);
+    }
+
+    /**
+     * Write the variables stored before an instruction back to the frame
+     * and push what was on the stack onto the machine's instruction stack.
+     *
+     * @param translation the program
+     * @param r the registers
+     * @param frame the machine's frame
+     * @param slots the frame slot of each of the program's variables
+     * @param pc the instruction reached
+     * @param instructionStack the machine's instruction stack
+     * @param stack the registers on the stack, or null if not known
+     */
+    private static void writeBack(Translation translation, int[] r, Frame frame, int[] slots, int pc,
+                                  InstructionStack instructionStack, int[] stack) {
+        for (int i = 0; i < translation.storeOrder.length && translation.storePcs[i] < pc; i++) {
+            int v = translation.storeOrder[i];
+            frame.store(slots[v], r[v]);
+        }
+        if (stack != null) {
+            for (int register : stack) {
+                instructionStack.push(r[register]);
+            }
+        }
+    }
+
+    /**
+     * Get the translation of a program, translating it if this is the first
+     * time it has been seen.
+     *
+     * @param program the program
+     * @return the translation, or NOT_TRANSLATABLE
+     */
+    private static Translation translation(Program program) {
+        synchronized (TRANSLATED) {
+            Translation translation = TRANSLATED.get(program);
+            if (translation == null) {
+                translation = translate(program);
+                TRANSLATED.put(program, translation == null ? NOT_TRANSLATABLE : translation);
+            }
+            return translation == null ? NOT_TRANSLATABLE : translation;
+        }
+    }
+
+    /**
+     * Translate a program into register form.
+     *
+     * @param program the program
+     * @return the translation, or null if the program pops values it did not
+     *      push or holds an illegal opcode
+     */
+    public static Translation translate(Program program) {
+        int[] code = program.code();
+        int variables = program.names().length;
+
+        // give each distinct constant a register after the variables
+        Map<Integer, Integer> constantRegisters = new HashMap<>();
+        int[] constants = new int[16];
+        for (int pc = 0; pc < code.length; pc = program.next(pc)) {
+            if (code[pc] == Opcode.PUSH && !constantRegisters.containsKey(code[pc + 1])) {
+                if (constantRegisters.size() == constants.length) {
+                    constants = Arrays.copyOf(constants, constants.length * 2);
+                }
+                constants[constantRegisters.size()] = code[pc + 1];
+                constantRegisters.put(code[pc + 1], variables + constantRegisters.size());
+            }
+        }
+        constants = Arrays.copyOf(constants, constantRegisters.size());
+        int temps = variables + constants.length;
+
+        Emitter out = new Emitter(code.length * 2);
+        int[] stack = new int[Math.max(1, program.maxDepth())];
+        int sp = 0;
+        boolean checked = !program.isVerified();
+        boolean[] known = new boolean[variables];
+        boolean[] stored = new boolean[variables];
+        int[] storeOrder = new int[variables];
+        int[] storePcs = new int[variables];
+        int stores = 0;
+        Map<Integer, int[]> stacks = new HashMap<>();
+
+        for (int pc = 0; pc < code.length; pc = program.next(pc)) {
+            int opcode = code[pc];
+            if (opcode < 0 || opcode >= Opcode.COUNT || sp < Opcode.pops(opcode)) {
+                return null;
+            }
+            switch (opcode) {
+                case Opcode.PUSH -> stack[sp++] = constantRegisters.get(code[pc + 1]);
+                case Opcode.LOAD -> {
+                    int v = code[pc + 1];
+                    if (checked && !known[v]) {
+                        // once checked, or once stored, the variable needs no more checks
+                        stacks.put(out.size(), Arrays.copyOf(stack, sp));
+                        out.emit(CHECK, v);
+                        known[v] = true;
+                    }
+                    stack[sp++] = v;
+                }
+                case Opcode.STORE -> {
+                    int v = code[pc + 1];
+                    int value = stack[--sp];
+                    // copy out the old value wherever it is still waiting on the stack
+                    for (int i = 0; i < sp; i++) {
+                        if (stack[i] == v) {
+                            out.emit(MOVE, temps + i, v);
+                            stack[i] = temps + i;
+                        }
+                    }
+                    int start = value == temps + sp ? out.retarget(value, v) : -1;
+                    if (start < 0) {
+                        start = out.size();
+                        if (value != v) {
+                            out.emit(MOVE, v, value);
+                        }
+                    }
+                    if (!stored[v]) {
+                        stored[v] = true;
+                        storeOrder[stores] = v;
+                        storePcs[stores++] = start;
+                    }
+                    known[v] = true;
+                }
+                case Opcode.PRINT -> out.emit(PRINT, stack[--sp]);
+                case Opcode.NEGATE -> {
+                    out.emitResult(NEGATE, temps + sp - 1, stack[sp - 1]);
+                    stack[sp - 1] = temps + sp - 1;
+                }
+                case Opcode.SQUARE_ROOT -> {
+                    stacks.put(out.size(), Arrays.copyOf(stack, sp - 1));
+                    out.emitResult(SQUARE_ROOT, temps + sp - 1, stack[sp - 1]);
+                    stack[sp - 1] = temps + sp - 1;
+                }
+                default -> {
+                    int second = stack[--sp];
+                    int operation = switch (opcode) {
+                        case Opcode.ADD -> ADD;
+                        case Opcode.SUBTRACT -> SUBTRACT;
+                        case Opcode.MULTIPLY -> MULTIPLY;
+                        case Opcode.DIVIDE -> DIVIDE;
+                        default -> MODULUS;
+                    };
+                    if (operation == DIVIDE || operation == MODULUS) {
+                        stacks.put(out.size(), Arrays.copyOf(stack, sp - 1));
+                    }
+                    out.emitResult(operation, temps + sp - 1, stack[sp - 1], second);
+                    stack[sp - 1] = temps + sp - 1;
+                }
+            }
+        }
+        return new Translation(out.code(), variables, constants, temps + program.maxDepth(),
+                Arrays.copyOf(storeOrder, stores), Arrays.copyOf(storePcs, stores),
+                Arrays.copyOf(stack, sp), stacks);
+    }
+
+    /**
+     * Collects register form code, remembering the last instruction if it
+     * wrote a result so that a STORE can redirect it.
+     */
+    private static final class Emitter {
+        /** the code so far */
+        private int[] code;
+
+        /** the length of the code */
+        private int size;
+
+        /** where the last instruction starts, if it wrote a result, or -1 */
+        private int lastResult = -1;
+
+        /**
+         * Create an emitter.
+         *
+         * @param capacity the expected length of the code
+         */
+        Emitter(int capacity) {
+            this.code = new int[Math.max(16, capacity)];
+        }
+
+        /**
+         * Get the length of the code so far, where the next instruction starts.
+         *
+         * @return the length
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * Add an instruction.
+         *
+         * @param operands the opcode and its operands
+         */
+        void emit(int... operands) {
+            if (size + operands.length > code.length) {
+                code = Arrays.copyOf(code, Math.max(code.length * 2, size + operands.length));
+            }
+            System.arraycopy(operands, 0, code, size, operands.length);
+            size += operands.length;
+            lastResult = -1;
+        }
+
+        /**
+         * Add an instruction that writes its first operand.
+         *
+         * @param operands the opcode and its operands
+         */
+        void emitResult(int... operands) {
+            int start = size;
+            emit(operands);
+            lastResult = start;
+        }
+
+        /**
+         * Make the last instruction write somewhere else, if it was the one
+         * that wrote a register.
+         *
+         * @param from the register it writes
+         * @param to the register it should write instead
+         * @return where the redirected instruction starts, or -1 if the last
+         *      instruction did not write the register
+         */
+        int retarget(int from, int to) {
+            if (lastResult < 0 || code[lastResult + 1] != from) {
+                return -1;
+            }
+            code[lastResult + 1] = to;
+            int start = lastResult;
+            lastResult = -1;
+            return start;
+        }
+
+        /**
+         * Get the code.
+         *
+         * @return the code, trimmed to its length
+         */
+        int[] code() {
+            return Arrays.copyOf(code, size);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package machine.engine;
+
+import common.Errors;
+import common.OutputSink;
+import machine.Assembler;
+import machine.Frame;
+import machine.InstructionStack;
+import machine.Maquina;
+import machine.Opcode;
+
+/**
+ * Executes each instruction the moment the assembler decodes it, and then
+ * forgets it.  Nothing is kept of the program but the slot of each distinct
+ * variable name, so an unbounded stream of instructions runs in constant
+ * memory, and each PRINT shows up as soon as its line has been read.
+ *
+ * @author jolin qiu
+ */
+public final class StreamEngine implements Assembler.Target {
+    /** the machine's frame */
+    private final Frame frame;
+
+    /** the machine's instruction stack */
+    private final InstructionStack stack;
+
+    /** where PRINT prints */
+    private final OutputSink output;
+
+    /** the number of instructions executed */
+    private long executed;
+
+    /**
+     * Create an engine running instructions on a machine.
+     *
+     * @param machine the machine whose stack and variables are used
+     */
+    public StreamEngine(Maquina machine) {
+        this.frame = machine.getFrame();
+        this.stack = machine.getInstructionStack();
+        this.output = machine.getOutput();
+    }
+
+    /**
+     * Get the number of instructions executed so far.
+     *
+     * @return the count
+     */
+    public long executed() {
+        return executed;
+    }
+
+    /**
+     * Variables live in the machine's frame, so their slots do too.
+     *
+     * @param name the variable name
+     * @return its slot in the frame
+     */
+    @Override
+    public int slot(String name) {
+        return frame.slot(name);
+    }
+
+    /**
+     * Execute an instruction that has no operand.
+     *
+     * @param opcode the opcode
+     */
+    @Override
+    public void emit(int opcode) {
+        executed++;
+        switch (opcode) {
+            case Opcode.PRINT -> output.println(stack.pop());
+            case Opcode.NEGATE -> stack.push(-stack.pop());
+            case Opcode.SQUARE_ROOT -> {
+                int value = stack.pop();
+                // Attempting to take the square root of a negative number.
+                if (value < 0) {
+                    throw Errors.failure(Errors.Type.NEGATIVE_SQUARE_ROOT);
+                }
+                stack.push((int) Math.sqrt(value));
+            }
+            case Opcode.ADD -> {
+                int second = stack.pop();
+                stack.push(stack.pop() + second);
+            }
+            case Opcode.SUBTRACT -> {
+                int second = stack.pop();
+                stack.push(stack.pop() - second);
+            }
+            case Opcode.MULTIPLY -> {
+                int second = stack.pop();
+                stack.push(stack.pop() * second);
+            }
+            case Opcode.DIVIDE -> {
+                int second = stack.pop();
+                int first = stack.pop();
+                // Attempting to divide by a zero denominator.
+                if (second == 0) {
+                    throw Errors.failure(Errors.Type.DIVIDE_BY_ZERO);
+                }
+                stack.push(first / second);
+            }
+            case Opcode.MODULUS -> {
+                int second = stack.pop();
+                stack.push(stack.pop() % second);
+            }
+            default -> throw Errors.failure(Errors.Type.ILLEGAL_INSTRUCTION, opcode);
+        }
+    }
+
+    /**
+     * Execute an instruction with its operand.
+     *
+     * @param opcode the opcode
+     * @param operand the PUSH value or the variable's frame slot
+     */
+    @Override
+    public void emit(int opcode, int operand) {
+        executed++;
+        switch (opcode) {
+            case Opcode.PUSH -> stack.push(operand);
+            case Opcode.STORE -> frame.store(operand, stack.pop());
+            case Opcode.LOAD -> {
+                // Attempting to load a variable name that has not been stored yet.
+                if (!frame.isDefined(operand)) {
+                    throw Errors.failure(Errors.Type.UNINITIALIZED, frame.name(operand));
+                }
+                stack.push(frame.load(operand));
+            }
+            default -> throw Errors.failure(Errors.Type.ILLEGAL_INSTRUCTION, opcode);
+        }
+    }
+}
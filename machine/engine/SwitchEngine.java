@@ -0,0 +1,138 @@
+package machine.engine;
+
+import common.Errors;
+import common.OutputSink;
+import machine.Frame;
+import machine.InstructionStack;
+import machine.Maquina;
+import machine.Opcode;
+import machine.Program;
+
+/**
+ * Runs a program in its compact int encoding with a single loop that
+ * switches on each opcode.  The stack and program counter are kept in local
+ * variables for the whole run, so there is one well predicted dispatch per
+ * instruction instead of a megamorphic call to Instruction.execute(Context).
+ *
+ * @author jolin qiu
+ */
+public final class SwitchEngine {
+    /**
+     * The engine has no state of its own.
+     */
+    private SwitchEngine() {}
+
+    /**
+     * Run a program on a machine.  The machine's instruction stack and frame
+     * are left exactly as the object-per-instruction engine would leave them.
+     * A verified program's LOADs are not checked, as they cannot fail.
+     *
+     * @param program the program to run
+     * @param machine the machine whose stack and variables are used
+     */
+    public static void run(Program program, Maquina machine) {
+        int[] code = program.code();
+        Frame frame = machine.getFrame();
+        OutputSink output = machine.getOutput();
+        int[] slots = frame.bind(program.names());
+        boolean checked = !program.isVerified();
+
+        // move whatever the machine already has on its stack into the local copy
+        InstructionStack instructionStack = machine.getInstructionStack();
+        int sp = instructionStack.size();
+        int[] stack = new int[sp + program.maxDepth()];
+        for (int i = sp - 1; i >= 0; i--) {
+            stack[i] = instructionStack.pop();
+        }
+
+        int[] depth = {sp};
+        try {
+            run(code, 0, code.length, stack, depth, frame, slots, checked, output);
+        } finally {
+            // hand the local stack back to the machine
+            for (int i = 0; i < depth[0]; i++) {
+                instructionStack.push(stack[i]);
+            }
+        }
+    }
+
+    /**
+     * Run the instructions from one program counter up to another, exactly
+     * as {@link #run(Program, Maquina)} does.  This is for engines that
+     * stop now and then, such as to take a checkpoint or to time a single
+     * instruction.
+     *
+     * @param code the program's code
+     * @param pc where the first instruction starts
+     * @param end where to stop, the start of an instruction or the end of the code
+     * @param stack the operand stack
+     * @param depth the number of values on the stack, updated afterwards even
+     *      if an error stops the program
+     * @param frame the machine's frame
+     * @param slots the frame slot of each of the program's variables
+     * @param checked whether LOADs check that the variable has been stored
+     * @param output where PRINT prints
+     */
+    static void run(int[] code, int pc, int end, int[] stack, int[] depth,
+                    Frame frame, int[] slots, boolean checked, OutputSink output) {
+        int sp = depth[0];
+        try {
+            while (pc < end) {
+                switch (code[pc++]) {
+                    case Opcode.PUSH -> stack[sp++] = code[pc++];
+                    case Opcode.PRINT -> output.println(stack[--sp]);
+                    case Opcode.STORE -> frame.store(slots[code[pc++]], stack[--sp]);
+                    case Opcode.LOAD -> {
+                        int slot = slots[code[pc++]];
+                        // Attempting to load a variable name that has not been stored yet.
+                        if (checked && !frame.isDefined(slot)) {
+                            throw Errors.failure(Errors.Type.UNINITIALIZED, frame.name(slot));
+                        }
+                        stack[sp++] = frame.load(slot);
+                    }
+                    case Opcode.NEGATE -> stack[sp - 1] = -stack[sp - 1];
+                    case Opcode.SQUARE_ROOT -> {
+                        int value = stack[--sp];
+                        // Attempting to take the square root of a negative number.
+                        if (value < 0) {
+                            throw Errors.failure(Errors.Type.NEGATIVE_SQUARE_ROOT);
+                        }
+                        stack[sp++] = (int) Math.sqrt(value);
+                    }
+                    case Opcode.ADD -> {
+                        int second = stack[--sp];
+                        stack[sp - 1] = stack[sp - 1] + second;
+                    }
+                    case Opcode.SUBTRACT -> {
+                        int second = stack[--sp];
+                        stack[sp - 1] = stack[sp - 1] - second;
+                    }
+                    case Opcode.MULTIPLY -> {
+                        int second = stack[--sp];
+                        stack[sp - 1] = stack[sp - 1] * second;
+                    }
+                    case Opcode.DIVIDE -> {
+                        int second = stack[--sp];
+                        int first = stack[--sp];
+                        // Attempting to divide by a zero denominator.
+                        if (second == 0) {
+                            throw Errors.failure(Errors.Type.DIVIDE_BY_ZERO);
+                        }
+                        stack[sp++] = first / second;
+                    }
+                    case Opcode.MODULUS -> {
+                        // both popped before the remainder, so MOD by zero leaves
+                        // the stack as Modulus does
+                        int second = stack[--sp];
+                        int first = stack[--sp];
+                        int remainder = first % second;
+                        stack[sp++] = remainder;
+                    }
+                    default -> throw Errors.failure(Errors.Type.ILLEGAL_INSTRUCTION, code[pc - 1]);
+                }
+            }
+        } finally {
+            depth[0] = sp;
+        }
+    }
+}
@@ -2,6 +2,8 @@ package machine.instructions;
 
 import machine.InstructionStack;
 import machine.Maquina;
+import machine.Opcode;
+import machine.Program;
 
 /**
  * The ADD instruction
@@ -9,30 +11,37 @@ import machine.Maquina;
  */
 public class Add implements Instruction {
 
+    /** the one instance, shared by every instruction list and machine */
+    public static final Add INSTANCE = new Add();
+
     /**
-     * the instruction stack
-     */
-    private final InstructionStack stack;
-    /**
-     * create a new instruction
-     * @param machine the machine
+     * The instruction has no operand, so there is only the one instance.
      */
-    public Add(Maquina machine){
-        this.stack = machine.getInstructionStack();
-    }
+    private Add() {}
 
     /**
      * Pops the second and then first operands off the stack,
      * and pushes the result of the first added by the second.
+     * @param context the machine it runs on
      */
     @Override
-    public void execute() {
+    public void execute(Context context) {
+        InstructionStack stack = context.stack();
         int secondOperand = stack.pop();
         int firstOperand = stack.pop();
         int value = (firstOperand + secondOperand);
         stack.push(value);
     }
 
+    /**
+     * Append the ADD opcode to the program.
+     * @param program the program being built
+     */
+    @Override
+    public void encode(Program.Builder program) {
+        program.emit(Opcode.ADD);
+    }
+
     /**
      * returns the string representation
      * @return (str) "ADD"
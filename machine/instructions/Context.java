@@ -0,0 +1,83 @@
+package machine.instructions;
+
+import common.OutputSink;
+import machine.Frame;
+import machine.InstructionStack;
+import machine.Maquina;
+
+/**
+ * What an instruction works on when it runs: a machine's instruction
+ * stack, frame and output, and where each of the variables the
+ * instructions name lives in that frame.  Instructions keep nothing of a
+ * machine themselves, so one list of them can run on any number of
+ * machines at once, each through its own context.
+ *
+ * <p>A LOAD or STORE carries the slot of its variable in a table of names
+ * that belongs to its instruction list, and the context maps that slot to
+ * the frame slot, the same way the engines bind a program's names.
+ *
+ * @author jolin qiu
+ */
+public final class Context {
+    /** the instruction stack */
+    private final InstructionStack stack;
+
+    /** the frame that stores the variables' values by slot */
+    private final Frame frame;
+
+    /** the frame slot of each of the instructions' variables */
+    private final int[] slots;
+
+    /** where PRINT prints */
+    private final OutputSink output;
+
+    /**
+     * Create the context for running instructions on a machine.
+     *
+     * @param machine the machine
+     * @param names the variable name of each slot the instructions use
+     */
+    public Context(Maquina machine, String... names) {
+        this.stack = machine.getInstructionStack();
+        this.frame = machine.getFrame();
+        this.slots = frame.bind(names);
+        this.output = machine.getOutput();
+    }
+
+    /**
+     * Return the instruction stack.
+     *
+     * @return the stack
+     */
+    public InstructionStack stack() {
+        return stack;
+    }
+
+    /**
+     * Return the frame holding the variables.
+     *
+     * @return the frame
+     */
+    public Frame frame() {
+        return frame;
+    }
+
+    /**
+     * Get the frame slot of one of the instructions' variables.
+     *
+     * @param slot the variable's slot in the instructions' name table
+     * @return its slot in the frame
+     */
+    public int slot(int slot) {
+        return slots[slot];
+    }
+
+    /**
+     * Return where PRINT prints.
+     *
+     * @return the output sink
+     */
+    public OutputSink output() {
+        return output;
+    }
+}
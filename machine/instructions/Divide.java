@@ -3,6 +3,8 @@ package machine.instructions;
 import common.Errors;
 import machine.InstructionStack;
 import machine.Maquina;
+import machine.Opcode;
+import machine.Program;
 
 /**
  * the DIVIDE instruction
@@ -10,36 +12,43 @@ import machine.Maquina;
  */
 public class Divide implements Instruction{
 
-    /**
-     * the instruction stack
-     */
-    private final InstructionStack stack;
+
+    /** the one instance, shared by every instruction list and machine */
+    public static final Divide INSTANCE = new Divide();
 
     /**
-     * creates a new instruction
-     * @param machine the machine
+     * The instruction has no operand, so there is only the one instance.
      */
-    public Divide(Maquina machine) {
-        this.stack = machine.getInstructionStack();
-    }
+    private Divide() {}
 
     /**
      * Pops the second and then first operands off the stack, and
      * pushes the result of the first divided by the second.
+     * @param context the machine it runs on
      */
     @Override
-    public void execute() {
+    public void execute(Context context) {
+        InstructionStack stack = context.stack();
         int secondOperand = stack.pop();
         int firstOperand = stack.pop();
         // Attempting to divide by a zero denominator.
         if (secondOperand == 0){
-            Errors.report(Errors.Type.DIVIDE_BY_ZERO);
+            throw Errors.failure(Errors.Type.DIVIDE_BY_ZERO);
         } else {
             int value = (firstOperand / secondOperand);
             stack.push(value);
         }
     }
 
+    /**
+     * Append the DIV opcode to the program.
+     * @param program the program being built
+     */
+    @Override
+    public void encode(Program.Builder program) {
+        program.emit(Opcode.DIVIDE);
+    }
+
     /**
      * The string representation
      * @return (str) "DIV"
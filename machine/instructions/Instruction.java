@@ -1,5 +1,7 @@
 package machine.instructions;
 
+import machine.Program;
+
 /**
  * An interface for a MAQ machine instruction.
  *
@@ -7,10 +9,21 @@ package machine.instructions;
  */
 public interface Instruction {
     /**
-     * Run this instruction on the Machine, using the Machine's
-     * value stack and symbol table.
+     * Run this instruction on a Machine, using the Machine's
+     * value stack and symbol table.  An instruction keeps nothing of the
+     * machine it runs on, so the same instruction can run on any number
+     * of machines.
+     *
+     * @param context the machine it runs on
+     */
+    void execute(Context context);
+
+    /**
+     * Append this instruction to a program in its compact int encoding.
+     *
+     * @param program the program being built
      */
-    void execute();
+    void encode(Program.Builder program);
 
     /**
      * Show the instruction using text so that it can be understood
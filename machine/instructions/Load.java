@@ -1,9 +1,11 @@
 package machine.instructions;
 
 import common.Errors;
-import common.SymbolTable;
+import machine.Frame;
 import machine.InstructionStack;
 import machine.Maquina;
+import machine.Opcode;
+import machine.Program;
 
 /**
  * The LOAD Instruction
@@ -18,38 +20,44 @@ public class Load implements Instruction{
     private final String name;
 
     /**
-     * the instruction stack
+     * the instruction list's slot of the variable
      */
-    private final InstructionStack stack;
-
-    /**
-     * SymbolTable that stores the variables and their values
-     */
-    private final SymbolTable symbolTable;
+    private final int slot;
 
     /**
      * create new instruction
      * @param name the name of the variable stored
-     * @param machine the machine
+     * @param slot its slot in the instruction list's name table
      */
-    public Load(String name, Maquina machine) {
+    public Load(String name, int slot) {
         this.name = name;
-        this.stack = machine.getInstructionStack();
-        this.symbolTable = machine.getSymbolTable();
+        this.slot = slot;
     }
 
     /**
-     * Load the variables value from the symbol table and push it
+     * Load the variables value from the frame and push it
      * onto the stack.
+     * @param context the machine it runs on
      */
     @Override
-    public void execute() {
+    public void execute(Context context) {
+        InstructionStack stack = context.stack();
+        Frame frame = context.frame();
+        int slot = context.slot(this.slot);
         // Attempting to load a variable name that has not been stored yet.
-        if (!symbolTable.has(name)) {
-            Errors.report(Errors.Type.UNINITIALIZED, name);
+        if (!frame.isDefined(slot)) {
+            throw Errors.failure(Errors.Type.UNINITIALIZED, name);
         }
-        int value = symbolTable.get(name);
-        stack.push(value);
+        stack.push(frame.load(slot));
+    }
+
+    /**
+     * Append the LOAD opcode and the variable slot to the program.
+     * @param program the program being built
+     */
+    @Override
+    public void encode(Program.Builder program) {
+        program.emit(Opcode.LOAD, program.slot(name));
     }
 
     @Override
@@ -0,0 +1,96 @@
+package machine.instructions;
+
+import common.Errors;
+import machine.Frame;
+import machine.InstructionStack;
+import machine.Maquina;
+import machine.Opcode;
+import machine.Program;
+
+/**
+ * The fused LOAD / LOAD / SUB instruction.
+ * @author jolin qiu
+ */
+public class LoadLoadSub implements Instruction {
+
+    /**
+     * name of the first variable loaded
+     */
+    private final String firstName;
+
+    /**
+     * the instruction list's slot of the first variable
+     */
+    private final int firstSlot;
+
+    /**
+     * name of the second variable loaded
+     */
+    private final String secondName;
+
+    /**
+     * the instruction list's slot of the second variable
+     */
+    private final int secondSlot;
+
+    /**
+     * create a new instruction
+     * @param firstName the variable loaded first
+     * @param firstSlot its slot in the instruction list's name table
+     * @param secondName the variable loaded second
+     * @param secondSlot its slot in the instruction list's name table
+     */
+    public LoadLoadSub(String firstName, int firstSlot, String secondName, int secondSlot) {
+        this.firstName = firstName;
+        this.secondName = secondName;
+        this.firstSlot = firstSlot;
+        this.secondSlot = secondSlot;
+    }
+
+    /**
+     * Loads both variables from the frame and pushes the first
+     * minus the second, without pushing either one.  If the second has
+     * not been stored, the first is left on the stack, as the unfused
+     * LOAD would leave it.
+     * @param context the machine it runs on
+     */
+    @Override
+    public void execute(Context context) {
+        InstructionStack stack = context.stack();
+        Frame frame = context.frame();
+        int firstSlot = context.slot(this.firstSlot);
+        int secondSlot = context.slot(this.secondSlot);
+        // Attempting to load a variable name that has not been stored yet.
+        if (!frame.isDefined(firstSlot)) {
+            throw Errors.failure(Errors.Type.UNINITIALIZED, firstName);
+        }
+        int first = frame.load(firstSlot);
+        if (!frame.isDefined(secondSlot)) {
+            stack.push(first);
+            throw Errors.failure(Errors.Type.UNINITIALIZED, secondName);
+        }
+        stack.push(first - frame.load(secondSlot));
+    }
+
+    /**
+     * Append the LOAD, LOAD and SUB instructions to the program.
+     * @param program the program being built
+     */
+    @Override
+    public void encode(Program.Builder program) {
+        program.emit(Opcode.LOAD, program.slot(firstName));
+        program.emit(Opcode.LOAD, program.slot(secondName));
+        program.emit(Opcode.SUBTRACT);
+    }
+
+    /**
+     * returns the string representation, one line per instruction fused
+     * @return (str) "LOAD x", "LOAD y" and "SUB" on separate lines
+     */
+    @Override
+    public String toString() {
+        return Maquina.LOAD + " " + firstName + System.lineSeparator()
+                + Maquina.LOAD + " " + secondName + System.lineSeparator()
+                + Maquina.SUBTRACT;
+    }
+}
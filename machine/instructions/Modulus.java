@@ -2,6 +2,8 @@ package machine.instructions;
 
 import machine.InstructionStack;
 import machine.Maquina;
+import machine.Opcode;
+import machine.Program;
 
 /**
  * the MODULUS instruction
@@ -9,25 +11,23 @@ import machine.Maquina;
  */
 public class Modulus implements Instruction {
 
-    /**
-     * the instruction stack
-     */
-    private final InstructionStack stack;
+
+    /** the one instance, shared by every instruction list and machine */
+    public static final Modulus INSTANCE = new Modulus();
 
     /**
-     * creates a new instruction
-     * @param machine the machine
+     * The instruction has no operand, so there is only the one instance.
      */
-    public Modulus(Maquina machine) {
-        this.stack = machine.getInstructionStack();
-    }
+    private Modulus() {}
 
     /**
      * Pops the second and then first operands off the stack, and pushes the
      * result of the first modulus by the second.
+     * @param context the machine it runs on
      */
     @Override
-    public void execute() {
+    public void execute(Context context) {
+        InstructionStack stack = context.stack();
         int secondOperand = stack.pop();
         int firstOperand = stack.pop();
         int value = (firstOperand % secondOperand);
@@ -35,6 +35,15 @@ public class Modulus implements Instruction {
     }
 
 
+    /**
+     * Append the MOD opcode to the program.
+     * @param program the program being built
+     */
+    @Override
+    public void encode(Program.Builder program) {
+        program.emit(Opcode.MODULUS);
+    }
+
     /**
      * The string representation
      * @return (str) "MOD"
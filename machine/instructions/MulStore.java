@@ -0,0 +1,67 @@
+package machine.instructions;
+
+import machine.Frame;
+import machine.InstructionStack;
+import machine.Maquina;
+import machine.Opcode;
+import machine.Program;
+
+/**
+ * The fused MUL / STORE instruction.
+ * @author jolin qiu
+ */
+public class MulStore implements Instruction {
+    /**
+     * name of variable stored
+     */
+    private final String name;
+
+    /**
+     * the instruction list's slot of the variable
+     */
+    private final int slot;
+
+    /**
+     * create a new instruction
+     * @param name the variable name
+     * @param slot its slot in the instruction list's name table
+     */
+    public MulStore(String name, int slot) {
+        this.name = name;
+        this.slot = slot;
+    }
+
+    /**
+     * Pops the second and then first operands off the stack and sets
+     * the variable's value in the frame to the first multiplied by the second.
+     * @param context the machine it runs on
+     */
+    @Override
+    public void execute(Context context) {
+        InstructionStack stack = context.stack();
+        Frame frame = context.frame();
+        int slot = context.slot(this.slot);
+        int secondOperand = stack.pop();
+        int firstOperand = stack.pop();
+        frame.store(slot, firstOperand * secondOperand);
+    }
+
+    /**
+     * Append the MUL and STORE instructions to the program.
+     * @param program the program being built
+     */
+    @Override
+    public void encode(Program.Builder program) {
+        program.emit(Opcode.MULTIPLY);
+        program.emit(Opcode.STORE, program.slot(name));
+    }
+
+    /**
+     * returns the string representation, one line per instruction fused
+     * @return (str) "MUL" and "STORE x" on separate lines
+     */
+    @Override
+    public String toString() {
+        return Maquina.MULTIPLY + System.lineSeparator() + Maquina.STORE + " " + name;
+    }
+}
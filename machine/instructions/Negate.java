@@ -2,6 +2,8 @@ package machine.instructions;
 
 import machine.InstructionStack;
 import machine.Maquina;
+import machine.Opcode;
+import machine.Program;
 
 /**
  * The NEGATE instruction
@@ -9,29 +11,35 @@ import machine.Maquina;
  */
 public class Negate implements Instruction {
 
-    /**
-     * The instruction stack
-     */
-    private final InstructionStack stack;
+    /** the one instance, shared by every instruction list and machine */
+    public static final Negate INSTANCE = new Negate();
 
     /**
-     * create new instruction
-     * @param machine the machine
+     * The instruction has no operand, so there is only the one instance.
      */
-    public Negate(Maquina machine){
-        this.stack = machine.getInstructionStack();
-    }
+    private Negate() {}
 
     /**
      * pops the operand off the stack, and pushes the result of
      * negating it
+     * @param context the machine it runs on
      */
     @Override
-    public void execute() {
+    public void execute(Context context) {
+        InstructionStack stack = context.stack();
         int value = stack.pop();
         stack.push(value * (-1));
     }
 
+    /**
+     * Append the NEG opcode to the program.
+     * @param program the program being built
+     */
+    @Override
+    public void encode(Program.Builder program) {
+        program.emit(Opcode.NEGATE);
+    }
+
     /**
      * string representation of the negation
      * @return (st) NEG
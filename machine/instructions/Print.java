@@ -1,7 +1,8 @@
 package machine.instructions;
 
-import machine.InstructionStack;
 import machine.Maquina;
+import machine.Opcode;
+import machine.Program;
 
 /**
  * the print instruction
@@ -9,23 +10,30 @@ import machine.Maquina;
  */
 public class Print implements Instruction {
 
-    /** the instruction stack */
-    private final InstructionStack stack;
+    /** the one instance, shared by every instruction list and machine */
+    public static final Print INSTANCE = new Print();
 
     /**
-     * Create a new instruction
-     * @param machine the machine
+     * The instruction has no operand, so there is only the one instance.
      */
-    public Print(Maquina machine){
-        this.stack = machine.getInstructionStack();
-    }
+    private Print() {}
 
     /**
      * Pops the top operand off the stack and prints the resulting value.
+     * @param context the machine it runs on
+     */
+    @Override
+    public void execute(Context context) {
+        context.output().println(context.stack().pop());
+    }
+
+    /**
+     * Append the PRINT opcode to the program.
+     * @param program the program being built
      */
     @Override
-    public void execute() {
-        System.out.println(stack.pop());
+    public void encode(Program.Builder program) {
+        program.emit(Opcode.PRINT);
     }
 
     /**
@@ -1,7 +1,8 @@
 package machine.instructions;
 
-import machine.InstructionStack;
 import machine.Maquina;
+import machine.Opcode;
+import machine.Program;
 
 /**
  * The PUSH instruction.
@@ -12,25 +13,30 @@ public class Push implements Instruction {
     /** the value to push */
     private final int value;
 
-    /** the instruction stack */
-    private final InstructionStack stack;
-
     /**
      * Create a new instruction.
      * @param value value to push
-     * @param machine the machine
      */
-    public Push(int value, Maquina machine) {
+    public Push(int value) {
         this.value = value;
-        this.stack = machine.getInstructionStack();
     }
 
     /**
      * Pushes the saved value onto the instruction stack.
+     * @param context the machine it runs on
+     */
+    @Override
+    public void execute(Context context) {
+        context.stack().push(this.value);
+    }
+
+    /**
+     * Append the PUSH opcode and its value to the program.
+     * @param program the program being built
      */
     @Override
-    public void execute() {
-        this.stack.push(this.value);
+    public void encode(Program.Builder program) {
+        program.emit(Opcode.PUSH, this.value);
     }
 
     @Override
@@ -0,0 +1,57 @@
+package machine.instructions;
+
+import machine.InstructionStack;
+import machine.Maquina;
+import machine.Opcode;
+import machine.Program;
+
+/**
+ * The fused PUSH / MUL instruction.
+ * @author jolin qiu
+ */
+public class PushMul implements Instruction {
+
+    /**
+     * the value pushed
+     */
+    private final int value;
+
+    /**
+     * create a new instruction
+     * @param value the value pushed
+     */
+    public PushMul(int value) {
+        this.value = value;
+    }
+
+    /**
+     * Pops the first operand off the stack and pushes the first
+     * operand multiplied by the saved value.
+     * @param context the machine it runs on
+     */
+    @Override
+    public void execute(Context context) {
+        InstructionStack stack = context.stack();
+        int firstOperand = stack.pop();
+        stack.push(firstOperand * value);
+    }
+
+    /**
+     * Append the PUSH and MUL instructions to the program.
+     * @param program the program being built
+     */
+    @Override
+    public void encode(Program.Builder program) {
+        program.emit(Opcode.PUSH, this.value);
+        program.emit(Opcode.MULTIPLY);
+    }
+
+    /**
+     * returns the string representation, one line per instruction fused
+     * @return (str) "PUSH c" and "MUL" on separate lines
+     */
+    @Override
+    public String toString() {
+        return Maquina.PUSH + " " + this.value + System.lineSeparator() + Maquina.MULTIPLY;
+    }
+}
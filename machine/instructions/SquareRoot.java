@@ -3,6 +3,8 @@ package machine.instructions;
 import common.Errors;
 import machine.InstructionStack;
 import machine.Maquina;
+import machine.Opcode;
+import machine.Program;
 
 /**
  * The SQUAREROOT instruction
@@ -10,35 +12,42 @@ import machine.Maquina;
  */
 public class SquareRoot implements Instruction{
 
-    /**
-     * the instruction stack
-     */
-    private final InstructionStack stack;
+
+    /** the one instance, shared by every instruction list and machine */
+    public static final SquareRoot INSTANCE = new SquareRoot();
 
     /**
-     *  creates new instruction
-     * @param machine the machine
+     * The instruction has no operand, so there is only the one instance.
      */
-    public SquareRoot(Maquina machine){
-        this.stack = machine.getInstructionStack();
-    }
+    private SquareRoot() {}
 
     /**
      * Pops the operand off the stack, and pushes the integer result of
      * taking the square root of it.
+     * @param context the machine it runs on
      */
     @Override
-    public void execute() {
+    public void execute(Context context) {
+        InstructionStack stack = context.stack();
         int value = stack.pop();
         // Attempting to take the square root of a negative number.
         if (value < 0){
-            Errors.report(Errors.Type.NEGATIVE_SQUARE_ROOT);
+            throw Errors.failure(Errors.Type.NEGATIVE_SQUARE_ROOT);
         } else {
             stack.push((int)Math.sqrt(value));
 
         }
     }
 
+    /**
+     * Append the SQRT opcode to the program.
+     * @param program the program being built
+     */
+    @Override
+    public void encode(Program.Builder program) {
+        program.emit(Opcode.SQUARE_ROOT);
+    }
+
     /**
      * returns the string representation of square root
      * @return (str) "SQRT"
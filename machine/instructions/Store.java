@@ -1,8 +1,10 @@
 package machine.instructions;
 
-import common.SymbolTable;
+import machine.Frame;
 import machine.InstructionStack;
 import machine.Maquina;
+import machine.Opcode;
+import machine.Program;
 
 /**
  * the STORE instruction.
@@ -16,34 +18,41 @@ public class Store implements Instruction {
     private final String name;
 
     /**
-     * the instruction stack
+     * the instruction list's slot of the variable
      */
-    private final InstructionStack stack;
-
-    /**
-     * the symbolTable
-     */
-    private SymbolTable symbolTable;
+    private final int slot;
 
     /**
      * create a new instruction
      * @param name the variable name
-     * @param machine the machine
+     * @param slot its slot in the instruction list's name table
      */
-    public Store(String name, Maquina machine){
+    public Store(String name, int slot){
         this.name = name;
-        this.stack = machine.getInstructionStack();
-        this.symbolTable = machine.getSymbolTable();
+        this.slot = slot;
     }
 
     /**
      * Pops the value off the top of stack and sets the variable's
-     * value in the symbol table to the value.
+     * value in the frame to the value.
+     * @param context the machine it runs on
      */
     @Override
-    public void execute() {
+    public void execute(Context context) {
+        InstructionStack stack = context.stack();
+        Frame frame = context.frame();
+        int slot = context.slot(this.slot);
         int value = stack.pop();
-        this.symbolTable.set(name, value);
+        frame.store(slot, value);
+    }
+
+    /**
+     * Append the STORE opcode and the variable slot to the program.
+     * @param program the program being built
+     */
+    @Override
+    public void encode(Program.Builder program) {
+        program.emit(Opcode.STORE, program.slot(name));
     }
 
     @Override
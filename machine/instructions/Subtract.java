@@ -2,6 +2,8 @@ package machine.instructions;
 
 import machine.InstructionStack;
 import machine.Maquina;
+import machine.Opcode;
+import machine.Program;
 
 /**
  * The SUBTRACT instruction
@@ -9,31 +11,38 @@ import machine.Maquina;
  */
 public class Subtract implements Instruction{
 
-    /**
-     * the instruction stack
-     */
-    private final InstructionStack stack;
+
+    /** the one instance, shared by every instruction list and machine */
+    public static final Subtract INSTANCE = new Subtract();
 
     /**
-     * creates a new instruciton
-     * @param machine the machine
+     * The instruction has no operand, so there is only the one instance.
      */
-    public Subtract(Maquina machine){
-        this.stack = machine.getInstructionStack();
-    }
+    private Subtract() {}
 
     /**
      * Pops the second and then first operands off the stack, and pushes the result
      * of the first subtracted by the second.
+     * @param context the machine it runs on
      */
     @Override
-    public void execute() {
+    public void execute(Context context) {
+        InstructionStack stack = context.stack();
         int secondOperand = stack.pop();
         int firstOperand = stack.pop();
         int value = (firstOperand - secondOperand);
         stack.push(value);
     }
 
+    /**
+     * Append the SUB opcode to the program.
+     * @param program the program being built
+     */
+    @Override
+    public void encode(Program.Builder program) {
+        program.emit(Opcode.SUBTRACT);
+    }
+
     /**
      * The string representation
      * @return (str) "SUB"
@@ -0,0 +1,85 @@
+package machine.test;
+
+import common.BufferedSink;
+import common.OutputSink;
+import machine.Assembler;
+import machine.Maquina;
+import machine.Program;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit tester for the byte level MAQ assembler.
+ *
+ * @author jolin qiu
+ */
+public class TestAssembler {
+    /**
+     * Assemble some text.
+     *
+     * @param text the MAQ text
+     * @return the program
+     * @throws IOException never, the input is in memory
+     */
+    private static Program assemble(String text) throws IOException {
+        return Assembler.assemble(new ByteArrayInputStream(text.getBytes()));
+    }
+
+    @Test
+    public void testFields() throws IOException {
+        Program program = assemble("  PUSH   -2147483648 \r\n\tPUSH +7\nSTORE x\r\nLOAD x\nLOAD y\nSTORE x\nADD");
+        String expected = "PUSH -2147483648" + System.lineSeparator() +
+                "PUSH 7" + System.lineSeparator() +
+                "STORE x" + System.lineSeparator() +
+                "LOAD x" + System.lineSeparator() +
+                "LOAD y" + System.lineSeparator() +
+                "STORE x" + System.lineSeparator() +
+                "ADD" + System.lineSeparator();
+        assertEquals(expected, program.toString());
+        assertEquals(7, program.size());
+        assertEquals(2, program.names().length);
+        assertThrows(NumberFormatException.class, () -> assemble("PUSH 2147483648"));
+        assertThrows(NumberFormatException.class, () -> assemble("PUSH 1x"));
+        assertThrows(NumberFormatException.class, () -> assemble("PUSH -"));
+    }
+
+    @Test
+    public void testLongInput() throws IOException {
+        // far larger than the input buffer, with many distinct names
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 50_000; i++) {
+            text.append("PUSH ").append(i).append('\n').append("STORE v").append(i % 1000).append('\n');
+        }
+        Program program = assemble(text.toString());
+        assertEquals(100_000, program.size());
+        assertEquals(1000, program.names().length);
+        assertEquals("v999", program.names()[999]);
+        assertEquals("PUSH 49999", program.toString(program.code().length - 4));
+    }
+
+    @Test
+    public void testPrompt() throws IOException {
+        PrintStream out = System.out;
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(stdout, true));
+        try {
+            // the prompt goes where the machine prints, not to standard output
+            new Maquina(OutputSink.discard()).assemble(new ByteArrayInputStream("PUSH 1\n.\n".getBytes()), true);
+            ByteArrayOutputStream buffered = new ByteArrayOutputStream();
+            try (OutputSink sink = new BufferedSink(buffered, BufferedSink.DEFAULT_SIZE)) {
+                new Maquina(sink).assemble(new ByteArrayInputStream("PUSH 1\n.\n".getBytes()), true);
+            }
+            assertEquals(0, stdout.size());
+            assertTrue(buffered.toString(StandardCharsets.UTF_8).contains("🤖 "));
+        } finally {
+            System.setOut(out);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package machine.test;
+
+import common.OutputSink;
+import machine.Assembler;
+import machine.CheckpointFile;
+import machine.Frame;
+import machine.Maquina;
+import machine.Program;
+import machine.engine.CheckpointEngine;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit tester for execution checkpoints and resuming from them.
+ *
+ * @author jolin qiu
+ */
+public class TestCheckpoint {
+    /**
+     * The checkpoint file of each test
+     */
+    private Path file;
+
+    @BeforeEach
+    public void createFile() throws IOException {
+        file = Files.createTempFile("test", CheckpointFile.EXTENSION);
+        Files.delete(file);
+    }
+
+    @AfterEach
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Assemble some MAQ text.
+     *
+     * @param lines the instructions
+     * @return the program
+     * @throws IOException never, the input is in memory
+     */
+    private static Program assemble(String... lines) throws IOException {
+        return Assembler.assemble(new ByteArrayInputStream(String.join("\n", lines).getBytes()));
+    }
+
+    /**
+     * Run a program with checkpoints every two instructions on a new machine.
+     *
+     * @param program the program
+     * @param start where to put the index execution started at
+     * @return the machine's frame afterwards
+     */
+    private Frame run(Program program, int[] start) {
+        Maquina machine = new Maquina(OutputSink.discard());
+        start[0] = CheckpointEngine.run(program, machine, file, 2);
+        return machine.getFrame();
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        Program program = assemble("PUSH 1", "STORE x", "LOAD x", "PUSH 2", "ADD", "STORE x",
+                "LOAD x", "PUSH 3", "MUL", "STORE y");
+        int[] start = new int[1];
+        Frame first = run(program, start);
+        assertEquals(0, start[0]);
+        assertEquals(4, CheckpointFile.read(file).size());
+        // the checkpoint at 4 is in the middle of a statement
+        assertArrayEquals(new int[]{1, 2}, CheckpointFile.read(file).get(1).stack());
+
+        Frame second = run(program, start);
+        assertEquals(8, start[0]);
+        assertEquals(first.load(first.slot("y")), second.load(second.slot("y")));
+        assertEquals(9, second.load(second.slot("y")));
+    }
+
+    @Test
+    public void testEdited() throws IOException {
+        int[] start = new int[1];
+        run(assemble("PUSH 1", "STORE x", "LOAD x", "PUSH 2", "ADD", "STORE x",
+                "LOAD x", "PUSH 3", "MUL", "STORE y"), start);
+        // changing the 3 leaves only the checkpoints before it
+        Frame frame = run(assemble("PUSH 1", "STORE x", "LOAD x", "PUSH 2", "ADD", "STORE x",
+                "LOAD x", "PUSH 4", "MUL", "STORE y"), start);
+        assertEquals(6, start[0]);
+        assertEquals(12, frame.load(frame.slot("y")));
+        assertEquals(4, CheckpointFile.read(file).size());
+
+        // renaming a variable early on invalidates them all
+        frame = run(assemble("PUSH 1", "STORE z", "LOAD z", "PUSH 2", "ADD", "STORE x",
+                "LOAD x", "PUSH 4", "MUL", "STORE y"), start);
+        assertEquals(0, start[0]);
+        assertEquals(12, frame.load(frame.slot("y")));
+    }
+
+    @Test
+    public void testCollidingName() throws IOException {
+        // "Aa" and "BB" have the same String hash code
+        int[] start = new int[1];
+        run(assemble("PUSH 1", "STORE Aa", "PUSH 2", "STORE BB", "LOAD Aa", "PUSH 3", "ADD", "STORE y",
+                "LOAD y", "PUSH 1", "ADD", "STORE z"), start);
+        Frame frame = run(assemble("PUSH 1", "STORE Aa", "PUSH 2", "STORE BB", "LOAD BB", "PUSH 3", "ADD", "STORE y",
+                "LOAD y", "PUSH 1", "ADD", "STORE z"), start);
+        assertEquals(4, start[0]);
+        assertEquals(5, frame.load(frame.slot("y")));
+        assertEquals(6, frame.load(frame.slot("z")));
+    }
+
+    @Test
+    public void testLongName() {
+        String name = "v".repeat(0x10000);
+        assertThrows(IllegalArgumentException.class, () -> CheckpointFile.write(file,
+                List.of(new CheckpointFile.Checkpoint(0, 0, new String[] {name}, new int[] {1}, new int[0]))));
+    }
+
+    @Test
+    public void testDamaged() throws IOException {
+        int[] start = new int[1];
+        Program program = assemble("PUSH 1", "STORE x", "LOAD x", "PUSH 2", "ADD", "STORE x");
+        run(program, start);
+        // a crash while writing the last checkpoint leaves part of it behind
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+        assertEquals(1, CheckpointFile.read(file).size());
+        run(program, start);
+        assertEquals(2, start[0]);
+    }
+}
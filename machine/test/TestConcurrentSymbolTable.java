@@ -0,0 +1,106 @@
+package machine.test;
+
+import common.ConcurrentSymbolTable;
+import common.OutputSink;
+import machine.Maquina;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit test for the symbol table shared between threads.
+ *
+ * @author jolin qiu
+ */
+public class TestConcurrentSymbolTable {
+    @Test
+    public void testSymbolTable() {
+        ConcurrentSymbolTable symTbl = new ConcurrentSymbolTable(4);
+        assertFalse(symTbl.has("x"));
+        assertThrows(NullPointerException.class, () -> symTbl.get("x"));
+
+        symTbl.set("x", 10);
+        symTbl.set("y", 30);
+        symTbl.set("x", 20);
+        assertEquals(20, symTbl.get("x"));
+        assertFalse(symTbl.setIfAbsent("x", 0));
+        assertTrue(symTbl.setIfAbsent("z", 40));
+
+        assertEquals(25, symTbl.addAndGet("x", 5));
+        assertEquals(50, symTbl.update("x", v -> v * 2));
+        assertFalse(symTbl.compareAndSet("x", 49, 0));
+        assertTrue(symTbl.compareAndSet("x", 50, 60));
+        assertFalse(symTbl.compareAndSet("w", 0, 1));
+        assertThrows(NullPointerException.class, () -> symTbl.addAndGet("w", 1));
+
+        String expected = "x: 60" + System.lineSeparator() +
+                "y: 30" + System.lineSeparator() +
+                "z: 40" + System.lineSeparator();
+        assertEquals(3, symTbl.size());
+        assertEquals(expected, symTbl.toString());
+    }
+
+    @Test
+    public void testThreads() throws InterruptedException {
+        ConcurrentSymbolTable symTbl = new ConcurrentSymbolTable();
+        symTbl.set("count", 0);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int thread = t;
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    symTbl.addAndGet("count", 1);
+                    symTbl.set("t" + thread + "." + i, i);
+                }
+            }));
+        }
+        // snapshots taken meanwhile always list the variables without gaps
+        for (int i = 0; i < 20; i++) {
+            assertEquals("count", symTbl.snapshot().toString().split(":")[0]);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(80_000, symTbl.get("count"));
+        assertEquals(80_001, symTbl.size());
+        assertEquals(80_001, symTbl.snapshot().size());
+        for (int t = 0; t < 8; t++) {
+            assertEquals(9_999, symTbl.get("t" + t + ".9999"));
+        }
+    }
+
+    @Test
+    public void testSharedMachines() throws IOException {
+        ConcurrentSymbolTable globals = new ConcurrentSymbolTable();
+        Maquina first = new Maquina(globals, OutputSink.discard());
+        first.assemble(maq("PUSH 2", "STORE x"), false);
+        first.execute();
+
+        // the second machine loads what the first stored, on every engine
+        for (Maquina.Engine engine : Maquina.Engine.values()) {
+            Maquina second = new Maquina(globals, OutputSink.discard());
+            second.setEngine(engine);
+            second.assemble(maq("LOAD x", "PUSH 3", "MUL", "STORE y"), false);
+            second.execute();
+            assertEquals(6, globals.get("y"), engine.toString());
+            assertEquals(2, second.getSymbolTable().size());
+        }
+    }
+
+    /**
+     * Make MAQ text into an input stream.
+     *
+     * @param lines the instructions
+     * @return the stream
+     */
+    private static ByteArrayInputStream maq(String... lines) {
+        return new ByteArrayInputStream((String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+}
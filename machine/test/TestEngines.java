@@ -0,0 +1,161 @@
+package machine.test;
+
+import common.Errors;
+import machine.Maquina;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit tester checking that every execution engine leaves the machine
+ * in the same state and prints the same output.
+ *
+ * @author jolin qiu
+ */
+public class TestEngines {
+    /** a program exercising every instruction, leaving values on the stack */
+    private static final String PROGRAM = String.join(System.lineSeparator(),
+            "PUSH 10",
+            "STORE x",
+            "PUSH 3",
+            "LOAD x",
+            "MUL",
+            "STORE y",
+            "LOAD y",
+            "PUSH 7",
+            "SUB",
+            "PRINT",
+            "LOAD y",
+            "PUSH 4",
+            "DIV",
+            "PUSH 5",
+            "MOD",
+            "NEG",
+            "STORE z",
+            "PUSH 144",
+            "SQRT",
+            "LOAD z",
+            "ADD",
+            "PRINT",
+            "PUSH 1",
+            "STORE x",
+            "LOAD x",
+            "LOAD z",
+            "");
+
+    /**
+     * Used to test that expected print's happen
+     */
+    private final ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+
+    @BeforeEach
+    public void setUpStreams() {
+        System.setOut(new PrintStream(outContent));
+    }
+
+    @AfterEach
+    public void restoreStreams() {
+        System.setOut(System.out);
+    }
+
+    /**
+     * Assemble and execute the program with an engine.
+     *
+     * @param engine the engine
+     * @return everything printed
+     */
+    private String run(Maquina.Engine engine) throws IOException {
+        outContent.reset();
+        Maquina machine = new Maquina();
+        machine.setEngine(engine);
+        machine.assemble(new ByteArrayInputStream(PROGRAM.getBytes()), false);
+        machine.execute();
+        return outContent.toString();
+    }
+
+    @Test
+    public void testSameOutput() throws IOException {
+        String expected = run(Maquina.Engine.OBJECT);
+        assertTrue(expected.contains("23" + System.lineSeparator() + "10" + System.lineSeparator()));
+        assertTrue(expected.contains("x: 1" + System.lineSeparator() +
+                "y: 30" + System.lineSeparator() +
+                "z: -2" + System.lineSeparator()));
+        for (Maquina.Engine engine : Maquina.Engine.values()) {
+            assertEquals(expected, run(engine), engine.toString());
+        }
+    }
+
+    @Test
+    public void testStream() throws IOException {
+        String expected = run(Maquina.Engine.OBJECT);
+        String executed = expected.substring(expected.indexOf("(MAQ) Executing..."));
+        executed = executed.substring(executed.indexOf(System.lineSeparator()));
+
+        outContent.reset();
+        Maquina machine = new Maquina();
+        long count = machine.stream(new ByteArrayInputStream(PROGRAM.getBytes()), false);
+        String streamed = outContent.toString();
+        assertEquals(26, count);
+        assertEquals(executed, streamed.substring(streamed.indexOf(System.lineSeparator())));
+    }
+
+    @Test
+    public void testFailure() throws IOException {
+        String failing = String.join(System.lineSeparator(), "PUSH 7", "PUSH 0", "DIV", "");
+        for (Maquina.Engine engine : Maquina.Engine.values()) {
+            Maquina machine = new Maquina();
+            machine.setEngine(engine);
+            machine.assemble(new ByteArrayInputStream(failing.getBytes()), false);
+            Errors.Failure failure = assertThrows(Errors.ArithmeticFailure.class, machine::execute);
+            assertEquals(Errors.Type.DIVIDE_BY_ZERO, failure.getType(), engine.toString());
+
+            // the machine carries on after a failure
+            outContent.reset();
+            machine.stream(new ByteArrayInputStream("PUSH 5\nPRINT\n".getBytes()), false);
+            assertTrue(outContent.toString().contains(System.lineSeparator() + "5" + System.lineSeparator()));
+        }
+    }
+
+    @Test
+    public void testStateAfterFailure() throws IOException {
+        // long enough that the bytecode engine splits it into several methods
+        StringBuilder stores = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            stores.append("PUSH ").append(i).append("\nSTORE v").append(i % 50).append("\nPUSH 1\n");
+            stores.append(i % 2 == 0 ? "ADD\n" : "LOAD v3\nMUL\nSTORE w\n");
+        }
+        String[] programs = {
+                "PUSH 1\nSTORE a\nPUSH 9\nPUSH 8\nPUSH 0\nDIV\nSTORE b\n",
+                "PUSH 1\nSTORE a\nPUSH 4\nPUSH -1\nSQRT\nSTORE a\n",
+                "PUSH 2\nSTORE b\nPUSH 3\nLOAD b\nPUSH 1\nADD\nLOAD q\nADD\n",
+                "PUSH 2\nSTORE b\nPUSH 3\nLOAD b\nLOAD q\nSUB\n",
+                "PUSH 5\n" + stores + "PUSH 7\nSTORE late\nLOAD late\nPUSH 0\nDIV\n",
+                "PUSH 5\n" + stores + "LOAD missing\n",
+                "PUSH 1\nSTORE a\nPUSH 9\nPUSH 8\nPUSH 0\nMOD\nSTORE b\n",
+                "PUSH 5\n" + stores + "PUSH 7\nSTORE late\nLOAD late\nPUSH 0\nMOD\n",
+        };
+        for (String program : programs) {
+            String expected = null;
+            for (Maquina.Engine engine : Maquina.Engine.values()) {
+                Maquina machine = new Maquina();
+                machine.setEngine(engine);
+                machine.assemble(new ByteArrayInputStream(program.getBytes()), false);
+                // MOD by zero fails with the JVM's ArithmeticException, as Modulus does
+                RuntimeException failure = assertThrows(RuntimeException.class, machine::execute);
+                // the error, the variables stored before it and the stack it left
+                String state = failure.getClass().getName() + machine.getSymbolTable()
+                        + machine.getInstructionStack().toString();
+                if (expected == null) {
+                    expected = state;
+                } else {
+                    assertEquals(expected, state, engine.toString());
+                }
+            }
+        }
+    }
+}
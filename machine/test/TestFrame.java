@@ -0,0 +1,43 @@
+package machine.test;
+
+import machine.Frame;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit tester for the machine's variable frame.
+ *
+ * @author jolin qiu
+ */
+public class TestFrame {
+    @Test
+    public void testFrame() {
+        Frame frame = new Frame();
+        int x = frame.slot("x");
+        int y = frame.slot("y");
+        assertEquals(x, frame.slot("x"));
+        assertEquals("y", frame.name(y));
+        assertFalse(frame.isDefined(x));
+        assertEquals(0, frame.size());
+
+        // the symbol table view is in first store order, not slot order
+        frame.store(y, 20);
+        frame.store(x, 10);
+        frame.store(y, 30);
+        assertTrue(frame.isDefined(x));
+        assertEquals(30, frame.load(y));
+        assertEquals(2, frame.size());
+        String expected = "y: 30" + System.lineSeparator() +
+                "x: 10" + System.lineSeparator();
+        assertEquals(expected, frame.toSymbolTable().toString());
+
+        // slots keep their values as the frame grows
+        for (int i = 0; i < 100; i++) {
+            frame.store(frame.slot("v" + i), i);
+        }
+        assertEquals(102, frame.size());
+        assertEquals(10, frame.load(x));
+        assertEquals(99, frame.load(frame.slot("v99")));
+    }
+}
@@ -49,4 +49,22 @@ public class TestInstructionStack {
             "\tEMPTY" + System.lineSeparator();
         assertEquals(expected, stack.toString());
     }
+
+    @Test
+    public void testGrowth() {
+        InstructionStack stack = new InstructionStack(2, 1000);
+        assertEquals(2, stack.capacity());
+        for (int i = 0; i < 1000; i++) {
+            stack.push(i);
+        }
+        assertEquals(1000, stack.size());
+        assertEquals(1000, stack.capacity());
+        assertEquals(999, stack.top());
+
+        for (int i = 999; i >= 0; i--) {
+            assertEquals(i, stack.pop());
+        }
+        assertEquals(0, stack.size());
+        assertEquals(1000, stack.capacity());
+    }
 }
@@ -1,11 +1,17 @@
 package machine.test;
 
+import common.Errors;
+import common.OutputSink;
 import machine.Maquina;
 import machine.instructions.*;
 import org.junit.jupiter.api.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -35,17 +41,18 @@ public class TestInstructions {
     @Order(1)
     public void testPush() {
         Maquina machine = new Maquina();
+        Context context = new Context(machine, "x", "y", "z");
 
-        Push push10 = new Push(10, machine);
+        Push push10 = new Push(10);
         assertEquals("PUSH 10", push10.toString());
-        Push push20 = new Push(20, machine);
+        Push push20 = new Push(20);
         assertEquals("PUSH 20", push20.toString());
-        Push push30 = new Push(30, machine);
+        Push push30 = new Push(30);
         assertEquals("PUSH 30", push30.toString());
 
-        push10.execute();
-        push20.execute();
-        push30.execute();
+        push10.execute(context);
+        push20.execute(context);
+        push30.execute(context);
 
         assertEquals(3, machine.getInstructionStack().size());
         String expected = "(MAQ) Instruction stack:" + System.lineSeparator() +
@@ -59,18 +66,19 @@ public class TestInstructions {
     @Order(2)
     public void testPrint() {
         Maquina machine = new Maquina();
+        Context context = new Context(machine, "x", "y", "z");
 
-        Push push10 = new Push(10, machine);
-        Push push20 = new Push(20, machine);
-        Push push30 = new Push(30, machine);
+        Push push10 = new Push(10);
+        Push push20 = new Push(20);
+        Push push30 = new Push(30);
 
-        push10.execute();
-        push20.execute();
-        push30.execute();
+        push10.execute(context);
+        push20.execute(context);
+        push30.execute(context);
 
-        Print print30 = new Print(machine);
+        Print print30 = Print.INSTANCE;
         assertEquals("PRINT", print30.toString());
-        print30.execute();
+        print30.execute(context);
         String expected = "30" + System.lineSeparator();
 
         assertEquals(2, machine.getInstructionStack().size());
@@ -79,9 +87,9 @@ public class TestInstructions {
                 "\t1: 10" + System.lineSeparator();
         assertEquals(expectedStack, machine.getInstructionStack().toString());
 
-        Print print20 = new Print(machine);
+        Print print20 = Print.INSTANCE;
         assertEquals("PRINT", print20.toString());
-        print20.execute();
+        print20.execute(context);
         expected += "20" + System.lineSeparator();
         assertEquals(expected, outContent.toString());
 
@@ -95,26 +103,27 @@ public class TestInstructions {
     @Order(3)
     public void testStore() {
         Maquina machine = new Maquina();
+        Context context = new Context(machine, "x", "y", "z");
 
-        Push push10 = new Push(10, machine);
-        Push push20 = new Push(20, machine);
-        Push push30 = new Push(30, machine);
+        Push push10 = new Push(10);
+        Push push20 = new Push(20);
+        Push push30 = new Push(30);
 
-        push10.execute();
-        push20.execute();
-        push30.execute();
+        push10.execute(context);
+        push20.execute(context);
+        push30.execute(context);
 
-        Store storeX = new Store("x", machine);
-        Store storeY = new Store("y", machine);
-        Store storeZ = new Store("z", machine);
+        Store storeX = new Store("x", 0);
+        Store storeY = new Store("y", 1);
+        Store storeZ = new Store("z", 2);
 
         assertEquals("STORE x", storeX.toString());
         assertEquals("STORE y", storeY.toString());
         assertEquals("STORE z", storeZ.toString());
 
-        storeX.execute();
-        storeY.execute();
-        storeZ.execute();
+        storeX.execute(context);
+        storeY.execute(context);
+        storeZ.execute(context);
 
         assertEquals(3, machine.getSymbolTable().size());
         String expected = "x: 30" + System.lineSeparator() +
@@ -132,22 +141,23 @@ public class TestInstructions {
     @Order(4)
     public void testLoad() {
         Maquina machine = new Maquina();
+        Context context = new Context(machine, "x", "y", "z");
 
-        Push push10 = new Push(10, machine);
-        Push push20 = new Push(20, machine);
-        Push push30 = new Push(30, machine);
+        Push push10 = new Push(10);
+        Push push20 = new Push(20);
+        Push push30 = new Push(30);
 
-        push10.execute();
-        push20.execute();
-        push30.execute();
+        push10.execute(context);
+        push20.execute(context);
+        push30.execute(context);
 
-        Store storeX = new Store("x", machine);
-        Store storeY = new Store("y", machine);
-        Store storeZ = new Store("z", machine);
+        Store storeX = new Store("x", 0);
+        Store storeY = new Store("y", 1);
+        Store storeZ = new Store("z", 2);
 
-        storeX.execute();
-        storeY.execute();
-        storeZ.execute();
+        storeX.execute(context);
+        storeY.execute(context);
+        storeZ.execute(context);
 
         assertEquals(3, machine.getSymbolTable().size());
         String expected = "x: 30" + System.lineSeparator() +
@@ -155,13 +165,13 @@ public class TestInstructions {
                 "z: 10" + System.lineSeparator();
         assertEquals(expected, machine.getSymbolTable().toString());
 
-        Load loadZ = new Load("z", machine);
-        Load loadY = new Load("y", machine);
-        Load loadX = new Load("x", machine);
+        Load loadZ = new Load("z", 2);
+        Load loadY = new Load("y", 1);
+        Load loadX = new Load("x", 0);
 
-        loadX.execute();
-        loadY.execute();
-        loadZ.execute();
+        loadX.execute(context);
+        loadY.execute(context);
+        loadZ.execute(context);
 
         assertEquals("LOAD x", loadX.toString());
         assertEquals("LOAD y", loadY.toString());
@@ -178,18 +188,19 @@ public class TestInstructions {
     @Order(5)
     public void testNegate() {
         Maquina machine = new Maquina();
+        Context context = new Context(machine, "x", "y", "z");
 
-        Push push10 = new Push(10, machine);
-        Push push20 = new Push(-20, machine);
-        Push push30 = new Push(30, machine);
+        Push push10 = new Push(10);
+        Push push20 = new Push(-20);
+        Push push30 = new Push(30);
 
-        push10.execute();
-        push20.execute();
-        push30.execute();
+        push10.execute(context);
+        push20.execute(context);
+        push30.execute(context);
 
-        Negate neg30 = new Negate(machine);
+        Negate neg30 = Negate.INSTANCE;
         assertEquals("NEG", neg30.toString());
-        neg30.execute();
+        neg30.execute(context);
 
         assertEquals(3, machine.getInstructionStack().size());
         String expected = "(MAQ) Instruction stack:" + System.lineSeparator() +
@@ -199,9 +210,9 @@ public class TestInstructions {
         assertEquals(expected, machine.getInstructionStack().toString());
 
         machine.getInstructionStack().pop();
-        Negate neg20 = new Negate(machine);
+        Negate neg20 = Negate.INSTANCE;
         assertEquals("NEG", neg20.toString());
-        neg20.execute();
+        neg20.execute(context);
 
         assertEquals(2, machine.getInstructionStack().size());
         expected = "(MAQ) Instruction stack:" + System.lineSeparator() +
@@ -214,18 +225,19 @@ public class TestInstructions {
     @Order(6)
     public void testSquareRoot() {
         Maquina machine = new Maquina();
+        Context context = new Context(machine, "x", "y", "z");
 
-        Push push30 = new Push(30, machine);
-        Push push112 = new Push(112, machine);
-        Push push25 = new Push(25, machine);
+        Push push30 = new Push(30);
+        Push push112 = new Push(112);
+        Push push25 = new Push(25);
 
-        push30.execute();
-        push112.execute();
-        push25.execute();
+        push30.execute(context);
+        push112.execute(context);
+        push25.execute(context);
 
-        SquareRoot sqrt5 = new SquareRoot(machine);
+        SquareRoot sqrt5 = SquareRoot.INSTANCE;
         assertEquals("SQRT", sqrt5.toString());
-        sqrt5.execute();
+        sqrt5.execute(context);
 
         assertEquals(3, machine.getInstructionStack().size());
         String expected = "(MAQ) Instruction stack:" + System.lineSeparator() +
@@ -235,9 +247,9 @@ public class TestInstructions {
         assertEquals(expected, machine.getInstructionStack().toString());
 
         machine.getInstructionStack().pop();
-        SquareRoot sqrt10 = new SquareRoot(machine);
+        SquareRoot sqrt10 = SquareRoot.INSTANCE;
         assertEquals("SQRT", sqrt10.toString());
-        sqrt5.execute();
+        sqrt5.execute(context);
 
         assertEquals(2, machine.getInstructionStack().size());
         expected = "(MAQ) Instruction stack:" + System.lineSeparator() +
@@ -250,21 +262,22 @@ public class TestInstructions {
     @Order(7)
     public void testAdd() {
         Maquina machine = new Maquina();
+        Context context = new Context(machine, "x", "y", "z");
 
-        Push push10 = new Push(10, machine);
+        Push push10 = new Push(10);
         assertEquals("PUSH 10", push10.toString());
-        Push push20 = new Push(20, machine);
+        Push push20 = new Push(20);
         assertEquals("PUSH 20", push20.toString());
-        Push push60 = new Push(60, machine);
+        Push push60 = new Push(60);
         assertEquals("PUSH 60", push60.toString());
 
-        push10.execute();
-        push20.execute();
-        push60.execute();
+        push10.execute(context);
+        push20.execute(context);
+        push60.execute(context);
 
-        Add add80 = new Add(machine);
+        Add add80 = Add.INSTANCE;
         assertEquals("ADD", add80.toString());
-        add80.execute();
+        add80.execute(context);
 
         assertEquals(2, machine.getInstructionStack().size());
         String expected = "(MAQ) Instruction stack:" + System.lineSeparator() +
@@ -272,9 +285,9 @@ public class TestInstructions {
                 "\t1: 10" + System.lineSeparator();
         assertEquals(expected, machine.getInstructionStack().toString());
 
-        Add add90 = new Add(machine);
+        Add add90 = Add.INSTANCE;
         assertEquals("ADD", add90.toString());
-        add90.execute();
+        add90.execute(context);
 
         assertEquals(1, machine.getInstructionStack().size());
         expected = "(MAQ) Instruction stack:" + System.lineSeparator() +
@@ -286,21 +299,22 @@ public class TestInstructions {
     @Order(8)
     public void testSubtract() {
         Maquina machine = new Maquina();
+        Context context = new Context(machine, "x", "y", "z");
 
-        Push push10 = new Push(10, machine);
+        Push push10 = new Push(10);
         assertEquals("PUSH 10", push10.toString());
-        Push push20 = new Push(20, machine);
+        Push push20 = new Push(20);
         assertEquals("PUSH 20", push20.toString());
-        Push push60 = new Push(60, machine);
+        Push push60 = new Push(60);
         assertEquals("PUSH 60", push60.toString());
 
-        push10.execute();
-        push20.execute();
-        push60.execute();
+        push10.execute(context);
+        push20.execute(context);
+        push60.execute(context);
 
-        Subtract sub40 = new Subtract(machine);
+        Subtract sub40 = Subtract.INSTANCE;
         assertEquals("SUB", sub40.toString());
-        sub40.execute();
+        sub40.execute(context);
 
         assertEquals(2, machine.getInstructionStack().size());
         String expected = "(MAQ) Instruction stack:" + System.lineSeparator() +
@@ -308,9 +322,9 @@ public class TestInstructions {
                 "\t1: 10" + System.lineSeparator();
         assertEquals(expected, machine.getInstructionStack().toString());
 
-        Subtract sub50 = new Subtract(machine);
+        Subtract sub50 = Subtract.INSTANCE;
         assertEquals("SUB", sub50.toString());
-        sub50.execute();
+        sub50.execute(context);
 
         assertEquals(1, machine.getInstructionStack().size());
         expected = "(MAQ) Instruction stack:" + System.lineSeparator() +
@@ -322,21 +336,22 @@ public class TestInstructions {
     @Order(9)
     public void testMultiply() {
         Maquina machine = new Maquina();
+        Context context = new Context(machine, "x", "y", "z");
 
-        Push push10 = new Push(10, machine);
+        Push push10 = new Push(10);
         assertEquals("PUSH 10", push10.toString());
-        Push push20 = new Push(20, machine);
+        Push push20 = new Push(20);
         assertEquals("PUSH 20", push20.toString());
-        Push push60 = new Push(60, machine);
+        Push push60 = new Push(60);
         assertEquals("PUSH 60", push60.toString());
 
-        push10.execute();
-        push20.execute();
-        push60.execute();
+        push10.execute(context);
+        push20.execute(context);
+        push60.execute(context);
 
-        Multiply mul1200 = new Multiply(machine);
+        Multiply mul1200 = Multiply.INSTANCE;
         assertEquals("MUL", mul1200.toString());
-        mul1200.execute();
+        mul1200.execute(context);
 
         assertEquals(2, machine.getInstructionStack().size());
         String expected = "(MAQ) Instruction stack:" + System.lineSeparator() +
@@ -344,9 +359,9 @@ public class TestInstructions {
                 "\t1: 10" + System.lineSeparator();
         assertEquals(expected, machine.getInstructionStack().toString());
 
-        Multiply mul12000 = new Multiply(machine);
+        Multiply mul12000 = Multiply.INSTANCE;
         assertEquals("MUL", mul12000.toString());
-        mul12000.execute();
+        mul12000.execute(context);
 
         assertEquals(1, machine.getInstructionStack().size());
         expected = "(MAQ) Instruction stack:" + System.lineSeparator() +
@@ -358,21 +373,22 @@ public class TestInstructions {
     @Order(10)
     public void testDivide() {
         Maquina machine = new Maquina();
+        Context context = new Context(machine, "x", "y", "z");
 
-        Push push13 = new Push(13, machine);
+        Push push13 = new Push(13);
         assertEquals("PUSH 13", push13.toString());
-        Push push60 = new Push(60, machine);
+        Push push60 = new Push(60);
         assertEquals("PUSH 60", push60.toString());
-        Push push20 = new Push(20, machine);
+        Push push20 = new Push(20);
         assertEquals("PUSH 20", push20.toString());
 
-        push13.execute();
-        push60.execute();
-        push20.execute();
+        push13.execute(context);
+        push60.execute(context);
+        push20.execute(context);
 
-        Divide div3 = new Divide(machine);
+        Divide div3 = Divide.INSTANCE;
         assertEquals("DIV", div3.toString());
-        div3.execute();
+        div3.execute(context);
 
         assertEquals(2, machine.getInstructionStack().size());
         String expected = "(MAQ) Instruction stack:" + System.lineSeparator() +
@@ -380,9 +396,9 @@ public class TestInstructions {
                 "\t1: 13" + System.lineSeparator();
         assertEquals(expected, machine.getInstructionStack().toString());
 
-        Divide div4 = new Divide(machine);
+        Divide div4 = Divide.INSTANCE;
         assertEquals("DIV", div4.toString());
-        div4.execute();
+        div4.execute(context);
 
         assertEquals(1, machine.getInstructionStack().size());
         expected = "(MAQ) Instruction stack:" + System.lineSeparator() +
@@ -394,21 +410,22 @@ public class TestInstructions {
     @Order(11)
     public void testModulus() {
         Maquina machine = new Maquina();
+        Context context = new Context(machine, "x", "y", "z");
 
-        Push push3 = new Push(3, machine);
+        Push push3 = new Push(3);
         assertEquals("PUSH 3", push3.toString());
-        Push push64 = new Push(64, machine);
+        Push push64 = new Push(64);
         assertEquals("PUSH 64", push64.toString());
-        Push push20 = new Push(20, machine);
+        Push push20 = new Push(20);
         assertEquals("PUSH 20", push20.toString());
 
-        push3.execute();
-        push64.execute();
-        push20.execute();
+        push3.execute(context);
+        push64.execute(context);
+        push20.execute(context);
 
-        Modulus mod4 = new Modulus(machine);
+        Modulus mod4 = Modulus.INSTANCE;
         assertEquals("MOD", mod4.toString());
-        mod4.execute();
+        mod4.execute(context);
 
         assertEquals(2, machine.getInstructionStack().size());
         String expected = "(MAQ) Instruction stack:" + System.lineSeparator() +
@@ -416,13 +433,104 @@ public class TestInstructions {
                 "\t1: 3" + System.lineSeparator();
         assertEquals(expected, machine.getInstructionStack().toString());
 
-        Modulus mod3 = new Modulus(machine);
+        Modulus mod3 = Modulus.INSTANCE;
         assertEquals("MOD", mod3.toString());
-        mod3.execute();
+        mod3.execute(context);
 
         assertEquals(1, machine.getInstructionStack().size());
         expected = "(MAQ) Instruction stack:" + System.lineSeparator() +
                 "\t0: 3" + System.lineSeparator();
         assertEquals(expected, machine.getInstructionStack().toString());
     }
+
+    @Test
+    @Order(12)
+    public void testSuperinstructions() {
+        Maquina machine = new Maquina();
+        Context context = new Context(machine, "x", "y", "z");
+
+        new Push(6).execute(context);
+        new Store("x", 0).execute(context);
+        new Push(7).execute(context);
+        new Store("y", 1).execute(context);
+
+        LoadLoadMul mulXY = new LoadLoadMul("x", 0, "y", 1);
+        assertEquals("LOAD x" + System.lineSeparator() + "LOAD y" + System.lineSeparator() + "MUL",
+                mulXY.toString());
+        mulXY.execute(context);
+
+        PushSub sub2 = new PushSub(2);
+        assertEquals("PUSH 2" + System.lineSeparator() + "SUB", sub2.toString());
+        sub2.execute(context);
+
+        assertEquals(1, machine.getInstructionStack().size());
+        String expected = "(MAQ) Instruction stack:" + System.lineSeparator() +
+                "\t0: 40" + System.lineSeparator();
+        assertEquals(expected, machine.getInstructionStack().toString());
+
+        new Push(2).execute(context);
+        AddStore addZ = new AddStore("z", 2);
+        assertEquals("ADD" + System.lineSeparator() + "STORE z", addZ.toString());
+        addZ.execute(context);
+
+        assertEquals(0, machine.getInstructionStack().size());
+        new Load("z", 2).execute(context);
+        assertEquals(42, machine.getInstructionStack().top());
+    }
+
+    @Test
+    @Order(13)
+    public void testShared() throws IOException {
+        Maquina assembled = new Maquina(OutputSink.discard());
+        assembled.assemble(new ByteArrayInputStream(("PUSH 6\nSTORE x\nLOAD x\nNEG\nSTORE y\n"
+                + "LOAD y\nNEG\nLOAD x\nDIV\nSTORE z\n").getBytes(StandardCharsets.UTF_8)), false);
+        List<Instruction> instructions = assembled.getInstructions();
+        assertSame(Negate.INSTANCE, instructions.get(3));
+        assertSame(instructions.get(3), instructions.get(6));
+
+        // the one list runs on other machines, each with its own variables
+        for (int value = 0; value < 3; value++) {
+            Maquina machine = new Maquina(OutputSink.discard());
+            Context context = new Context(machine, assembled.getInstructionNames());
+            instructions.forEach(t -> t.execute(context));
+            String expected = "x: 6" + System.lineSeparator() +
+                    "y: -6" + System.lineSeparator() +
+                    "z: 1" + System.lineSeparator();
+            assertEquals(expected, machine.getSymbolTable().toString());
+            assertEquals(0, machine.getInstructionStack().size());
+        }
+
+        // a second program shares the names it has in common with the first
+        assembled.assemble(new ByteArrayInputStream("LOAD z\nLOAD w\n".getBytes(StandardCharsets.UTF_8)), false);
+        assertEquals(List.of("x", "y", "z", "w"), List.of(assembled.getInstructionNames()));
+        assertEquals("LOAD z", assembled.getInstructions().get(10).toString());
+    }
+
+    @Test
+    @Order(14)
+    public void testFusedFailure() {
+        Instruction[] fused = {new LoadLoadAdd("x", 0, "y", 1), new LoadLoadSub("x", 0, "y", 1),
+                new LoadLoadMul("x", 0, "y", 1)};
+        for (int i = 0; i < fused.length; i++) {
+            // y has not been stored, so the second LOAD fails
+            Maquina unlinked = new Maquina();
+            Context context = new Context(unlinked, "x", "y");
+            new Push(6).execute(context);
+            new Store("x", 0).execute(context);
+            new Load("x", 0).execute(context);
+            assertThrows(Errors.UninitializedFailure.class, () -> new Load("y", 1).execute(context));
+
+            Maquina linked = new Maquina();
+            Context linkedContext = new Context(linked, "x", "y");
+            new Push(6).execute(linkedContext);
+            new Store("x", 0).execute(linkedContext);
+            Instruction instruction = fused[i];
+            assertThrows(Errors.UninitializedFailure.class, () -> instruction.execute(linkedContext));
+
+            assertEquals(unlinked.getInstructionStack().toString(), linked.getInstructionStack().toString(),
+                    instruction.toString());
+            assertEquals(1, linked.getInstructionStack().size());
+            assertEquals(6, linked.getInstructionStack().top());
+        }
+    }
 }
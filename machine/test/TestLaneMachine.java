@@ -0,0 +1,106 @@
+package machine.test;
+
+import common.Errors;
+import machine.Assembler;
+import machine.LaneMachine;
+import machine.Program;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit tester for running a program over many lanes at once.
+ *
+ * @author jolin qiu
+ */
+public class TestLaneMachine {
+    /** y = x * x + 100 / x - sqrt(x), printing y and leaving y mod 7 on the stack */
+    private static final String PROGRAM = String.join(System.lineSeparator(),
+            "LOAD x",
+            "LOAD x",
+            "MUL",
+            "PUSH 100",
+            "LOAD x",
+            "DIV",
+            "ADD",
+            "LOAD x",
+            "SQRT",
+            "SUB",
+            "STORE y",
+            "LOAD y",
+            "PRINT",
+            "LOAD y",
+            "PUSH 7",
+            "MOD",
+            "NEG",
+            "");
+
+    /**
+     * Assemble the test program.
+     *
+     * @return the program
+     */
+    private static Program program() throws IOException {
+        return Assembler.assemble(new ByteArrayInputStream(PROGRAM.getBytes()));
+    }
+
+    @Test
+    public void testLanes() throws IOException {
+        int lanes = 1000;
+        int[] x = new int[lanes];
+        for (int i = 0; i < lanes; i++) {
+            x[i] = i - 3;
+        }
+        LaneMachine machine = new LaneMachine(program(), lanes);
+        machine.set("x", x);
+        machine.run();
+
+        int[] y = machine.get("y");
+        int[] printed = machine.printed().get(0);
+        int[] top = machine.stack().get(0);
+        assertEquals(1, machine.printed().size());
+        assertEquals(1, machine.stack().size());
+        for (int i = 0; i < lanes; i++) {
+            if (x[i] < 0) {
+                assertEquals(Errors.Type.NEGATIVE_SQUARE_ROOT, machine.error(i));
+            } else if (x[i] == 0) {
+                assertEquals(Errors.Type.DIVIDE_BY_ZERO, machine.error(i));
+            } else {
+                // every other lane runs as if on its own
+                int expected = x[i] * x[i] + 100 / x[i] - (int) Math.sqrt(x[i]);
+                assertNull(machine.error(i));
+                assertEquals(expected, y[i]);
+                assertEquals(expected, printed[i]);
+                assertEquals(-(expected % 7), top[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testRunAgain() throws IOException {
+        LaneMachine machine = new LaneMachine(program(), 3);
+        machine.set("x", new int[] {-1, 0, 4});
+        machine.run();
+        assertEquals(Errors.Type.NEGATIVE_SQUARE_ROOT, machine.error(0));
+
+        // a second run starts over, keeping only the variables
+        machine.set("x", new int[] {1, 2, 4});
+        machine.run();
+        assertEquals(1, machine.printed().size());
+        for (int i = 0; i < 3; i++) {
+            assertNull(machine.error(i));
+        }
+        assertEquals(16 + 25 - 2, machine.printed().get(0)[2]);
+    }
+
+    @Test
+    public void testSet() throws IOException {
+        LaneMachine machine = new LaneMachine(program(), 4);
+        assertThrows(IllegalArgumentException.class, () -> machine.set("x", new int[3]));
+        assertThrows(IllegalArgumentException.class, () -> machine.set("z", new int[4]));
+        assertNull(machine.get("y"));
+    }
+}
@@ -0,0 +1,108 @@
+package machine.test;
+
+import common.Errors;
+import common.OutputSink;
+import machine.Assembler;
+import machine.MachinePool;
+import machine.Maquina;
+import machine.PooledRunner;
+import machine.Program;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit tester for running many programs concurrently.
+ *
+ * @author jolin qiu
+ */
+public class TestMachinePool {
+    @Test
+    public void testSeparateOutput() throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("pool");
+        List<Path> programs = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Path program = directory.resolve("p" + i + ".maq");
+            Files.writeString(program, "PUSH " + i + "\nSTORE x\nLOAD x\nLOAD x\nMUL\nPRINT\n");
+            programs.add(program);
+        }
+        Path bad = directory.resolve("bad.maq");
+        Files.writeString(bad, "PUSH 1\nPUSH 0\nDIV\n");
+        programs.add(bad);
+
+        PrintStream out = System.out;
+        for (Maquina.Engine engine : Maquina.Engine.values()) {
+            List<MachinePool.Result> results = new MachinePool(engine).run(programs);
+            // the programs print to their own buffers, not through System.out
+            assertSame(out, System.out);
+            assertEquals(programs.size(), results.size());
+            for (int i = 0; i < 50; i++) {
+                MachinePool.Result result = results.get(i);
+                assertEquals(programs.get(i), result.program());
+                assertTrue(result.succeeded());
+                // each program sees only its own output and variables
+                assertTrue(result.output().contains("Executing..." + System.lineSeparator()
+                        + (i * i) + System.lineSeparator()), engine + " " + i);
+                assertTrue(result.output().contains("x: " + i));
+                assertEquals("", result.errors());
+            }
+            MachinePool.Result failed = results.get(50);
+            assertFalse(failed.succeeded());
+            assertTrue(failed.errors().startsWith("divide by zero"));
+            assertFalse(failed.output().contains("Completed execution"));
+        }
+    }
+
+    @Test
+    public void testReuse() throws IOException {
+        PooledRunner runner = new PooledRunner(Maquina.Engine.SWITCH, OutputSink.discard(), 1);
+        Program deep = assemble("PUSH 1\n".repeat(100) + "STORE x");
+
+        Maquina machine = runner.acquire();
+        machine.loadProgram(deep);
+        machine.execute();
+        int capacity = machine.getInstructionStack().capacity();
+        machine.setVerifying(true);
+        runner.release(machine);
+
+        // the same machine comes back empty, with its stack still grown
+        assertSame(machine, runner.acquire());
+        assertEquals(0, machine.getInstructionStack().size());
+        assertEquals(capacity, machine.getInstructionStack().capacity());
+        assertEquals(0, machine.getSymbolTable().size());
+        assertEquals(0, machine.getInstructions().size());
+        machine.replaceProgram(assemble("LOAD y"));
+        assertThrows(Errors.Failure.class, machine::execute);
+        runner.release(machine);
+
+        // a failed program does not leave anything behind for the next
+        assertThrows(Errors.Failure.class, () -> runner.run(assemble("PUSH 1", "PUSH 0", "DIV")));
+        machine = runner.acquire();
+        machine.loadProgram(assemble("PUSH 4", "STORE y"));
+        machine.execute();
+        assertEquals("y: 4" + System.lineSeparator(), machine.getSymbolTable().toString());
+        assertEquals(0, machine.getInstructionStack().size());
+        runner.release(machine);
+        assertEquals(1, runner.created());
+        assertEquals(3, runner.reused());
+    }
+
+    /**
+     * Assemble some MAQ text.
+     *
+     * @param lines the instructions
+     * @return the program
+     * @throws IOException never, the input is in memory
+     */
+    private static Program assemble(String... lines) throws IOException {
+        return Assembler.assemble(new ByteArrayInputStream(String.join("\n", lines).getBytes()));
+    }
+}
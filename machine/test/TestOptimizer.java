@@ -0,0 +1,70 @@
+package machine.test;
+
+import machine.Assembler;
+import machine.Optimizer;
+import machine.Program;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit tester for the peephole optimizer.
+ *
+ * @author jolin qiu
+ */
+public class TestOptimizer {
+    /**
+     * Optimize some MAQ text.
+     *
+     * @param lines the instructions
+     * @return the optimized program's text
+     * @throws IOException never, the input is in memory
+     */
+    private static String optimize(String... lines) throws IOException {
+        Program program = Assembler.assemble(new ByteArrayInputStream(String.join("\n", lines).getBytes()));
+        return Optimizer.optimize(program).toString();
+    }
+
+    /**
+     * Build the expected program text.
+     *
+     * @param lines the instructions
+     * @return the text
+     */
+    private static String text(String... lines) {
+        StringBuilder result = new StringBuilder();
+        for (String line : lines) {
+            result.append(line).append(System.lineSeparator());
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testConstantFolding() throws IOException {
+        // ( ( 2 + 3 ) * !4 ) / $25
+        assertEquals(text("PUSH -4", "PRINT"),
+                optimize("PUSH 2", "PUSH 3", "ADD", "PUSH 4", "NEG", "MUL", "PUSH 25", "SQRT", "DIV", "PRINT"));
+        assertEquals(text("PUSH 1", "STORE x"),
+                optimize("PUSH 7", "PUSH 3", "MOD", "STORE x"));
+    }
+
+    @Test
+    public void testIdentities() throws IOException {
+        assertEquals(text("LOAD x", "PRINT"),
+                optimize("LOAD x", "PUSH 0", "ADD", "PUSH 1", "MUL", "NEG", "NEG", "PUSH 1", "DIV", "PUSH 0", "SUB", "PRINT"));
+        // nothing is known to be on the stack, so these must stay
+        assertEquals(text("PUSH 0", "ADD", "NEG", "NEG"),
+                optimize("PUSH 0", "ADD", "NEG", "NEG"));
+    }
+
+    @Test
+    public void testErrorsPreserved() throws IOException {
+        assertEquals(text("PUSH 5", "PUSH 0", "DIV"), optimize("PUSH 5", "PUSH 0", "DIV"));
+        assertEquals(text("PUSH 5", "PUSH 0", "MOD"), optimize("PUSH 5", "PUSH 0", "MOD"));
+        assertEquals(text("PUSH -9", "SQRT"), optimize("PUSH 9", "NEG", "SQRT"));
+        assertEquals(text("LOAD x", "PUSH 0", "DIV"), optimize("LOAD x", "PUSH 0", "DIV"));
+    }
+}
@@ -0,0 +1,69 @@
+package machine.test;
+
+import common.BufferedSink;
+import machine.Maquina;
+import machine.Opcode;
+import machine.Program;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit tester for the buffered output sink and machines printing to it.
+ *
+ * @author jolin qiu
+ */
+public class TestOutputSink {
+    /** the line separator */
+    private static final String NL = System.lineSeparator();
+
+    @Test
+    public void testIntegers() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BufferedSink sink = new BufferedSink(bytes, BufferedSink.DEFAULT_SIZE);
+        int[] values = {0, 7, -7, 10, -10, 123456789, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        StringBuilder expected = new StringBuilder();
+        for (int value : values) {
+            sink.println(value);
+            expected.append(value).append(NL);
+        }
+        assertEquals(0, bytes.size(), "nothing is written until flushed");
+        sink.flush();
+        assertEquals(expected.toString(), bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testSmallBuffer() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BufferedSink sink = new BufferedSink(bytes, 4);
+        StringBuilder expected = new StringBuilder();
+        for (int i = -500; i < 500; i++) {
+            sink.print("v" + i + " = ");
+            sink.println(i * 4099);
+            expected.append("v").append(i).append(" = ").append(i * 4099).append(NL);
+        }
+        sink.print("🌳 done");
+        expected.append("🌳 done");
+        sink.close();
+        assertEquals(expected.toString(), bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testMachine() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (Maquina.Engine engine : Maquina.Engine.values()) {
+            bytes.reset();
+            Maquina machine = new Maquina(new BufferedSink(bytes, BufferedSink.DEFAULT_SIZE));
+            machine.setEngine(engine);
+            Program.Builder program = new Program.Builder();
+            program.emit(Opcode.PUSH, -42);
+            program.emit(Opcode.PRINT);
+            machine.loadProgram(program.build());
+            machine.execute();
+            assertTrue(bytes.toString(StandardCharsets.UTF_8).contains(NL + "-42" + NL), engine.toString());
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package machine.test;
+
+import common.Errors;
+import machine.Maquina;
+import machine.Opcode;
+import machine.engine.Profiler;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit tester for the execution profiler.
+ *
+ * @author jolin qiu
+ */
+public class TestProfiler {
+    /** a small program whose counts and depths are easy to work out */
+    private static final String PROGRAM = String.join(System.lineSeparator(),
+            "PUSH 2",
+            "PUSH 3",
+            "ADD",
+            "STORE x",
+            "LOAD x",
+            "PRINT",
+            "");
+
+    /**
+     * Used to test that expected print's happen
+     */
+    private final ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+
+    @BeforeEach
+    public void setUpStreams() {
+        System.setOut(new PrintStream(outContent));
+    }
+
+    @AfterEach
+    public void restoreStreams() {
+        System.setOut(System.out);
+    }
+
+    @Test
+    public void testCounts() throws IOException {
+        Maquina machine = new Maquina();
+        machine.setProfiling(true);
+        machine.assemble(new ByteArrayInputStream(PROGRAM.getBytes()), false);
+        machine.execute();
+        machine.execute();
+
+        Profiler profiler = machine.getProfiler();
+        assertEquals(6, profiler.size());
+        assertEquals(2, profiler.count(0));
+        assertEquals(4, profiler.opcodeCount(Opcode.PUSH));
+        assertEquals(2, profiler.opcodeCount(Opcode.ADD));
+        assertEquals(0, profiler.opcodeCount(Opcode.DIVIDE));
+        assertEquals(2, profiler.opcodeMaxDepth(Opcode.PUSH));
+        assertEquals(1, profiler.maxDepth(2));
+        assertEquals(0, profiler.maxDepth(3));
+
+        // the program still ran normally, and the report follows
+        String output = outContent.toString();
+        assertTrue(output.indexOf("5" + System.lineSeparator()) < output.indexOf("(MAQ) Completed execution!"));
+        assertTrue(output.indexOf("(MAQ) Profile: 6 instructions")
+                > output.indexOf("(MAQ) Completed execution!"));
+        assertEquals(5, machine.getFrame().load(machine.getFrame().slot("x")));
+    }
+
+    @Test
+    public void testCsv() throws IOException {
+        Maquina machine = new Maquina();
+        machine.setProfiling(true);
+        machine.assemble(new ByteArrayInputStream(PROGRAM.getBytes()), false);
+        machine.execute();
+
+        StringWriter csv = new StringWriter();
+        machine.getProfiler().writeCsv(csv);
+        String[] lines = csv.toString().split(System.lineSeparator());
+        assertEquals("scope,key,instruction,count,nanos,max_depth", lines[0]);
+        // PUSH, PRINT, STORE, LOAD and ADD, then the six instructions
+        assertEquals(1 + 5 + 6, lines.length);
+        assertTrue(lines[1].startsWith("opcode,PUSH,PUSH,2,"));
+        assertTrue(lines[1].endsWith(",2"));
+        assertTrue(lines[9].startsWith("instruction,3,STORE x,1,"));
+    }
+
+    @Test
+    public void testPeriodicProgram() throws IOException {
+        // one statement repeated, so a fixed sampling stride would only
+        // ever land on the same instruction of it
+        StringBuilder program = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            program.append(String.join(System.lineSeparator(),
+                    "PUSH 7", "PUSH 3", "ADD", "PUSH 2", "MUL", "PUSH 5", "DIV", "STORE x", ""));
+        }
+        Maquina machine = new Maquina();
+        machine.setProfiling(true);
+        machine.assemble(new ByteArrayInputStream(program.toString().getBytes()), false);
+        machine.execute();
+
+        Profiler profiler = machine.getProfiler();
+        int timed = 0;
+        for (int opcode : new int[] {Opcode.PUSH, Opcode.ADD, Opcode.MULTIPLY, Opcode.DIVIDE, Opcode.STORE}) {
+            if (profiler.opcodeNanos(opcode) > 0) {
+                timed++;
+            }
+        }
+        assertTrue(timed > 1, "only " + timed + " opcode was timed");
+    }
+
+    @Test
+    public void testStateAfterFailure() throws IOException {
+        String[] programs = {
+                "PUSH 1\nSTORE a\nPUSH 9\nPUSH 8\nPUSH 0\nDIV\nSTORE b\n",
+                "PUSH 1\nSTORE a\nPUSH 4\nPUSH -1\nSQRT\nSTORE a\n",
+                "PUSH 2\nSTORE b\nPUSH 3\nLOAD b\nLOAD q\nSUB\n",
+        };
+        for (String program : programs) {
+            Maquina reference = new Maquina();
+            reference.setEngine(Maquina.Engine.OBJECT);
+            reference.assemble(new ByteArrayInputStream(program.getBytes()), false);
+            assertThrows(Errors.Failure.class, reference::execute);
+
+            Maquina machine = new Maquina();
+            machine.setProfiling(true);
+            machine.assemble(new ByteArrayInputStream(program.getBytes()), false);
+            assertThrows(Errors.Failure.class, machine::execute);
+            assertEquals(reference.getSymbolTable() + reference.getInstructionStack().toString(),
+                    machine.getSymbolTable() + machine.getInstructionStack().toString(), program);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package machine.test;
+
+import common.Errors;
+import machine.Maquina;
+import machine.Program;
+import machine.ProgramCache;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit tester for the cache of assembled programs.
+ *
+ * @author jolin qiu
+ */
+public class TestProgramCache {
+    /**
+     * Used to keep the machine's listings out of the test output
+     */
+    private final ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+
+    @BeforeEach
+    public void setUpStreams() {
+        System.setOut(new PrintStream(outContent));
+    }
+
+    @AfterEach
+    public void restoreStreams() {
+        System.setOut(System.out);
+    }
+
+    @Test
+    public void testHit() {
+        ProgramCache cache = new ProgramCache(4);
+        Program program = cache.assemble("PUSH 6\nSTORE x\nLOAD x\nPRINT\n".getBytes());
+        assertSame(program, cache.assemble("PUSH 6\nSTORE x\nLOAD x\nPRINT\n".getBytes()));
+        assertNotSame(program, cache.assemble("PUSH 7\nSTORE x\nLOAD x\nPRINT\n".getBytes()));
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+        assertEquals(2, cache.size());
+
+        // one cached program runs on any number of machines
+        for (int i = 0; i < 2; i++) {
+            Maquina machine = new Maquina();
+            machine.loadProgram(program);
+            machine.execute();
+            assertEquals(6, machine.getFrame().load(machine.getFrame().slot("x")));
+        }
+    }
+
+    @Test
+    public void testEviction() {
+        ProgramCache cache = new ProgramCache(2);
+        Program a = cache.assemble("PUSH 1\n".getBytes());
+        cache.assemble("PUSH 2\n".getBytes());
+        // using a makes PUSH 2 the least recently used
+        cache.assemble("PUSH 1\n".getBytes());
+        cache.assemble("PUSH 3\n".getBytes());
+        assertEquals(1, cache.evictions());
+        assertEquals(2, cache.size());
+        assertSame(a, cache.assemble("PUSH 1\n".getBytes()));
+        cache.assemble("PUSH 2\n".getBytes());
+        assertEquals(4, cache.misses());
+        assertEquals(2, cache.evictions());
+    }
+
+    @Test
+    public void testFailure() {
+        ProgramCache cache = new ProgramCache(2);
+        assertThrows(Errors.SyntaxFailure.class, () -> cache.assemble("PUSH 1\nJUMP\n".getBytes()));
+        assertEquals(0, cache.size());
+        assertThrows(Errors.SyntaxFailure.class, () -> cache.assemble("PUSH 1\nJUMP\n".getBytes()));
+        assertEquals(2, cache.misses());
+    }
+}
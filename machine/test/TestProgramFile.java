@@ -0,0 +1,73 @@
+package machine.test;
+
+import machine.Assembler;
+import machine.Program;
+import machine.ProgramFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit tester for the binary .maqb program format.
+ *
+ * @author jolin qiu
+ */
+public class TestProgramFile {
+    /** a program using every kind of operand */
+    private static final String PROGRAM = String.join(System.lineSeparator(),
+            "PUSH 10",
+            "STORE x",
+            "PUSH -2147483648",
+            "PUSH 10",
+            "LOAD x",
+            "MUL",
+            "STORE größe",
+            "LOAD größe",
+            "NEG",
+            "PRINT",
+            "");
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Program program = Assembler.assemble(new ByteArrayInputStream(PROGRAM.getBytes()));
+        assertEquals(PROGRAM, program.toString());
+
+        ByteBuffer bytes = ProgramFile.encode(program);
+        Program read = ProgramFile.read(bytes, "test");
+        assertEquals(program.size(), read.size());
+        assertArrayEquals(program.code(), read.code());
+        assertEquals(PROGRAM, read.toString());
+    }
+
+    @Test
+    public void testDamaged() throws IOException {
+        Program program = Assembler.assemble(new ByteArrayInputStream(PROGRAM.getBytes()));
+        ByteBuffer bytes = ProgramFile.encode(program);
+
+        ByteBuffer truncated = bytes.duplicate().limit(bytes.limit() - 3);
+        assertThrows(IOException.class, () -> ProgramFile.read(truncated, "test"));
+
+        ByteBuffer notBinary = ByteBuffer.wrap("PUSH 10\n".getBytes());
+        assertThrows(IOException.class, () -> ProgramFile.read(notBinary, "test"));
+
+        // counts too large for the file, or negative, are caught before anything is allocated
+        for (int offset : new int[] {8, 12, 16 + bytes.getInt(12) * Integer.BYTES}) {
+            for (int count : new int[] {Integer.MAX_VALUE, -1}) {
+                ByteBuffer damaged = ByteBuffer.allocate(bytes.limit()).put(bytes.duplicate()).flip();
+                damaged.putInt(offset, count);
+                assertThrows(IOException.class, () -> ProgramFile.read(damaged, "test"));
+            }
+        }
+    }
+
+    @Test
+    public void testLongName() throws IOException {
+        String name = "v".repeat(0x10000);
+        Program program = Assembler.assemble(new ByteArrayInputStream(("PUSH 1\nSTORE " + name + "\n").getBytes()));
+        assertThrows(IllegalArgumentException.class, () -> ProgramFile.encode(program));
+    }
+}
@@ -0,0 +1,107 @@
+package machine.test;
+
+import common.Errors;
+import machine.Assembler;
+import machine.Maquina;
+import machine.Program;
+import machine.engine.RegisterEngine;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit tester for the translation into register form.
+ *
+ * @author jolin qiu
+ */
+public class TestRegisterEngine {
+    /**
+     * Used to test that expected print's happen
+     */
+    private final ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+
+    @BeforeEach
+    public void setUpStreams() {
+        System.setOut(new PrintStream(outContent));
+    }
+
+    @AfterEach
+    public void restoreStreams() {
+        System.setOut(System.out);
+    }
+
+    /**
+     * Assemble some MAQ text.
+     *
+     * @param lines the instructions
+     * @return the program
+     * @throws IOException never, the input is in memory
+     */
+    private static Program assemble(String... lines) throws IOException {
+        return Assembler.assemble(new ByteArrayInputStream(String.join("\n", lines).getBytes()));
+    }
+
+    /**
+     * Run programs one after another on a new machine, stopping at the
+     * first error.
+     *
+     * @param engine the engine
+     * @param programs the programs
+     * @return everything printed, the machine's symbol table and stack, and the error if any
+     */
+    private String run(Maquina.Engine engine, Program... programs) {
+        outContent.reset();
+        Maquina machine = new Maquina();
+        machine.setEngine(engine);
+        String error = "";
+        try {
+            for (Program program : programs) {
+                machine.loadProgram(program);
+                machine.execute();
+            }
+        } catch (Errors.Failure failure) {
+            error = failure.getType().toString();
+        }
+        String printed = outContent.toString();
+        return printed.substring(printed.indexOf("(MAQ) Executing...")) + machine.getSymbolTable()
+                + machine.getInstructionStack() + error;
+    }
+
+    @Test
+    public void testTranslation() throws IOException {
+        Program program = assemble("PUSH 1", "STORE x", "PUSH 2", "STORE y",
+                "LOAD x", "PUSH 2", "MUL", "LOAD y", "ADD", "STORE z", "LOAD z", "PRINT");
+        RegisterEngine.Translation translation = RegisterEngine.translate(program);
+        assertEquals(String.join(System.lineSeparator(),
+                "x = 1", "y = 2", "t0 = x * 2", "z = t0 + y", "print z", ""), translation.toString(program.names()));
+        assertEquals(5, translation.size());
+
+        // programs that pop what they did not push are not translated
+        assertNull(RegisterEngine.translate(assemble("PUSH 1", "ADD")));
+    }
+
+    @Test
+    public void testSameAsStack() throws IOException {
+        Program[][] cases = {
+                // the old x is still on the stack when x is stored
+                {assemble("PUSH 5", "STORE x", "LOAD x", "PUSH 1", "STORE x", "LOAD x", "ADD", "PRINT")},
+                // a store in between must not be moved before the print
+                {assemble("PUSH 3", "STORE x", "PUSH 4", "PUSH 5", "ADD", "LOAD x", "PRINT", "STORE x")},
+                // values left on the stack, and a second program using them
+                {assemble("PUSH 2", "STORE a", "LOAD a", "LOAD a", "NEG"), assemble("ADD", "STORE b", "LOAD b")},
+                // errors part way leave the stack and symbol table as the stack engines do
+                {assemble("PUSH 1", "STORE c", "PUSH 9", "PUSH 8", "PUSH 0", "DIV", "STORE d")},
+                {assemble("PUSH 7", "PUSH -4", "SQRT")},
+                {assemble("PUSH 1", "STORE c", "PUSH 6", "LOAD e")},
+                {assemble("PUSH 1", "STORE c"), assemble("LOAD c", "PUSH 0", "DIV", "STORE c")},
+        };
+        for (Program[] programs : cases) {
+            assertEquals(run(Maquina.Engine.OBJECT, programs), run(Maquina.Engine.REGISTER, programs));
+        }
+    }
+}
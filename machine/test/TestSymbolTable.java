@@ -31,4 +31,23 @@ public class TestSymbolTable {
                 "z: 40" + System.lineSeparator();
         assertEquals(expected, symTbl.toString());
     }
+
+    @Test
+    public void testGrowth() {
+        SymbolTable symTbl = new SymbolTable();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            symTbl.set("v" + i, i);
+            expected.append("v").append(i).append(": ").append(i * 2).append(System.lineSeparator());
+        }
+        for (int i = 0; i < 10_000; i++) {
+            symTbl.set("v" + i, symTbl.get("v" + i) * 2);
+        }
+        assertEquals(10_000, symTbl.size());
+        assertEquals(19_998, symTbl.get("v9999"));
+        assertFalse(symTbl.has("v10000"));
+        // the order is still the order the names were first set
+        assertEquals(expected.toString(), symTbl.toString());
+        assertThrows(NullPointerException.class, () -> symTbl.get("w"));
+    }
 }
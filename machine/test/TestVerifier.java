@@ -0,0 +1,99 @@
+package machine.test;
+
+import common.Errors;
+import machine.Assembler;
+import machine.Maquina;
+import machine.Program;
+import machine.Verifier;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A JUnit tester for the stack depth and definite assignment verifier.
+ *
+ * @author jolin qiu
+ */
+public class TestVerifier {
+    /**
+     * Used to keep the machine's listings out of the test output
+     */
+    private final ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+
+    @BeforeEach
+    public void setUpStreams() {
+        System.setOut(new PrintStream(outContent));
+    }
+
+    @AfterEach
+    public void restoreStreams() {
+        System.setOut(System.out);
+    }
+
+    /**
+     * Assemble some MAQ text.
+     *
+     * @param lines the instructions
+     * @return the program
+     * @throws IOException never, the input is in memory
+     */
+    private static Program assemble(String... lines) throws IOException {
+        return Assembler.assemble(new ByteArrayInputStream(String.join("\n", lines).getBytes()));
+    }
+
+    @Test
+    public void testVerified() throws IOException {
+        Program program = assemble("PUSH 1", "PUSH 2", "PUSH 3", "MUL", "ADD", "STORE x",
+                "LOAD x", "LOAD x", "SUB", "PRINT", "LOAD x");
+        assertFalse(program.isVerified());
+        Program verified = Verifier.verify(program);
+        assertTrue(verified.isVerified());
+        assertEquals(3, verified.maxDepth());
+        // marked in place, so caches keyed on the program still find it
+        assertSame(program, verified);
+        assertSame(verified, Verifier.verify(verified));
+    }
+
+    @Test
+    public void testUnderflow() throws IOException {
+        Errors.Failure failure = assertThrows(Errors.SyntaxFailure.class,
+                () -> Verifier.verify(assemble("PUSH 1", "PRINT", "PUSH 2", "ADD")));
+        assertEquals(Errors.Type.PREMATURE_END, failure.getType());
+        assertEquals("ADD (instruction 3)", failure.getInfo());
+        assertThrows(Errors.SyntaxFailure.class, () -> Verifier.verify(assemble("STORE x")));
+    }
+
+    @Test
+    public void testUninitialized() throws IOException {
+        Errors.Failure failure = assertThrows(Errors.UninitializedFailure.class,
+                () -> Verifier.verify(assemble("PUSH 1", "STORE x", "LOAD y")));
+        assertEquals("y", failure.getInfo());
+        // the STORE must come first, not merely somewhere in the program
+        assertThrows(Errors.UninitializedFailure.class,
+                () -> Verifier.verify(assemble("LOAD x", "PUSH 1", "STORE x")));
+    }
+
+    @Test
+    public void testMachine() throws IOException {
+        Maquina machine = new Maquina();
+        machine.setVerifying(true);
+        machine.assemble(new ByteArrayInputStream("PUSH 4\nSTORE x\n".getBytes()), false);
+        assertTrue(machine.getProgram().isVerified());
+
+        // a rejected program is dropped, leaving the machine as it was
+        assertThrows(Errors.UninitializedFailure.class,
+                () -> machine.assemble(new ByteArrayInputStream("LOAD y\nPRINT\n".getBytes()), false));
+        // and is not listed either
+        assertFalse(outContent.toString().contains("LOAD y"));
+        // later programs are verified together with the earlier ones, so x is stored
+        machine.assemble(new ByteArrayInputStream("LOAD x\nPRINT\n".getBytes()), false);
+        assertEquals(4, machine.getProgram().size());
+        machine.execute();
+        assertTrue(outContent.toString().contains(System.lineSeparator() + "4" + System.lineSeparator()));
+    }
+}